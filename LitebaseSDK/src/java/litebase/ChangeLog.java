@@ -0,0 +1,217 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package litebase;
+
+import totalcross.io.*;
+import totalcross.sys.*;
+import totalcross.util.*;
+
+/**
+ * The rows of a table changed since its last synchronization, in the order in which they were first changed. The log is only a list of hints: a
+ * row may appear more than once or may have been synchronized or moved after it was logged, so the attribute of each row is always checked when
+ * the log is read. What must be guaranteed is that every row which is new, updated or deleted and was not synchronized yet is in the log.
+ * <p>
+ * The log is kept in memory while the table is open and saved in a file when the table is closed. A flag in the table header tells that the file
+ * matches the table. Any change in the table clears this flag, so that a table changed by a connection which did not keep the log, or left not
+ * properly closed, has its log rebuilt from its rows.
+ */
+class ChangeLog
+{
+   /**
+    * The extension of the file where the log is saved.
+    */
+   static final String EXT = ".dbc";
+
+   /**
+    * The changed rows.
+    */
+   IntVector rows = new IntVector();
+
+   /**
+    * A bitmap with the rows which are in the log and were not returned by an iterator yet. It avoids logging a row more than once.
+    */
+   private int[] pending = new int[32];
+
+   /**
+    * Adds a row to the log if it is not there yet.
+    *
+    * @param row The row changed.
+    */
+   void add(int row)
+   {
+      int[] bits = pending;
+      int i = row >> 5;
+
+      if (i >= bits.length) // Enlarges the bitmap.
+      {
+         int[] newBits = new int[Math.max(i + 1, bits.length << 1)];
+         Vm.arrayCopy(bits, 0, newBits, 0, bits.length);
+         bits = pending = newBits;
+      }
+      if ((bits[i] & (1 << (row & 31))) == 0)
+      {
+         bits[i] |= 1 << (row & 31);
+         rows.addElement(row);
+      }
+   }
+
+   /**
+    * Indicates that a row of the log was returned by an iterator. If it is changed again, it will be logged again.
+    *
+    * @param row The row returned.
+    */
+   void returned(int row)
+   {
+      if ((row >> 5) < pending.length)
+         pending[row >> 5] &= ~(1 << (row & 31));
+   }
+
+   /**
+    * Indicates if a row was changed after being returned by an iterator.
+    *
+    * @param row The row.
+    * @return <code>true</code> if the row is in the log waiting to be returned; <code>false</code>, otherwise.
+    */
+   boolean isPending(int row)
+   {
+      return (row >> 5) < pending.length && (pending[row >> 5] & (1 << (row & 31))) != 0;
+   }
+
+   /**
+    * Marks all the rows of the log as not returned, so that a new iteration returns all of them.
+    */
+   void rewind()
+   {
+      int[] bits = pending,
+            items = rows.items;
+      int i = rows.size(),
+          row;
+      
+      while (--i >= 0)
+         bits[(row = items[i]) >> 5] |= 1 << (row & 31);
+   }
+
+   /**
+    * Removes the first entries of the log, which were already synchronized.
+    *
+    * @param count The number of entries to be removed.
+    */
+   void removeFirst(int count)
+   {
+      IntVector rowsAux = rows;
+      int remaining = rowsAux.size() - count;
+
+      Vm.arrayCopy(rowsAux.items, count, rowsAux.items, 0, remaining);
+      rowsAux.setSize(remaining);
+   }
+
+   /**
+    * Builds the log of a table reading all its rows. All the rows which are not synchronized are logged in their physical order.
+    *
+    * @param plainDB The table rows.
+    * @return The log built.
+    * @throws IOException If an internal method throws it.
+    */
+   static ChangeLog build(PlainDB plainDB) throws IOException
+   {
+      ChangeLog log = new ChangeLog();
+      DataStreamLB basds = plainDB.basds; // juliana@253_8: now Litebase supports weak cryptography.
+      int n = plainDB.rowCount,
+          i = -1;
+
+      while (++i < n)
+      {
+         plainDB.read(i);
+         if ((basds.readInt() & Utils.ROW_ATTR_MASK) != Utils.ROW_ATTR_SYNCED)
+            log.add(i);
+      }
+      return log;
+   }
+
+   /**
+    * Loads the log saved when the table was closed.
+    *
+    * @param fileName The full name of the log file.
+    * @param useCrypto Indicates if the table uses cryptography.
+    * @return The log loaded, which is empty if there is no file.
+    * @throws IOException If an internal method throws it.
+    */
+   static ChangeLog load(String fileName, boolean useCrypto) throws IOException
+   {
+      ChangeLog log = new ChangeLog();
+      File file = new File(fileName, File.DONT_OPEN);
+
+      if (file.exists()) // Only a non empty log is saved.
+      {
+         file = new File(fileName, File.READ_ONLY);
+         try
+         {
+            byte[] buffer = new byte[file.getSize()];
+            file.readBytes(buffer, 0, buffer.length);
+
+            DataStreamLB ds = new DataStreamLB(new ByteArrayStream(buffer), useCrypto);
+            int n = ds.readInt();
+
+            while (--n >= 0)
+               log.add(ds.readInt());
+         }
+         finally
+         {
+            file.close();
+         }
+      }
+      return log;
+   }
+
+   /**
+    * Saves the log in a file. An empty log only deletes the old file.
+    *
+    * @param fileName The full name of the log file.
+    * @param useCrypto Indicates if the table uses cryptography.
+    * @throws IOException If an internal method throws it.
+    */
+   void save(String fileName, boolean useCrypto) throws IOException
+   {
+      IntVector rowsAux = rows;
+      int n = rowsAux.size(),
+          i = -1;
+
+      remove(fileName);
+      if (n > 0)
+      {
+         ByteArrayStream bas = new ByteArrayStream((n + 1) << 2);
+         DataStreamLB ds = new DataStreamLB(bas, useCrypto);
+         int[] items = rowsAux.items;
+         File file = new File(fileName, File.CREATE_EMPTY);
+
+         ds.writeInt(n);
+         while (++i < n)
+            ds.writeInt(items[i]);
+         try
+         {
+            file.writeBytes(bas.getBuffer(), 0, bas.getPos());
+         }
+         finally
+         {
+            file.close();
+         }
+      }
+   }
+
+   /**
+    * Deletes the log file of a table, if it exists.
+    *
+    * @param fileName The full name of the log file.
+    * @throws IOException If an internal method throws it.
+    */
+   static void remove(String fileName) throws IOException
+   {
+      File file = new File(fileName, File.DONT_OPEN);
+
+      if (file.exists())
+         file.delete();
+   }
+}
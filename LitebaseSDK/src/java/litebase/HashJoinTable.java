@@ -0,0 +1,205 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package litebase;
+
+import totalcross.io.IOException;
+import totalcross.sys.*;
+import totalcross.util.*;
+
+/**
+ * An in-memory hash table built over one column of the inner table of a join. It is used to solve a join equality
+ * <code>table1.field1 = table2.field2</code> when <code>field2</code> has no index: instead of reading every row of <code>table2</code> for each
+ * row of <code>table1</code>, the rows whose value has the same hash code are marked in a bitmap which is then walked as if it had been generated by
+ * an index. Only the hash codes are stored, so two different values may collide. This is not a problem because the rows marked in the bitmap are
+ * always validated by the where clause.
+ */
+class HashJoinTable
+{
+   /**
+    * The minimum number of rows the inner table must have so that a hash join is used instead of a nested loop join.
+    */
+   static final int MIN_ROWS = 64;
+
+   /**
+    * The number of bytes used by each row in the hash table.
+    */
+   private static final int BYTES_PER_ROW = 12;
+
+   /**
+    * The column whose values were hashed.
+    */
+   int colIndex;
+
+   /**
+    * The first row of each bucket or -1 if the bucket is empty.
+    */
+   private int[] heads;
+
+   /**
+    * The next row of the same bucket or -1 if it is the last one.
+    */
+   private int[] next;
+
+   /**
+    * The hash code of the value of each row.
+    */
+   private int[] hashes;
+
+   /**
+    * The bitmap with the rows returned by the last probe. It is reused by all the probes.
+    */
+   private IntVector bitmap;
+
+   /**
+    * The bucket of the last probe, whose rows must be unmarked in the next probe, or -1 if there was no probe yet.
+    */
+   private int lastBucket = -1;
+
+   /**
+    * Indicates if the hash join can be used for a join between two tables. The inner table must be big enough for a nested loop to be slower than
+    * building the hash table and the outer table must have more than one row, otherwise the hash table would be used only once.
+    *
+    * @param outerRows The number of rows of the outer table.
+    * @param innerRows The number of rows of the inner table.
+    * @return <code>true</code> if a hash join should be used; <code>false</code>, otherwise.
+    */
+   static boolean isWorthy(int outerRows, int innerRows)
+   {
+      return innerRows >= MIN_ROWS && outerRows > 1;
+   }
+
+   /**
+    * Builds the hash table of a column of the table of a result set, taking into consideration only the rows that are not deleted and whose value
+    * is not null.
+    *
+    * @param rs The result set of the inner table.
+    * @param col The column to be hashed.
+    * @param type The type of the column.
+    * @return The hash table or <code>null</code> if there is not enough memory to build it; in this case, a nested loop must be used.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   static HashJoinTable build(ResultSet rs, int col, int type) throws IOException, InvalidDateException
+   {
+      Table table = rs.table;
+      PlainDB db = table.db;
+      int rows = rs.lastRecordIndex + 1,
+          size = 16,
+          i = -1,
+          bucket;
+
+      while (size < rows)
+         size <<= 1;
+
+      // Only builds the table if it will not use more than a quarter of the free memory.
+      if (((long)rows * BYTES_PER_ROW + (size << 2)) << 2 > Vm.getFreeMemory())
+         return null;
+
+      HashJoinTable hashTable = new HashJoinTable();
+      int[] heads = hashTable.heads = new int[size],
+            next = hashTable.next = new int[rows],
+            hashes = hashTable.hashes = new int[rows];
+      byte[] nulls = table.columnNulls[0];
+      SQLValue value = new SQLValue();
+
+      Convert.fill(heads, 0, size, -1);
+      size--;
+      hashTable.colIndex = col;
+
+      while (++i < rows)
+      {
+         db.read(i);
+         if (db.recordNotDeleted())
+         {
+            table.readNullBytesOfRecord(0, false, 0);
+            if ((nulls[col >> 3] & (1 << (col & 7))) == 0)
+            {
+               hashes[i] = hashCode(rs.sqlwhereclausetreeGetTableColValue(col, value), type);
+               next[i] = heads[bucket = hashes[i] & size];
+               heads[bucket] = i;
+            }
+         }
+      }
+
+      (hashTable.bitmap = new IntVector(1)).ensureBit(rows);
+      return hashTable;
+   }
+
+   /**
+    * Marks the rows that may have the given value.
+    *
+    * @param value The value searched for.
+    * @param type The type of the value.
+    * @return A bitmap with the rows marked or <code>null</code> if there is no such row.
+    */
+   IntVector probe(SQLValue value, int type)
+   {
+      int[] items = bitmap.items;
+      int hash = hashCode(value, type),
+          bucket = hash & (heads.length - 1),
+          row;
+      boolean found = false;
+
+      if (lastBucket != -1) // Only the rows of the last bucket can be marked.
+      {
+         row = heads[lastBucket];
+         while (row != -1)
+         {
+            items[row >> 5] &= ~(1 << (row & 31));
+            row = next[row];
+         }
+      }
+      
+      row = heads[lastBucket = bucket];
+      while (row != -1)
+      {
+         if (hashes[row] == hash)
+         {
+            items[row >> 5] |= 1 << (row & 31);
+            found = true;
+         }
+         row = next[row];
+      }
+
+      return found? bitmap : null;
+   }
+
+   /**
+    * Calculates the hash code of a value in a way that two values considered equal by the comparison functions of the where clause have the same
+    * hash code.
+    *
+    * @param value The value.
+    * @param type The type of the value.
+    * @return The hash code of the value.
+    */
+   private static int hashCode(SQLValue value, int type)
+   {
+      switch (type)
+      {
+         case SQLElement.SHORT:
+            return value.asShort;
+         case SQLElement.INT:
+         case SQLElement.DATE:
+            return value.asInt;
+         case SQLElement.LONG:
+            return (int)(value.asLong ^ (value.asLong >>> 32));
+         case SQLElement.DATETIME:
+            return value.asInt * 31 + value.asShort;
+         case SQLElement.FLOAT:
+         case SQLElement.DOUBLE:
+         {
+            if (value.asDouble == 0) // 0.0 and -0.0 are equal.
+               return 0;
+            long bits = Convert.doubleToLongBits(value.asDouble);
+            return (int)(bits ^ (bits >>> 32));
+         }
+         case SQLElement.CHARS_NOCASE:
+            return value.asString.toLowerCase().hashCode();
+         default:
+            return value.asString.hashCode();
+      }
+   }
+}
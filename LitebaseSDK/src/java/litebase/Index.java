@@ -6,6 +6,7 @@
 package litebase;
 
 import totalcross.io.*;
+import totalcross.sys.*;
 import totalcross.util.*;
 
 // juliana@253_5: removed .idr files from all indices and changed its format. 
@@ -15,14 +16,19 @@ import totalcross.util.*;
 class Index
 {
    /**
-    * The size of the index cache.
+    * The default size of the index cache.
     */
-   private static final int INDEX_CACHE_SIZE = 20;
+   static final int DEFAULT_CACHE_SIZE = 20;
    
    /** 
     * The size of the disk sector. Used for calculating the number of keys of a node.
     */
    private static final int SECTOR_SIZE = 512;
+   
+   /**
+    * The minimum size of the nodes of an index which stores its strings. 
+    */
+   private static final int COMPRESSED_NODE_SIZE = SECTOR_SIZE << 2;
  
    /**
     * The sizes for each type.
@@ -55,14 +61,55 @@ class Index
    int nodeRecSize;
 
    /**
-    * A cache of node.
+    * The number of nodes in the cache.
+    */
+   private int cacheCount;
+   
+   /**
+    * A counter incremented whenever a node of the cache is used, used to find the least recently used node.
+    */
+   private int cacheClock;
+   
+   /**
+    * Maps the index of a node to its position in the cache.
     */
-   private int cacheI;
+   private IntHashtable cachePositions;
+   
+   /**
+    * The number of node loads solved by the cache or the first level.
+    */
+   int cacheHits;
+   
+   /**
+    * The number of node loads that had to read the index file.
+    */
+   int cacheMisses;
 
    /**
     * The size of the keys.
     */
    int keyRecSize;
+   
+   /**
+    * Indicates that the index stores its strings in its nodes instead of their positions in the .dbo, with prefix compression. Its nodes have 
+    * variable sized keys and are split when they have too many keys or bytes.
+    */
+   boolean isCompressed;
+   
+   /**
+    * The maximum number of bytes that a key, with its record and its child, can use in a node of an index which stores its strings.
+    */
+   private int maxKeySize;
+   
+   /**
+    * A buffer used to load the strings of the keys.
+    */
+   char[] chars = new char[16];
+   
+   /**
+    * A buffer used to load the ascii strings of the keys.
+    */
+   byte[] bytes = new byte[16];
 
    /**
     * The number of nodes.
@@ -88,7 +135,7 @@ class Index
    /**
     * The cache of the index.
     */
-   private Node[] cache = new Node[INDEX_CACHE_SIZE]; // Creates the cache.;
+   private Node[] cache;
    
    /**
     * The first level of the index B-tree.
@@ -155,25 +202,53 @@ class Index
    Index(Table aTable, byte[] keyTypes, int[] newColSizes, String aName, String sourcePath, boolean exist) 
                                                                                             throws IOException, InvalidDateException
    {
-      int numberColumns = keyTypes.length;
+      int numberColumns = keyTypes.length,
+          charSize = aTable.db.isAscii? 1 : 2;
 
       table = aTable;
       types = keyTypes;
       name = aName;
       colSizes = newColSizes;
       keyRecSize = Key.VALREC_SIZE;
+      maxKeySize = Key.VALREC_SIZE + 2;
       
       while (--numberColumns >= 0) // Gets the key sizes for each column of the index.
+      {
          keyRecSize += keyRecSizes[keyTypes[numberColumns]];
+         
+         // A string takes at most all its characters and the sizes of its prefix and suffix.
+         if (keyTypes[numberColumns] == SQLElement.CHARS || keyTypes[numberColumns] == SQLElement.CHARS_NOCASE)
+         {
+            isCompressed = true;
+            maxKeySize += (newColSizes[numberColumns] < 256? 2 : 4) + newColSizes[numberColumns] * charSize;
+         }
+         else
+            maxKeySize += keyRecSizes[keyTypes[numberColumns]];
+      }
       
-      btreeMaxNodes = (SECTOR_SIZE - 5) / (keyRecSize + 2);
-      nodeRecSize = 2 + btreeMaxNodes * keyRecSize + ((btreeMaxNodes + 1) << 1); // int size + key[k] + (Node = int)[k+1]
+      // Only the tables created or converted with compressed string indices store the strings in their indices; the others store their positions.
+      if (isCompressed &= aTable.version >= Table.VERSION_COMPRESSED_STRINGS)
+      {
+         // A node must be able to take 8 keys of the maximum size, so that both halves of a split node can still take some keys. The number of 
+         // keys is a maximum: the nodes are also split when they are almost out of space.
+         btreeMaxNodes = (COMPRESSED_NODE_SIZE - 4) / (keyRecSize + 2);
+         nodeRecSize = Math.max(COMPRESSED_NODE_SIZE, ((maxKeySize << 3) + SECTOR_SIZE - 1) / SECTOR_SIZE * SECTOR_SIZE);
+      }
+      else
+      {
+         btreeMaxNodes = (SECTOR_SIZE - 5) / (keyRecSize + 2);
+         nodeRecSize = 2 + btreeMaxNodes * keyRecSize + ((btreeMaxNodes + 1) << 1); // int size + key[k] + (Node = int)[k+1]
+      }
 
       // Creates the streams.
       basbuf = (bas = new ByteArrayStream(nodeRecSize)).getBuffer();
       basds = new DataStreamLB(bas, aTable.db.useCrypto);
 
       firstLevel = new Node[btreeMaxNodes]; // Creates the first index level. // juliana@230_35
+      
+      // Creates the cache.
+      LitebaseConnection driver = aTable.db.driver;
+      createCache(driver == null? DEFAULT_CACHE_SIZE : driver.indexCacheSize);
 
       // Creates the index files.
       String fullFileName = Utils.getFullFileName(name, sourcePath);
@@ -217,7 +292,7 @@ class Index
          Key[] currKeys;
          Key keyFound;
          PlainDB plainDB = table.db;
-         int[] vector = plainDB.driver.nodes;
+         int[] vector = table.getNodes(nodeCounter + 1); // Each node is pushed at most once.
          
          while (true)
          {
@@ -286,36 +361,129 @@ class Index
          if ((cand = firstLevel[idx - 1]) == null)
          {
             (cand = firstLevel[idx - 1] = new Node(this)).idx = idx;
+            cacheMisses++;
             cand.load();
          }
          else if (cand.idx == -1)
          {
             cand.idx = idx;
+            cacheMisses++;
             cand.load();
          }
+         else
+            cacheHits++;
          return cand;
       }
 
       // Loads the cache if the node is in a deeper level.
-      Node[] cacheAux = cache;
-      int j = INDEX_CACHE_SIZE;
-      while (--j >= 0)  
-         if (cacheAux[j] != null && cacheAux[j].idx == idx)
-            return cacheAux[cacheI = j];
+      if ((cand = getCachedNode(idx)) != null)
+         return cand;
       
-      if (++cacheI >= INDEX_CACHE_SIZE)
-         cacheI = 0;
-      if ((cand = cacheAux[cacheI]) == null)
-         cand = cacheAux[cacheI] = new Node(this);
+      int pos = cacheCount;
+      if (pos < cache.length) // Uses a new cache node while the cache is not full.
+         cand = cache[cacheCount++] = new Node(this);
+      else // Otherwise, the least recently used node is replaced.
+      {
+         Node[] cacheAux = cache;
+         int i = pos,
+             oldest = cacheAux[pos = 0].lastUse;
+         while (--i > 0)
+            if (cacheAux[i].lastUse - oldest < 0) // Works even if the clock wraps around.
+               oldest = cacheAux[pos = i].lastUse;
          
-      if (isWriteDelayed && cand.isDirty) // Saves this one if it is dirty.
-         cand.save(false, 0, cand.size);
+         if (isWriteDelayed && (cand = cacheAux[pos]).isDirty) // Saves all the dirty nodes at once if this one is dirty.
+            flushCache();
+         try
+         {
+            cachePositions.remove((cand = cacheAux[pos]).idx);
+         }
+         catch (ElementNotFoundException exception) {}
+      }
 
       // Loads the node.
-      cand.idx = idx;
+      cachePositions.put(cand.idx = idx, pos);
+      cand.lastUse = ++cacheClock;
+      cacheMisses++;
       cand.load();
       return cand;
    }
+   
+   /**
+    * Returns a node of the deeper levels of the index if it is in the cache, marking it as the most recently used one.
+    * 
+    * @param idx The node index.
+    * @return The cached node or <code>null</code> if it is not in the cache.
+    */
+   private Node getCachedNode(int idx)
+   {
+      int pos = cachePositions.get(idx, -1);
+      if (pos == -1)
+         return null;
+      
+      Node node = cache[pos];
+      node.lastUse = ++cacheClock;
+      cacheHits++;
+      return node;
+   }
+   
+   /**
+    * Creates an empty cache for the nodes of the deeper levels of the index.
+    * 
+    * @param size The maximum number of nodes in the cache.
+    */
+   private void createCache(int size)
+   {
+      cache = new Node[size];
+      cachePositions = new IntHashtable(size);
+      cacheCount = 0;
+   }
+   
+   /**
+    * Changes the maximum number of nodes of the cache, saving its dirty nodes first.
+    * 
+    * @param size The new maximum number of nodes in the cache.
+    * @throws IOException If an internal method throws it.
+    */
+   void setCacheSize(int size) throws IOException
+   {
+      if (size != cache.length)
+      {
+         if (isWriteDelayed)
+            flushCache();
+         createCache(size);
+      }
+   }
+   
+   /**
+    * Saves the dirty nodes of the cache in the order of their position in the nodes file, so that the writes are sequential.
+    * 
+    * @throws IOException If an internal method throws it.
+    */
+   private void flushCache() throws IOException
+   {
+      Node[] cacheAux = cache;
+      Node[] dirty = new Node[cacheCount];
+      Node node;
+      int n = 0,
+          i = cacheCount,
+          j;
+      
+      while (--i >= 0) // Sorts the dirty nodes by their position using insertion sort.
+         if ((node = cacheAux[i]).isDirty)
+         {
+            j = n++;
+            while (j > 0 && dirty[j - 1].idx > node.idx)
+            {
+               dirty[j] = dirty[j - 1];
+               j--;
+            }
+            dirty[j] = node;
+         }
+      
+      i = -1;
+      while (++i < n)
+         (node = dirty[i]).save(false, 0, node.size);
+   }
 
    /**
     * Finds the given key and marks the records that are going to the result set.
@@ -342,7 +510,7 @@ class Index
              firstChild,
              size,
              count = 0;
-         int[] vector = plainDB.driver.nodes;
+         int[] vector = table.getNodes(nodeCounter + 1); // Each node is pushed at most once.
                 
          while (true)
          {
@@ -446,7 +614,7 @@ class Index
              r,
              count = 0;
          PlainDB plainDB = table.db;             
-         int[] ancestors = plainDB.driver.nodes;
+         int[] ancestors = table.nodes;
          Node curr = root; // Starts from the root.
          Key left = markBits.leftKey;
          SQLValue[] leftKeys = left.keys;
@@ -466,6 +634,7 @@ class Index
                while (--pos >= 0 && Utils.arrayValueCompareTo(leftKeys, currKeys[pos].keys, typesAux, plainDB) == 0);                  
                if ((r = Utils.arrayValueCompareTo(leftKeys, currKeys[++pos].keys, typesAux, plainDB)) <= 0) 
                {
+                  ancestors = table.getNodes(count + 2);
                   ancestors[count++] = curr.idx;
                   ancestors[count++] = pos;
                }
@@ -507,19 +676,16 @@ class Index
    {
       int left, 
           right,
-          ins;
+          ins,
+          medPos;
       Key keyFound,
           keyAux = tempKey;
       Node rootAux = root;
-      int[] ancestors = table.db.driver.nodes; // juliana@224_2: improved memory usage on BlackBerry.
+      int[] ancestors = table.nodes; // juliana@224_2: improved memory usage on BlackBerry.
       
-      // guich@110_3: curr.size * 3/4 - note that medPos never changes, because the node is always split when the same size is reached.
-      // juliana@283_1: solved a bug which would buid corrupted indices when creating or recreating them.
-      int medPos = curr.index.isOrdered? (curr.size - 2) : (curr.size / 2);
-  
       while (true)
       {
-         keyFound = curr.keys[medPos];
+         keyFound = curr.keys[medPos = getSplitPosition(curr)];
          keyAux.set(keyFound.keys);
          keyAux.record = keyFound.record;
 
@@ -545,12 +711,87 @@ class Index
             }
 
             curr.insert(keyAux, left, right, ins);
-            if (curr.size < btreeMaxNodes) // Parent has not overflown?
+            if (!isOverflown(curr)) // Parent has not overflown?
                break;
          }
       }
    }
 
+   /**
+    * Finds the position of the key which goes to the parent when a node is split.
+    * 
+    * @param node The node to be split.
+    * @return The position of the key.
+    */
+   private int getSplitPosition(Node node)
+   {
+      int size = node.size;
+      
+      if (!isCompressed)
+         // guich@110_3: curr.size * 3/4 - note that medPos never changes, because the node is always split when the same size is reached.
+         // juliana@283_1: solved a bug which would buid corrupted indices when creating or recreating them.
+         return isOrdered? (size - 2) : (size / 2);
+      
+      // The keys have different sizes, so the node is split by the bytes used. If the keys are ordered, the left node gets all the keys it can 
+      // while still having space for more insertions.
+      Key[] keys = node.keys;
+      int limit = isOrdered? nodeRecSize - (maxKeySize << 1) : node.getUsedSize() >> 1,
+          used = 4,
+          pos = 0;
+      
+      while (pos < size - 2 && (used += 6 + getKeySize(keys[pos].keys, pos == 0? null : keys[pos - 1].keys)) <= limit)
+         pos++;
+      return pos > 0? pos : 1;
+   }
+   
+   /**
+    * Indicates if a node must be split if a key is inserted in it.
+    * 
+    * @param node The node.
+    * @return <code>true</code> if the node is full; <code>false</code>, otherwise.
+    */
+   private boolean isFull(Node node)
+   {
+      // An insertion in an index which stores its strings may also increase the size of the key after the one inserted.
+      return node.size >= btreeMaxNodes - 1 || (isCompressed && node.getUsedSize() > nodeRecSize - (maxKeySize << 2));
+   }
+   
+   /**
+    * Indicates if a node which received a key must be split.
+    * 
+    * @param node The node.
+    * @return <code>true</code> if the node has overflown; <code>false</code>, otherwise.
+    */
+   private boolean isOverflown(Node node)
+   {
+      return node.size >= btreeMaxNodes || (isCompressed && node.getUsedSize() > nodeRecSize - (maxKeySize << 1));
+   }
+   
+   /**
+    * Gets the number of bytes used by the values of a key in a node of an index which stores its strings.
+    * 
+    * @param key The values of the key.
+    * @param previous The values of the previous key of the node or <code>null</code> if it is the first key of the node.
+    * @return The size of the key, without its record and its child.
+    */
+   int getKeySize(SQLValue[] key, SQLValue[] previous)
+   {
+      byte[] typesAux = types;
+      int[] sizes = colSizes;
+      String string;
+      int charSize = table.db.isAscii? 1 : 2, 
+          i = typesAux.length,
+          size = 0;
+      
+      while (--i >= 0)
+         if (sizes[i] > 0)
+            size += (sizes[i] < 256? 2 : 4) + ((string = key[i].asString) == null? 0 
+                  : (string.length() - (previous == null? 0 : Key.getPrefix(previous[i].asString, string))) * charSize);
+         else
+            size += keyRecSizes[typesAux[i]];
+      return size;
+   }
+
    /**
     * Closes the index files.
     * 
@@ -579,17 +820,18 @@ class Index
       fnodesAux.cacheIsDirty = false;
      
       isEmpty = true;
-      int i = INDEX_CACHE_SIZE;
+      int i = cacheCount;
       while (--i >= 0) // Erases the cache.
-         if (cacheAux[i] != null)
-            cacheAux[i].idx = -1;
+         cacheAux[i].idx = -1;
+      cachePositions.clear();
+      cacheCount = 0;
       
       i = btreeMaxNodes;
       while (--i >= 0) // Erases the first level nodes.
          if (firstLevelAux[i] != null)
             firstLevelAux[i].idx = -1;
       
-      cacheI = nodeCount = 0; // juliana@220_6: The node count should be reseted when recreating the indices.
+      nodeCount = 0; // juliana@220_6: The node count should be reseted when recreating the indices.
    }
 
    /** 
@@ -611,11 +853,8 @@ class Index
             nodes[i].setWriteDelayed(delayed);
       
       // Commits the pending cache nodes.
-      i = INDEX_CACHE_SIZE;
-      nodes = cache;
-      while (--i >= 0)
-         if (nodes[i] != null)
-            nodes[i].setWriteDelayed(delayed);
+      if (isWriteDelayed && !delayed)
+         flushCache();
 
       if (!delayed) // Shrinks the values.
          fnodes.growTo(nodeCount * nodeRecSize);
@@ -657,11 +896,10 @@ class Index
          PlainDB plainDB = table.db;
          int nodeCountAux = nodeCount,
              nodeCounter = nodeCountAux,
-             maxSize = btreeMaxNodes - 1,
              pos,
              size,         
              count = 0;
-         int[] ancestors = plainDB.driver.nodes; // juliana@224_2: improved memory usage on BlackBerry.
+         int[] ancestors = table.nodes; // juliana@224_2: improved memory usage on BlackBerry.
          
          while (true)
          {
@@ -682,7 +920,7 @@ class Index
             {
                // If the node will becomes full, the insert is done again, this time keeping track of the ancestors. Note: with k = 50 and 200000 
                // values, there are about 1.1 million useless pushes without this redundant insert.
-               if (!splitting && curr.size == maxSize)
+               if (!splitting && isFull(curr))
                {
                   splitting = true;
                   curr = rootAux;
@@ -703,6 +941,7 @@ class Index
             {
                if (splitting)
                {
+                  ancestors = table.getNodes(count + 2);
                   ancestors[count++] = pos;
                   ancestors[count++] = curr.idx;
                }
@@ -715,25 +954,246 @@ class Index
       }
    }
 
+   /**
+    * Builds an empty index bottom-up from all its keys, which must be sorted. The keys are distributed evenly among full nodes, level by level, 
+    * which is much faster than adding them one by one and makes the index smaller.
+    *
+    * @param vals The sorted keys. The record of each key must be stored in an empty field of its first value, as done by 
+    * <code>Table.tableReIndex()</code>.
+    * @param rows The number of keys.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   void indexBuild(SQLValue[][] vals, int rows) throws IOException, InvalidDateException
+   {
+      if (rows > 0 && isCompressed)
+         buildCompressed(vals, rows);
+      else if (rows > 0)
+      {
+         int height = 0,
+             capacity;
+         IntVector capacities = new IntVector(4);
+         
+         // Finds how many levels are needed below the root. Each level can hold the keys of its children plus one key per child.
+         capacities.addElement(btreeMaxNodes - 1);
+         while (capacities.items[height] < rows)
+         {
+            capacity = capacities.items[height++];
+            capacities.addElement(capacity >= Convert.MAX_INT_VALUE / btreeMaxNodes? Convert.MAX_INT_VALUE : (capacity + 1) * btreeMaxNodes - 1);
+         }
+         
+         Node[] levels = new Node[height + 1];
+         levels[height] = root;
+         while (--height >= 0)
+            levels[height] = new Node(this);
+         
+         // The root is always the first node.
+         fnodes.growTo(nodeRecSize); 
+         nodeCount = 1;
+         isEmpty = false;
+         buildNode(vals, 0, rows, levels, levels.length - 1, capacities.items);
+      }
+   }
+   
+   /**
+    * Builds a node and the nodes below it with the given range of sorted keys.
+    * 
+    * @param vals The sorted keys.
+    * @param first The first key of the node.
+    * @param count The number of keys of the node and its descendants.
+    * @param levels The nodes used to build each level of the index. The last one is the root.
+    * @param level The level of the node, where 0 is a leaf.
+    * @param capacities The maximum number of keys of a node and its descendants for each level.
+    * @return The index of the node.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   private int buildNode(SQLValue[][] vals, int first, int count, Node[] levels, int level, int[] capacities) throws IOException, InvalidDateException
+   {
+      Node node = levels[level];
+      int[] children = node.children;
+      int size,
+          i = -1;
+      
+      if (level == 0) // A leaf gets all the keys.
+      {
+         while (++i < count)
+            setKey(node.keys[i], vals[first++]);
+         Convert.fill(children, 0, children.length, Node.LEAF);
+         size = count;
+      }
+      else
+      {
+         // Uses as few children as possible. Between two children there is a key of this node.
+         int childCapacity = capacities[level - 1],
+             childCount = count / (childCapacity + 1) + 1,
+             childKeys = count - childCount + 1,
+             childSize = childKeys / childCount,
+             extra = childKeys % childCount,
+             n;
+         
+         size = childCount - 1;
+         while (++i < childCount)
+         {
+            children[i] = buildNode(vals, first, n = i < extra? childSize + 1 : childSize, levels, level - 1, capacities);
+            first += n;
+            if (i < size)
+               setKey(node.keys[i], vals[first++]);
+         }
+         Convert.fill(children, childCount, children.length, Node.LEAF);
+      }
+      
+      node.size = size;
+      if (node == root)
+      {
+         node.idx = 0;
+         node.save(false, 0, size);
+         return 0;
+      }
+      return node.save(true, 0, size);
+   }
+   
+   /**
+    * Builds an empty index which stores its strings bottom-up from all its keys, which must be sorted. Since the keys have different sizes, each 
+    * level is built filling its nodes one by one with as many keys as they can take while leaving space for some insertions. The key after each 
+    * node goes to the level above. 
+    * 
+    * @param vals The sorted keys. The record of each key must be stored in an empty field of its first value.
+    * @param rows The number of keys.
+    * @throws IOException If an internal method throws it.
+    */
+   private void buildCompressed(SQLValue[][] vals, int rows) throws IOException
+   {
+      Node node = new Node(this);
+      Key[] keys = node.keys;
+      int[] levelKeys = new int[rows], // The positions of the keys of the level in vals.
+            levelChildren = null, // The children of the keys of the level or null for the leaves.
+            nextChildren,
+            nodeChildren = node.children;
+      IntVector ends = new IntVector();
+      int[] endsItems;
+      int limit = nodeRecSize - 3 * maxKeySize, // The last key of a level can still be put in its last node.
+          maxSize = btreeMaxNodes - 2,
+          count = rows,
+          start,
+          used,
+          size,
+          nodes,
+          i = rows,
+          j;
+      
+      while (--i >= 0)
+         levelKeys[i] = i;
+      
+      // The root is always the first node.
+      fnodes.growTo(nodeRecSize); 
+      nodeCount = 1;
+      isEmpty = false;
+      
+      while (true)
+      {
+         // Finds where each node of the level ends.
+         ends.removeAllElements();
+         start = i = 0;
+         used = 4;
+         while (i < count)
+            if ((used += 6 + getKeySize(vals[levelKeys[i]], i == start? null : vals[levelKeys[i - 1]])) > limit || i - start == maxSize)
+            {
+               if (i == count - 1) // The last key stays in the node.
+                  i++;
+               else
+               {
+                  ends.addElement(i); // The key after the node goes to the level above.
+                  start = ++i;
+                  used = 4;
+               }
+            }
+            else
+               i++;
+         ends.addElement(count);
+         
+         // Saves the nodes. If there is only one node, it is the root.
+         nodes = ends.size();
+         endsItems = ends.items;
+         nextChildren = new int[nodes];
+         start = i = 0;
+         while (i < nodes)
+         {
+            if (nodes == 1)
+            {
+               node = root;
+               keys = node.keys;
+               nodeChildren = node.children;
+            }
+            
+            j = size = endsItems[i] - start;
+            while (--j >= 0)
+               setKey(keys[j], vals[levelKeys[start + j]]);
+            if (levelChildren == null)
+               Convert.fill(nodeChildren, 0, nodeChildren.length, Node.LEAF);
+            else
+            {
+               Vm.arrayCopy(levelChildren, start, nodeChildren, 0, size + 1);
+               Convert.fill(nodeChildren, size + 1, nodeChildren.length, Node.LEAF);
+            }
+            node.size = size;
+            
+            if (nodes == 1)
+            {
+               node.idx = 0;
+               node.save(false, 0, size);
+               return;
+            }
+            
+            // The next level has the keys between the nodes and the nodes as their children.
+            nextChildren[i] = node.save(true, 0, size);
+            if (i < nodes - 1)
+               levelKeys[i] = levelKeys[endsItems[i]];
+            start = endsItems[i++] + 1;
+         }
+         levelChildren = nextChildren;
+         count = nodes - 1;
+      }
+   }
+   
+   /**
+    * Sets a key with a value used to build the index, whose record is stored in an empty field of its first value.
+    * 
+    * @param key The key to be set.
+    * @param vals The value of the key.
+    */
+   private void setKey(Key key, SQLValue[] vals)
+   {
+      key.set(vals);
+      
+      // juliana@212_2: DATETIME indices would be recreated incorrectly on desktop and BlackBerry.
+      key.record = (types[0] == SQLElement.LONG)? vals[0].asInt : (int)vals[0].asLong; 
+   }
+   
    // juliana@230_21: MAX() and MIN() now use indices on simple queries.   
    /**
     * Finds the minimum value of an index in a range.
     *
     * @param sqlValue The minimum value inside the given range to be returned.
     * @param bitMap The table bitmap which indicates which rows will be in the result set.
+    * @param column The table column of the first index column.
     * @throws InvalidDateException If an internal method throws it.
     * @throws IOException If an internal method throws it. 
     */
-   void findMinValue(SQLValue sqlValue, IntVector bitMap) throws IOException, InvalidDateException
+   void findMinValue(SQLValue sqlValue, IntVector bitMap, int column) throws IOException, InvalidDateException
    {
+      if (isEmpty) // Only null values or no rows: there is no key to search.
+         return;
+      
       Node curr;
       Key[] currKeys;
       Key currKey;      
       int size,
           i,
           nodeCounter = nodeCount + 1,
-          count = 1;
-      int[] vector = table.db.driver.nodes;
+          count = 1,
+          record = Key.NO_VALUE;
+      int[] vector = table.getNodes(nodeCounter); // Each node is pushed at most once.
       int[] children;
       
       // juliana@224_2: improved memory usage on BlackBerry.
@@ -756,6 +1216,7 @@ class Index
             if ((currKey = currKeys[i]).record != Key.NO_VALUE && (bitMap == null || bitMap.isBitSet(currKey.record)))
             {                  
                currKey.keys[0].cloneSQLValue(sqlValue);
+               record = currKey.record;
                count = 0; // juliana@284_3: solved a possible wrong result in MAX() and MIN() if the column searched had an index.
                break;                  
             }
@@ -770,7 +1231,7 @@ class Index
       if (sqlValue.isNull) // No record found.
          return;
       
-      loadString(sqlValue);
+      loadString(sqlValue, record, column);
    }
    
    /**
@@ -778,19 +1239,24 @@ class Index
     *
     * @param bitMap The table bitmap which indicates which rows will be in the result set.
     * @param sqlValue The maximum value inside the given range to be returned.
+    * @param column The table column of the first index column.
     * @throws InvalidDateException If an internal method throws it.
     * @throws IOException If an internal method throws it.  
     */
-   void findMaxValue(SQLValue sqlValue, IntVector bitMap) throws IOException, InvalidDateException
+   void findMaxValue(SQLValue sqlValue, IntVector bitMap, int column) throws IOException, InvalidDateException
    {
+      if (isEmpty) // Only null values or no rows: there is no key to search.
+         return;
+      
       Node curr;
       Key[] currKeys;
       Key currKey;      
       int size,
           i,
           count = 1,
-          nodeCounter = nodeCount + 1;
-      int[] vector = table.db.driver.nodes;
+          nodeCounter = nodeCount + 1,
+          record = Key.NO_VALUE;
+      int[] vector = table.getNodes(nodeCounter); // Each node is pushed at most once.
       int[] children;
       
       // juliana@224_2: improved memory usage on BlackBerry.
@@ -812,6 +1278,7 @@ class Index
             if ((currKey = currKeys[i]).record != Key.NO_VALUE && (bitMap == null || bitMap.isBitSet(currKey.record)))
             {                  
                currKey.keys[0].cloneSQLValue(sqlValue);
+               record = currKey.record;
                count = 0; // juliana@284_3: solved a possible wrong result in MAX() and MIN() if the column searched had an index.
                break;                  
             }
@@ -824,20 +1291,30 @@ class Index
       
       if (sqlValue.isNull) // No record found.
          return;
-      loadString(sqlValue);
+      loadString(sqlValue, record, column);
    }
    
    /**
     * Loads a string from the table if needed.
     * 
     * @param sqlValue The record structure which will hold (holds) the string.
+    * @param record The record of the key found.
+    * @param column The table column of the first index column.
     * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
     */
-   private void loadString(SQLValue sqlValue) throws IOException
+   private void loadString(SQLValue sqlValue, int record, int column) throws IOException, InvalidDateException
    {
       // If the type is string and the value is not loaded, loads it.
       if (types[0] == SQLElement.CHARS || types[0] == SQLElement.CHARS_NOCASE) 
       {
+         if (isCompressed) // The key does not have the string position in the .dbo, which is needed by the temporary table.
+         {
+            Table tableAux = table;
+            tableAux.db.read(record);
+            tableAux.readValue(sqlValue, tableAux.columnOffsets[column], types[0], false, false);
+            return;
+         }
          sqlValue.asLong = Utils.subStringHashCode(table.name, 5);
          if (sqlValue.asString == null)
             sqlValue.asString = table.db.loadString();
@@ -864,28 +1341,32 @@ class Index
          if ((node = firstLevel[idx - 1]) == null)
          {
             (node = firstLevel[idx - 1] = new Node(this)).idx = idx;
+            cacheMisses++;
             node.load();
          }
          else if (node.idx == -1)
          {
             node.idx = idx;
+            cacheMisses++;
             node.load();
          }
+         else
+            cacheHits++;
             
          return node;
       }
       
       // Tries to get an already loaded node if it is a node from a deeper level.
-      Node[] cacheAux = cache;
-      
-      int i = -1;
-      while (++i < INDEX_CACHE_SIZE && cacheAux[i] != null) 
-         if (cacheAux[i].idx == idx)
-            return cacheAux[cacheI = i];   
+      if ((node = getCachedNode(idx)) != null)
+         return node;
       
-      if (i < INDEX_CACHE_SIZE) // Loads the node if there is enough space in the node cache.
+      int i = cacheCount;
+      if (i < cache.length) // Loads the node if there is enough space in the node cache.
       {
-         (node = cacheAux[cacheI = i] = new Node(this)).idx = idx;
+         (node = cache[cacheCount++] = new Node(this)).idx = idx;
+         cachePositions.put(idx, i);
+         node.lastUse = ++cacheClock;
+         cacheMisses++;
          node.load();
          return node;
       }
@@ -917,7 +1398,7 @@ class Index
           count = 1;
           Node curr;
       int[] valRecs = new int[nodeCounter];
-      int[] nodes = table.db.driver.nodes;
+      int[] nodes = table.getNodes(nodeCounter);
       Key[] keys;
       int[] children;
       
@@ -984,7 +1465,7 @@ class Index
           count = 1;
       Node curr;
       int[] valRecs = new int[nodeCounter];
-      int[] nodes = table.db.driver.nodes;
+      int[] nodes = table.getNodes(nodeCounter);
       Key[] keys;
       int[] children;
 
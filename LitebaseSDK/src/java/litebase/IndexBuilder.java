@@ -0,0 +1,201 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package litebase;
+
+import totalcross.io.*;
+import totalcross.sys.*;
+import totalcross.util.*;
+
+/**
+ * Builds an index from scratch. The keys of the rows are collected while the table is read, which can be done for several indices at once, and
+ * then they are sorted and used to build the index bottom-up. Each index has its own file and buffers, so the indices of a table can be sorted
+ * and built at the same time, each one by its own thread.
+ */
+class IndexBuilder implements Runnable
+{
+   /**
+    * The table of the index.
+    */
+   private Table table;
+
+   /**
+    * The index being built.
+    */
+   Index index;
+
+   /**
+    * The column of a simple index.
+    */
+   private int column;
+
+   /**
+    * The columns of a composed index or <code>null</code> for a simple index.
+    */
+   private byte[] columns;
+
+   /**
+    * Indicates that the index is of a primary key, which can't have nulls or repeated keys.
+    */
+   private boolean isPrimaryKey;
+
+   /**
+    * The keys collected.
+    */
+   private SQLValue[][] vals;
+
+   /**
+    * The number of keys collected.
+    */
+   private int count;
+
+   /**
+    * The exception thrown when the index was built by another thread or <code>null</code> if there was none.
+    */
+   Throwable exception;
+
+   /**
+    * Creates a builder for an index.
+    *
+    * @param table The table of the index.
+    * @param column The table column number of a simple index.
+    * @param composedIndex The composed index to be built or <code>null</code> in case of a simple index.
+    * @param isPrimaryKey Indicates that the index is of a primary key.
+    */
+   IndexBuilder(Table table, int column, ComposedIndex composedIndex, boolean isPrimaryKey)
+   {
+      this.table = table;
+      this.column = column;
+      this.isPrimaryKey = isPrimaryKey;
+      if (composedIndex == null)
+         index = table.columnIndices[column];
+      else
+      {
+         index = composedIndex.index;
+         columns = composedIndex.columns;
+      }
+      vals = new SQLValue[table.db.rowCount][]; // juliana@284_1: Solved a possible application crash when recreating indices.
+   }
+
+   /**
+    * Collects the key of the current row of the table. The row and its null values must have already been read.
+    *
+    * @param row The row.
+    * @throws DriverException If the index is of a primary key and the key has a null.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   void addRow(int row) throws DriverException, IOException, InvalidDateException
+   {
+      Table tableAux = table;
+      Index indexAux = index;
+      byte[] types = indexAux.types;
+      byte[] nulls = tableAux.columnNulls[0];
+      byte[] columnsAux = columns;
+      short[] offsets = tableAux.columnOffsets;
+      int numberColumns = types.length,
+          k = count,
+          col = column,
+          j;
+      SQLValue[] key = vals[k] = SQLValue.newSQLValues(numberColumns);
+      boolean isNull = false;
+
+      if (columnsAux == null)
+      {
+         // juliana@230_14
+         // juliana@220_3
+         // juliana@202_12: Corrected null values dealing when building an index.
+         tableAux.readValue(key[0], offsets[col], types[0], isNull = (nulls[col >> 3] & (1 << (col & 7))) != 0, false);
+
+         // The primary key can't be null.
+         // juliana@202_10: Corrected a bug that would cause a DriverException if there was a null in an index field when creating it after
+         // the table is populated.
+         if (isPrimaryKey && isNull)
+            throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_PK_CANT_BE_NULL));
+      }
+      else
+      {
+         j = numberColumns;
+         while (--j >= 0)
+         {
+            // juliana@230_14
+            // juliana@220_3
+            // juliana@202_12: Corrected null values dealing when building an index.
+            tableAux.readValue(key[j], offsets[col = columnsAux[j]], types[j], isNull |= (nulls[col >> 3] & (1 << (col & 7))) != 0, false);
+
+            // The primary key can't have a null.
+            // juliana@202_10: Corrected a bug that would cause a DriverException if there was a null in an index field when creating it after
+            // the table is populated.
+            if (isPrimaryKey && isNull)
+               throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_PK_CANT_BE_NULL));
+         }
+      }
+
+      if (!isNull) // Do not store null records. juliana@212_2: DATETIME indices would be recreated incorrectly on desktop and BlackBerry.
+      {
+         // After an incremental purge, the rows may not be in the rowid order. In this case, the keys must be sorted.
+         if (indexAux.isOrdered && k > 0 && key[0].asInt < vals[k - 1][0].asInt)
+            indexAux.isOrdered = false;
+
+         if (types[0] == SQLElement.LONG) // The record value is stored in an empty field of the first record column value.
+            key[0].asInt = row;
+         else
+            key[0].asLong = row;
+         count++;
+      }
+   }
+
+   /**
+    * Sorts the keys collected and builds the index with them.
+    *
+    * @throws PrimaryKeyViolationException If the index is of a primary key and there are repeated keys.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   void build() throws PrimaryKeyViolationException, IOException, InvalidDateException
+   {
+      Index indexAux = index;
+      SQLValue[][] valsAux = vals;
+      byte[] types = indexAux.types;
+      int rows = count, // juliana@270_22: solved a possible crash when the table is corrupted on Android and possibly on other platforms.
+          i = 0,
+          compare;
+
+      if (!indexAux.isOrdered)
+      {
+         // A radix sort is done for integer types. It is much more efficient than quick sort.
+         if (types.length == 1
+          && (types[0] == SQLElement.SHORT || types[0] == SQLElement.INT || types[0] == SQLElement.LONG || types[0] == SQLElement.DATE))
+            Table.radixSort(valsAux, types[0], new SQLValue[rows][]);
+         else
+            Table.sortRecords(valsAux, types, 0, rows - 1);
+         indexAux.isOrdered = true; // The index elements will be inserted in the right order.
+      }
+
+      if (isPrimaryKey) // If it is the primary key, checks first if there is violation.
+         while (++i < rows)
+            if ((compare = Table.compareRecords(valsAux[i], valsAux[i - 1], types)) == 0
+             || compare == Convert.MAX_INT_VALUE || compare == Convert.MIN_INT_VALUE)
+               throw new PrimaryKeyViolationException(LitebaseMessage.getMessage(LitebaseMessage.ERR_STATEMENT_CREATE_DUPLICATED_PK) + table.name);
+
+      indexAux.indexBuild(valsAux, rows); // The sorted keys are used to build the index bottom-up.
+      vals = null;
+   }
+
+   /**
+    * Builds the index in another thread. An exception thrown is kept to be thrown again by the thread that waits for this one.
+    */
+   public void run()
+   {
+      try
+      {
+         build();
+      }
+      catch (Throwable exception)
+      {
+         this.exception = exception;
+      }
+   }
+}
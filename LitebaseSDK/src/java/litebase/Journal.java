@@ -0,0 +1,308 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package litebase;
+
+import totalcross.io.*;
+import totalcross.sys.*;
+import totalcross.util.*;
+
+/**
+ * The journal of a transaction of a connection. Before a block of a table or index file is written for the first time during the transaction, its
+ * original bytes are saved in the journal, which is flushed to the disk before the block is written. When the transaction is committed, the files
+ * are flushed and the journal is deleted. If the application stops before that, the journal is found when the database is opened again and the
+ * saved blocks are written back, so that the files return to the state they had when the transaction began.
+ * <p>
+ * The journal is written in batches, each one with its size and a CRC32 code. A batch that was not completely written when the application stopped
+ * is ignored, which is safe because no file block was written before its batch was flushed.
+ */
+class Journal
+{
+   /**
+    * The extension of the journal file.
+    */
+   static final String EXT = ".jnl";
+
+   /**
+    * The number of bits of the size of a block saved in the journal.
+    */
+   private static final int BLOCK_SHIFT = 10;
+
+   /**
+    * The record that starts the blocks of a file, with its name and its original size.
+    */
+   private static final byte FILE_RECORD = 1;
+
+   /**
+    * The record with the original bytes of a block of a file.
+    */
+   private static final byte BLOCK_RECORD = 2;
+
+   /**
+    * The full name of the journal file.
+    */
+   String fileName;
+
+   /**
+    * The journal file.
+    */
+   private File file;
+
+   /**
+    * The records not flushed yet. The first four bytes are reserved for the size of the batch.
+    */
+   private ByteArrayStream bas = new ByteArrayStream(4096);
+
+   /**
+    * The stream used to write the records.
+    */
+   private DataStream ds = new DataStream(bas);
+
+   /**
+    * A buffer used to read the blocks.
+    */
+   private byte[] block = new byte[1 << BLOCK_SHIFT];
+
+   /**
+    * The folder of the journal, where the tables are stored. The names of the files are saved without it, so that the database can be moved.
+    */
+   private String folder;
+   
+   /**
+    * The names of the files changed during the transaction. The position of a file is its identifier in the journal.
+    */
+   private Vector paths = new Vector(16);
+
+   /**
+    * The sizes of the files when they were changed for the first time.
+    */
+   private IntVector sizes = new IntVector(16);
+
+   /**
+    * The blocks of each file which were already saved.
+    */
+   private Vector savedBlocks = new Vector(16);
+
+   /**
+    * Creates the journal file of a new transaction.
+    *
+    * @param fileName The full name of the journal file.
+    * @throws IOException If an internal method throws it.
+    */
+   Journal(String fileName) throws IOException
+   {
+      file = new File(this.fileName = fileName, File.CREATE_EMPTY);
+      folder = getFolder(fileName);
+      ds.writeInt(0); // The size of the first batch.
+   }
+
+   /**
+    * Saves the original bytes of the blocks of a file which will be changed, if they were not saved yet. Only the blocks inside the size of the file
+    * when it was first changed need to be saved. The records are only written to the disk by <code>sync()</code>.
+    *
+    * @param normalFile The file to be changed.
+    * @param start The first position to be changed.
+    * @param count The number of bytes to be changed.
+    * @throws IOException If an internal method throws it.
+    */
+   void save(NormalFile normalFile, int start, int count) throws IOException
+   {
+      File f = normalFile.f;
+      String path = f.getPath();
+      IntHashtable saved;
+      int id = paths.indexOf(path),
+          size,
+          end,
+          pos,
+          length,
+          read,
+          n;
+
+      if (id == -1) // The first change of the file.
+      {
+         paths.addElement(path);
+         if (path.startsWith(folder))
+            path = path.substring(folder.length());
+         sizes.addElement(size = f.getSize());
+         savedBlocks.addElement(saved = new IntHashtable(64));
+         id = paths.size() - 1;
+         ds.writeByte(FILE_RECORD);
+         ds.writeString(path);
+         ds.writeInt(size);
+      }
+      else
+      {
+         size = sizes.items[id];
+         saved = (IntHashtable)savedBlocks.items[id];
+      }
+
+      end = Math.min(start + count, size);
+      pos = start & ~((1 << BLOCK_SHIFT) - 1);
+      while (pos < end)
+      {
+         if (!saved.exists(pos))
+         {
+            saved.put(pos, 0);
+
+            // Reads the original bytes, which are still in the disk.
+            length = Math.min(1 << BLOCK_SHIFT, size - pos);
+            f.setPos(pos);
+            read = 0;
+            while (read < length)
+            {
+               if ((n = f.readBytes(block, read, length - read)) <= 0)
+                  throw new IOException(LitebaseMessage.getMessage(LitebaseMessage.ERR_CANT_READ));
+               read += n;
+            }
+
+            ds.writeByte(BLOCK_RECORD);
+            ds.writeInt(id);
+            ds.writeInt(pos);
+            ds.writeInt(length);
+            ds.writeBytes(block, 0, length);
+         }
+         pos += 1 << BLOCK_SHIFT;
+      }
+   }
+
+   /**
+    * Writes the records saved since the last call as a batch and flushes the journal, so that the file blocks can be written.
+    *
+    * @throws IOException If an internal method throws it.
+    */
+   void sync() throws IOException
+   {
+      int length = bas.getPos() - 4;
+
+      if (length > 0)
+      {
+         byte[] buffer = bas.getBuffer();
+
+         buffer[0] = (byte)(length >> 24);
+         buffer[1] = (byte)(length >> 16);
+         buffer[2] = (byte)(length >> 8);
+         buffer[3] = (byte)length;
+         ds.writeInt(Table.updateCRC32(buffer, length + 4, 0, false));
+         file.writeBytes(bas.getBuffer(), 0, bas.getPos());
+         file.flush();
+
+         bas.reset();
+         ds.writeInt(0); // The size of the next batch.
+      }
+   }
+
+   /**
+    * Deletes the journal after the transaction was committed.
+    *
+    * @throws IOException If an internal method throws it.
+    */
+   void remove() throws IOException
+   {
+      file.delete();
+   }
+
+   /**
+    * Writes back the blocks saved by a transaction which was not committed and deletes its journal. Nothing is done if there is no journal.
+    *
+    * @param fileName The full name of the journal file.
+    * @return <code>true</code> if a transaction was undone; <code>false</code>, otherwise.
+    * @throws IOException If an internal method throws it.
+    */
+   static boolean rollback(String fileName) throws IOException
+   {
+      File journal = new File(fileName, File.DONT_OPEN);
+
+      if (!journal.exists())
+         return false;
+
+      File f = new File(fileName, File.READ_ONLY);
+      byte[] buffer,
+             batch,
+             bytes;
+      Vector files = new Vector(16);
+      IntVector sizes = new IntVector(16);
+      DataStream ds,
+                 batchDs;
+      ByteArrayStream batchBas;
+      String path;
+      int start = 0,
+          length,
+          i,
+          n;
+
+      try // Reads the whole journal.
+      {
+         buffer = new byte[length = f.getSize()];
+         i = 0;
+         while (i < length && (n = f.readBytes(buffer, i, length - i)) > 0)
+            i += n;
+      }
+      finally
+      {
+         f.close();
+      }
+      ds = new DataStream(new ByteArrayStream(buffer));
+      
+      try
+      {
+         // Reads the batches while they are complete.
+         while (start + 8 <= buffer.length && (length = ds.readInt()) > 0 && start + length + 8 <= buffer.length)
+         {
+            Vm.arrayCopy(buffer, start, batch = new byte[length + 4], 0, length + 4);
+            ds.skipBytes(length);
+            if (Table.updateCRC32(batch, length + 4, 0, false) != ds.readInt())
+               break;
+
+            (batchBas = new ByteArrayStream(batch)).skipBytes(4);
+            batchDs = new DataStream(batchBas);
+            while (batchBas.available() > 0)
+               if (batchDs.readByte() == FILE_RECORD)
+               {
+                  // A file that does not exist anymore can't be restored.
+                  path = getFolder(fileName).concat(batchDs.readString());
+                  files.addElement(new File(path, File.DONT_OPEN).exists()? new File(path, File.READ_WRITE) : null);
+                  sizes.addElement(batchDs.readInt());
+               }
+               else
+               {
+                  f = (File)files.items[batchDs.readInt()];
+                  i = batchDs.readInt();
+                  batchDs.readBytes(bytes = new byte[length = batchDs.readInt()], 0, length);
+                  if (f != null)
+                  {
+                     f.setPos(i);
+                     f.writeBytes(bytes, 0, length);
+                  }
+               }
+            start = batchBas.getPos() + start + 4;
+         }
+      }
+      finally
+      {
+         i = files.size();
+         while (--i >= 0) // Restores the original sizes.
+            if ((f = (File)files.items[i]) != null)
+            {
+               f.setSize(sizes.items[i]);
+               f.flush();
+               f.close();
+            }
+      }
+
+      journal.delete();
+      return true;
+   }
+   
+   /**
+    * Gets the folder of a file.
+    * 
+    * @param fileName The full name of the file.
+    * @return The folder, ending with a separator, or an empty string if the name has no folder.
+    */
+   private static String getFolder(String fileName)
+   {
+      return fileName.substring(0, Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+   }
+}
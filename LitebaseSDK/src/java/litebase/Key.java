@@ -163,4 +163,150 @@ class Key
       }
       ds.writeInt(record); // Writes the number that represents the record.
    }
+   
+   /**
+    * Loads a key of an index which stores its strings. Each string only has the characters which are not in the same string of the previous key 
+    * of the node. The record is not loaded.
+    *
+    * @param ds The data stream where the key is read.
+    * @param previous The previous key of the node, already loaded, or <code>null</code> if this is the first key of the node.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   void loadCompressed(DataStreamLB ds, Key previous) throws IOException, InvalidDateException
+   {
+      Index indexAux = index;
+      byte[] types = indexAux.types;
+      int[] colSizes = indexAux.colSizes;
+      PlainDB db = indexAux.table.db;
+      char[] chars;
+      byte[] bytes;
+      String string;
+      SQLValue key;
+      int n = types.length,
+          i = -1,
+          j,
+          prefix,
+          length;
+      
+      while (++i < n)
+      {
+         key = keys[i];
+         
+         if (colSizes[i] > 0)
+         {
+            if (colSizes[i] < 256)
+            {
+               prefix = ds.readUnsignedByte();
+               length = prefix + ds.readUnsignedByte();
+            }
+            else
+            {
+               prefix = ds.readUnsignedShort();
+               length = prefix + ds.readUnsignedShort();
+            }
+            
+            if ((chars = indexAux.chars).length < length)
+               chars = indexAux.chars = new char[length];
+            if (prefix > 0)
+               previous.keys[i].asString.getChars(0, prefix, chars, 0);
+            
+            if (db.isAscii) // The characters are stored as bytes, as in the .dbo.
+            {
+               if ((bytes = indexAux.bytes).length < length)
+                  bytes = indexAux.bytes = new byte[length];
+               ds.readBytes(bytes, 0, length - prefix);
+               string = new String(bytes, 0, length - prefix); // Decodes the bytes as PlainDB.loadString() does.
+               string.getChars(0, j = string.length(), chars, prefix);
+               length = prefix + j;
+            }
+            else
+            {
+               j = prefix - 1;
+               while (++j < length)
+                  chars[j] = ds.readChar();
+            }
+            key.asString = new String(chars, 0, length);
+         }
+         else
+            // Must pass true to isTemporary so that the method does not think that the number is a rowid.
+            // If the value read is null, some bytes must be skipped in the stream.
+            // Note: since we're writing only primitive types, we can use any PlainDB available.
+            ds.skipBytes(colSizes[i] - db.readValue(key, 0, types[i], ds, true, false, false)); 
+      }
+   }
+   
+   /**
+    * Saves a key of an index which stores its strings. Each string is saved without the characters which are in the same string of the previous 
+    * key of the node. The record is not saved.
+    *
+    * @param ds The data stream where the key is written.
+    * @param previous The previous key of the node or <code>null</code> if this is the first key of the node.
+    * @throws IOException If an internal method throws it.
+    */
+   void saveCompressed(DataStreamLB ds, Key previous) throws IOException
+   {
+      Index indexAux = index;
+      byte[] types = indexAux.types;
+      int[] colSizes = indexAux.colSizes;
+      SQLValue[] keysAux = keys;
+      boolean isAscii = indexAux.table.db.isAscii;
+      String string;
+      int n = types.length,
+          i = -1,
+          j,
+          prefix,
+          length;
+      
+      while (++i < n)
+      {
+         if (colSizes[i] > 0)
+         {
+            length = (string = keysAux[i].asString) == null? 0 : string.length();
+            j = prefix = previous == null? 0 : getPrefix(previous.keys[i].asString, string);
+            
+            if (colSizes[i] < 256)
+            {
+               ds.writeByte(prefix);
+               ds.writeByte(length - prefix);
+            }
+            else
+            {
+               ds.writeShort(prefix);
+               ds.writeShort(length - prefix);
+            }
+            
+            j--;
+            if (isAscii) // The characters are stored as bytes, as in the .dbo.
+               while (++j < length)
+                  ds.writeByte(string.charAt(j));
+            else
+               while (++j < length)
+                  ds.writeChar(string.charAt(j));
+         }
+         else 
+            // If the key is not a string, stores its value in the index file.
+            // Note: since primitive types are being written, it is possible to use any PlainDB available.
+            indexAux.table.db.writeValue(types[i], keysAux[i], ds, true, true, 0, 0, false); 
+      }
+   }
+   
+   /**
+    * Gets the number of characters in the beginning of two strings which are the same.
+    *
+    * @param string1 The first string or <code>null</code>.
+    * @param string2 The second string or <code>null</code>.
+    * @return The size of the common prefix of the strings.
+    */
+   static int getPrefix(String string1, String string2)
+   {
+      if (string1 == null || string2 == null)
+         return 0;
+      
+      int n = Math.min(string1.length(), string2.length()),
+          i = -1;
+      
+      while (++i < n && string1.charAt(i) == string2.charAt(i));
+      return i;
+   }
 }
@@ -114,47 +114,57 @@ public class LitebaseConnection
    static Time tempTime = new Time();
    
    /**
-    * An auxiliary value.
+    * A temporary buffer for the strings logged, which must only be used while the logger is locked.
     */
-   SQLValue sqlv = new SQLValue();
- 
-   // juliana@253_6: the maximum number of keys of a index was duplicated. 
+   StringBuffer sBuffer = new StringBuffer();
+   
+   // juliana@253_5: removed .idr files from all indices and changed its format.
+   // juliana@230_13: removed some possible strange behaviours when using threads.
    /**
-    * An array used for nodes indices.
+    * A byte for saving table meta data.
     */
-   int[] nodes = new int[Node.MAX_IDX];
+   byte[] oneByte = new byte[1]; // juliana@226_4
    
    /**
-    * A temporary buffer for strings.
+    * The lexical analizer.
     */
-   StringBuffer sBuffer = new StringBuffer();
+   LitebaseLex lexer = new LitebaseLex();
    
    /**
-    * An auxiliary single value for index manipulation.
+    * The maximum number of nodes kept in the cache of each index of the tables of this connection.
     */
-   SQLValue[] oneValue = new SQLValue[1];
+   int indexCacheSize = Index.DEFAULT_CACHE_SIZE;
    
-   // juliana@253_5: removed .idr files from all indices and changed its format.
-   // juliana@230_13: removed some possible strange behaviours when using threads.
    /**
-    * A byte for saving table meta data.
+    * Indicates if the tables created or converted by this connection store the strings of their indices in the index nodes.
     */
-   byte[] oneByte = new byte[1]; // juliana@226_4
+   boolean compressStringIndices;
    
    /**
-    * A buffer used for reading ascii strings in <code>PlainDB.readValue()</code>.
+    * The table being bulk loaded or <code>null</code> if there is no bulk load.
     */
-   byte[] buffer = new byte[1];
+   Table bulkLoadTable;
    
    /**
-    * A buffer used for reading unicode strings in <code>PlainDB.readValue()</code>.
+    * The schema version of the tables of this connection. It is incremented by any DDL, which invalidates the statements in the statement cache.
     */
-   char[] valueAsChars = new char[1];
+   int schemaVersion;
    
    /**
-    * The lexical analizer.
+    * The cache of the statements executed by <code>executeQuery()</code> and <code>executeUpdate()</code>.
     */
-   LitebaseLex lexer = new LitebaseLex();
+   StatementCache statementCache = new StatementCache();
+   
+   /**
+    * The lock of the catalog of this connection, which is formed by the tables and their structures. The operations that create, alter, drop, or 
+    * close tables or indices lock it in exclusive mode. Any other operation locks it in shared mode and then locks the tables it uses.
+    */
+   TableLock catalogLock = new TableLock();
+   
+   /**
+    * The journal of the transaction in progress or <code>null</code> if there is no transaction.
+    */
+   Journal journal;
    
    static
    {
@@ -275,9 +285,15 @@ public class LitebaseConnection
                conn.sourcePath = path + '/';
 
             conn.appCrid = appCrid;
+            
+            // Undoes a transaction that was not committed when the application stopped, unless it belongs to a connection still open.
+            String journalName = Utils.getFullFileName(appCrid, conn.sourcePath) + Journal.EXT;
+            if (!isJournalInUse(journalName))
+               Journal.rollback(journalName);
+            
             conn.htTables = new Hashtable(10);
             conn.key = key;
-            conn.lexer.nameToken = conn.sBuffer;
+            conn.lexer.nameToken = new StringBuffer();
             
             synchronized(htDrivers) // juliana@230_13: removed some possible strange behaviours when using threads.
             {
@@ -338,8 +354,11 @@ public class LitebaseConnection
             logger.log(Logger.INFO, sql, false);
          }
 
+      catalogLock.lockExclusive(); // Tables and indices can only be created when no other thread is using the tables.
       try
       {
+         verifyNoTransaction();
+         
          int i;
          LitebaseParser parser = new LitebaseParser();
          parser.tableList = new SQLResultSetTable[1];
@@ -357,6 +376,7 @@ public class LitebaseConnection
                         
          // juliana@224_2: improved memory usage on BlackBerry.
          LitebaseParser.parser(sql, parser, lexer); // Does de parsing.
+         schemaVersion++; // The cached statements must be bound again.
         
          if (parser.command == SQLElement.CMD_CREATE_TABLE) // CREATE TABLE
          {
@@ -514,7 +534,14 @@ public class LitebaseConnection
                else
                   throw new SQLParseException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DUPLICATED_COLUMN_NAME));
             
-            driverCreateIndex(tableName, indexNames, null, false);
+            if (parser.isTrigramIndex)
+            {
+               if (indexNames.length != 1) // A trigram index can't be composed.
+                  throw new SQLParseException(LitebaseMessage.getMessage(LitebaseMessage.ERR_TRIGRAM_INDEX_TYPE));
+               driverCreateTrigramIndex(tableName, indexNames[0]);
+            }
+            else
+               driverCreateIndex(tableName, indexNames, null, false);
          }
       }
       catch (IOException exception)
@@ -529,6 +556,10 @@ public class LitebaseConnection
       {
          throw new SQLParseException(exception);
       }
+      finally
+      {
+         catalogLock.unlockExclusive();
+      }
    }
 
    // juliana@230_27: if a public method in now called when its object is already closed, now an IllegalStateException will be thrown instead of a 
@@ -563,6 +594,10 @@ public class LitebaseConnection
             logger.log(Logger.INFO, sql, false);
          }
 
+      Table table = null;
+      boolean isLocked = false,
+              changesCatalog = false;
+      
       try
       {
          LitebaseParser parser = new LitebaseParser();
@@ -570,6 +605,32 @@ public class LitebaseConnection
          // juliana@202_5: removed possible NPE if there is a blank in the beginning of the sql command.
          String tempSQL = sql.toLowerCase().trim();
          
+         // Updates and deletes without parameters are kept in the statement cache.
+         if (statementCache.maxSize > 0 && (tempSQL.startsWith("update") || tempSQL.startsWith("delete")))
+         {
+            PreparedStatement ps;
+            
+            // The cache is shared by all the threads using the connection. The catalog is always locked before the cache.
+            catalogLock.lockShared();
+            try
+            {
+               synchronized (statementCache)
+               {
+                  if ((ps = statementCache.get(sql, schemaVersion)) == null && sql.indexOf('?') == -1)
+                  {
+                     (ps = new PreparedStatement()).prepare(this, sql);
+                     statementCache.put(ps);
+                  }
+               }
+            }
+            finally
+            {
+               catalogLock.unlockShared();
+            }
+            if (ps != null && ps.type != SQLElement.CMD_SELECT)
+               return ps.doUpdate();
+         }
+         
          parser.tableList = new SQLResultSetTable[1];
          if (tempSQL.startsWith("insert") || tempSQL.startsWith("update"))
          {   
@@ -590,12 +651,26 @@ public class LitebaseConnection
          // juliana@224_2: improved memory usage on BlackBerry.
          LitebaseParser.parser(sql, parser, lexer); // Does the parsing.
          
-         switch (parser.command)
+         // Inserts, updates, and deletes only lock their table. The other commands change the catalog.
+         int command = parser.command;
+         if (changesCatalog = command != SQLElement.CMD_INSERT && command != SQLElement.CMD_DELETE && command != SQLElement.CMD_UPDATE)
+            catalogLock.lockExclusive();
+         else
+            catalogLock.lockShared();
+         isLocked = true;
+         if (!changesCatalog)
+            table = lockTable(parser.tableList[0].tableName, true);
+         else
+            verifyNoTransaction();
+         
+         switch (command)
          {
             case SQLElement.CMD_DROP_TABLE: // DROP TABLE
+               schemaVersion++; // The cached statements must be bound again.
                litebaseExecuteDropTable(parser);
                return 0;
             case SQLElement.CMD_DROP_INDEX: // DROP INDEX
+               schemaVersion++;
                return litebaseExecuteDropIndex(parser);
             case SQLElement.CMD_INSERT: // INSERT
                new SQLInsertStatement(parser, this).litebaseBindInsertStatement().litebaseDoInsert(this);
@@ -609,6 +684,7 @@ public class LitebaseConnection
             case SQLElement.CMD_ALTER_RENAME_TABLE: // RENAME TABLE
             case SQLElement.CMD_ALTER_RENAME_COLUMN: // RENAME COLUMN
             case SQLElement.CMD_ALTER_ADD_COLUMN: // ADD COLUMN // juliana@253_22: added command ALTER TABLE ADD column.
+               schemaVersion++;
                litebaseExecuteAlter(parser); 
                return 0;
          }
@@ -625,6 +701,16 @@ public class LitebaseConnection
       {
          throw new SQLParseException(exception);
       }
+      finally
+      {
+         if (isLocked)
+         {
+            if (changesCatalog)
+               catalogLock.unlockExclusive();
+            else
+               unlockTable(table, true);
+         }
+      }
       return -1;
    }
 
@@ -933,7 +1019,7 @@ public class LitebaseConnection
                
                // Computes the crc for the record and stores at the end of the record.
                crc32 = Table.updateCRC32(newBuffer, newBas.getPos(), 0, useCrypto);
-               if (table.version == Table.VERSION)
+               if (table.version >= Table.VERSION_STRINGS_CRC)
                {
                   byte[] byteArray;
                   
@@ -963,17 +1049,20 @@ public class LitebaseConnection
             ((NormalFile)oldDB.db).f.delete();
             ((NormalFile)oldDB.dbo).f.delete();
             newDB.rename(table.name, sourcePath);
+            newDB.setPageCache(oldDB.pageSize, oldDB.maxPages);
             table.db = newDB;
             table.columnCount++;
             
+            // Recreates the indices which store .dbo positions: the string simple indices and the composed indices.
+            IntVector ids = new IntVector(newCount);
             i = newCount;
-            while (--i >= 0) // Recreates the simple indices.
+            while (--i >= 0)
                if (newIndices[i] != null && (newTypes[i] == SQLElement.CHARS || newTypes[i] == SQLElement.CHARS_NOCASE))
-                  table.tableReIndex(i, null, false);
-
-            if ((i = table.numberComposedIndices) > 0) // Recreates the composed indices.  
-               while (--i >= 0)
-                  table.tableReIndex(i, table.composedIndices[i], false);
+                  ids.addElement(i);
+            i = table.numberComposedIndices;
+            while (--i >= 0)  
+               ids.addElement(newCount + i);
+            table.tableReIndexAll(ids, -1);
       }             
    }
 
@@ -989,6 +1078,8 @@ public class LitebaseConnection
    {
       String tableName = parser.tableList[0].tableName;
       Table table = (Table)htTables.remove(tableName); // Tries to get the table.
+      if (table != null && table == bulkLoadTable) // A dropped table is not bulk loaded anymore.
+         bulkLoadTable = null;
       
       // flsobral@224_4: workaround for bug with listFiles on BlackBerry 9000.
       
@@ -1006,6 +1097,7 @@ public class LitebaseConnection
             while (--i >= 0)
                table.composedIndices[i].index.fnodes.f.delete();
          table.db.remove(); // Drops the table.
+         ChangeLog.remove(Utils.getFullFileName(table.name, sourcePath) + ChangeLog.EXT); // Drops its change log.
       }
       else // The table is closed.
       {
@@ -1105,6 +1197,10 @@ public class LitebaseConnection
     *    Vm.debug(rs.getString(1) + &quot;. &quot; + rs.getString(2) + &quot; - &quot; + rs.getInt(&quot;age&quot;) + &quot; years&quot;);
     * </pre>
     * 
+    * The tables of the select are locked in exclusive mode while it is executed, since all the statements of a table read its rows through the
+    * same row buffer, file positions, and index node cache. Therefore, selects on different tables run at the same time, but selects on the same
+    * table wait for each other; only the metadata queries, such as <code>getRowCount()</code>, share a table.
+    * 
     * @param sql The SQL query command.
     * @return A result set with the values returned from the query.
     * @throws IllegalStateException If the driver is closed.
@@ -1124,6 +1220,33 @@ public class LitebaseConnection
          }
       try
       {
+         // Selects without parameters are kept in the statement cache.
+         if (statementCache.maxSize > 0)
+         {
+            PreparedStatement ps;
+            
+            // The cache is shared by all the threads using the connection. The catalog is always locked before the cache.
+            catalogLock.lockShared();
+            try
+            {
+               synchronized (statementCache)
+               {
+                  if ((ps = statementCache.get(sql, schemaVersion)) == null && sql.indexOf('?') == -1 
+                   && sql.toLowerCase().trim().startsWith("select"))
+                  {
+                     (ps = new PreparedStatement()).prepare(this, sql);
+                     statementCache.put(ps);
+                  }
+               }
+            }
+            finally
+            {
+               catalogLock.unlockShared();
+            }
+            if (ps != null && ps.type == SQLElement.CMD_SELECT)
+               return ps.doSelect();
+         }
+         
          // Parses, creates and executes the select statement.
          LitebaseParser parser = new LitebaseParser();
          parser.tableList = new SQLResultSetTable[SQLElement.MAX_NUM_COLUMNS];
@@ -1134,7 +1257,84 @@ public class LitebaseConnection
          // juliana@224_2: improved memory usage on BlackBerry.
          LitebaseParser.parser(sql, parser, lexer); // Does de parsing.
          
-         return new SQLSelectStatement(parser).litebaseBindSelectStatement(this).litebaseDoSelect(this);
+         Table[] tables = null;
+         
+         catalogLock.lockShared(); // The tables can't be dropped or altered while the select is bound and executed.
+         try
+         {
+            SQLSelectStatement selectStmt = new SQLSelectStatement(parser).litebaseBindSelectStatement(this);
+            tables = lockTables(selectStmt.selectClause.tableList);
+            return selectStmt.litebaseDoSelect(this);
+         }
+         finally
+         {
+            unlockTables(tables);
+         }
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      catch (InvalidDateException exception)
+      {
+         throw new SQLParseException(exception);
+      }
+      catch (InvalidNumberException exception)
+      {
+         throw new SQLParseException(exception);
+      }
+   }
+   
+   /**
+    * Describes how a select would be executed without executing it. The returned string has one line for each table of the select, in the order 
+    * in which they are joined, with the strategy used to find its rows: <code>scan</code>, <code>index scan</code> (a filter solved by an index),
+    * <code>index join</code>, <code>hash join</code> or <code>nested loop</code>, followed by the column of the join, if any. For instance, 
+    * <code>explain("select * from person, city where person.cityid = city.id")</code> may return:
+    * <pre>
+    * 1: person (scan)
+    * 2: city (hash join on id)
+    * </pre>
+    * 
+    * @param sql The SQL select command.
+    * @return The description of the query execution.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws DriverException If an <code>IOException</code> occurs.
+    * @throws SQLParseException If an <code>InvalidDateException</code> or an <code>InvalidNumberException</code> occurs.
+    */
+   public String explain(String sql) throws IllegalStateException, DriverException, SQLParseException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      
+      if (logger != null && !logOnlyChanges)
+         synchronized (logger)
+         {
+            sBuffer.setLength(0);
+            logger.logInfo(sBuffer.append("explain ").append(sql));
+         }
+      try
+      {
+         LitebaseParser parser = new LitebaseParser();
+         parser.tableList = new SQLResultSetTable[SQLElement.MAX_NUM_COLUMNS];
+         parser.select = new SQLSelectClause();
+         LitebaseParser.parser(sql, parser, lexer); // Does de parsing.
+         
+         if (parser.command != SQLElement.CMD_SELECT) // Only a select can be explained.
+            throw new SQLParseException(LitebaseMessage.getMessage(LitebaseMessage.ERR_ONLY_SELECT_ALLOWED));
+         
+         Table[] tables = null;
+         
+         catalogLock.lockShared(); // The tables can't be dropped or altered while the select is bound and explained.
+         try
+         {
+            SQLSelectStatement selectStmt = new SQLSelectStatement(parser).litebaseBindSelectStatement(this);
+            tables = lockTables(selectStmt.selectClause.tableList);
+            return selectStmt.explain();
+         }
+         finally
+         {
+            unlockTables(tables);
+         }
       }
       catch (IOException exception)
       {
@@ -1176,19 +1376,24 @@ public class LitebaseConnection
             logger.logInfo(sBuffer.append("prepareStatement ").append(sql));
          }
       
-      // juliana@226_16: prepared statement is now a singleton.
-      PreparedStatement ps = (PreparedStatement)htPS.get(sql); 
-      if (ps != null)
-      {
-         ps.clearParameters();
-         return ps;
-      }
-      
-      ps = new PreparedStatement();
       try
       {
-         ps.prepare(this, sql);
-         htPS.put(sql, ps); // guich@201_28
+         synchronized (htPS) // Two threads can't prepare the same statement at the same time.
+         {
+            // juliana@226_16: prepared statement is now a singleton.
+            PreparedStatement ps = (PreparedStatement)htPS.get(sql); 
+            if (ps != null && ps.schemaVersion == schemaVersion)
+            {
+               ps.clearParameters();
+               return ps;
+            }
+            
+            if (ps == null) // A statement bound before a DDL is bound again.
+               ps = new PreparedStatement();
+            ps.prepare(this, sql);
+            htPS.put(sql, ps); // guich@201_28
+            return ps;
+         }
       }
       catch (IOException exception)
       {
@@ -1202,7 +1407,6 @@ public class LitebaseConnection
       {
          throw new SQLParseException(exception);
       }
-      return ps;
    }
 
    // juliana@230_27: if a public method in now called when its object is already closed, now an IllegalStateException will be thrown instead of a 
@@ -1228,9 +1432,12 @@ public class LitebaseConnection
             logger.logInfo(sBuffer.append("getCurrentRowId ").append(tableName));
          }
       
+      Table table = null;
+      
+      catalogLock.lockShared();
       try
       {
-         return getTable(tableName).currentRowId;
+         return (table = lockTable(tableName, false)).currentRowId;
       }
       catch (IOException exception)
       {
@@ -1239,7 +1446,11 @@ public class LitebaseConnection
       catch (InvalidDateException exception) 
       {
          return -1;
-      }  
+      }
+      finally
+      {
+         unlockTable(table, false);
+      }
    }
 
    // juliana@230_27: if a public method in now called when its object is already closed, now an IllegalStateException will be thrown instead of a 
@@ -1265,9 +1476,12 @@ public class LitebaseConnection
             sBuffer.setLength(0);
             logger.logInfo(sBuffer.append("getRowCount ").append(tableName));
          }
+      Table table = null;
+      
+      catalogLock.lockShared();
       try // juliana@201_31: LitebaseConnection.getRowCount() will now throw an exception if tableName is null or invalid instead of returning -1.
       {
-         Table table = getTable(tableName);
+         table = lockTable(tableName, false);
          return table.db.rowCount - table.deletedRowsCount;
       }
       catch (IOException exception)
@@ -1278,6 +1492,10 @@ public class LitebaseConnection
       {
          return -1;
       }
+      finally
+      {
+         unlockTable(table, false);
+      }
    }
 
    // juliana@230_27: if a public method in now called when its object is already closed, now an IllegalStateException will be thrown instead of a 
@@ -1317,10 +1535,13 @@ public class LitebaseConnection
             logger.logInfo(sBuffer.append("setRowInc ").append(tableName).append(' ').append(inc));
          }
       
+      Table table = null;
+      
+      catalogLock.lockShared();
       try
       {
-         Table table = getTable(tableName);
-         PlainDB db = table.db;
+         verifyNoTransaction();
+         PlainDB db = (table = lockTable(tableName, true)).db;
          Index[] columnIndices = table.columnIndices;
          ComposedIndex[] composedIndices = table.composedIndices;
          boolean setting = inc != -1;
@@ -1353,6 +1574,10 @@ public class LitebaseConnection
          throw new DriverException(exception);
       }
       catch (InvalidDateException exception) {}
+      finally
+      {
+         unlockTable(table, true);
+      }
    }
 
    // juliana@230_27: if a public method in now called when its object is already closed, now an IllegalStateException will be thrown instead of a 
@@ -1377,11 +1602,10 @@ public class LitebaseConnection
 
       try // Tests if the .db file exists.
       {
-         sBuffer.setLength(0);
-         boolean ret = new File(sBuffer.append(sourcePath).append(appCrid).append('-').append(name).append(NormalFile.DB_EXT).toString()).exists();
+         boolean ret = new File(name = sourcePath + appCrid + '-' + name + NormalFile.DB_EXT).exists();
          
          // juliana@253_10: now a DriverException will be thown if the .db file exists but not .dbo.
-         if (ret && !new File(name = sBuffer.append('o').toString()).exists())
+         if (ret && !new File(name += 'o').exists())
             throw new FileNotFoundException(name);
          
          return ret;
@@ -1412,6 +1636,7 @@ public class LitebaseConnection
          {
             logger.log(Logger.INFO, "closeAll", false);
          }
+      catalogLock.lockExclusive(); // No other thread can be using the tables.
       try
       {
          litebaseClose();
@@ -1420,6 +1645,145 @@ public class LitebaseConnection
       {
          throw new DriverException(exception);
       }
+      finally
+      {
+         catalogLock.unlockExclusive();
+      }
+   }
+   
+   /**
+    * Starts a transaction. Until <code>commit()</code> is called, the changes made by this thread are grouped: the table and index files are only
+    * written when their caches are full, and all of them are flushed only once when the transaction is committed, which makes many inserts, 
+    * updates, and deletes much faster than flushing the files after each one. Before any block of a table or index file is overwritten, its 
+    * original bytes are saved in a journal file (<code>appCrid.jnl</code>), which is flushed first. If the application stops before the commit, 
+    * the journal is used to undo the transaction when a connection for the same creator id and path is created again, so the tables do not need
+    * to be recovered.
+    * <p>
+    * The other threads that use this connection wait until the transaction is committed. Tables and indices can't be created, dropped, altered, 
+    * purged, recovered, or converted during a transaction, and <code>setRowInc()</code> and <code>beginBulkLoad()</code> can't be used. Closing 
+    * the connection commits the transaction.
+    * 
+    * @throws IllegalStateException If the driver is closed or a transaction has already been started.
+    * @throws DriverException If there is a bulk load or an <code>IOException</code> occurs.
+    * @see #commit()
+    */
+   public void beginTransaction() throws IllegalStateException, DriverException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      
+      if (logger != null)
+         synchronized (logger)
+         {
+            logger.log(Logger.INFO, "beginTransaction", false);
+         }
+      
+      boolean started = false;
+      
+      catalogLock.lockExclusive(); // Kept until the commit, so that the other threads wait for it.
+      try
+      {
+         if (journal != null)
+            throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_TRANSACTION_STARTED));
+         if (bulkLoadTable != null)
+            throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_BULK_LOAD_STARTED));
+         
+         Vector tables = htTables.getValues();
+         Journal newJournal;
+         int i = tables.size();
+         
+         while (--i >= 0) // The journal only keeps the changes made after the tables were completely saved. 
+            ((Table)tables.items[i]).checkpoint();
+         
+         newJournal = new Journal(Utils.getFullFileName(appCrid, sourcePath) + Journal.EXT);
+         i = tables.size();
+         while (--i >= 0)
+            ((Table)tables.items[i]).setJournal(newJournal);
+         journal = newJournal;
+         started = true;
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      finally
+      {
+         if (!started)
+            catalogLock.unlockExclusive();
+      }
+   }
+   
+   /**
+    * Commits the transaction started by <code>beginTransaction()</code>, writing all the changes of the tables to the disk and deleting the 
+    * journal.
+    * 
+    * @throws IllegalStateException If the driver is closed, there is no transaction, or the transaction was started by another thread.
+    * @throws DriverException If an <code>IOException</code> occurs. In this case, the journal is kept and the transaction is undone when the 
+    * connection is created again.
+    * @see #beginTransaction()
+    */
+   public void commit() throws IllegalStateException, DriverException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      if (journal == null)
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_TRANSACTION_NOT_STARTED));
+      if (!catalogLock.isExclusiveOwner())
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_TRANSACTION_THREAD));
+      
+      if (logger != null)
+         synchronized (logger)
+         {
+            logger.log(Logger.INFO, "commit", false);
+         }
+      
+      try
+      {
+         commitJournal();
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      finally
+      {
+         catalogLock.unlockExclusive();
+      }
+   }
+   
+   /**
+    * Indicates if a transaction was started and not committed yet.
+    * 
+    * @return <code>true</code> if there is a transaction in progress; <code>false</code>, otherwise.
+    * @throws IllegalStateException If the driver is closed.
+    */
+   public boolean isInTransaction() throws IllegalStateException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      return journal != null;
+   }
+   
+   /**
+    * Writes all the changes of the tables of the transaction to the disk and deletes its journal, which commits the transaction. The catalog must
+    * be locked in exclusive mode.
+    * 
+    * @throws IOException If an internal method throws it.
+    */
+   private void commitJournal() throws IOException
+   {
+      Journal journalAux = journal;
+      Vector tables = htTables.getValues();
+      Table table;
+      int i = tables.size();
+      
+      journal = null;
+      while (--i >= 0) 
+      {
+         (table = (Table)tables.items[i]).checkpoint();
+         table.setJournal(null);
+      }
+      journalAux.remove(); // Only now the transaction can't be undone anymore.
    }
 
    /**
@@ -1431,7 +1795,28 @@ public class LitebaseConnection
     */
    private void litebaseClose() throws IOException
    {
+      if (journal != null) // A transaction in progress is committed.
+      {
+         commitJournal();
+         catalogLock.unlockExclusive();
+      }
+      
+      if (bulkLoadTable != null) // Builds the indices of a table being bulk loaded before closing it.
+      {
+         try
+         {
+            bulkLoadTable.endBulkLoad();
+         }
+         catch (PrimaryKeyViolationException exception) {} // The rows that violate the primary key are discarded.
+         catch (InvalidDateException exception) {}
+         bulkLoadTable = null;
+      }
+      
       dontFinalize = true;
+      synchronized (statementCache)
+      {
+         statementCache.clear();
+      }
       Vector v = htTables.getValues();
       int n = v.size();
 
@@ -1441,8 +1826,10 @@ public class LitebaseConnection
 
       while (--n >= 0)
       {
+         (table = (Table)v.items[n]).saveChangeLog(sourcePath); // Saves the changed rows for the next synchronization.
+         
          // juliana@253_8: now Litebase supports weak cryptography.
-         (table = (Table)v.items[n]).db.close(true); // Closes the table files.
+         table.db.close(true); // Closes the table files.
          table.db = null;
 
          // Closes the simple indices.
@@ -1493,9 +1880,14 @@ public class LitebaseConnection
             logger.logInfo(sBuffer.append("purge ").append(tableName));
          }
 
+      Table table = null;
+      
+      catalogLock.lockShared();
       try
       {
-         Table table = getTable(tableName);
+         verifyNoTransaction();
+         (table = lockTable(tableName, true)).verifyBulkLoad(); // The rows of a table being bulk loaded can't be moved.
+         schemaVersion++; // The cached statements must be bound again.
 
          // Removes the deleted records from the table.
          int deleted = table.deletedRowsCount;
@@ -1582,7 +1974,7 @@ public class LitebaseConnection
                      // Computes the crc for the record and stores at the end of the record.
                      crc32 = Table.updateCRC32(oldBuffer, newBas.getPos(), 0, useCrypto);
                      
-                     if (table.version == Table.VERSION)
+                     if (table.version >= Table.VERSION_STRINGS_CRC)
                      {
                         byte[] byteArray;
                         
@@ -1614,7 +2006,10 @@ public class LitebaseConnection
                ((NormalFile)plainDB.dbo).f.delete();
                newdb.rename(table.name, sourcePath);
                newdb.useOldCrypto = false;
+               newdb.setPageCache(plainDB.pageSize, plainDB.maxPages);
                table.db = newdb;
+               table.changeLog = null; // The rows changed position and the log must be rebuilt.
+               table.invalidateTrigramIndices();
             }
 
             // juliana@115_8: saving metadata before recreating the indices does not let .db header become empty.
@@ -1626,14 +2021,7 @@ public class LitebaseConnection
 
             Vm.gc(); // Frees some memory.
             
-            i = table.columnCount;
-            while (--i >= 0) // Recreates the simple indices.
-               if (table.columnIndices[i] != null)
-                  table.tableReIndex(i, null, false);
-
-            if ((i = table.numberComposedIndices) > 0) // Recreates the composed indices.
-               while (--i >= 0)
-                  table.tableReIndex(i, table.composedIndices[i], false);
+            table.tableReIndexAll(table.getIndexIds(), -1); // Recreates the indices.
          }
          return deleted;
       }
@@ -1645,34 +2033,60 @@ public class LitebaseConnection
       {
          return -1;
       }
+      finally
+      {
+         unlockTable(table, true);
+      }
    }
 
-   // juliana@230_27: if a public method in now called when its object is already closed, now an IllegalStateException will be thrown instead of a 
-   // DriverException.
    /**
-    * Returns the number of deleted rows.
+    * Runs one step of an incremental purge of the given table. Unlike <code>purge()</code>, which rewrites the whole table and its indices at 
+    * once, each step moves at most <code>maxRows</code> rows from the end of the table to the holes left by deleted rows and removes the deleted 
+    * rows that were left at its end. The indices are updated row by row, so a step takes a time proportional to <code>maxRows</code> and the steps 
+    * can be run between other operations, for instance by a background thread, until it returns 0:
     * 
-    * @param tableName The name of a table.
-    * @return The total number of deleted records of the given table. -1 will never occur.
+    * <pre>
+    * int total = driver.getRowCountDeleted("person");
+    * int remaining;
+    * while ((remaining = driver.purgeStep("person", 200)) > 0)
+    *    progressBar.setValue((total - remaining) * 100 / total);
+    * </pre>
+    * 
+    * A step can be interrupted at any time: the next one continues the work. If the application stops during a step, the table must be recovered 
+    * with <code>recoverTable()</code>, as after any other interrupted change. 
+    * <p>
+    * Important: the rowid of the records is NOT changed with this operation, but the order of the rows is. Strings that were replaced by updates 
+    * are only removed from the .dbo file by <code>purge()</code>.
+    * 
+    * @param tableName The table name to purge.
+    * @param maxRows The maximum number of rows moved by this step.
+    * @return The number of deleted rows that remain in the table.
     * @throws IllegalStateException If the driver is closed.
-    * @throws DriverException If an <code>IOException</code> occurs.
+    * @throws IllegalArgumentException If the maximum number of rows is not greater than 0.
+    * @throws DriverException If an <code>IOException</code> occurs or the table is being bulk loaded.
     */
-   public int getRowCountDeleted(String tableName) throws IllegalStateException, DriverException
+   public int purgeStep(String tableName, int maxRows) throws IllegalStateException, IllegalArgumentException, DriverException
    {
       if (htTables == null) // The driver can't be closed.
          throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      if (maxRows <= 0)
+         throw new IllegalArgumentException(LitebaseMessage.getMessage(LitebaseMessage.ERR_INVALID_PURGE_STEP));
       
-      // juliana@253_18: now it is possible to log only changes during Litebase operation.
-      if (logger != null && !logOnlyChanges)
+      if (logger != null)
          synchronized (logger)
          {
             sBuffer.setLength(0);
-            logger.logInfo(sBuffer.append("getRowCountDeleted ").append(tableName));
+            logger.logInfo(sBuffer.append("purge step ").append(tableName).append(' ').append(maxRows));
          }
 
+      Table table = null;
+      
+      catalogLock.lockShared();
       try
       {
-         return getTable(tableName).deletedRowsCount;
+         verifyNoTransaction();
+         (table = lockTable(tableName, true)).verifyBulkLoad(); // The rows of a table being bulk loaded can't be moved.
+         return table.deletedRowsCount > 0? table.purgeStep(maxRows) : 0;
       }
       catch (IOException exception)
       {
@@ -1680,16 +2094,620 @@ public class LitebaseConnection
       }
       catch (InvalidDateException exception)
       {
-         return -1;
+         throw new SQLParseException(exception);
+      }
+      finally
+      {
+         unlockTable(table, true);
       }
    }
 
    // juliana@230_27: if a public method in now called when its object is already closed, now an IllegalStateException will be thrown instead of a 
    // DriverException.
    /**
-    * Gets an iterator for a table. With it, it is possible iterate through all the rows of a table in sequence and get
-    * its attributes. This is good for synchronizing a table. While the iterator is active, it is not possible to do any
-    * queries or updates because this can cause dada corruption.
+    * Returns the number of deleted rows.
+    * 
+    * @param tableName The name of a table.
+    * @return The total number of deleted records of the given table. -1 will never occur.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws DriverException If an <code>IOException</code> occurs.
+    */
+   public int getRowCountDeleted(String tableName) throws IllegalStateException, DriverException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      
+      // juliana@253_18: now it is possible to log only changes during Litebase operation.
+      if (logger != null && !logOnlyChanges)
+         synchronized (logger)
+         {
+            sBuffer.setLength(0);
+            logger.logInfo(sBuffer.append("getRowCountDeleted ").append(tableName));
+         }
+
+      Table table = null;
+      
+      catalogLock.lockShared();
+      try
+      {
+         return (table = lockTable(tableName, false)).deletedRowsCount;
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      catch (InvalidDateException exception)
+      {
+         return -1;
+      }
+      finally
+      {
+         unlockTable(table, false);
+      }
+   }
+
+   /**
+    * Starts a bulk load of a table. It is the same as <code>beginBulkLoad(tableName, false)</code>.
+    * 
+    * @param tableName The name of the table to be bulk loaded.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws DriverException If there is already a bulk load or an <code>IOException</code> occurs.
+    */
+   public void beginBulkLoad(String tableName) throws IllegalStateException, DriverException
+   {
+      beginBulkLoad(tableName, false);
+   }
+   
+   /**
+    * Starts a bulk load of a table, which makes inserting many rows at once much faster. Until <code>endBulkLoad()</code> is called, the inserted 
+    * rows are only appended to the table files, which are not flushed after each insert, and the indices of the table are not updated. When the 
+    * bulk load ends, each index is rebuilt from the sorted keys of all the rows, filling its nodes. Only one table can be bulk loaded at a time, and 
+    * it can't be queried, updated, deleted from or purged during the bulk load. 
+    * 
+    * <p>The primary key index is still updated and verified on each insert, unless the primary key is deferred. In this case, the primary key is
+    * only verified when the bulk load ends and, if it is violated, all the rows inserted during the bulk load are discarded. 
+    * 
+    * <p>If the connection is closed during a bulk load, the bulk load is ended first.
+    * 
+    * @param tableName The name of the table to be bulk loaded.
+    * @param deferPrimaryKey Indicates if the primary key is only to be verified when the bulk load ends.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws DriverException If there is already a bulk load or an <code>IOException</code> occurs.
+    */
+   public void beginBulkLoad(String tableName, boolean deferPrimaryKey) throws IllegalStateException, DriverException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      if (bulkLoadTable != null) // Only one table can be bulk loaded at a time.
+         throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_BULK_LOAD_STARTED));
+      
+      if (logger != null)
+         synchronized (logger)
+         {
+            sBuffer.setLength(0);
+            logger.logInfo(sBuffer.append("beginBulkLoad ").append(tableName).append(' ').append(deferPrimaryKey));
+         }
+      
+      Table table = null;
+      
+      catalogLock.lockShared();
+      try
+      {
+         verifyNoTransaction();
+         (table = lockTable(tableName, true)).beginBulkLoad(deferPrimaryKey);
+         bulkLoadTable = table;
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      catch (InvalidDateException exception) {}
+      finally
+      {
+         unlockTable(table, true);
+      }
+   }
+   
+   /**
+    * Ends the bulk load started by <code>beginBulkLoad()</code>, rebuilding the indices of the table.
+    * 
+    * @throws IllegalStateException If the driver is closed.
+    * @throws DriverException If there is no bulk load or an <code>IOException</code> occurs.
+    * @throws PrimaryKeyViolationException If the primary key was deferred and the inserted rows violate it. These rows are discarded.
+    */
+   public void endBulkLoad() throws IllegalStateException, DriverException, PrimaryKeyViolationException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      if (bulkLoadTable == null)
+         throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_BULK_LOAD_NOT_STARTED));
+      
+      if (logger != null)
+         synchronized (logger)
+         {
+            logger.log(Logger.INFO, "endBulkLoad", false);
+         }
+      
+      Table table = bulkLoadTable;
+      bulkLoadTable = null;
+      catalogLock.lockShared();
+      table.lock.lockExclusive();
+      try
+      {
+         table.endBulkLoad();
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      catch (InvalidDateException exception) {}
+      finally
+      {
+         unlockTable(table, true);
+      }
+   }
+   
+   /**
+    * Sets the maximum number of nodes of each index kept in memory. The root and the first level nodes of an index are always in memory; this cache
+    * holds the deeper nodes and, when it is full, the least recently used one is replaced. Bigger caches speed up indexed lookups on big tables at 
+    * the cost of memory: each node uses about 512 bytes plus its keys. The new size is applied to the indices of the tables already open. 
+    * 
+    * @param size The maximum number of nodes of the cache of each index. The default is 20.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws IllegalArgumentException If the size is less than 1.
+    * @throws DriverException If an <code>IOException</code> occurs.
+    */
+   public void setIndexCacheSize(int size) throws IllegalStateException, IllegalArgumentException, DriverException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      if (size < 1)
+         throw new IllegalArgumentException(LitebaseMessage.getMessage(LitebaseMessage.ERR_INVALID_CACHE_SIZE));
+      
+      if (logger != null && !logOnlyChanges)
+         synchronized (logger)
+         {
+            sBuffer.setLength(0);
+            logger.logInfo(sBuffer.append("setIndexCacheSize ").append(size));
+         }
+      
+      indexCacheSize = size;
+      catalogLock.lockExclusive(); // The indices of all the tables are changed.
+      try
+      {
+         Vector tables = htTables.getValues();
+         Table table;
+         Index[] columnIndices;
+         ComposedIndex[] composedIndices;
+         int i = tables.size(), 
+             j;
+         
+         while (--i >= 0) // Resizes the caches of the indices of the open tables.
+         {
+            columnIndices = (table = (Table)tables.items[i]).columnIndices;
+            composedIndices = table.composedIndices;
+            j = table.columnCount;
+            while (--j >= 0)
+               if (columnIndices[j] != null)
+                  columnIndices[j].setCacheSize(size);
+            j = table.numberComposedIndices;
+            while (--j >= 0)
+               composedIndices[j].index.setCacheSize(size);
+         }
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      finally
+      {
+         catalogLock.unlockExclusive();
+      }
+   }
+   
+   /**
+    * Enables or disables the compressed string indices for the tables created or converted by this connection. The indices with <code>CHAR</code> 
+    * or <code>VARCHAR</code> columns of these tables store their strings in the index nodes, with prefix compression, instead of their positions
+    * in the .dbo, so that searches don't need to load the strings from the .dbo. Their tables use a newer format, which can't be read by the
+    * native Litebase used on the devices; thus, only enable them for tables which are only used on the desktop. The tables already created are 
+    * not changed and the ones with compressed string indices can be opened by any connection. It is disabled by default.
+    * 
+    * @param compress Indicates if the new tables must have compressed string indices.
+    * @throws IllegalStateException If the driver is closed.
+    * @see #convert(String)
+    */
+   public void setCompressedStringIndices(boolean compress) throws IllegalStateException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      
+      if (logger != null && !logOnlyChanges)
+         synchronized (logger)
+         {
+            sBuffer.setLength(0);
+            logger.logInfo(sBuffer.append("setCompressedStringIndices ").append(compress));
+         }
+      compressStringIndices = compress;
+   }
+   
+   /**
+    * Indicates if the tables created or converted by this connection have compressed string indices.
+    * 
+    * @return <code>true</code> if the compressed string indices are enabled; <code>false</code>, otherwise.
+    * @throws IllegalStateException If the driver is closed.
+    * @see #setCompressedStringIndices(boolean)
+    */
+   public boolean isCompressedStringIndices() throws IllegalStateException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      return compressStringIndices;
+   }
+   
+   /**
+    * Creates a trigram index for a <code>CHAR</code> or <code>VARCHAR</code> column. It is the same as executing 
+    * <code>CREATE INDEX idx ON tableName(columnName) USING TRIGRAM</code>. A trigram index is used by queries with <code>LIKE</code> whose pattern 
+    * can't use a normal index, such as <code>name LIKE '%silva%'</code>, <code>name LIKE '%silva'</code>, or <code>name LIKE 'ana%silva'</code>, 
+    * and ignores the case of the strings. Only the rows which have all the sequences of three characters of the pattern are read, so patterns with
+    * less than three characters between the wildcards don't use the index. The index is stored in memory and is built reading the whole table the 
+    * first time it is used after the table is opened or purged; the rows inserted or updated after that are added to it.
+    * 
+    * @param tableName The name of the table.
+    * @param columnName The name of the column.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws DriverException If the column does not exist or is not a string or an <code>IOException</code> occurs.
+    * @throws AlreadyCreatedException If the column already has a trigram index.
+    * @see #dropTrigramIndex(String, String)
+    */
+   public void createTrigramIndex(String tableName, String columnName) throws IllegalStateException, DriverException, AlreadyCreatedException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      
+      if (logger != null)
+         synchronized (logger)
+         {
+            sBuffer.setLength(0);
+            logger.logInfo(sBuffer.append("createTrigramIndex ").append(tableName).append(' ').append(columnName));
+         }
+      
+      catalogLock.lockExclusive(); // Indices can only be created when no other thread is using the tables.
+      try
+      {
+         verifyNoTransaction();
+         driverCreateTrigramIndex(tableName.toLowerCase(), columnName.toLowerCase());
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      catch (InvalidDateException exception) {}
+      finally
+      {
+         catalogLock.unlockExclusive();
+      }
+   }
+   
+   /**
+    * Drops the trigram index of a column. Normal indices are not dropped by this method, but <code>DROP INDEX * ON tableName</code> also drops the 
+    * trigram indices.
+    * 
+    * @param tableName The name of the table.
+    * @param columnName The name of the column.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws DriverException If the column does not exist or does not have a trigram index or an <code>IOException</code> occurs.
+    * @see #createTrigramIndex(String, String)
+    */
+   public void dropTrigramIndex(String tableName, String columnName) throws IllegalStateException, DriverException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      
+      if (logger != null)
+         synchronized (logger)
+         {
+            sBuffer.setLength(0);
+            logger.logInfo(sBuffer.append("dropTrigramIndex ").append(tableName).append(' ').append(columnName));
+         }
+      
+      catalogLock.lockExclusive(); // Indices can only be dropped when no other thread is using the tables.
+      try
+      {
+         verifyNoTransaction();
+         Table table = getTable(tableName);
+         int column = table.htName2index.get(columnName.toLowerCase().hashCode(), -1);
+         
+         if (column == -1)
+            throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_COLUMN_NOT_FOUND) + columnName);
+         table.setModified(); // Sets the table as not closed properly.
+         table.dropTrigramIndex(column, true);
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      catch (InvalidDateException exception) {}
+      finally
+      {
+         catalogLock.unlockExclusive();
+      }
+   }
+   
+   /**
+    * Returns the maximum number of nodes of each index kept in memory.
+    * 
+    * @return The size of the cache of each index.
+    * @throws IllegalStateException If the driver is closed.
+    * @see #setIndexCacheSize(int)
+    */
+   public int getIndexCacheSize() throws IllegalStateException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      return indexCacheSize;
+   }
+   
+   /**
+    * Sets the maximum number of statements kept parsed and bound by <code>executeQuery()</code> and <code>executeUpdate()</code>. Selects, updates, 
+    * and deletes without parameters are cached by their SQL text, so that the same command executed many times, like during a synchronization, is 
+    * parsed only once. When the cache is full, the least recently used statement is discarded. Creating or dropping a table or an index, altering a
+    * table, and purging a table invalidate the cached statements. 
+    * 
+    * @param size The maximum number of statements in the cache. The default is 16. Zero disables the cache.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws IllegalArgumentException If the size is negative.
+    */
+   public void setStatementCacheSize(int size) throws IllegalStateException, IllegalArgumentException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      if (size < 0)
+         throw new IllegalArgumentException(LitebaseMessage.getMessage(LitebaseMessage.ERR_INVALID_STATEMENT_CACHE_SIZE));
+      
+      if (logger != null && !logOnlyChanges)
+         synchronized (logger)
+         {
+            sBuffer.setLength(0);
+            logger.logInfo(sBuffer.append("setStatementCacheSize ").append(size));
+         }
+      
+      synchronized (statementCache)
+      {
+         statementCache.setMaxSize(size);
+      }
+   }
+   
+   /**
+    * Returns the maximum number of statements kept parsed and bound by <code>executeQuery()</code> and <code>executeUpdate()</code>.
+    * 
+    * @return The size of the statement cache.
+    * @throws IllegalStateException If the driver is closed.
+    * @see #setStatementCacheSize(int)
+    */
+   public int getStatementCacheSize() throws IllegalStateException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      return statementCache.maxSize;
+   }
+   
+   /**
+    * Returns how many times <code>executeQuery()</code> and <code>executeUpdate()</code> found their statement in the statement cache since this 
+    * connection was created.
+    * 
+    * @return The number of statements which did not need to be parsed.
+    * @throws IllegalStateException If the driver is closed.
+    * @see #getStatementCacheMisses()
+    * @see #setStatementCacheSize(int)
+    */
+   public int getStatementCacheHits() throws IllegalStateException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      return statementCache.hits;
+   }
+   
+   /**
+    * Returns how many times <code>executeQuery()</code> and <code>executeUpdate()</code> did not find their statement in the statement cache, or 
+    * found it bound to an older schema, since this connection was created.
+    * 
+    * @return The number of statements which had to be parsed.
+    * @throws IllegalStateException If the driver is closed.
+    * @see #getStatementCacheHits()
+    * @see #setStatementCacheSize(int)
+    */
+   public int getStatementCacheMisses() throws IllegalStateException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      return statementCache.misses;
+   }
+   
+   /**
+    * Makes the .db and .dbo files of a table be cached in many fixed size pages instead of a single contiguous window. The default window is 
+    * refilled whenever a row outside it is accessed, which is slow for the random accesses done by queries that use indices or joins. With pages,
+    * the recently used parts of the table stay in memory and sequential reads are done ahead. Each file will use up to 
+    * <code>pageSize * pages</code> bytes of memory. The setting lasts while the table is open.
+    * 
+    * @param tableName The name of a table.
+    * @param pageSize The page size, which must be 4096, 8192 or 16384. 
+    * @param pages The number of pages of each table file kept in memory, or 0 to go back to the default cache.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws IllegalArgumentException If the page size is invalid or the number of pages is negative.
+    * @throws DriverException If an <code>IOException</code> occurs.
+    */
+   public void setPageCache(String tableName, int pageSize, int pages) throws IllegalStateException, IllegalArgumentException, DriverException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      if (pages < 0 || (pages > 0 && (pageSize < PagedFile.MIN_PAGE_SIZE || pageSize > PagedFile.MAX_PAGE_SIZE || (pageSize & (pageSize - 1)) != 0)))
+         throw new IllegalArgumentException(LitebaseMessage.getMessage(LitebaseMessage.ERR_INVALID_PAGE_CACHE));
+      
+      if (logger != null && !logOnlyChanges)
+         synchronized (logger)
+         {
+            sBuffer.setLength(0);
+            logger.logInfo(sBuffer.append("setPageCache ").append(tableName).append(' ').append(pageSize).append(' ').append(pages));
+         }
+      
+      Table table = null;
+      
+      catalogLock.lockShared();
+      try
+      {
+         (table = lockTable(tableName, true)).db.setPageCache(pageSize, pages);
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      catch (InvalidDateException exception) {}
+      finally
+      {
+         unlockTable(table, true);
+      }
+   }
+   
+   /**
+    * Returns how many index nodes of a table were found in memory since the table was open, adding up all its indices. Together with 
+    * <code>getIndexCacheMisses()</code>, it can be used to choose the index cache size for a device.
+    * 
+    * @param tableName The name of a table.
+    * @return The number of index node loads which did not need to read the index files.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws DriverException If an <code>IOException</code> occurs.
+    * @see #getIndexCacheMisses(String)
+    * @see #setIndexCacheSize(int)
+    */
+   public int getIndexCacheHits(String tableName) throws IllegalStateException, DriverException
+   {
+      return getIndexCacheStats(tableName, true);
+   }
+   
+   /**
+    * Returns how many index nodes of a table had to be read from the index files since the table was open, adding up all its indices.
+    * 
+    * @param tableName The name of a table.
+    * @return The number of index node loads which had to read the index files.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws DriverException If an <code>IOException</code> occurs.
+    * @see #getIndexCacheHits(String)
+    * @see #setIndexCacheSize(int)
+    */
+   public int getIndexCacheMisses(String tableName) throws IllegalStateException, DriverException
+   {
+      return getIndexCacheStats(tableName, false);
+   }
+   
+   /**
+    * Adds up the index cache hits or misses of all the indices of a table.
+    * 
+    * @param tableName The name of a table.
+    * @param hits Indicates if the hits or the misses are to be returned.
+    * @return The number of hits or misses.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws DriverException If an <code>IOException</code> occurs.
+    */
+   private int getIndexCacheStats(String tableName, boolean hits) throws IllegalStateException, DriverException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      
+      Table table = null;
+      
+      catalogLock.lockShared();
+      try
+      {
+         Index[] columnIndices = (table = lockTable(tableName, false)).columnIndices;
+         ComposedIndex[] composedIndices = table.composedIndices;
+         Index index;
+         int count = 0,
+             i = table.columnCount;
+         
+         while (--i >= 0)
+            if ((index = columnIndices[i]) != null)
+               count += hits? index.cacheHits : index.cacheMisses;
+         i = table.numberComposedIndices;
+         while (--i >= 0)
+         {
+            index = composedIndices[i].index;
+            count += hits? index.cacheHits : index.cacheMisses;
+         }
+         return count;
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      catch (InvalidDateException exception)
+      {
+         return -1;
+      }
+      finally
+      {
+         unlockTable(table, false);
+      }
+   }
+   
+   /**
+    * Returns how many times a thread had to wait for another one to use a table since the table was open. Selects, inserts, updates, deletes, and 
+    * purges use a table alone; metadata queries such as <code>getRowCount()</code> can use it at the same time. A high number indicates the threads 
+    * that use this table serialize on it.
+    * 
+    * @param tableName The name of a table.
+    * @return The number of waits for the table.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws DriverException If an <code>IOException</code> occurs.
+    * @see #getCatalogLockContentions()
+    */
+   public int getLockContentions(String tableName) throws IllegalStateException, DriverException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      
+      Table table = null;
+      
+      catalogLock.lockShared();
+      try
+      {
+         return (table = lockTable(tableName, false)).lock.contentions;
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      catch (InvalidDateException exception)
+      {
+         return -1;
+      }
+      finally
+      {
+         unlockTable(table, false);
+      }
+   }
+   
+   /**
+    * Returns how many times a thread had to wait for the catalog of this connection since the connection was created. The catalog is used alone by 
+    * the commands which create, drop or alter tables and indices, and by <code>closeAll()</code>, <code>recoverTable()</code>, <code>convert()</code>,
+    * and <code>setIndexCacheSize()</code>; all the other operations share it.
+    * 
+    * @return The number of waits for the catalog.
+    * @throws IllegalStateException If the driver is closed.
+    * @see #getLockContentions(String)
+    */
+   public int getCatalogLockContentions() throws IllegalStateException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      return catalogLock.contentions;
+   }
+
+   // juliana@230_27: if a public method in now called when its object is already closed, now an IllegalStateException will be thrown instead of a 
+   // DriverException.
+   /**
+    * Gets an iterator for a table. With it, it is possible iterate through all the rows of a table in sequence and get
+    * its attributes. This is good for synchronizing a table. While the iterator is active, it is not possible to do any
+    * queries or updates because this can cause dada corruption.
     * 
     * @param tableName The name of a table.
     * @return A iterator for the given table. <code>null</code> will never occur.
@@ -1722,6 +2740,56 @@ public class LitebaseConnection
       }
    }
 
+   /**
+    * Gets an iterator through the rows of a table which were inserted, updated, or deleted since the last synchronization, in the order in which 
+    * they were first changed. Unlike the iterator returned by <code>getRowIterator()</code>, the synchronized rows are not read: the table keeps a 
+    * log of its changed rows, saved when the table is closed, so the cost of a synchronization depends only on the number of rows changed. After 
+    * sending the rows to the server, <code>RowIterator.setAllSynced()</code> must be called to set all of them as synchronized at once and to 
+    * remove them from the log, which works as a persistent cursor. For instance:
+    * 
+    * <pre>
+    * RowIterator it = driver.getChangedRowIterator(&quot;person&quot;);
+    * while (it.next())
+    *    send(it.rowid, it.attr, it.data);
+    * it.setAllSynced();
+    * it.close();
+    * </pre>
+    * 
+    * A deleted row is returned until <code>setAllSynced()</code> is called. If the log does not match the table, because the table was not closed 
+    * properly or was changed outside the Java Litebase, it is rebuilt by reading the whole table and the deleted rows are returned again. Therefore, 
+    * the server must ignore deletions of rows it does not have.
+    * 
+    * @param tableName The name of a table.
+    * @return A iterator through the changed rows of the given table. <code>null</code> will never occur.
+    * @throws IllegalStateException If the driver is closed.
+    * @throws DriverException If an <code>IOException</code> occurs.
+    * @see #getRowIterator(String)
+    */
+   public RowIterator getChangedRowIterator(String tableName) throws IllegalStateException, DriverException
+   {
+      if (htTables == null) // The driver can't be closed.
+         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
+      
+      if (logger != null && !logOnlyChanges)
+         synchronized (logger)
+         {
+            sBuffer.setLength(0);
+            logger.logInfo(sBuffer.append("getChangedRowIterator ").append(tableName));
+         }
+      try
+      {
+         return new RowIterator(this, tableName.toLowerCase(), true);
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      catch (InvalidDateException exception)
+      {
+         return null;
+      }
+   }
+
    // juliana@210_3: LitebaseConnection.getLogger() and LitebaseConnection.setLogger() are no longer deprecated.
    /**
     * Gets the Litebase logger. The fields should be used unless using the logger within threads. 
@@ -1924,13 +2992,13 @@ public class LitebaseConnection
             logger.logInfo(sBuffer.append("recover table ").append(tableName));
          }
 
+      catalogLock.lockExclusive(); // The table can't be opened by other threads while it is recovered.
       try
       {
-         sBuffer.setLength(0);
+         verifyNoTransaction();
          
          // Opens the table file.
-         File tableDb = new File(sBuffer.append(sourcePath).append(appCrid).append('-').append(tableName.toLowerCase()).append(".db").toString(), 
-                                                                                                                        File.READ_WRITE);
+         File tableDb = new File(sourcePath + appCrid + '-' + tableName.toLowerCase() + NormalFile.DB_EXT, File.READ_WRITE);
          
          byte[] buffer = oneByte; 
          boolean useCryptoAux = useCrypto;
@@ -1991,6 +3059,9 @@ public class LitebaseConnection
              currentRowId = -1,
              deletedRowsCount = 0; // Invalidates the number of deleted rows.
          
+         // The rowids of the rows already checked. An interrupted purge step may have left a copy of a row before the original one.
+         IntHashtable rowids = new IntHashtable(rows + 1);
+         
          while (--i >= 0) // Checks all table records.
          {
             plainDB.read(i);
@@ -2014,7 +3085,7 @@ public class LitebaseConnection
                // juliana@230_12: improved recover table to take .dbo data into consideration.
                crc32 = Table.updateCRC32(buffer, len, 0, useCryptoAux);
 
-               if (table.version == Table.VERSION)
+               if (table.version >= Table.VERSION_STRINGS_CRC)
                {
                   j = columnCount;
                   while (--j > 0)
@@ -2063,14 +3134,24 @@ public class LitebaseConnection
                   if (currentRowId < 0)
                      currentRowId = (rowid & Utils.ROW_ID_MASK) + 1;
                }
+               else if (rowids.get(rowid & Utils.ROW_ID_MASK, -1) != -1) // Deletes the copy of a row left by an interrupted purge step.
+               {
+                  bas.reset();
+                  dataStream.writeInt(Utils.ROW_ATTR_DELETED);
+                  plainDB.rewrite(i);
+                  deletedRowsCount++;
+                  recovered = true;
+               }
                else // juliana@224_3: corrected a bug that would make Litebase not use the correct rowid after a recoverTable().
                {
+                  rowids.put(rowid &= Utils.ROW_ID_MASK, 0);
+                  
                   // juliana@270_26: solved a possible duplicate rowid after issuing LitebaseConnection.recoverTable() on a table.
-                  rowid = (rowid & Utils.ROW_ID_MASK) + 1;
-                  if (currentRowId < 0)
-                     currentRowId = rowid;
-                  if (auxRowId < 0) 
-                     auxRowId = rowid;
+                  // After an incremental purge, the last row may not have the biggest rowid.
+                  if (currentRowId <= rowid)
+                     currentRowId = rowid + 1;
+                  if (auxRowId <= rowid) 
+                     auxRowId = rowid + 1;
                }
                
             }
@@ -2083,19 +3164,7 @@ public class LitebaseConnection
          table.currentRowId = currentRowId;
          table.auxRowId = auxRowId;
          
-         // Recreates the indices.
-         // Simple indices.
-         i = table.columnIndices.length;
-         Index[] indices = table.columnIndices;
-         while (--i >= 0)
-            if (indices[i] != null)
-               table.tableReIndex(i, null, false);
-         
-         // Composed indices.
-         i = table.numberComposedIndices;
-         ComposedIndex[] compIndices = table.composedIndices;
-         while (--i >= 0)
-            table.tableReIndex(i, compIndices[i], false);
+         table.tableReIndexAll(table.getIndexIds(), -1); // Recreates the indices.
          
          // juliana@224_3: corrected a bug that would make Litebase not use the correct rowid after a recoverTable().
          // juliana@270_26: solved a possible duplicate rowid after issuing LitebaseConnection.recoverTable() on a table.
@@ -2130,21 +3199,28 @@ public class LitebaseConnection
       {
          return true;
       }
+      finally
+      {
+         catalogLock.unlockExclusive();
+      }
    }
 
    // juliana@230_27: if a public method in now called when its object is already closed, now an IllegalStateException will be thrown instead of a 
    // DriverException.
    // juliana@220_11: added a method to convert a table from the previous format to the current one being used.
    /**
-    * Converts a table from the previous Litebase table version to the current one. If the table format is older than the previous table version, 
-    * this method can't be used. It is possible to know if the table version is not compativel with the current version used in Litebase because 
-    * an exception will be thrown if one tries to open a table with the old format. The table will be closed after using this method and must be
-    * closed before calling it. Notice that the table .db file will be overwritten. 
+    * Converts a table from the previous Litebase table version to the current one. If the table format is older than it, this method can't be 
+    * used. It is possible to know if the table version is not compativel with the current version used in Litebase because an exception will be 
+    * thrown if one tries to open a table with the old format. The table will be closed after using this method and must be closed before calling 
+    * it. Notice that the table .db file will be overwritten. If the compressed string indices are enabled, a table of the current version can also 
+    * be converted and its indices with string columns will be recreated in the format which stores the strings in the indices; after that, the 
+    * table can't be used by the native Litebase. 
     * 
     * @param tableName The name of the table to be converted.
     * @throws IllegalStateException If the driver is closed.
     * @throws DriverException If the table version is not the previous one (too old or the actual used by Litebase), it is not possible to read from
     * the file, or an <code>IllegalArgumentIOException</code>, <code>FileNotFoundException</code>, or <code>IOException</code> occurs.
+    * @see #setCompressedStringIndices(boolean)
     */
    public void convert(String tableName) throws IllegalStateException, DriverException
    {
@@ -2158,20 +3234,21 @@ public class LitebaseConnection
             logger.logInfo(sBuffer.append("convert ").append(tableName));
          }
       
+      catalogLock.lockExclusive(); // The table can't be opened by other threads while it is converted.
       try
       {
+         verifyNoTransaction();
+         
          byte[] bytes = new byte[2];
          Table table = new Table();
          int rowid,
-             version;
-         
-         sBuffer.setLength(0);
+             version,
+             newVersion = compressStringIndices? Table.VERSION_COMPRESSED_STRINGS : Table.VERSION;
          
          // Opens the table file.
-         File tableDb = new File(sBuffer.append(sourcePath).append(appCrid).append('-').append(tableName.toLowerCase()).append(".db").toString(), 
-                                                                                                                        File.READ_WRITE);
+         File tableDb = new File(sourcePath + appCrid + '-' + tableName.toLowerCase() + NormalFile.DB_EXT, File.READ_WRITE);
          
-         // The version must be the previous of the current one.
+         // The version must be older than the new one and not older than the previous one.
          tableDb.setPos(7);
          if (tableDb.readBytes(bytes, 0, 2) == -1)
          {
@@ -2185,21 +3262,13 @@ public class LitebaseConnection
             bytes[1] = bytes[1] ^= 0xAA;
          }
          
-         if ((version = (((bytes[1] & 0xFF) << 8) | (bytes[0] & 0xFF))) != Table.VERSION - 1 || version != Table.VERSION - 2)
-         {
-            tableDb.close(); // juliana@222_4: The table files must be closed if convert() fails().
-            throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_WRONG_PREV_VERSION) + tableName);
-         }
-         
-         // Changes the version to be current one and closes it.
-         tableDb.setPos(7);         
-         oneByte[0] = (byte)(useCrypto? Table.VERSION ^ 0xAA : Table.VERSION); // juliana@253_8         
-         tableDb.writeBytes(oneByte, 0, 1);
          tableDb.close();
+         if ((version = (((bytes[1] & 0xFF) << 8) | (bytes[0] & 0xFF))) < Table.VERSION - 1 || version >= newVersion)
+            throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_WRONG_PREV_VERSION) + tableName);
          
          // juliana@224_2: improved memory usage on BlackBerry.
          
-         // Opens the table even if it was not cloded properly.
+         // Opens the table even if it was not cloded properly. It is opened with its old version, so that its indices can still be read.
          // juliana@253_8: now Litebase supports weak cryptography.
          table.tableCreate(sourcePath, appCrid + '-' + tableName.toLowerCase(), false, appCrid, this, isAscii, useCrypto, false);
          PlainDB plainDB = table.db;   
@@ -2222,6 +3291,8 @@ public class LitebaseConnection
          byte[] byteArray;
          boolean useCrypto = plainDB.useCrypto;
          
+         if (version == Table.VERSION_STRINGS_CRC) // The crc codes already take the strings into consideration.
+            rows = 0;
          while (--rows >= 0) // Converts all the records adding a crc code to them.
          {
             dbFile.setPos(rows * len + headerSize);
@@ -2258,17 +3329,38 @@ public class LitebaseConnection
             buffer[3] = (byte)rowid;
             plainDB.rewrite(rows);
          }   
+         
+         // Changes the version to be the new one and recreates the indices whose format changed.
+         if ((table.version = newVersion) == Table.VERSION_COMPRESSED_STRINGS)
+            table.convertStringIndices(appCrid, sourcePath);
+         table.tableSaveMetaData(Utils.TSMD_ONLY_DELETEDROWSCOUNT);
             
          // Closes the table.
          // juliana@253_8: now Litebase supports weak cryptography.
          plainDB.close(false); // Closes the table files.
          table.db = null;
+         Index idx;
+         
+         // Closes the simple indices.
+         i = columnCount;
+         while (--i >= 0)
+            if ((idx = table.columnIndices[i]) != null)
+               idx.close();
+              
+         // Closes the composed indices.
+         i = table.numberComposedIndices;
+         while (--i >= 0)
+            table.composedIndices[i].index.close();
       }
       catch (IOException exception)
       {
          throw new DriverException(exception);
       }
       catch (InvalidDateException exception) {}
+      finally
+      {
+         catalogLock.unlockExclusive();
+      }
    }
    
    /**
@@ -2281,6 +3373,26 @@ public class LitebaseConnection
       litebaseClose();
    }
 
+   /**
+    * Creates a trigram index.
+    * 
+    * @param tableName The table name whose index is to be created.
+    * @param columnName The name of the index column.
+    * @throws IOException If an internal method throws it.
+    * @throws DriverException If the column does not exist.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   private void driverCreateTrigramIndex(String tableName, String columnName) throws IOException, DriverException, InvalidDateException
+   {
+      Table table = getTable(tableName);
+      int column = table.htName2index.get(columnName.hashCode(), -1);
+      
+      if (column == -1)
+         throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_COLUMN_NOT_FOUND) + columnName);
+      table.setModified(); // Sets the table as not closed properly.
+      table.createTrigramIndex(column);
+   }
+   
    /**
     * Creates an index.
     * 
@@ -2452,25 +3564,156 @@ public class LitebaseConnection
       Table table = (Table)htTables.get(tableName = tableName.toLowerCase()); // Already open?
 
       if (table == null)
-      {
-         // Opens it.
-         table = new Table();
-         
-         // juliana@224_2: improved memory usage on BlackBerry.
-         // juliana@253_8: now Litebase supports weak cryptography.
-         table.tableCreate(sourcePath, appCrid + '-' + tableName, false, appCrid, this, isAscii, useCrypto, true); // juliana@220_5
+         synchronized (htTables) // Two threads can't open the same table.
+         {
+            if ((table = (Table)htTables.get(tableName)) == null)
+            {
+               // Opens it.
+               table = new Table();
+               
+               // juliana@224_2: improved memory usage on BlackBerry.
+               // juliana@253_8: now Litebase supports weak cryptography.
+               table.tableCreate(sourcePath, appCrid + '-' + tableName, false, appCrid, this, isAscii, useCrypto, true); // juliana@220_5
+      
+               PlainDB plainDB = table.db;
+               
+               if (plainDB.db.size == 0) // Only valid if already created.
+                  throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_TABLE_NAME_NOT_FOUND) + tableName);
+               
+               if (journal != null) // A table opened during a transaction also joins it.
+                  table.setJournal(journal);
+               htTables.put(tableName, table); // Puts the table in the table hashes.
+            }
+         }
 
-         PlainDB plainDB = table.db;
-         
-         if (plainDB.db.size == 0) // Only valid if already created.
-            throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_TABLE_NAME_NOT_FOUND) + tableName);
+      return table;
+   }
+   
+   /**
+    * Gets a table and locks it. The catalog must already be locked in shared mode.
+    *
+    * @param tableName The name of the table.
+    * @param exclusive Indicates if the table is locked in exclusive or shared mode.
+    * @return The table locked.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   Table lockTable(String tableName, boolean exclusive) throws IOException, InvalidDateException
+   {
+      Table table = getTable(tableName);
+      
+      if (exclusive)
+         table.lock.lockExclusive();
+      else
+         table.lock.lockShared();
+      return table;
+   }
+   
+   /**
+    * Unlocks a table locked by <code>lockTable()</code> and the catalog.
+    *
+    * @param table The table or <code>null</code> if only the catalog was locked.
+    * @param exclusive Indicates if the table was locked in exclusive or shared mode.
+    */
+   void unlockTable(Table table, boolean exclusive)
+   {
+      if (table != null)
+      {
+         if (exclusive)
+            table.lock.unlockExclusive();
+         else
+            table.lock.unlockShared();
+      }
+      catalogLock.unlockShared();
+   }
+   
+   /**
+    * Locks the tables of a select in exclusive mode, since their rows are read using the buffers, file positions, and index node caches of the 
+    * tables. The catalog must already be locked in shared mode. The tables are always locked in the order of their names, so that two threads 
+    * that use the same tables can't wait for each other.
+    *
+    * @param tableList The tables of the select.
+    * @return The tables locked.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   Table[] lockTables(SQLResultSetTable[] tableList) throws IOException, InvalidDateException
+   {
+      int n = tableList.length,
+          i = -1,
+          j;
+      Table[] tables = new Table[n];
+      Table table;
+      
+      while (++i < n)
+      {
+         // juliana@201_28: If a table is re-created after the prepared statement is parsed, there won't be a NPE.
+         if ((table = tableList[i].table).db.db == null)
+            table = tableList[i].table = getTable(tableList[i].tableName);
          
-         htTables.put(tableName, table); // Puts the table in the table hashes.
+         j = i;
+         while (j > 0 && tables[j - 1].name.compareTo(table.name) > 0) // Keeps the tables sorted by name.
+         {
+            tables[j] = tables[j - 1];
+            j--;
+         }
+         tables[j] = table;
       }
-
-      return table;
+      
+      i = -1;
+      while (++i < n)
+         tables[i].lock.lockExclusive();
+      return tables;
+   }
+   
+   /**
+    * Unlocks the tables locked by <code>lockTables()</code> and the catalog.
+    *
+    * @param tables The tables or <code>null</code> if only the catalog was locked.
+    */
+   void unlockTables(Table[] tables)
+   {
+      if (tables != null)
+      {
+         int i = tables.length;
+         while (--i >= 0)
+            tables[i].lock.unlockExclusive();
+      }
+      catalogLock.unlockShared();
    }
     
+   /**
+    * Verifies that there is no transaction in progress, since it can't undo the changes of the catalog.
+    * 
+    * @throws DriverException If there is a transaction in progress.
+    */
+   private void verifyNoTransaction() throws DriverException
+   {
+      if (journal != null)
+         throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_OPERATION_IN_TRANSACTION));
+   }
+   
+   /**
+    * Indicates if a journal belongs to a transaction of a connection which is still open.
+    * 
+    * @param fileName The full name of the journal file.
+    * @return <code>true</code> if the journal is being used; <code>false</code>, otherwise.
+    */
+   private static boolean isJournalInUse(String fileName)
+   {
+      synchronized (htDrivers)
+      {
+         Vector connections = htDrivers.getValues();
+         Journal journalAux;
+         int i = connections.size();
+         
+         while (--i >= 0)
+            if ((journalAux = ((LitebaseConnection)connections.items[i]).journal) != null && journalAux.fileName.equals(fileName))
+               return true;
+      }
+      return false;
+   }
+   
    /**
     * Tests if a path is valid. It can't be null or relative.
     * 
@@ -2594,10 +3837,8 @@ public class LitebaseConnection
          try
          {
             // Opens the table file.
-            sBuffer.setLength(0);
-            File tableDb = new File(sBuffer.append(sourcePath).append(appCrid).append('-').append(tableName.toLowerCase()).append(".db").toString(), 
-                                                                                                                           File.READ_WRITE);
-            byte[] buffer = oneByte; 
+            File tableDb = new File(sourcePath + appCrid + '-' + tableName.toLowerCase() + NormalFile.DB_EXT, File.READ_WRITE);
+            byte[] buffer = new byte[1]; 
             
             // Reads the flag.
             tableDb.setPos(6);
@@ -463,10 +463,80 @@ class LitebaseMessage
     */
    static final int ERR_BLOBS_PREPARED = 84;
 
+   /**
+    * "The index cache size must be greater than 0."
+    */
+   static final int ERR_INVALID_CACHE_SIZE = 85;
+
+   /**
+    * "The page size must be 4096, 8192 or 16384 and the number of pages can't be negative."
+    */
+   static final int ERR_INVALID_PAGE_CACHE = 86;
+
+   /**
+    * "A bulk load has already been started."
+    */
+   static final int ERR_BULK_LOAD_STARTED = 87;
+   
+   /**
+    * "There is no bulk load to be ended."
+    */
+   static final int ERR_BULK_LOAD_NOT_STARTED = 88;
+   
+   /**
+    * "The table is being bulk loaded: "
+    */
+   static final int ERR_TABLE_BULK_LOADING = 89;
+   
+   /**
+    * "Only a SELECT can be explained."
+    */
+   static final int ERR_ONLY_SELECT_ALLOWED = 90;
+   
+   /**
+    * "The statement cache size can't be negative."
+    */
+   static final int ERR_INVALID_STATEMENT_CACHE_SIZE = 91;
+   
+   /**
+    * "The number of rows of a purge step must be greater than 0."
+    */
+   static final int ERR_INVALID_PURGE_STEP = 92;
+   
+   /**
+    * "A thread that reads a table can't change it before finishing the reading."
+    */
+   static final int ERR_LOCK_UPGRADE = 93;
+   
+   /**
+    * "A trigram index can only be created on a single CHAR or VARCHAR column."
+    */
+   static final int ERR_TRIGRAM_INDEX_TYPE = 94;
+   
+   /**
+    * "A transaction has already been started."
+    */
+   static final int ERR_TRANSACTION_STARTED = 95;
+   
+   /**
+    * "There is no transaction to be committed."
+    */
+   static final int ERR_TRANSACTION_NOT_STARTED = 96;
+   
+   /**
+    * "Tables and indices can't be created, dropped, altered, purged or recovered during a transaction."
+    */
+   static final int ERR_OPERATION_IN_TRANSACTION = 97;
+   
+   /**
+    * "Only the thread that started the transaction can commit it."
+    */
+   static final int ERR_TRANSACTION_THREAD = 98;
+
    /**
     * Total Litebase possible errors.
     */
-   static final int TOTAL_ERRORS = 85;
+   static final int TOTAL_ERRORS = 99;
    
    // Error tables
    private static final String[] errorMsgs_en = new String[TOTAL_ERRORS];
@@ -523,6 +593,20 @@ class LitebaseMessage
                                                  + "file.";
       errorMsgs_en[ERR_INVALID_CRID] = "The application id must be 4 characters long.";
       errorMsgs_en[ERR_INVALID_INC] = "The increment must be greater than 0 or -1.";
+      errorMsgs_en[ERR_INVALID_CACHE_SIZE] = "The index cache size must be greater than 0.";
+      errorMsgs_en[ERR_INVALID_PAGE_CACHE] = "The page size must be 4096, 8192 or 16384 and the number of pages can't be negative.";
+      errorMsgs_en[ERR_BULK_LOAD_STARTED] = "A bulk load has already been started.";
+      errorMsgs_en[ERR_BULK_LOAD_NOT_STARTED] = "There is no bulk load to be ended.";
+      errorMsgs_en[ERR_TABLE_BULK_LOADING] = "The table is being bulk loaded: ";
+      errorMsgs_en[ERR_ONLY_SELECT_ALLOWED] = "Only a SELECT can be explained.";
+      errorMsgs_en[ERR_INVALID_STATEMENT_CACHE_SIZE] = "The statement cache size can't be negative.";
+      errorMsgs_en[ERR_INVALID_PURGE_STEP] = "The number of rows of a purge step must be greater than 0.";
+      errorMsgs_en[ERR_LOCK_UPGRADE] = "A thread that reads a table can't change it before finishing the reading.";
+      errorMsgs_en[ERR_TRIGRAM_INDEX_TYPE] = "A trigram index can only be created on a single CHAR or VARCHAR column.";
+      errorMsgs_en[ERR_TRANSACTION_STARTED] = "A transaction has already been started.";
+      errorMsgs_en[ERR_TRANSACTION_NOT_STARTED] = "There is no transaction to be committed.";
+      errorMsgs_en[ERR_OPERATION_IN_TRANSACTION] = "Tables and indices can't be created, dropped, altered, purged or recovered during a transaction.";
+      errorMsgs_en[ERR_TRANSACTION_THREAD] = "Only the thread that started the transaction can commit it.";
       errorMsgs_en[ERR_INVALID_PARAMETER] = "Invalid connection parameter: ";
       errorMsgs_en[ERR_PREPARED_CLOSED] = "The prepared statement is already closed.";
       
@@ -659,6 +743,20 @@ class LitebaseMessage
             + "para o LitebaseConnection. Por favor, instale o arquivo Litebase.dll/prc.";
       errorMsgs_pt[ERR_INVALID_CRID] = "O id da aplica��o de ter 4 characteres.";
       errorMsgs_pt[ERR_INVALID_INC] = "O incremento deve ser maior do que 0 ou -1.";
+      errorMsgs_pt[ERR_INVALID_CACHE_SIZE] = "O tamanho do cache de índices deve ser maior do que 0.";
+      errorMsgs_pt[ERR_INVALID_PAGE_CACHE] = "O tamanho da página deve ser 4096, 8192 ou 16384 e o número de páginas não pode ser negativo.";
+      errorMsgs_pt[ERR_BULK_LOAD_STARTED] = "Uma carga em massa já foi iniciada.";
+      errorMsgs_pt[ERR_BULK_LOAD_NOT_STARTED] = "Não há carga em massa para ser terminada.";
+      errorMsgs_pt[ERR_TABLE_BULK_LOADING] = "A tabela está sendo carregada em massa: ";
+      errorMsgs_pt[ERR_ONLY_SELECT_ALLOWED] = "Apenas um SELECT pode ser explicado.";
+      errorMsgs_pt[ERR_INVALID_STATEMENT_CACHE_SIZE] = "O tamanho do cache de comandos não pode ser negativo.";
+      errorMsgs_pt[ERR_INVALID_PURGE_STEP] = "O número de linhas de um passo de purge deve ser maior do que 0.";
+      errorMsgs_pt[ERR_LOCK_UPGRADE] = "Uma thread que lê uma tabela não pode alterá-la antes de terminar a leitura.";
+      errorMsgs_pt[ERR_TRIGRAM_INDEX_TYPE] = "Um índice de trigramas só pode ser criado em uma única coluna CHAR ou VARCHAR.";
+      errorMsgs_pt[ERR_TRANSACTION_STARTED] = "Uma transação já foi iniciada.";
+      errorMsgs_pt[ERR_TRANSACTION_NOT_STARTED] = "Não há transação para ser confirmada.";
+      errorMsgs_pt[ERR_OPERATION_IN_TRANSACTION] = "Tabelas e índices não podem ser criados, apagados, alterados, purgados ou recuperados durante uma transação.";
+      errorMsgs_pt[ERR_TRANSACTION_THREAD] = "Somente a thread que iniciou a transação pode confirmá-la.";
       errorMsgs_pt[ERR_INVALID_PARAMETER] = "Par�metro de conex�o inv�lido: ";
       errorMsgs_pt[ERR_PREPARED_CLOSED] = "O prepared statement j� est� fechado.";
       
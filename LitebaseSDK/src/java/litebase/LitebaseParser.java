@@ -433,6 +433,11 @@ class LitebaseParser
     */
    int command;
    
+   /**
+    * Indicates if the index being created is a trigram index (<code>CREATE INDEX ... USING TRIGRAM</code>).
+    */
+   boolean isTrigramIndex;
+   
    /**
     * The number of fields in the field list.
     */
@@ -530,7 +535,7 @@ class LitebaseParser
    }
    
    /**
-    * The method which executes the parser process.
+    * The method which executes the parser process. The lexical analyzer of a connection is used by only one thread at a time.
     *
     * @param sql The sql command to be parsed.
     * @param parser The parser object which will be filled with the result of the parsing process.
@@ -541,14 +546,17 @@ class LitebaseParser
    {
       LitebaseParser yyparser = parser; // Initializes the parser.
       
-      // juliana@224_2: improved memory usage on BlackBerry.
-      yyparser.lexer = lexer;
-      lexer.zzReaderChars = sql;
-      lexer.yyparser = parser;
-      lexer.yycurrent = ' ';
-      lexer.yyposition = 0;      
-      
-      yyparser.yyparse();
+      synchronized (lexer)
+      {
+         // juliana@224_2: improved memory usage on BlackBerry.
+         yyparser.lexer = lexer;
+         lexer.zzReaderChars = sql;
+         lexer.yyparser = parser;
+         lexer.yycurrent = ' ';
+         lexer.yyposition = 0;      
+         
+         yyparser.yyparse();
+      }
    }
 
    /**
@@ -704,6 +712,16 @@ class LitebaseParser
                   tableList[0] = new SQLResultSetTable(yylval); // There's no alias table name here.
                   if (yylex() != TK_OPEN || colnameCommaList() != TK_CLOSE) // Column name list.
                      yyerror(LitebaseMessage.ERR_SYNTAX_ERROR);
+                  
+                  // The index type. "using" and "trigram" are not reserved words, so that they can still be used as column names.
+                  if ((token = yylex()) == TK_IDENT)
+                  {
+                     if (!yylval.equals("using") || yylex() != TK_IDENT || !yylval.equals("trigram"))
+                        yyerror(LitebaseMessage.ERR_SYNTAX_ERROR);
+                     isTrigramIndex = true;
+                  }
+                  else if (token != LitebaseLex.YYEOF)
+                     yyerror(LitebaseMessage.ERR_SYNTAX_ERROR);
                   command = SQLElement.CMD_CREATE_INDEX;
                   break;
                   
@@ -49,6 +49,23 @@ class MarkBits
     */
    Key rightKey;
 
+   /**
+    * The temporary table where the values of the keys found are written when the index has all the columns of the query or <code>null</code> if 
+    * only the bitmap must be generated.
+    */
+   Table coveringTable;
+
+   /**
+    * The position in the index key of each column of the covering table.
+    */
+   byte[] coveringColumns;
+
+   /**
+    * The record used to write the key values in the covering table. Its strings must have the hash code of the table name, since the strings of a 
+    * temporary table only reference the strings of the table.
+    */
+   SQLValue[] coveringRecord;
+
    /**
     * Resets the object and the bitmap.
     *
@@ -108,13 +125,13 @@ class MarkBits
 
       // For inclusion operations, just uses the value.
       if (l0 == SQLElement.OP_REL_EQUAL || l0 == SQLElement.OP_REL_GREATER_EQUAL || (l0 == SQLElement.OP_REL_GREATER && isNoLongerEqual))
-         onValue(k.record); // Climbs on the value.
+         onCoveredKey(k); // Climbs on the value.
       else if (l0 == SQLElement.OP_REL_GREATER) // The key can still be equal.
       {
          if (Utils.arrayValueCompareTo(leftKey.keys, k.keys, leftKey.index.types, null) != 0) // Compares the key with the left key.
          {
             isNoLongerEqual = true;
-            onValue(k.record); // Climbs on the value.
+            onCoveredKey(k); // Climbs on the value.
          }
       }
       else // OP_PAT_MATCH_LIKE
@@ -125,10 +142,10 @@ class MarkBits
          
          // juliana@230_3: corrected a bug of LIKE using DATE and DATETIME not returning the correct result.
          else
-            val = Utils.formatDateDateTime(db.driver.sBuffer, type, key);
+            val = Utils.formatDateDateTime(k.index.table.sBuffer, type, key);
          
          if (val.startsWith(leftKey.keys[0].asString)) // Only starts with are used with indices.
-            onValue(k.record); // Climbs on the value.
+            onCoveredKey(k); // Climbs on the value.
          else
             return false; // Stops the search.
       
@@ -136,6 +153,42 @@ class MarkBits
       return true; // Does not visit this value, but continues the search.
    }
 
+   /**
+    * Climbs on the value of a key and, if the index covers the query, writes the key values in the temporary table instead of reading the row.
+    *
+    * @param k The key found.
+    * @throws IOException If an internal method throws it.
+    */
+   private void onCoveredKey(Key k) throws IOException
+   {
+      int record = k.record;
+      
+      if (coveringTable != null && record != Key.NO_VALUE)
+      {
+         SQLValue[] keys = k.keys;
+         SQLValue[] values = coveringRecord;
+         byte[] columns = coveringColumns;
+         byte[] types = k.index.types;
+         SQLValue key,
+                  value;
+         int i = values.length,
+             type;
+         
+         while (--i >= 0)
+         {
+            (value = values[i]).asInt = (key = keys[columns[i]]).asInt; // A string key only needs its position in the .dbo.
+            if ((type = types[columns[i]]) != SQLElement.CHARS && type != SQLElement.CHARS_NOCASE)
+            {
+               value.asShort = key.asShort;
+               value.asLong = key.asLong;
+               value.asDouble = key.asDouble;
+            }
+         }
+         coveringTable.writeRSRecord(values); // Key values are never null.
+      }
+      onValue(record);
+   }
+
    /**
     * Climbs on a value.
     *
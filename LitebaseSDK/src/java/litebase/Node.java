@@ -61,6 +61,16 @@ class Node
     * Indicates if a node is dirty.
     */
    boolean isDirty;
+   
+   /**
+    * The value of the index cache clock when this node was last used. 
+    */
+   int lastUse;
+   
+   /**
+    * The number of bytes used by the node in an index which stores its strings or -1 if it must be computed.
+    */
+   int usedSize = -1;
 
    /**
     * Creates a new node for an index.
@@ -100,13 +110,30 @@ class Node
       DataStreamLB ds = indexAux.basds; // juliana@253_8: now Litebase supports weak cryptography.
       indexAux.bas.reset();
       length = size = ds.readUnsignedShort();
-      while (++i < length)
-         keysAux[i].load(ds);
-
-      // Loads the node children.
-      i = -1;
-      while (++i <= length)
-         childrenAux[i] = ds.readUnsignedShort();
+      
+      if (indexAux.isCompressed) // The records and the children come first, since the keys have different sizes.
+      {
+         while (++i < length)
+            keysAux[i].record = ds.readInt();
+         i = -1;
+         while (++i <= length)
+            childrenAux[i] = ds.readUnsignedShort();
+         i = -1;
+         while (++i < length)
+            keysAux[i].loadCompressed(ds, i == 0? null : keysAux[i - 1]);
+         usedSize = indexAux.bas.getPos();
+         i = length;
+      }
+      else
+      {
+         while (++i < length)
+            keysAux[i].load(ds);
+   
+         // Loads the node children.
+         i = -1;
+         while (++i <= length)
+            childrenAux[i] = ds.readUnsignedShort();
+      }
 
       Convert.fill(childrenAux, i + 1, indexAux.btreeMaxNodes + 1, LEAF); // Fills the non-used indexes with TERMINAL.
    }
@@ -122,7 +149,10 @@ class Node
       Index indexAux = index;
       
       // Positions the file pointer at the insert position.
-      indexAux.fnodes.setPos(idx * indexAux.nodeRecSize + 2 + indexAux.keyRecSize * currPos + (indexAux.keyRecSize - Key.VALREC_SIZE));
+      if (indexAux.isCompressed) // The records are stored after the node size.
+         indexAux.fnodes.setPos(idx * indexAux.nodeRecSize + 2 + (currPos << 2));
+      else
+         indexAux.fnodes.setPos(idx * indexAux.nodeRecSize + 2 + indexAux.keyRecSize * currPos + (indexAux.keyRecSize - Key.VALREC_SIZE));
 
       indexAux.bas.reset();
       indexAux.basds.writeInt(keys[currPos].record);
@@ -171,14 +201,31 @@ class Node
       bas.reset();
       ds.writeShort(right - left);
 
-      i = left - 1;
-      while (++i < right) // Saves the keys.
-         keysAux[i].save(ds);
-
-      // Saves the children.
-      i = left - 1;
-      while (++i <= right)
-         ds.writeShort(childrenAux[i]);
+      if (indexAux.isCompressed) // The records and the children come first, since the keys have different sizes.
+      {
+         i = left - 1;
+         while (++i < right)
+            ds.writeInt(keysAux[i].record);
+         i = left - 1;
+         while (++i <= right)
+            ds.writeShort(childrenAux[i]);
+         i = left - 1;
+         while (++i < right)
+            keysAux[i].saveCompressed(ds, i == left? null : keysAux[i - 1]);
+         if (left == 0 && right == size)
+            usedSize = bas.getPos();
+      }
+      else
+      {
+         i = left - 1;
+         while (++i < right) // Saves the keys.
+            keysAux[i].save(ds);
+   
+         // Saves the children.
+         i = left - 1;
+         while (++i <= right)
+            ds.writeShort(childrenAux[i]);
+      }
       
       // juliana@230_35: now the first level nodes of a b-tree index will be loaded in memory.
       if (isNew && idxAux > 0 && idxAux <= indexAux.btreeMaxNodes)
@@ -197,6 +244,7 @@ class Node
             keys[i].set(keysAux[i + left].keys);
             keys[i].record = keysAux[i + left].record;
          }
+         node.usedSize = bas.getPos();
          node.isDirty = false;
       }
 
@@ -219,6 +267,7 @@ class Node
       int[] childrenAux = children;
       
       size = 1;
+      usedSize = -1;
       keysAux[0].set(item.keys);
       keysAux[0].record = item.record;
       childrenAux[0] = left;
@@ -289,6 +338,7 @@ class Node
       childrenAux[ins] = leftChild;
       childrenAux[ins + 1] = rightChild;
       sizeAux = ++size;
+      usedSize = -1;
 
       if (index.isWriteDelayed)  // Only saves the key if it is not to be saved later.
          isDirty = true;
@@ -296,6 +346,27 @@ class Node
          save(false, 0, sizeAux);
    }
 
+   /**
+    * Gets the number of bytes used by the node in an index which stores its strings.
+    * 
+    * @return The size of the node size, its records, its children, and its keys.
+    */
+   int getUsedSize()
+   {
+      if (usedSize < 0)
+      {
+         Index indexAux = index;
+         Key[] keysAux = keys;
+         int i = size,
+             used = 4 + 6 * i;
+         
+         while (--i >= 0)
+            used += indexAux.getKeySize(keysAux[i].keys, i == 0? null : keysAux[i - 1].keys);
+         usedSize = used;
+      }
+      return usedSize;
+   }
+   
    /**
     * Sets the flag that indicates if the not should have its write process delayed or not.
     *
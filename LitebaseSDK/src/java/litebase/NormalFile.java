@@ -74,6 +74,11 @@ class NormalFile extends XFile
     */
    boolean dontFlush;
    
+   /**
+    * The journal of the transaction in progress, which receives the original bytes before they are overwritten, or <code>null</code>.
+    */
+   Journal journal;
+   
    // All methods just call the File ones.
    /**
     * Creates a disk file to store tables.
@@ -100,6 +105,24 @@ class NormalFile extends XFile
       if (cacheSize != -1)
          cache = new byte[cacheInitialSize = cacheSize];
    }
+   
+   /**
+    * Creates a disk file which takes over an already open file. The cache of the other file is flushed and it must not be used anymore.
+    * 
+    * @param other The file to be taken over.
+    * @throws IOException If an internal method throws it.
+    */
+   NormalFile(NormalFile other) throws IOException
+   {
+      if (other.cacheIsDirty)
+         other.flushCache();
+      f = other.f;
+      size = other.size;
+      pos = other.pos;
+      finalPos = other.finalPos;
+      dontFlush = other.dontFlush;
+      journal = other.journal;
+   }
 
    /**
     * Reads file bytes.
@@ -143,13 +166,24 @@ class NormalFile extends XFile
    }
 
    /**
-    * Enlarges the file. This method MUST be called to grow the file - otherwise, <code>getSize()</code> won't work correctly.
+    * Enlarges or shrinks the file. This method MUST be called to grow the file - otherwise, <code>getSize()</code> won't work correctly.
     *
     * @param newSize The new size for the file.
     * @throws IOException If an internal method throws it.
     */
    void growTo(int newSize) throws IOException
    {
+      if (journal != null && newSize != size)
+      {
+         journal.save(this, Math.min(size, newSize), Math.abs(newSize - size));
+         journal.sync();
+      }
+      if (newSize < size) // The cache can't write or keep anything after the new end.
+      {
+         if (cacheIsDirty)
+            flushCache();
+         cacheIni = cacheEnd = 0;
+      }
       f.setSize(newSize); // Enlarges the file and sets the new size.
       
       // juliana@227_23: solved possible crashes when using a table recovered which was being used with setRowInc().
@@ -183,6 +217,11 @@ class NormalFile extends XFile
     */
    void flushCache() throws IOException
    {
+      if (journal != null)
+      {
+         journal.save(this, cacheDirtyIni, cacheDirtyEnd - cacheDirtyIni);
+         journal.sync();
+      }
       f.setPos(cacheDirtyIni);
       cacheIsDirty = false;
       f.writeBytes(cache, cacheDirtyIni - cacheIni, cacheDirtyEnd - cacheDirtyIni);
@@ -242,7 +281,14 @@ class NormalFile extends XFile
       if (cacheIsDirty)
          flushCache();
       if (finalPos > 0) // juliana@210a_11: fixed a problem that could crop data from database indices.
-         f.setSize(finalPos);  // juliana@201_5: the .dbo file must be cropped so that it wont't be too large with zeros at the end of the file.
+      {
+         if (journal != null && finalPos < size)
+         {
+            journal.save(this, finalPos, size - finalPos);
+            journal.sync();
+         }
+         f.setSize(finalPos);
+      }  // juliana@201_5: the .dbo file must be cropped so that it wont't be too large with zeros at the end of the file.
       f.close();
    }
    
@@ -0,0 +1,390 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package litebase;
+
+import totalcross.io.*;
+import totalcross.sys.*;
+import totalcross.util.*;
+
+/**
+ * A disk file cached in fixed size pages. Differently from <code>NormalFile</code>, which keeps a single contiguous window of the file that is 
+ * thrown away whenever an access falls outside it, many pages stay in memory at the same time, which suits the random accesses done by indexed 
+ * queries and joins. When the cache is full, the least recently used page is replaced. When the pages are read in sequence, the next ones are read
+ * ahead at once.
+ */
+class PagedFile extends NormalFile
+{
+   /**
+    * The minimum page size.
+    */
+   static final int MIN_PAGE_SIZE = 4096;
+   
+   /**
+    * The maximum page size.
+    */
+   static final int MAX_PAGE_SIZE = 16384;
+   
+   /**
+    * The maximum number of pages read ahead when the file is read in sequence.
+    */
+   private static final int MAX_READ_AHEAD = 4;
+   
+   /**
+    * The page size, which is a power of 2.
+    */
+   int pageSize;
+   
+   /**
+    * The number of bits to shift a position to get its page number.
+    */
+   private int pageShift;
+   
+   /**
+    * The cached pages.
+    */
+   private byte[][] pages;
+   
+   /**
+    * The page number of each cached page.
+    */
+   private int[] pageNumbers;
+   
+   /**
+    * The value of the clock when each cached page was last used.
+    */
+   private int[] lastUses;
+   
+   /**
+    * The initial position of each cached page that is dirty, or the page size if it is not dirty.
+    */
+   private int[] dirtyInis;
+   
+   /**
+    * The final position of each cached page that is dirty, or 0 if it is not dirty.
+    */
+   private int[] dirtyEnds;
+   
+   /**
+    * The number of pages in the cache.
+    */
+   private int pageCount;
+   
+   /**
+    * A counter incremented whenever a page is used, used to find the least recently used page.
+    */
+   private int clock;
+   
+   /**
+    * Maps a page number to its position in the cache.
+    */
+   private IntHashtable positions;
+   
+   /**
+    * The number of the last page that had to be read from the disk.
+    */
+   private int lastRead = -2;
+   
+   /**
+    * The number of pages read ahead when the file is read in sequence.
+    */
+   private int readAhead;
+   
+   /**
+    * A buffer used to read many pages at once.
+    */
+   private byte[] readAheadBuffer;
+
+   /**
+    * Creates a paged file which takes over an already open disk file.
+    * 
+    * @param other The file to be taken over. It must not be used anymore.
+    * @param newPageSize The page size, a power of 2 between <code>MIN_PAGE_SIZE</code> and <code>MAX_PAGE_SIZE</code>.
+    * @param maxPages The maximum number of pages in memory.
+    * @throws IOException If an internal method throws it.
+    */
+   PagedFile(NormalFile other, int newPageSize, int maxPages) throws IOException
+   {
+      super(other);
+      
+      while ((1 << pageShift) < newPageSize)
+         pageShift++;
+      pageSize = newPageSize;
+      pages = new byte[maxPages][];
+      pageNumbers = new int[maxPages];
+      lastUses = new int[maxPages];
+      dirtyInis = new int[maxPages];
+      dirtyEnds = new int[maxPages];
+      positions = new IntHashtable(maxPages);
+      if ((readAhead = Math.min(MAX_READ_AHEAD, maxPages >> 1)) > 1)
+         readAheadBuffer = new byte[readAhead * newPageSize];
+   }
+   
+   /**
+    * Sets the current file position. The disk file position is only set when pages are read or written.
+    *
+    * @param newPos The new file position.
+    * @throws DriverException If the table is corrupted and its access tries to read/write after the file end.
+    */
+   void setPos(int newPos) throws DriverException
+   {
+      if (newPos > size)
+         throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_TABLE_CORRUPTED));
+      pos = newPos;
+   }
+   
+   /**
+    * Reads file bytes.
+    *
+    * @param buf The byte array to read data into.
+    * @param start The offset position in the array.
+    * @param count The number of bytes to read.
+    * @return The number of bytes read.
+    * @throws IOException If an internal method throws it.
+    */
+   public int readBytes(byte[] buf, int start, int count) throws IOException
+   {
+      int offset, 
+          length,
+          remaining = count;
+      
+      while (remaining > 0) // The bytes may be spread over many pages.
+      {
+         length = Math.min(remaining, pageSize - (offset = pos & (pageSize - 1)));
+         System.arraycopy(pages[getPage(pos >> pageShift)], offset, buf, start, length);
+         pos += length;
+         start += length;
+         remaining -= length;
+      }
+      return count;
+   }
+
+   /**
+    * Write bytes in a file.
+    *
+    * @param buf The byte array to write data from.
+    * @param start The offset position in the array.
+    * @param count The number of bytes to write.
+    * @return count, to indicate that everything is ok.
+    * @throws IOException If an internal method throws it.
+    */
+   public int writeBytes(byte[] buf, int start, int count) throws IOException
+   {
+      int offset, 
+          length,
+          i,
+          remaining = count;
+      
+      while (remaining > 0) // The bytes may be spread over many pages.
+      {
+         length = Math.min(remaining, pageSize - (offset = pos & (pageSize - 1)));
+         System.arraycopy(buf, start, pages[i = getPage(pos >> pageShift)], offset, length);
+         if (offset < dirtyInis[i])
+            dirtyInis[i] = offset;
+         if (offset + length > dirtyEnds[i])
+            dirtyEnds[i] = offset + length;
+         pos += length;
+         start += length;
+         remaining -= length;
+      }
+      cacheIsDirty = true;
+      return count;
+   }
+   
+   /**
+    * Enlarges or shrinks the file. The pages after the new end are discarded.
+    *
+    * @param newSize The new size for the file.
+    * @throws IOException If an internal method throws it.
+    */
+   void growTo(int newSize) throws IOException
+   {
+      if (newSize < size)
+      {
+         int i = pageCount,
+             end;
+         
+         while (--i >= 0)
+            if ((end = newSize - (pageNumbers[i] << pageShift)) <= 0) // The page is beyond the new end. 
+            {
+               try
+               {
+                  positions.remove(pageNumbers[i]);
+               }
+               catch (ElementNotFoundException exception) {}
+               if (i < --pageCount) // Moves the last page to the free position.
+               {
+                  byte[] page = pages[i];
+                  pages[i] = pages[pageCount];
+                  pages[pageCount] = page;
+                  positions.put(pageNumbers[i] = pageNumbers[pageCount], i);
+                  lastUses[i] = lastUses[pageCount];
+                  dirtyInis[i] = dirtyInis[pageCount];
+                  dirtyEnds[i] = dirtyEnds[pageCount];
+               }
+            }
+            else if (dirtyEnds[i] > end) // The page is cut by the new end.
+               dirtyEnds[i] = end;
+      }
+      super.growTo(newSize);
+   }
+   
+   /**
+    * Flushs the dirty pages into the disk, in the order of their positions in the file.
+    * 
+    * @throws IOException If an internal method throws it.
+    */
+   void flushCache() throws IOException
+   {
+      int[] numbers = pageNumbers;
+      int[] dirty = new int[pageCount];
+      int n = 0,
+          i = pageCount,
+          j;
+      
+      while (--i >= 0) // Sorts the dirty pages by their numbers using insertion sort.
+         if (dirtyEnds[i] > dirtyInis[i])
+         {
+            j = n++;
+            while (j > 0 && numbers[dirty[j - 1]] > numbers[i])
+            {
+               dirty[j] = dirty[j - 1];
+               j--;
+            }
+            dirty[j] = i;
+         }
+      
+      if (journal != null) // The original bytes of all the pages are saved in the same batch.
+      {
+         j = -1;
+         while (++j < n)
+            journal.save(this, (numbers[i = dirty[j]] << pageShift) + dirtyInis[i], dirtyEnds[i] - dirtyInis[i]);
+         journal.sync();
+      }
+      
+      j = -1;
+      while (++j < n)
+      {
+         f.setPos((numbers[i = dirty[j]] << pageShift) + dirtyInis[i]);
+         f.writeBytes(pages[i], dirtyInis[i], dirtyEnds[i] - dirtyInis[i]);
+         dirtyInis[i] = pageSize;
+         dirtyEnds[i] = 0;
+      }
+      cacheIsDirty = false;
+   }
+   
+   /** 
+    * Does nothing: the pages already make sequential reads fast.
+    * 
+    * @param turnOn Ignored.
+    */
+   void loadIntoMemory(boolean turnOn) {}
+   
+   /**
+    * Returns the position of a page in the cache, loading it if necessary.
+    * 
+    * @param number The page number.
+    * @return The position of the page in the cache.
+    * @throws IOException If an internal method throws it.
+    */
+   private int getPage(int number) throws IOException
+   {
+      int i = positions.get(number, -1);
+      
+      if (i == -1)
+      {
+         if (lastRead + 1 == number && readAhead > 1) // Sequential reads: reads the next pages at once.
+         {
+            int shift = pageShift,
+                count = readAhead,
+                read,
+                pageNumber;
+            byte[] buffer = readAheadBuffer;
+            
+            while (count > 1 && positions.exists(number + count - 1))
+               count--;
+            read = readPages(number, buffer, count << shift);
+            
+            while (--count > 0) // The first page is loaded at last so that it is not replaced by the others.
+               if (!positions.exists(pageNumber = number + count))
+                  System.arraycopy(buffer, count << shift, pages[newPage(pageNumber)], 0, pageSize);
+            System.arraycopy(buffer, 0, pages[i = newPage(number)], 0, pageSize);
+            lastRead = number + (read > 0? ((read - 1) >> shift) : 0);
+         }
+         else
+            readPages(lastRead = number, pages[i = newPage(number)], pageSize);
+      }
+      lastUses[i] = ++clock;
+      return i;
+   }
+   
+   /**
+    * Reads pages from the disk. The bytes beyond the end of the file are zeroed.
+    * 
+    * @param number The number of the first page.
+    * @param buffer The buffer where the pages are read into.
+    * @param length The number of bytes to be read.
+    * @return The number of bytes that were read from the file.
+    * @throws IOException If it is not possible to read the file.
+    */
+   private int readPages(int number, byte[] buffer, int length) throws IOException
+   {
+      int start = number << pageShift,
+          total = Math.max(0, Math.min(length, size - start)),
+          read = 0,
+          n;
+      
+      if (total > 0)
+      {
+         f.setPos(start);
+         while (read < total)
+         {
+            if ((n = f.readBytes(buffer, read, total - read)) <= 0)
+               throw new IOException(LitebaseMessage.getMessage(LitebaseMessage.ERR_CANT_READ));
+            read += n;
+         }
+      }
+      Convert.fill(buffer, read, length, 0);
+      return read;
+   }
+   
+   /**
+    * Gets a free position in the cache for a page, replacing the least recently used one if the cache is full. 
+    * 
+    * @param number The number of the page which will be stored in the position.
+    * @return The position of the page in the cache.
+    * @throws IOException If an internal method throws it.
+    */
+   private int newPage(int number) throws IOException
+   {
+      int i = pageCount;
+      
+      if (i < pages.length)
+         pages[pageCount++] = new byte[pageSize];
+      else
+      {
+         int[] uses = lastUses;
+         int oldest = uses[i = 0],
+             j = pageCount;
+         
+         while (--j > 0)
+            if (uses[j] - oldest < 0) // Works even if the clock wraps around.
+               oldest = uses[i = j];
+         
+         if (dirtyEnds[i] > dirtyInis[i]) // Saves all the dirty pages at once if this one is dirty.
+            flushCache();
+         try
+         {
+            positions.remove(pageNumbers[i]);
+         }
+         catch (ElementNotFoundException exception) {}
+      }
+      
+      positions.put(pageNumbers[i] = number, i);
+      lastUses[i] = ++clock;
+      dirtyInis[i] = pageSize;
+      dirtyEnds[i] = 0;
+      return i;
+   }
+}
@@ -68,6 +68,17 @@ class PlainDB
     * A buffer to read a row.
     */
    byte[] basbuf;
+   
+   /**
+    * How many times a row was read or prepared to be added in the row buffer. A result set which reads the table directly uses it to know if 
+    * another statement used the buffer after it read its current row.
+    */
+   int rowReads;
+   
+   /**
+    * Indicates if the change log of the table was saved when closing it.
+    */
+   boolean hasChangeLog;
 
    /**
     * The data stream to read data from the table.
@@ -104,6 +115,26 @@ class PlainDB
     */
    LitebaseConnection driver;
    
+   /**
+    * The page size of the table files if they are cached in pages.
+    */
+   int pageSize;
+   
+   /**
+    * The number of pages of each table file kept in memory, or 0 if the table files use the default contiguous cache.
+    */
+   int maxPages;
+   
+   /**
+    * A buffer used for reading ascii strings in <code>PlainDB.loadString()</code>.
+    */
+   private byte[] buffer = new byte[1];
+   
+   /**
+    * A buffer used for reading unicode strings in <code>PlainDB.loadString()</code>.
+    */
+   private char[] valueAsChars = new char[1];
+   
    /**
     * Creates a new <code>PlainDB</code>, loading or creating the table with the given name or creating a temporary table.
     *
@@ -167,6 +198,33 @@ class PlainDB
          return new NormalFile(Utils.getFullFileName(name, sourcePath), create, -1);
    }
 
+   /**
+    * Changes how the .db and .dbo files are cached. Disk files can use either a single contiguous cache or many fixed size pages.
+    * 
+    * @param newPageSize The page size, a power of 2 between <code>PagedFile.MIN_PAGE_SIZE</code> and <code>PagedFile.MAX_PAGE_SIZE</code>.
+    * @param pages The number of pages of each file kept in memory, or 0 to use the default contiguous cache.
+    * @throws IOException If an internal method throws it.
+    */
+   void setPageCache(int newPageSize, int pages) throws IOException
+   {
+      if (db instanceof NormalFile && (pages != maxPages || (pages > 0 && newPageSize != pageSize))) // Memory tables don't need this.
+      {
+         if (pages == 0)
+         {
+            db = new NormalFile((NormalFile)db);
+            dbo = new NormalFile((NormalFile)dbo);
+         }
+         else
+         {
+            db = new PagedFile((NormalFile)db, newPageSize, pages);
+            dbo = new PagedFile((NormalFile)dbo, newPageSize, pages);
+         }
+         dsdbo = new DataStreamLB(dbo, useCrypto);
+         pageSize = newPageSize;
+         maxPages = pages;
+      }
+   }
+
    /**
     * Adds a new record. The file pointer is positioned in the record's beginning so that the data can be written. Usually the record is first 
     * added, then the contents are written.
@@ -182,6 +240,7 @@ class PlainDB
       }
       db.setPos(headerSize + rowCount * rowSize); // Sets the position to the start of the record.
       bas.reset(); // Prepares the buffer to be written.
+      rowReads++;
    }
 
    /**
@@ -206,6 +265,7 @@ class PlainDB
       db.setPos(headerSize + pos * rowSize);
       bas.reset();
       db.readBytes(basbuf, 0, rowSize);
+      rowReads++;
    }
 
    /**
@@ -303,6 +363,26 @@ class PlainDB
     * @throws IOException If an internal method throws it.
     */
    void close(boolean updatePos) throws IOException
+   {
+      writeSavedCorrectly(hasChangeLog);
+
+      if (updatePos)
+         db.finalPos = rowCount * rowSize + headerSize; // Calculates .db used space: .db won't have zeros at the end.
+      
+      // Closes the files.
+      db.close();
+      dbo.close();
+
+      dbo = db = null;
+   }
+   
+   /**
+    * Writes the first bytes of the .db header, which tell that the table files were saved correctly.
+    * 
+    * @param hasLog Indicates if the saved change log file matches the table.
+    * @throws IOException If an internal method throws it.
+    */
+   void writeSavedCorrectly(boolean hasLog) throws IOException
    {
       ByteArrayStream tsmdBas = new ByteArrayStream(7);
       DataStreamLB tsmdDs = new DataStreamLB(tsmdBas, useCrypto); // Creates a new stream.
@@ -316,18 +396,9 @@ class PlainDB
       tsmdDs.writeShort(headerSize);
       
       // The table format must also be saved.
-      tsmdDs.writeByte(isAscii? (Table.IS_ASCII | Table.IS_SAVED_CORRECTLY) : Table.IS_SAVED_CORRECTLY);
+      tsmdDs.writeByte((isAscii? (Table.IS_ASCII | Table.IS_SAVED_CORRECTLY) : Table.IS_SAVED_CORRECTLY) | (hasLog? Table.HAS_CHANGE_LOG : 0));
       
       writeMetaData(tsmdBas.getBuffer(), tsmdBas.getPos());
-
-      if (updatePos)
-         db.finalPos = rowCount * rowSize + headerSize; // Calculates .db used space: .db won't have zeros at the end.
-      
-      // Closes the files.
-      db.close();
-      dbo.close();
-
-      dbo = db = null;
    }
 
    /**
@@ -375,9 +446,22 @@ class PlainDB
                dbo.setPos(stream.readInt());
                value.asInt = dsdbo.readInt();
                value.asLong = dsdbo.readInt();
-               PlainDB plainDB = ((Table)driver.htTables.get((int)value.asLong)).db;
-               plainDB.dbo.setPos(value.asInt);
-               value.asString = plainDB.loadString();
+               
+               // The string may be read after the query has finished, while another thread uses the original table.
+               Table table = (Table)driver.htTables.get((int)value.asLong);
+               PlainDB plainDB = table.db;
+               TableLock lock = table.lock;
+               
+               lock.lockExclusive();
+               try
+               {
+                  plainDB.dbo.setPos(value.asInt);
+                  value.asString = plainDB.loadString();
+               }
+               finally
+               {
+                  lock.unlockExclusive();
+               }
             }
             else
             {   
@@ -435,11 +519,22 @@ class PlainDB
             {
                dbo.setPos(stream.readInt());
                int pos = dsdbo.readInt();
-               PlainDB plainDB = ((Table)driver.htTables.get(dsdbo.readInt())).db;
-               plainDB.dbo.setPos(pos);
-               value.asBlob = new byte[plainDB.dsdbo.readInt()];
-               if (value.asBlob.length > 0)
-                  plainDB.dsdbo.readBytes(value.asBlob);
+               Table table = (Table)driver.htTables.get(dsdbo.readInt());
+               PlainDB plainDB = table.db;
+               TableLock lock = table.lock;
+               
+               lock.lockExclusive(); // The blob may be read while another thread uses the original table.
+               try
+               {
+                  plainDB.dbo.setPos(pos);
+                  value.asBlob = new byte[plainDB.dsdbo.readInt()];
+                  if (value.asBlob.length > 0)
+                     plainDB.dsdbo.readBytes(value.asBlob);
+               }
+               finally
+               {
+                  lock.unlockExclusive();
+               }
                
             }
             else // A blob is being returned to the result set.
@@ -633,19 +728,113 @@ class PlainDB
       int length = dsdbo.readUnsignedShort();
       if (isAscii) // juliana@210_2: now Litebase supports tables with ascii strings.
       {
-         byte[] buf = driver.buffer;
+         byte[] buf = buffer;
          if (buf.length < length)
-            driver.buffer = buf = new byte[length];
+            buffer = buf = new byte[length];
          dsdbo.readBytes(buf, 0, length);
          return length != 0? new String(buf, 0, length) : ""; // Reads the string.
       }
       else
       {
-         char[] chars = driver.valueAsChars;
+         char[] chars = valueAsChars;
          if (chars.length < length)
-            driver.valueAsChars = chars = new char[length];
+            valueAsChars = chars = new char[length];
          dsdbo.readChars(chars, length);            
          return length != 0? new String(chars, 0, length) : ""; // Reads the string.
       }
    }
+   
+   /**
+    * Loads a string from the .dbo into a char array, without creating a string. Only the characters which fit in the array are copied. Ascii 
+    * strings have their bytes widened to chars.
+    * 
+    * @param chars The array where the characters are copied to.
+    * @param start The position of the array where the first character is copied to.
+    * @return The string length, which may be greater than the number of characters copied.
+    * @throws IOException If an internal method throws it.
+    */
+   int loadChars(char[] chars, int start) throws IOException
+   {
+      int length = dsdbo.readUnsignedShort(),
+          count = Math.min(length, chars.length - start),
+          size = isAscii? count : count << 1,
+          i = -1;
+      byte[] buf = buffer;
+      
+      if (buf.length < size)
+         buffer = buf = new byte[size];
+      if (size > 0) // juliana@212_8: when reading a file, an exception must not be thrown when reading zero bytes.
+         dsdbo.readBytes(buf, 0, size);
+      
+      if (isAscii) // juliana@210_2: now Litebase supports tables with ascii strings.
+         while (++i < count)
+            chars[start + i] = (char)(buf[i] & 0xFF);
+      else
+         while (++i < count) // The chars are little endian.
+            chars[start + i] = (char)((buf[i << 1] & 0xFF) | ((buf[(i << 1) + 1] & 0xFF) << 8));
+      return length;
+   }
+   
+   /**
+    * Loads a blob from the .dbo into a byte array, without creating a new one. Only the bytes which fit in the array are copied.
+    * 
+    * @param blob The array where the blob is copied to.
+    * @param start The position of the array where the first byte is copied to.
+    * @return The blob size, which may be greater than the number of bytes copied.
+    * @throws IOException If an internal method throws it.
+    */
+   int loadBlob(byte[] blob, int start) throws IOException
+   {
+      int length = dsdbo.readInt(),
+          count = Math.min(length, blob.length - start);
+      
+      if (count > 0) // juliana@212_8: when reading a file, an exception must not be thrown when reading zero bytes.
+         dsdbo.readBytes(blob, start, count);
+      return length;
+   }
+   
+   /**
+    * Reads a string or a blob of a row into an array, without creating a new object. Only the characters or bytes which fit in the array are 
+    * copied.
+    * 
+    * @param stream The stream where the row data is stored, positioned at the value.
+    * @param isTemporary Indicates if this is a result set table, whose values are stored in their original tables.
+    * @param chars The array where the characters of a string are copied to or <code>null</code> if a blob is being read.
+    * @param blob The array where the bytes of a blob are copied to or <code>null</code> if a string is being read.
+    * @param start The position of the array where the first character or byte is copied to.
+    * @return The string length or the blob size, which may be greater than the number of characters or bytes copied.
+    * @throws IOException If an internal method throws it.
+    */
+   int readArray(DataStreamLB stream, boolean isTemporary, char[] chars, byte[] blob, int start) throws IOException
+   {
+      if (isTemporary)
+      {
+         dbo.setPos(stream.readInt());
+         int pos = dsdbo.readInt();
+         
+         // The value may be read after the query has finished, while another thread uses the original table.
+         Table table = (Table)driver.htTables.get(dsdbo.readInt());
+         PlainDB plainDB = table.db;
+         TableLock lock = table.lock;
+         
+         lock.lockExclusive();
+         try
+         {
+            plainDB.dbo.setPos(pos);
+            return chars != null? plainDB.loadChars(chars, start) : plainDB.loadBlob(blob, start);
+         }
+         finally
+         {
+            lock.unlockExclusive();
+         }
+      }
+      
+      int pos = stream.readInt();
+      if (pos < dbo.finalPos && pos >= 0)
+      {
+         dbo.setPos(pos); // Reads the value position in the .dbo and sets its position.
+         return chars != null? loadChars(chars, start) : loadBlob(blob, start);
+      }
+      return 0;
+   }
 }
@@ -18,7 +18,7 @@ public class PreparedStatement
    /**
     * The SQL command expression.
     */
-   private String sqlExpression;
+   String sqlExpression;
 
    /**
     * The connection with Litebase.
@@ -30,7 +30,7 @@ public class PreparedStatement
     * <code> SQLElement.STMT_UPDATE</code>, <code>SQLElement.STMT_DELETE</code>, <code>SQLElement.STMT_DROP</code>,
     * <code>SQLElement.STMT_ALTER</code>, and <code>SQLElement.STMT_CREATE</code>.
     */
-   private int type;
+   int type;
 
    /**
     * The parameters for the prepared statement in string format.
@@ -46,11 +46,31 @@ public class PreparedStatement
     * Indicates if there are parameters in the SQL command.
     */
    private boolean storeParams; // guich@566_15
+   
+   /**
+    * A temporary buffer for strings.
+    */
+   private StringBuffer sBuffer = new StringBuffer();
 
    /**
     * The statement.
     */
    private SQLStatement statement;
+   
+   /**
+    * The schema version of the connection when the statement was bound.
+    */
+   int schemaVersion;
+   
+   /**
+    * The statement used right after this one when it is in the statement cache of the connection.
+    */
+   PreparedStatement newer;
+   
+   /**
+    * The statement used right before this one when it is in the statement cache of the connection.
+    */
+   PreparedStatement older;
 
    // juliana@230_11: Litebase public class constructors are now not public any more. 
    /**
@@ -74,6 +94,7 @@ public class PreparedStatement
       String tempSQL = sqlExpression = sql; // guich@503_9: Assign this, or it will become unusable. This is necessary for logging.
       driver = newDriver;
       type = SQLElement.CMD_NONE;
+      schemaVersion = newDriver.schemaVersion;
       
       LitebaseParser parser = null; // Parses and binds the statement.
       
@@ -121,55 +142,63 @@ public class PreparedStatement
       
       // juliana@226_15: corrected a bug that would make a prepared statement with where clause and indices not work correctly after the first 
       // execution.
-      switch (type) // Gets the command in the SQL expression and calls the apropriate create statement.
+      driver.catalogLock.lockShared(); // The tables can't be dropped or altered while the statement is bound.
+      try
       {
-         case SQLElement.CMD_INSERT: // INSERT
-            statement = new SQLInsertStatement(parser, driver).litebaseBindInsertStatement();
-            break;
-         case SQLElement.CMD_UPDATE: // UPDATE
-            statement = new SQLUpdateStatement(parser).litebaseBindUpdateStatement(driver);
-            SQLBooleanClause whereClause = ((SQLUpdateStatement)statement).whereClause;
-            if (whereClause != null)
-               whereClause.expressionTreeBak = whereClause.expressionTree.cloneTree(null);
-            break;
-         case SQLElement.CMD_DELETE: // DELETE
-            statement = new SQLDeleteStatement(parser).litebaseBindDeleteStatement(driver);
-            if ((whereClause = ((SQLDeleteStatement)statement).whereClause) != null)
-               whereClause.expressionTreeBak = whereClause.expressionTree.cloneTree(null);
-            break;
-         case SQLElement.CMD_SELECT: // SELECT
-            statement = new SQLSelectStatement(parser).litebaseBindSelectStatement(driver);
-            SQLSelectStatement selectStmt = (SQLSelectStatement)statement;
-            SQLColumnListClause orderByClause = selectStmt.orderByClause,
-                                groupByClause = selectStmt.groupByClause;
-            SQLResultSetField[] fieldList;
-            short[] vi; // juliana@226_1
-            int n;
+         switch (type) // Gets the command in the SQL expression and calls the apropriate create statement.
+         {
+            case SQLElement.CMD_INSERT: // INSERT
+               statement = new SQLInsertStatement(parser, driver).litebaseBindInsertStatement();
+               break;
+            case SQLElement.CMD_UPDATE: // UPDATE
+               statement = new SQLUpdateStatement(parser).litebaseBindUpdateStatement(driver);
+               SQLBooleanClause whereClause = ((SQLUpdateStatement)statement).whereClause;
+               if (whereClause != null)
+                  whereClause.expressionTreeBak = whereClause.expressionTree.cloneTree(null);
+               break;
+            case SQLElement.CMD_DELETE: // DELETE
+               statement = new SQLDeleteStatement(parser).litebaseBindDeleteStatement(driver);
+               if ((whereClause = ((SQLDeleteStatement)statement).whereClause) != null)
+                  whereClause.expressionTreeBak = whereClause.expressionTree.cloneTree(null);
+               break;
+            case SQLElement.CMD_SELECT: // SELECT
+               statement = new SQLSelectStatement(parser).litebaseBindSelectStatement(driver);
+               SQLSelectStatement selectStmt = (SQLSelectStatement)statement;
+               SQLColumnListClause orderByClause = selectStmt.orderByClause,
+                                   groupByClause = selectStmt.groupByClause;
+               SQLResultSetField[] fieldList;
+               short[] vi; // juliana@226_1
+               int n;
             
-            if (orderByClause != null)
-            {
-               n = orderByClause.fieldList.length;
-               fieldList = orderByClause.fieldList;
+               if (orderByClause != null)
+               {
+                  n = orderByClause.fieldList.length;
+                  fieldList = orderByClause.fieldList;
             
-               // Saves the order by clause if there's no backup yet.
-               vi = orderByClause.fieldTableColIndexesBak = new short[n]; // juliana@226_1
-               while (--n >= 0)
-                  vi[n] = (short)fieldList[n].tableColIndex; // juliana@226_1
-            }
+                  // Saves the order by clause if there's no backup yet.
+                  vi = orderByClause.fieldTableColIndexesBak = new short[n]; // juliana@226_1
+                  while (--n >= 0)
+                     vi[n] = (short)fieldList[n].tableColIndex; // juliana@226_1
+               }
             
-            // juliana@226_14: corrected a bug that would make a prepared statement with group by not work correctly after the first execution.
-            if (groupByClause != null)
-            {
-               n = groupByClause.fieldList.length;
-               fieldList = groupByClause.fieldList;
+               // juliana@226_14: corrected a bug that would make a prepared statement with group by not work correctly after the first execution.
+               if (groupByClause != null)
+               {
+                  n = groupByClause.fieldList.length;
+                  fieldList = groupByClause.fieldList;
             
-               // Saves the order by clause if there's no backup yet.
-               vi = groupByClause.fieldTableColIndexesBak = new short[n]; // juliana@226_1
-               while (--n >= 0)
-                  vi[n] = (short)fieldList[n].tableColIndex; // juliana@226_1
-            }
-            if ((whereClause = selectStmt.whereClause) != null)
-               whereClause.expressionTreeBak = whereClause.expressionTree.cloneTree(null);
+                  // Saves the order by clause if there's no backup yet.
+                  vi = groupByClause.fieldTableColIndexesBak = new short[n]; // juliana@226_1
+                  while (--n >= 0)
+                     vi[n] = (short)fieldList[n].tableColIndex; // juliana@226_1
+               }
+               if ((whereClause = selectStmt.whereClause) != null)
+                  whereClause.expressionTreeBak = whereClause.expressionTree.cloneTree(null);
+         }
+      }
+      finally
+      {
+         driver.catalogLock.unlockShared();
       }
 
       // If the statement is to be used as a prepared statement, it is possible to use log.
@@ -231,16 +260,7 @@ public class PreparedStatement
                LitebaseConnection.logger.logInfo(toStringBuffer());
             }
    
-         resetWhereClause(selectStmt.whereClause); // guich@550_43: fixed problem when reusing the statement.
-   
-         // guich@554_37: tableColIndex may change between runs of a prepared statement with a sort field so we have to cache the tableColIndex of the 
-         // order by fields.
-         resetColumnListClause(selectStmt.orderByClause);
-         
-         // juliana@226_14: corrected a bug that would make a prepared statement with group by not work correctly after the first execution.
-         resetColumnListClause(selectStmt.groupByClause);
-
-         return selectStmt.litebaseDoSelect(driver); // Executes the query.
+         return doSelect(); // Executes the query.
       }
       catch (IOException exception)
       {
@@ -256,6 +276,42 @@ public class PreparedStatement
       }
    }
 
+   /**
+    * Executes a prepared select without checking the state of the statement or logging it.
+    *
+    * @return The <code>ResultSet</code> of the SQL statement.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    * @throws InvalidNumberException If an internal method throws it.
+    */
+   ResultSet doSelect() throws IOException, InvalidDateException, InvalidNumberException
+   {
+      SQLSelectStatement selectStmt = (SQLSelectStatement)statement; // The select statement.
+      LitebaseConnection driverAux = driver;
+      Table[] tables = null;
+      
+      driverAux.catalogLock.lockShared(); // The tables of the select are locked while the statement is reset and executed.
+      try
+      {
+         tables = driverAux.lockTables(selectStmt.selectClause.tableList);
+         
+         resetWhereClause(selectStmt.whereClause); // guich@550_43: fixed problem when reusing the statement.
+         
+         // guich@554_37: tableColIndex may change between runs of a prepared statement with a sort field so we have to cache the tableColIndex of 
+         // the order by fields.
+         resetColumnListClause(selectStmt.orderByClause);
+         
+         // juliana@226_14: corrected a bug that would make a prepared statement with group by not work correctly after the first execution.
+         resetColumnListClause(selectStmt.groupByClause);
+         
+         return selectStmt.litebaseDoSelect(driverAux);
+      }
+      finally
+      {
+         driverAux.unlockTables(tables);
+      }
+   }
+
    /**
     * Resets an order by or group by clause because the <code>tableColIndex</code> may change between runs of a prepared statement with a sort field. 
     * So, it is necessary to cache the <code>tableColIndex</code> of order by fields.
@@ -327,46 +383,76 @@ public class PreparedStatement
 
       try
       {
-         switch (type) // Returns the number of rows affected or if the command was successfully executed.
+         return doUpdate();
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      catch (InvalidDateException exception)
+      {
+         throw new SQLParseException(exception);
+      }
+      catch (InvalidNumberException exception)
+      {
+         throw new SQLParseException(exception);
+      }
+   }
+   
+   /**
+    * Executes a prepared statement which is not a select without checking the state of the statement, its parameters, or logging it.
+    *
+    * @return The result is either the row count for <code>INSERT</code>, <code>UPDATE</code>, or <code>DELETE</code> statements; or 0 for SQL 
+    * statements that return nothing.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    * @throws InvalidNumberException If an internal method throws it.
+    */
+   int doUpdate() throws IOException, InvalidDateException, InvalidNumberException
+   {
+      // Creates and other commands which change the catalog do their own locking.
+      if (type == SQLElement.CMD_CREATE_TABLE)
+      {
+         driver.execute(sqlExpression);
+         return 0;
+      }
+      if (type != SQLElement.CMD_INSERT && type != SQLElement.CMD_UPDATE && type != SQLElement.CMD_DELETE)
+         return driver.executeUpdate(sqlExpression);
+      
+      LitebaseConnection driverAux = driver;
+      Table table = null;
+      
+      driverAux.catalogLock.lockShared(); // Only the table of the statement is locked.
+      try
+      {
+         switch (type) // Returns the number of rows affected.
          {
             case SQLElement.CMD_INSERT:
                SQLInsertStatement insertStmt = (SQLInsertStatement)statement;
+               table = driverAux.lockTable(insertStmt.tableName, true);
                rearrangeNullsInTable(insertStmt.table, insertStmt, true);
                insertStmt.table.convertStringsToValues(insertStmt.record);
-               insertStmt.litebaseDoInsert(driver);
+               insertStmt.litebaseDoInsert(driverAux);
                return 1;
-   
+      
             case SQLElement.CMD_UPDATE:
                SQLUpdateStatement updateStmt = (SQLUpdateStatement)statement;
+               table = driverAux.lockTable(updateStmt.rsTable.tableName, true);
                rearrangeNullsInTable(updateStmt.rsTable.table, updateStmt, true);
                resetWhereClause(updateStmt.whereClause); // guich@554_13
                updateStmt.rsTable.table.convertStringsToValues(updateStmt.record);
-               return updateStmt.litebaseDoUpdate(driver);
-   
-            case SQLElement.CMD_DELETE:
+               return updateStmt.litebaseDoUpdate(driverAux);
+      
+            default: // DELETE
                SQLDeleteStatement deleteStmt = (SQLDeleteStatement)statement;
+               table = driverAux.lockTable(deleteStmt.rsTable.tableName, true);
                resetWhereClause(deleteStmt.whereClause); // guich@_554_13
-               return deleteStmt.litebaseDoDelete(driver);
-   
-            case SQLElement.CMD_CREATE_TABLE:
-               driver.execute(sqlExpression);
-               return 0;
-               
-            default:
-               return driver.executeUpdate(sqlExpression);
+               return deleteStmt.litebaseDoDelete(driverAux);
          }
       }
-      catch (IOException exception)
+      finally
       {
-         throw new DriverException(exception);
-      }
-      catch (InvalidDateException exception)
-      {
-         throw new SQLParseException(exception);
-      }
-      catch (InvalidNumberException exception)
-      {
-         throw new SQLParseException(exception);
+         driverAux.unlockTable(table, true);
       }
    }
 
@@ -551,7 +637,7 @@ public class PreparedStatement
                paramsAsStrs[index] = null;
             else
             {
-               StringBuffer sbuf = driver.sBuffer;
+               StringBuffer sbuf = sBuffer;
                
                sbuf.setLength(0);
                paramsAsStrs[index] = sbuf.append('\'').append(value).append('\'').toString();
@@ -630,7 +716,7 @@ public class PreparedStatement
    public void setDateTime(int index, Time time) // juliana@220_6: setDate() and setDateTime() must accept null values.
    {
       // Formats the time so that it can be accepted by SQL.
-      StringBuffer sbuf = driver.sBuffer;
+      StringBuffer sbuf = sBuffer;
          
       sbuf.setLength(0);
       if (time == null)
@@ -697,7 +783,7 @@ public class PreparedStatement
       
       if (storeParams)
       {
-         StringBuffer sb = driver.sBuffer; 
+         StringBuffer sb = sBuffer; 
          String sql = sqlExpression;
          short[] poss = paramsPos;
          String[] strs = paramsAsStrs; 
@@ -726,7 +812,7 @@ public class PreparedStatement
     */
    private StringBuffer toStringBuffer() 
    {  
-      StringBuffer sb = driver.sBuffer;
+      StringBuffer sb = sBuffer;
       sb.setLength(0);
       
       if (storeParams)
@@ -790,8 +876,11 @@ public class PreparedStatement
    {
       if (driver.htTables == null) // The connection with Litebase can't be closed.
          throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_DRIVER_CLOSED));
-      if (driver.htPS.remove(sqlExpression.hashCode()) == null) // The prepared statement can't be closed.
-         throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_PREPARED_CLOSED));
+      synchronized (driver.htPS)
+      {
+         if (driver.htPS.remove(sqlExpression.hashCode()) == null) // The prepared statement can't be closed.
+            throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_PREPARED_CLOSED));
+      }
    }
    
    // juliana@253_21: added PreparedStatement.isValid().
@@ -76,11 +76,23 @@ public class ResultSet
     */
    IntVector rowsBitmap;
 
+   /**
+    * Indicates that <code>rowsBitmap</code> only has rows whose keys were found in the indices, which are never deleted. Otherwise, the bitmap may 
+    * also have rows that were marked by the negation of an index search.
+    */
+   boolean rowsBitmapFromKeys;
+
    /**
     * An auxiliary map with rows that satisfy totally or partially the query WHERE clause; generated from the table indices.
     */
    IntVector auxRowsBitmap; // juliana@230_14: removed temporary tables when there is no join, group by, order by, and aggregation.
 
+   /**
+    * The hash tables built for the columns of this result set used in hash joins, indexed by column. They are only created when the join is 
+    * evaluated for the first time.
+    */
+   HashJoinTable[] hashJoinTables;
+
    /** 
     * The indices used in this result set. 
     */
@@ -117,6 +129,17 @@ public class ResultSet
     */
    private SQLValue vrs = new SQLValue();
    
+   /**
+    * A buffer used to append strings to a <code>StringBuffer</code> without creating them.
+    */
+   private char[] valueAsChars = new char[16];
+   
+   /**
+    * The number of rows read by the table when this result set read its current row. Only used when the rows are read directly from a table, 
+    * whose row buffer may be used by other statements between the calls to this result set.
+    */
+   private int rowReads;
+   
    /**
     * The connection with Litebase.
     */
@@ -214,6 +237,7 @@ public class ResultSet
    {
       verifyResultSet(); // The driver or result set can't be closed.
       
+      TableLock lock = lockTable();
       try
       {
          byte[] rowsBitmap = allRowsBitmap;
@@ -278,6 +302,10 @@ public class ResultSet
       {
          throw new DriverException(exception);
       }
+      finally
+      {
+         unlockTable(lock);
+      }
       return false;
    }
 
@@ -291,6 +319,7 @@ public class ResultSet
    {
       verifyResultSet(); // The driver or result set can't be closed.
       
+      TableLock lock = lockTable();
       try
       {
          byte[] rowsBitmap = allRowsBitmap;
@@ -353,6 +382,10 @@ public class ResultSet
       {
          throw new DriverException(exception);
       }
+      finally
+      {
+         unlockTable(lock);
+      }
       return false;
    }
 
@@ -549,6 +582,147 @@ public class ResultSet
    {
       return getFromName(colName, SQLElement.UNDEFINED)? vrs.asString : null;
    }
+   
+   /**
+    * Given the column index (starting from 1), copies the characters of its value into a char array, without creating a string or a new array. 
+    * Only the characters which fit in the array are copied: if the length returned is greater than the space available, the array must be 
+    * enlarged and this method called again. Note that it is only possible to request this column as a char array if it was created as a string.
+    *
+    * @param colIdx The column index.
+    * @param chars The array where the characters are copied to.
+    * @param start The position of the array where the first character is copied to.
+    * @return The length of the column value; if the value is SQL <code>NULL</code>, the value returned is <code>-1</code>.
+    */
+   public int getChars(int colIdx, char[] chars, int start)
+   {
+      checkColumn(colIdx); // Checks the column index, the result set, and driver state.
+      return privateGetArray(colIdx, SQLElement.CHARS, chars, null, start);
+   }
+   
+   /**
+    * Given the column name (case insensitive), copies the characters of its value into a char array, without creating a string or a new array. 
+    * Only the characters which fit in the array are copied: if the length returned is greater than the space available, the array must be 
+    * enlarged and this method called again. Note that it is only possible to request this column as a char array if it was created as a string. 
+    * This method is slightly slower then the method that accepts a column index.
+    *
+    * @param colName The column name.
+    * @param chars The array where the characters are copied to.
+    * @param start The position of the array where the first character is copied to.
+    * @return The length of the column value; if the value is SQL <code>NULL</code>, the value returned is <code>-1</code>.
+    * @throws DriverException If the column name is not found.
+    */
+   public int getChars(String colName, char[] chars, int start) throws DriverException
+   {
+      return privateGetArray(getColumnFromName(colName), SQLElement.CHARS, chars, null, start);
+   }
+   
+   /**
+    * Given the column index (starting from 1), copies its blob into a byte array, without creating a new array. Only the bytes which fit in the 
+    * array are copied: if the size returned is greater than the space available, the array must be enlarged and this method called again. Note 
+    * that it is only possible to request this column as a blob if it was created this way.
+    *
+    * @param colIdx The column index.
+    * @param blob The array where the blob is copied to.
+    * @param start The position of the array where the first byte is copied to.
+    * @return The size of the column value; if the value is SQL <code>NULL</code>, the value returned is <code>-1</code>.
+    */
+   public int getBlob(int colIdx, byte[] blob, int start)
+   {
+      checkColumn(colIdx); // Checks the column index, the result set, and driver state.
+      return privateGetArray(colIdx, SQLElement.BLOB, null, blob, start);
+   }
+   
+   /**
+    * Given the column name (case insensitive), copies its blob into a byte array, without creating a new array. Only the bytes which fit in the 
+    * array are copied: if the size returned is greater than the space available, the array must be enlarged and this method called again. Note 
+    * that it is only possible to request this column as a blob if it was created this way. This method is slightly slower then the method that 
+    * accepts a column index.
+    *
+    * @param colName The column name.
+    * @param blob The array where the blob is copied to.
+    * @param start The position of the array where the first byte is copied to.
+    * @return The size of the column value; if the value is SQL <code>NULL</code>, the value returned is <code>-1</code>.
+    * @throws DriverException If the column name is not found.
+    */
+   public int getBlob(String colName, byte[] blob, int start) throws DriverException
+   {
+      return privateGetArray(getColumnFromName(colName), SQLElement.BLOB, null, blob, start);
+   }
+   
+   /**
+    * Given the column index (starting from 1), appends its value to a string buffer. Any column type except for blobs can be appended. Strings and 
+    * integral numbers are appended without creating a string. <code>Double</code>/<code>float</code> values formatting will use the precision set 
+    * with the <code>setDecimalPlaces()</code> method.
+    *
+    * @param colIdx The column index.
+    * @param buffer The buffer where the value is appended.
+    * @return <code>true</code> if the value was appended; <code>false</code> if it is SQL <code>NULL</code> or a blob.
+    */
+   public boolean getString(int colIdx, StringBuffer buffer)
+   {
+      checkColumn(colIdx); // Checks the column index, the result set, and driver state.
+      return privateAppend(colIdx, buffer);
+   }
+   
+   /**
+    * Given the column name (case insensitive), appends its value to a string buffer. Any column type except for blobs can be appended. Strings and 
+    * integral numbers are appended without creating a string. <code>Double</code>/<code>float</code> values formatting will use the precision set 
+    * with the <code>setDecimalPlaces()</code> method. This method is slightly slower then the method that accepts a column index.
+    *
+    * @param colName The column name.
+    * @param buffer The buffer where the value is appended.
+    * @return <code>true</code> if the value was appended; <code>false</code> if it is SQL <code>NULL</code> or a blob.
+    * @throws DriverException If the column name is not found.
+    */
+   public boolean getString(String colName, StringBuffer buffer) throws DriverException
+   {
+      return privateAppend(getColumnFromName(colName), buffer);
+   }
+   
+   /**
+    * Fetches all the values of the current row as text into a reusable row object. Its arrays are reused and only grow when a value does not fit 
+    * in them, so that scrolling through the result set does not create a string for each value read. Blobs are not fetched. 
+    * <code>Double</code>/<code>float</code> values formatting will use the precision set with the <code>setDecimalPlaces()</code> method.
+    * 
+    * @param row The object which will hold the values of the row.
+    * @throws DriverException If an <code>IOException</code> occurs or the result set is in an invalid position.
+    */
+   public void fetchRow(ResultSetRow row) throws DriverException
+   {
+      verifyResultSet(); // The driver or result set can't be closed.
+      
+      int n = fields.length, // juliana@114_10: skips the rowid.
+          i = -1,
+          length;
+      row.setColumnCount(n);
+      char[][] values = row.values;
+      int[] lengths = row.lengths;
+      StringBuffer buffer = row.buffer;
+      char[] chars;
+      
+      while (++i < n) // The columns are read in order, so that the strings are read sequentially from the .dbo.
+      {
+         chars = values[i];
+         if (isStringColumn(i + 1)) // Strings are copied directly into the row.
+         {
+            if ((length = privateGetArray(i + 1, SQLElement.CHARS, chars, null, 0)) > chars.length)
+               privateGetArray(i + 1, SQLElement.CHARS, values[i] = new char[length], null, 0);
+         }
+         else
+         {
+            buffer.setLength(0);
+            if (privateAppend(i + 1, buffer))
+            {
+               if ((length = buffer.length()) > chars.length)
+                  chars = values[i] = new char[length];
+               buffer.getChars(0, length, chars, 0);
+            }
+            else
+               length = -1;
+         }
+         lengths[i] = length;
+      }
+   }
 
    /**
     * Starting from the current cursor position, it reads all result set rows that are being requested. <code>first()</code>, <code>last()</code>, 
@@ -606,6 +780,7 @@ public class ResultSet
          throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_RS_INV_POS));
       
       int validRecords = 0; // juliana@211_4: solved bugs with result set dealing.
+      TableLock lock = lockRow();
       
       try
       {
@@ -646,6 +821,10 @@ public class ResultSet
          throw new DriverException(exception);
       }
       catch (InvalidDateException exception) {}
+      finally
+      {
+         unlockTable(lock);
+      }
       
       // juliana@211_4: solved bugs with result set dealing.
       // The strings matrix can't have nulls at the end.
@@ -753,6 +932,7 @@ public class ResultSet
    {
       verifyResultSet(); // The driver or result set can't be closed.
       
+      TableLock lock = lockTable();
       try // juliana@114_10: if the table of the result set has deleted rows, the absolute row must be searched.
       {
          byte[] rowsBitmap = allRowsBitmap;
@@ -808,6 +988,10 @@ public class ResultSet
       {
          throw new DriverException(exception);
       }
+      finally
+      {
+         unlockTable(lock);
+      }
       return true;
    }
 
@@ -822,6 +1006,7 @@ public class ResultSet
    {
       verifyResultSet(); // The driver or result set can't be closed.
       
+      TableLock lock = lockTable();
       try // juliana@114_10: if the table of the result set has deleted rows, the relative row must be searched.
       {
          byte[] rowsBitmap = allRowsBitmap;
@@ -905,6 +1090,10 @@ public class ResultSet
       {
          throw new DriverException(exception);
       }
+      finally
+      {
+         unlockTable(lock);
+      }
       return true;
    }
 
@@ -1075,46 +1264,54 @@ public class ResultSet
       int columns = rsFields.length,
           column,
           i = -1;
-      StringBuffer sBuffer = driver.sBuffer;
+      StringBuffer sBuffer = table.sBuffer;
+      TableLock lock = lockRow();
       
-      sBuffer.setLength(0);
-      
-      while  (++i < columns)
+      try
       {
-         field = rsFields[i];
-         if (isTemporary)
-            column = i;
-         else
-            column = field.parameter == null? field.tableColIndex : field.parameter.tableColIndex;
-            
-         try
+         sBuffer.setLength(0);
+      
+         while  (++i < columns)
          {
-            // Only reads the column if it is not null and not a BLOB.
-            if ((nulls[column >> 3] & (1 << (column & 7))) == 0 && types[column] != SQLElement.BLOB)
+            field = rsFields[i];
+            if (isTemporary)
+               column = i;
+            else
+               column = field.parameter == null? field.tableColIndex : field.parameter.tableColIndex;
+            
+            try
             {
-               // juliana@220_3
-               tableAux.readValue(value, offsets[column], types[column], false, false); 
+               // Only reads the column if it is not null and not a BLOB.
+               if ((nulls[column >> 3] & (1 << (column & 7))) == 0 && types[column] != SQLElement.BLOB)
+               {
+                  // juliana@220_3
+                  tableAux.readValue(value, offsets[column], types[column], false, false); 
                
-               // juliana@226_9: strings are not loaded anymore in the temporary table when building result sets. 
-               if (field.isDataTypeFunction)
-                  applyDataTypeFunction(field, SQLElement.UNDEFINED);
-               else 
-                  createString(types[column], decimals == null? - 1: decimals[column]);
+                  // juliana@226_9: strings are not loaded anymore in the temporary table when building result sets. 
+                  if (field.isDataTypeFunction)
+                     applyDataTypeFunction(field, SQLElement.UNDEFINED);
+                  else 
+                     createString(types[column], decimals == null? - 1: decimals[column]);
                
-               sBuffer.append(value.asString).append('\t');
+                  sBuffer.append(value.asString).append('\t');
+               }
+               else
+                  sBuffer.append('\t');
+            }
+            catch (InvalidDateException exception) {} // Never occurs.
+            catch (IOException exception)
+            {
+               throw new DriverException(exception);
             }
-            else
-               sBuffer.append('\t');
-         }
-         catch (InvalidDateException exception) {} // Never occurs.
-         catch (IOException exception)
-         {
-            throw new DriverException(exception);
          }
-      }
 
-      sBuffer.setLength(sBuffer.length() - 1);
-      return sBuffer.toString();
+         sBuffer.setLength(sBuffer.length() - 1);
+         return sBuffer.toString();
+      }
+      finally
+      {
+         unlockTable(lock);
+      }
    }
    
    /**
@@ -1141,6 +1338,18 @@ public class ResultSet
     * @throws DriverException If the column name is not found.
     */
    private boolean getFromName(String colName, int type) throws DriverException
+   {
+      return privateGetFromIndex(getColumnFromName(colName), type);
+   }
+   
+   /**
+    * Finds the index of a column of the result set given its name.
+    * 
+    * @param colName The column name.
+    * @return The column index (starting from 1).
+    * @throws DriverException If the column name is not found.
+    */
+   private int getColumnFromName(String colName) throws DriverException
    {
       verifyResultSet(); // The driver or result set can't be closed.
       
@@ -1151,7 +1360,7 @@ public class ResultSet
       if (col == -1) // Tests if the column name is mapped in the result set.
          throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_COLUMN_NOT_FOUND) + colName);
       
-      return privateGetFromIndex(col + 1, type);
+      return col + 1;
    }
    
    /**
@@ -1316,16 +1525,16 @@ public class ResultSet
             break;
          case SQLElement.DATE:
             int date = vrs.asInt;
-            driver.tempDate.set(date % 100, (date /= 100) % 100, date / 100);
-            vrs.asString = driver.tempDate.toString();
+            table.tempDate.set(date % 100, (date /= 100) % 100, date / 100);
+            vrs.asString = table.tempDate.toString();
             break;
          case SQLElement.DATETIME:
-            StringBuffer buffer = driver.sBuffer;
+            StringBuffer buffer = table.sBuffer;
             
             buffer.setLength(0);
             date = vrs.asInt;
-            driver.tempDate.set(date % 100, (date /= 100) % 100, date / 100);
-            buffer.append(driver.tempDate).append(' ');
+            table.tempDate.set(date % 100, (date /= 100) % 100, date / 100);
+            buffer.append(table.tempDate).append(' ');
             Utils.formatTime(buffer, vrs.asShort);
             vrs.asString = buffer.toString();
       }  
@@ -1380,7 +1589,15 @@ public class ResultSet
          column = field.parameter == null? field.tableColIndex + 1 : field.parameter.tableColIndex + 1;
       }
       
-      return (table.columnNulls[0][column - 1 >> 3] & (1 << (column - 1 & 7))) != 0; // Is the column null?
+      TableLock lock = lockRow();
+      try
+      {
+         return (table.columnNulls[0][column - 1 >> 3] & (1 << (column - 1 & 7))) != 0; // Is the column null?
+      }
+      finally
+      {
+         unlockTable(lock);
+      }
    }
    
    /**
@@ -1396,7 +1613,57 @@ public class ResultSet
    {
       // juliana@230_14: removed temporary tables when there is no join, group by, order by, and aggregation.
       SQLResultSetField field = fields[column - 1];
+      int typeCol = table.columnTypes[(column = getTableColumn(field, column, type)) - 1];
+      
+      if (type == SQLElement.UNDEFINED && typeCol == SQLElement.BLOB) // getString() returns null for blobs.
+         vrs.asString = null;
       
+      TableLock lock = lockRow();
+      try
+      {
+         if ((table.columnNulls[0][column - 1 >> 3] & (1 << (column - 1 & 7))) == 0) // Only reads the column if it is not null.
+         {
+            if (pos < 0 || pos > lastRecordIndex) // The position of the cursor must be greater then 0 and less then the last position.
+               throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_RS_INV_POS));
+   
+            try // Reads and returns the value read.
+            {
+               table.readValue(vrs, table.columnOffsets[--column], typeCol, false, false); // juliana@220_3
+   
+               // juliana@226_9: strings are not loaded anymore in the temporary table when building result sets. 
+               if (field.isDataTypeFunction)
+                  applyDataTypeFunction(field, type);
+               else if (type == SQLElement.UNDEFINED)
+                  createString(typeCol, decimalPlaces == null? - 1: decimalPlaces[column]);
+            }
+            catch (IOException exception)
+            {
+               throw new DriverException(exception);
+            }
+            catch (InvalidDateException exception) {}
+            return true;
+         }
+            
+         return false;
+      }
+      finally
+      {
+         unlockTable(lock);
+      }
+   }
+   
+   /**
+    * Finds the column of the table of the result set which has a column of the result set and checks if its type is compatible with the type 
+    * requested.
+    * 
+    * @param field The field of the result set column.
+    * @param column The result set column index.
+    * @param type The type requested. <code>SQLElement.UNDEFINED</code> is compatible with any type.
+    * @return The table column index (starting from 1).
+    * @throws DriverException If the kind of return type asked is incompatible from the column definition type.
+    */
+   private int getTableColumn(SQLResultSetField field, int column, int type) throws DriverException
+   {
       // juliana@114_10: skips the rowid.
       
       if (allRowsBitmap != null || isSimpleSelect)  
@@ -1413,33 +1680,177 @@ public class ResultSet
           && (typeCol != type 
           && ((typeCol != SQLElement.CHARS_NOCASE && typeCol != SQLElement.CHARS) || (type != SQLElement.CHARS_NOCASE && type != SQLElement.CHARS))))
             throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_INCOMPATIBLE_TYPES));
+      return column;
+   }
+   
+   /**
+    * Indicates if a column of the result set is a string which can be copied directly from the table, without applying a function to it.
+    * 
+    * @param column The result set column index.
+    * @return <code>true</code> if the column is a string without a function; <code>false</code>, otherwise.
+    */
+   private boolean isStringColumn(int column)
+   {
+      SQLResultSetField field = fields[column - 1];
+      int typeCol = table.columnTypes[getTableColumn(field, column, SQLElement.UNDEFINED) - 1];
+      return !field.isDataTypeFunction && (typeCol == SQLElement.CHARS || typeCol == SQLElement.CHARS_NOCASE);
+   }
+   
+   /**
+    * Copies a string or a blob of the result set into an array, without creating a new object. Only the characters or bytes which fit in the 
+    * array are copied.
+    * 
+    * @param column The column index.
+    * @param type The type of the column: <code>SQLElement.CHARS</code> or <code>SQLElement.BLOB</code>.
+    * @param chars The array where the characters of a string are copied to or <code>null</code> if a blob is being read.
+    * @param blob The array where the bytes of a blob are copied to or <code>null</code> if a string is being read.
+    * @param start The position of the array where the first character or byte is copied to.
+    * @return The string length or the blob size, or -1 if the value is SQL <code>NULL</code>.
+    * @throws DriverException If an <code>IOException</code>occurs or the kind of return type asked is incompatible from the column definition type.
+    */
+   private int privateGetArray(int column, int type, char[] chars, byte[] blob, int start) throws DriverException
+   {
+      SQLResultSetField field = fields[column - 1];
       
-      if (type == SQLElement.UNDEFINED && typeCol == SQLElement.BLOB) // getString() returns null for blobs.
-         vrs.asString = null;
+      if (field.isDataTypeFunction) // The value is changed by the function, so it can't be copied from the table.
+      {
+         if (!privateGetFromIndex(column, type))
+            return -1;
+         
+         String string = vrs.asString;
+         int length = string.length();
+         string.getChars(0, Math.min(length, chars.length - start), chars, start);
+         return length;
+      }
       
-      if ((table.columnNulls[0][column - 1 >> 3] & (1 << (column - 1 & 7))) == 0) // Only reads the column if it is not null.
+      column = getTableColumn(field, column, type);
+      
+      TableLock lock = lockRow();
+      try
       {
+         if ((table.columnNulls[0][column - 1 >> 3] & (1 << (column - 1 & 7))) != 0) // Null values are not read.
+            return -1;
          if (pos < 0 || pos > lastRecordIndex) // The position of the cursor must be greater then 0 and less then the last position.
             throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_RS_INV_POS));
-
-         try // Reads and returns the value read.
-         {
-            table.readValue(vrs, table.columnOffsets[--column], typeCol, false, false); // juliana@220_3
-
-            // juliana@226_9: strings are not loaded anymore in the temporary table when building result sets. 
-            if (field.isDataTypeFunction)
-               applyDataTypeFunction(field, type);
-            else if (type == SQLElement.UNDEFINED)
-               createString(typeCol, decimalPlaces == null? - 1: decimalPlaces[column]);
-         }
-         catch (IOException exception)
+         return table.readArray(table.columnOffsets[column - 1], chars, blob, start);
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      finally
+      {
+         unlockTable(lock);
+      }
+   }
+   
+   /**
+    * Appends a value of the result set to a string buffer. Strings and integral numbers are appended without creating a string.
+    * 
+    * @param column The column index.
+    * @param buffer The buffer where the value is appended.
+    * @return <code>true</code> if the value was appended; <code>false</code> if it is SQL <code>NULL</code> or a blob.
+    * @throws DriverException If an <code>IOException</code> occurs.
+    */
+   private boolean privateAppend(int column, StringBuffer buffer) throws DriverException
+   {
+      SQLResultSetField field = fields[column - 1];
+      int typeCol = table.columnTypes[getTableColumn(field, column, SQLElement.UNDEFINED) - 1];
+      
+      if (!field.isDataTypeFunction)
+         switch (typeCol)
          {
-            throw new DriverException(exception);
+            case SQLElement.CHARS:
+            case SQLElement.CHARS_NOCASE:
+            {
+               char[] chars = valueAsChars;
+               int length = privateGetArray(column, SQLElement.CHARS, chars, null, 0);
+               
+               if (length > chars.length) // The buffer must grow.
+                  privateGetArray(column, SQLElement.CHARS, chars = valueAsChars = new char[length], null, 0);
+               if (length < 0)
+                  return false;
+               buffer.append(chars, 0, length);
+               return true;
+            }
+            case SQLElement.SHORT:
+            case SQLElement.INT:
+            case SQLElement.LONG:
+               if (!privateGetFromIndex(column, typeCol))
+                  return false;
+               if (typeCol == SQLElement.LONG)
+                  buffer.append(vrs.asLong);
+               else
+                  buffer.append(typeCol == SQLElement.SHORT? vrs.asShort : vrs.asInt);
+               return true;
+            case SQLElement.BLOB:
+               return false;
          }
-         catch (InvalidDateException exception) {}
-         return true;
-      }
+      
+      if (!privateGetFromIndex(column, SQLElement.UNDEFINED))
+         return false;
+      buffer.append(vrs.asString);
+      return true;
+   }
+   
+   /**
+    * Locks the table of the result set if its rows are read directly from a table and not from a temporary one, since the row buffer of the table
+    * is shared with the other statements.
+    * 
+    * @return The lock of the table or <code>null</code> if the table is temporary.
+    */
+   private TableLock lockTable()
+   {
+      TableLock lock = table.lock;
+      
+      if (lock != null)
+         lock.lockExclusive();
+      return lock;
+   }
+   
+   /**
+    * Locks the table of the result set like <code>lockTable()</code> and reads the current row again if another statement read a row of the 
+    * table after it.
+    * 
+    * @return The lock of the table or <code>null</code> if the table is temporary.
+    * @throws DriverException If an <code>IOException</code> occurs.
+    */
+   private TableLock lockRow() throws DriverException
+   {
+      TableLock lock = lockTable();
+      
+      if (lock != null)
+      {
+         Table tableAux = table;
+         PlainDB plainDB = tableAux.db;
          
-      return false;
+         if (plainDB.rowReads != rowReads && pos >= 0 && pos <= lastRecordIndex)
+            try
+            {
+               plainDB.read(pos);
+               tableAux.readNullBytesOfRecord(0, false, 0);
+               rowReads = plainDB.rowReads;
+            }
+            catch (IOException exception)
+            {
+               lock.unlockExclusive();
+               throw new DriverException(exception);
+            }
+      }
+      return lock;
+   }
+   
+   /**
+    * Unlocks the table locked by <code>lockTable()</code> or <code>lockRow()</code>, taking note of the row which is in the table buffer.
+    * 
+    * @param lock The lock of the table or <code>null</code> if the table is temporary.
+    */
+   private void unlockTable(TableLock lock)
+   {
+      if (lock != null)
+      {
+         rowReads = table.db.rowReads;
+         lock.unlockExclusive();
+      }
    }
 }
@@ -590,13 +590,13 @@ public class ResultSetMetaData
             case SQLElement.DATE:
             {
                int dateInt = value.asInt;
-               Date dateObj = resultSet.driver.tempDate;
+               Date dateObj = resultSet.table.tempDate;
                dateObj.set(dateInt % 100, (dateInt /= 100) % 100, dateInt / 100);
                return dateObj.toString();
             }    
             case SQLElement.DATETIME:
             {
-               StringBuffer buffer = resultSet.driver.sBuffer;
+               StringBuffer buffer = resultSet.table.sBuffer;
                
                buffer.setLength(0);
                Utils.formatDate(buffer, value.asInt);
@@ -0,0 +1,102 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package litebase;
+
+/**
+ * A reusable holder of the values of a result set row, filled by <code>ResultSet.fetchRow()</code>. Each value is stored as text in a char array
+ * which is reused by the next rows and only grows when a value does not fit in it. This way, a result set can be scrolled, for instance by a grid,
+ * without creating a string for each value read. Blobs are not fetched.
+ */
+public class ResultSetRow
+{
+   /**
+    * The characters of the values of the row.
+    */
+   char[][] values;
+
+   /**
+    * The number of characters of each value or -1 if it is SQL <code>NULL</code> or a blob.
+    */
+   int[] lengths;
+
+   /**
+    * A buffer used to format the values which are not strings.
+    */
+   StringBuffer buffer = new StringBuffer(20);
+
+   /**
+    * Sets the number of columns of the row, creating its arrays if they can't be reused.
+    *
+    * @param count The number of columns.
+    */
+   void setColumnCount(int count)
+   {
+      if (lengths == null || lengths.length != count)
+      {
+         char[][] valuesAux = values = new char[count][];
+         lengths = new int[count];
+         while (--count >= 0)
+            valuesAux[count] = new char[16];
+      }
+   }
+
+   /**
+    * Returns the number of columns of the last row fetched.
+    *
+    * @return The number of columns or 0 if no row was fetched.
+    */
+   public int getColumnCount()
+   {
+      return lengths == null? 0 : lengths.length;
+   }
+
+   /**
+    * Given the column index (starting from 1), returns the array which holds the characters of its value. The array is reused by the next rows
+    * and may have more characters than the value: use <code>getLength()</code> to know its length.
+    *
+    * @param colIdx The column index.
+    * @return The array with the characters of the column value.
+    */
+   public char[] getChars(int colIdx)
+   {
+      return values[colIdx - 1];
+   }
+
+   /**
+    * Given the column index (starting from 1), returns the number of characters of its value.
+    *
+    * @param colIdx The column index.
+    * @return The length of the column value; if the value is SQL <code>NULL</code> or a blob, the value returned is <code>-1</code>.
+    */
+   public int getLength(int colIdx)
+   {
+      return lengths[colIdx - 1];
+   }
+
+   /**
+    * Given the column index (starting from 1), indicates if its value is SQL <code>NULL</code> or a blob.
+    *
+    * @param colIdx The column index.
+    * @return <code>true</code> if the value is SQL <code>NULL</code> or a blob; <code>false</code>, otherwise.
+    */
+   public boolean isNull(int colIdx)
+   {
+      return lengths[colIdx - 1] < 0;
+   }
+
+   /**
+    * Given the column index (starting from 1), returns its value as a new string. Notice that this method creates a string each time it is
+    * called.
+    *
+    * @param colIdx The column index.
+    * @return The column value; if the value is SQL <code>NULL</code> or a blob, the value returned is <code>null</code>.
+    */
+   public String getString(int colIdx)
+   {
+      int length = lengths[--colIdx];
+      return length < 0? null : new String(values[colIdx], 0, length);
+   }
+}
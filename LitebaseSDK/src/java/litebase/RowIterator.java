@@ -75,6 +75,16 @@ public class RowIterator
     */
    protected DataStreamLB basds; // juliana@253_8: now Litebase supports weak cryptography.
 
+   /**
+    * The change log of the table if the iterator only returns the changed rows; <code>null</code> if it iterates through all the rows.
+    */
+   private ChangeLog changeLog;
+
+   /**
+    * The next change log entry to be read.
+    */
+   private int entry;
+
    /**
     * An iterator cannot be constructed directly; it must be created throught the method <code>LitebaseConnection.getRowIterator()</code>.
     *
@@ -84,12 +94,30 @@ public class RowIterator
     * @throws InvalidDateException If an internal method throws it.
     */
    protected RowIterator(LitebaseConnection driver, String tableName) throws IOException, InvalidDateException
+   {
+      this(driver, tableName, false);
+   }
+
+   /**
+    * Creates an iterator through all the rows of a table or only through its changed rows, which is created by 
+    * <code>LitebaseConnection.getChangedRowIterator()</code>.
+    *
+    * @param driver The Litebase driver.
+    * @param tableName The name of the table for which the row iterator will be created.
+    * @param changedOnly Indicates if only the rows changed since the last synchronization must be returned.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   RowIterator(LitebaseConnection driver, String tableName, boolean changedOnly) throws IOException, InvalidDateException
    {
       table = driver.getTable(tableName);
       rowNumber = -1;
       
       // juliana@253_8: now Litebase supports weak cryptography.
       basds = new DataStreamLB(bas = new ByteArrayStream(data = new byte[table.db.rowSize]), table.db.useCrypto);
+      
+      if (changedOnly)
+         (changeLog = table.getChangeLog()).rewind();
    }
 
    /**
@@ -106,18 +134,12 @@ public class RowIterator
       
       try
       {
+         if (changeLog != null) // Only the changed rows are returned.
+            return nextChanged();
          if (++rowNumber < plainDb.rowCount)
          {
             plainDb.read(rowNumber);
-            int id = plainDb.basds.readInt();
-            Vm.arrayCopy(plainDb.basbuf, 0, data, 0, plainDb.rowSize);
-            rowid = id & Utils.ROW_ID_MASK; // Masks out the attributes.
-            attr = ((id & Utils.ROW_ATTR_MASK) >> ROW_ATTR_SHIFT) & 3;
-            
-            // juliana@223_5: now possible null values are treated in RowIterator.
-            plainDb.bas.reset();
-            table.readNullBytesOfRecord(0, false, 0);
-            
+            fillRow(plainDb.basds.readInt());
             return true;
          }
          return false;
@@ -143,20 +165,15 @@ public class RowIterator
       
       try
       {
+         if (changeLog != null) // The change log only has rows that are not synced.
+            return nextChanged();
          while (++rowNumber < plainDb.rowCount)
          {
             plainDb.read(rowNumber);
             int id = plainDb.basds.readInt();
             if ((id & Utils.ROW_ATTR_MASK) == Utils.ROW_ATTR_SYNCED)
                continue;
-            Vm.arrayCopy(plainDb.basbuf, 0, data, 0, plainDb.rowSize);
-            rowid = id & Utils.ROW_ID_MASK; // Masks out the attributes.
-            attr = ((id & Utils.ROW_ATTR_MASK) >> ROW_ATTR_SHIFT) & 3;
-            
-            // juliana@223_5: now possible null values are treated in RowIterator.
-            plainDb.bas.reset();
-            table.readNullBytesOfRecord(0, false, 0);
-            
+            fillRow(id);
             return true;
          }
    
@@ -223,6 +240,12 @@ public class RowIterator
             plainDb.basds.writeInt((id & Utils.ROW_ID_MASK) | newAttr); // Sets the new attribute.
             plainDb.rewrite(rowNumber);
          }
+         if (oldAttr != ROW_ATTR_DELETED) // The row must be returned again by the iterators of changed rows.
+         {
+            if (!table.isModified) // The saved change log does not have this row.
+               table.setModified();
+            table.rowChanged(rowNumber);
+         }
       }
       catch (IOException exception)
       {
@@ -230,6 +253,56 @@ public class RowIterator
       }
    }
 
+   /**
+    * Sets to SYNCED, at once, all the NEW or UPDATED rows returned by this iterator since it was created, reset, or since the last call to this 
+    * method. This is faster than calling <code>setSynced()</code> for each row. DELETED rows are not changed.
+    * <p>
+    * If the iterator was created by <code>LitebaseConnection.getChangedRowIterator()</code>, the rows returned are also removed from the table 
+    * change log, so that they are not returned again, including the DELETED ones. A row which was changed after being returned is not set as 
+    * SYNCED and will be returned again. If the iterator returns all the rows, the rows until the current one are set as SYNCED.
+    *
+    * @return The number of rows set as SYNCED.
+    * @throws DriverException If an <code>IOException</code> occurs.
+    */
+   public int setAllSynced() throws DriverException
+   {
+      checkState();
+      
+      PlainDB plainDb = table.db;
+      ChangeLog log = changeLog;
+      int rows = plainDb.rowCount,
+          count = 0,
+          row,
+          i;
+      
+      try
+      {
+         if (log != null) // Only the log entries already read are synced.
+         {
+            int[] items = log.rows.items;
+            
+            i = entry;
+            while (--i >= 0)
+               if ((row = items[i]) < rows && !log.isPending(row) && markSynced(plainDb, row))
+                  count++;
+            log.removeFirst(entry);
+            entry = 0;
+         }
+         else
+         {
+            i = Math.min(rowNumber + 1, rows);
+            while (--i >= 0)
+               if (markSynced(plainDb, i))
+                  count++;
+         }
+      }
+      catch (IOException exception)
+      {
+         throw new DriverException(exception);
+      }
+      return count;
+   }
+   
    /**
     * Closes this iterator.
     * 
@@ -253,14 +326,21 @@ public class RowIterator
          
       data = null;
       table = null;
+      changeLog = null;
    }
 
    /**
-    * Resets the counter to zero so it is possible to restart to fetch records.
+    * Resets the counter to zero so it is possible to restart to fetch records. An iterator of changed rows will return again the rows not synced 
+    * with <code>setAllSynced()</code>.
     */
    public void reset()
    {
       rowNumber = -1;
+      if (changeLog != null)
+      {
+         entry = 0;
+         changeLog.rewind();
+      }
    }
 
    // juliana@225_14: RowIterator must throw an exception if its driver is closed.
@@ -498,6 +578,82 @@ public class RowIterator
       return (table.columnNulls[0][column >> 3] & (1 << (column & 7))) != 0;
    }
    
+   /**
+    * Fills the data members with the row just read.
+    * 
+    * @param id The rowid of the row with its attributes.
+    * @throws IOException If an internal method throws it.
+    */
+   private void fillRow(int id) throws IOException
+   {
+      PlainDB plainDb = table.db;
+      
+      Vm.arrayCopy(plainDb.basbuf, 0, data, 0, plainDb.rowSize);
+      rowid = id & Utils.ROW_ID_MASK; // Masks out the attributes.
+      attr = ((id & Utils.ROW_ATTR_MASK) >> ROW_ATTR_SHIFT) & 3;
+      
+      // juliana@223_5: now possible null values are treated in RowIterator.
+      plainDb.bas.reset();
+      table.readNullBytesOfRecord(0, false, 0);
+   }
+   
+   /**
+    * Moves to the next row of the change log which is not synced. A row logged more than once is only returned once, unless it is changed again 
+    * after being returned.
+    * 
+    * @return <code>true</code> if there is such a row; <code>false</code>, otherwise.
+    * @throws IOException If an internal method throws it.
+    */
+   private boolean nextChanged() throws IOException
+   {
+      PlainDB plainDb = table.db;
+      ChangeLog log = changeLog;
+      IntVector rows = log.rows;
+      int row,
+          id;
+      
+      while (entry < rows.size()) // The log may grow while it is read.
+      {
+         row = rows.items[entry++];
+         if (!log.isPending(row)) // The row was already returned.
+            continue;
+         log.returned(row);
+         if (row < plainDb.rowCount) // A purge may have removed the row.
+         {
+            plainDb.read(row);
+            if (((id = plainDb.basds.readInt()) & Utils.ROW_ATTR_MASK) != Utils.ROW_ATTR_SYNCED)
+            {
+               fillRow(id);
+               rowNumber = row;
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+   
+   /**
+    * Sets a row as SYNCED if it is NEW or UPDATED.
+    * 
+    * @param plainDb The table rows.
+    * @param row The row.
+    * @return <code>true</code> if the row was changed; <code>false</code>, otherwise.
+    * @throws IOException If an internal method throws it.
+    */
+   private boolean markSynced(PlainDB plainDb, int row) throws IOException
+   {
+      int id,
+          rowAttr;
+      
+      plainDb.read(row);
+      if ((rowAttr = (id = plainDb.basds.readInt()) & Utils.ROW_ATTR_MASK) == Utils.ROW_ATTR_SYNCED || rowAttr == Utils.ROW_ATTR_DELETED)
+         return false;
+      plainDb.bas.reset();
+      plainDb.basds.writeInt(id & Utils.ROW_ID_MASK); // Sets the new attribute.
+      plainDb.rewrite(row);
+      return true;
+   }
+   
    // juliana@230_27: if a public method in now called when its object is already closed, now an IllegalStateException will be thrown instead of a 
    // DriverException.
    /**
@@ -590,6 +590,18 @@ class SQLBooleanClause
 
          if (field.table.columnIndices[right.colIndex] != null)
             right.hasIndex = true;
+         
+         // An equality between columns of the same type without an index on the inner table can be solved by a hash join if the tables are 
+         // big enough.
+         else if (relationalOp == SQLElement.OP_REL_EQUAL && !field.isDataTypeFunction)
+         {
+            SQLResultSetField leftField = fieldList[fieldName2Index.get(left.nameSqlFunctionHashCode != 0? 
+                                                                                              left.nameSqlFunctionHashCode : left.nameHashCode, -1)];
+            
+            right.useHashJoin = !leftField.isDataTypeFunction && leftField.table != field.table 
+                             && leftField.table.columnTypes[left.colIndex] == field.table.columnTypes[right.colIndex]
+                             && HashJoinTable.isWorthy(leftField.table.db.rowCount, field.table.db.rowCount);
+         }
       }
 
       if (leftIsColumn != rightIsColumn)
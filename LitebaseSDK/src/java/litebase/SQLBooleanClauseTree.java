@@ -116,6 +116,11 @@ class SQLBooleanClauseTree
     * Indicates if it has an associated index. Used on join <code>table1.field1 = table2.field2</code>.
     */
    boolean hasIndex;
+
+   /**
+    * Indicates if a hash join is to be used. Used on join <code>table1.field1 = table2.field2</code> when <code>field2</code> has no index.
+    */
+   boolean useHashJoin;
    
    /**
     * Tree operand name.
@@ -481,6 +486,26 @@ class SQLBooleanClauseTree
       }
    }
 
+   /**
+    * Finds the column of a result set which is compared to a column of a previous result set in the join, preferring the ones which can use an 
+    * index or a hash join.
+    *
+    * @param rsIndex The index of the result set.
+    * @return The right tree of the comparison found or <code>null</code> if there is none.
+    */
+   SQLBooleanClauseTree findJoin(int rsIndex)
+   {
+      if (bothAreIdentifier)
+         return rightTree.indexRs == rsIndex? rightTree : null;
+      
+      SQLBooleanClauseTree left = leftTree == null? null : leftTree.findJoin(rsIndex),
+                           right = rightTree == null? null : rightTree.findJoin(rsIndex);
+      
+      if (left == null || (right != null && !left.hasIndex && (right.hasIndex || (!left.useHashJoin && right.useHashJoin))))
+         return right;
+      return left;
+   }
+
    /**
     * Used for composed indices to find some properties related to a branch of the expression tree.
     *
@@ -813,7 +838,7 @@ class SQLBooleanClauseTree
              strToMatch = right.strToMatch;
 
       // juliana@230_3: corrected a bug of LIKE using DATE and DATETIME not returning the correct result.
-      leftString = Utils.formatDateDateTime(booleanClause.resultSet.table.db.driver.sBuffer, leftTree.valueType, leftValue);
+      leftString = Utils.formatDateDateTime(booleanClause.resultSet.table.sBuffer, leftTree.valueType, leftValue);
 
       if (ignoreCase)
       {
@@ -1382,6 +1407,7 @@ class SQLBooleanClauseTree
             tree.bothAreIdentifier = bothAreIdentifier;
             tree.colIndex = colIndex;
             tree.hasIndex = hasIndex;
+            tree.useHashJoin = useHashJoin;
             tree.indexRs = indexRs;
             tree.isFloatingPointType = isFloatingPointType;
             tree.isParameter = isParameter;
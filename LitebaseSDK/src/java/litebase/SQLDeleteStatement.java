@@ -206,6 +206,7 @@ class SQLDeleteStatement extends SQLStatement
          rsTable.table = driver.getTable(rsTable.tableName);
       
       Table table = rsTable.table;
+      table.verifyBulkLoad(); // The indices of a table being bulk loaded can't be used.
       PlainDB plainDB = table.db;
       NormalFile dbFile = (NormalFile)plainDB.db;
       ByteArrayStream bas = plainDB.bas;
@@ -259,7 +260,9 @@ class SQLDeleteStatement extends SQLStatement
             {
                // Logically deletes the record: changes the attribute to 'deleted'.  
                plainDB.read(i);
-               j = (ds.readInt() & Utils.ROW_ID_MASK) | Utils.ROW_ATTR_DELETED; 
+               if (((j = ds.readInt()) & Utils.ROW_ATTR_MASK) != Utils.ROW_ATTR_DELETED) // Rows already deleted are not logged again.
+                  table.rowChanged(i);
+               j = (j & Utils.ROW_ID_MASK) | Utils.ROW_ATTR_DELETED; 
                bas.reset();
                ds.writeInt(j);
                plainDB.rewrite(i);
@@ -269,7 +272,7 @@ class SQLDeleteStatement extends SQLStatement
          {
             // guich@300: now all records are just marked as deleted instead of physical removal.
             int column;
-            SQLValue[] keys1 = new SQLValue[1];
+            SQLValue[] keys1 = {new SQLValue()};
             SQLValue[] keys2;
             byte[] types = table.columnTypes;
             short[] offsets = table.columnOffsets;
@@ -289,8 +292,7 @@ class SQLDeleteStatement extends SQLStatement
                      {
                         index = columnIndices[i];
                         bas.reset(); // juliana@116_1: if reset is not done, the value read is wrong.
-                        table.readValue(driver.sqlv, offsets[i], types[i], false, false); // juliana@220_3 juliana@230_14
-                        keys1[0] = driver.sqlv;
+                        table.readValue(keys1[0], offsets[i], types[i], false, false); // juliana@220_3 juliana@230_14
                         index.tempKey.set(keys1);
                         index.removeValue(index.tempKey, rs.pos);
                      }
@@ -319,6 +321,7 @@ class SQLDeleteStatement extends SQLStatement
                   bas.reset();
                   ds.writeInt(i);
                   plainDB.rewrite(rs.pos);
+                  table.rowChanged(rs.pos);
                   nn++; // Increments the number of deleted rows.
                }
             else
@@ -329,6 +332,7 @@ class SQLDeleteStatement extends SQLStatement
                   bas.reset();
                   ds.writeInt(i);
                   plainDB.rewrite(rs.pos);
+                  table.rowChanged(rs.pos);
                   nn++; // Increments the number of deleted rows.
                }
             table.deletedRowsCount += nn;
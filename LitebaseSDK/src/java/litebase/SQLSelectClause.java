@@ -77,7 +77,7 @@ class SQLSelectClause
       Table table;
       SQLResultSetTable rsTable;
       SQLResultSetField field;
-      StringBuffer sbufnf = driver.sBuffer;
+      StringBuffer sbufnf = new StringBuffer(); // The statement may be bound while other threads use the connection.
 
       // If the select clause has a wild card (is null), then expands the list using the column information from the given tables.
       if (fieldList == null)
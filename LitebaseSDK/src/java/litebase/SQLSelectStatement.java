@@ -17,7 +17,7 @@ class SQLSelectStatement extends SQLStatement
    /**
     * The select clause of the statement.
     */
-   private SQLSelectClause selectClause;
+   SQLSelectClause selectClause;
 
    /**
     * The where clause of the statement.
@@ -296,9 +296,13 @@ class SQLSelectStatement extends SQLStatement
       SQLResultSetTable[] tableList = selectClause.tableList;
       int i = tableList.length;
       
-      while (--i >= 0) // juliana@201_28: If a table is re-created after the prepared statement is parsed, there won't be a NPE.
+      while (--i >= 0) 
+      {
+         // juliana@201_28: If a table is re-created after the prepared statement is parsed, there won't be a NPE.
          if (tableList[i].table.db.db == null) 
             tableList[i].table = driver.getTable(tableList[i].tableName);
+         tableList[i].table.verifyBulkLoad(); // The indices of a table being bulk loaded can't be used.
+      }
       
       // juliana@230_14: removed temporary tables when there is no join, group by, order by, and aggregation.
       // juliana@114_10: simple selects do not use temporary tables.
@@ -367,6 +371,54 @@ class SQLSelectStatement extends SQLStatement
       return this;
    }
    
+   /**
+    * Describes how a binded select statement would be executed: the order in which the tables are read and, for each one of them, the strategy used 
+    * to find its rows. The table indices are applied to the where clause as when executing the query, but no row is read.
+    *
+    * @return One line for each table in the order of the join, with the table name, its alias if any, and the strategy: <code>scan</code>, 
+    * <code>index scan</code>, <code>index join</code>, <code>hash join</code> or <code>nested loop</code>.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   String explain() throws IOException, InvalidDateException
+   {
+      SQLResultSetTable[] tableList = selectClause.tableList;
+      SQLResultSetTable rsTable;
+      ResultSet[] rsList = whereClause != null? createListResultSetForSelect(tableList, whereClause) : null;
+      
+      // Joins using an index or a hash table can't be used if the where clause indices are joined by OR.
+      SQLBooleanClauseTree tree = whereClause != null && whereClause.appliedIndexesBooleanOp <= 1? whereClause.expressionTree : null;
+      StringBuffer sBuffer = new StringBuffer();
+      int size = tableList.length,
+          i = -1;
+      
+      while (++i < size)
+      {
+         if (i > 0)
+            sBuffer.append('\n');
+         sBuffer.append(i + 1).append(": ").append((rsTable = tableList[i]).tableName);
+         if (rsTable.aliasTableName != null && !rsTable.aliasTableName.equals(rsTable.tableName))
+            sBuffer.append(' ').append(rsTable.aliasTableName);
+         sBuffer.append(" (");
+         if (rsList != null && rsList[i].rowsBitmap != null)
+            sBuffer.append("index scan, ");
+         if (i == 0)
+            sBuffer.append("scan)");
+         else
+         {
+            SQLBooleanClauseTree joinTree = tree == null? null : tree.findJoin(i);
+            
+            if (joinTree == null)
+               sBuffer.append("nested loop)");
+            else
+               sBuffer.append(joinTree.hasIndex? "index join on " : joinTree.useHashJoin? "hash join on " : "nested loop on ")
+                      .append(joinTree.operandName).append(')');
+         }
+      }
+      
+      return sBuffer.toString();
+   }
+   
    /**
     * Tries to put as inner table a table that has an index used more often in the where clause, when the where clause has a comparison between 
     * fields from different tables. e.g.: <code>select * from table1, table2 where table1.field1 = table2.field2 </code> If only 
@@ -730,11 +782,12 @@ class SQLSelectStatement extends SQLStatement
          // In this case, there is no need to create the temporary table. Just points to the necessary structures of the original table.
          totalRecords = (tempTable = tableOrig).db.rowCount;
          
-         // The index should not be used for MAX() and MIN() if not all the fields are MAX() and MIN() or one of the parametes cannot use an index.
+         // The index should not be used for MAX() and MIN() if not all the fields are MAX(), MIN() or COUNT(*) or one of the parametes cannot use 
+         // an index. COUNT(*) is the number of rows not deleted.
          i = -1;
          while (++i < selectFieldsCount)
-            if (!(field = fieldList[i]).isAggregatedFunction || field.index < 0 
-             || (field.sqlFunction != SQLElement.FUNCTION_AGG_MAX && field.sqlFunction != SQLElement.FUNCTION_AGG_MIN)) 
+            if (!(field = fieldList[i]).isAggregatedFunction || (field.sqlFunction != SQLElement.FUNCTION_AGG_COUNT && (field.index < 0 
+             || (field.sqlFunction != SQLElement.FUNCTION_AGG_MAX && field.sqlFunction != SQLElement.FUNCTION_AGG_MIN)))) 
             {
                useIndex = false;
                break;
@@ -748,12 +801,12 @@ class SQLSelectStatement extends SQLStatement
          // The index should not be used for MAX() and MIN() if there is a join, a sort or the indices do not resolve all the query.
          if (sortListClause == null && (where == null || where.expressionTree == null) && numTables == 1)
          {
-            // The index should not be used for MAX() and MIN() if not all the fields are MAX() and MIN() or one of the parametes cannot use an 
-            // index.
+            // The index should not be used for MAX() and MIN() if not all the fields are MAX(), MIN() or COUNT(*) or one of the parametes cannot 
+            // use an index. COUNT(*) can only be used if the bitmap has only rows found in the index keys, which are never deleted.
             i = -1; 
             while (++i < selectFieldsCount)
-               if (!(field = fieldList[i]).isAggregatedFunction || field.index < 0 
-                || (field.sqlFunction != SQLElement.FUNCTION_AGG_MAX && field.sqlFunction != SQLElement.FUNCTION_AGG_MIN)) 
+               if (!(field = fieldList[i]).isAggregatedFunction || (field.sqlFunction == SQLElement.FUNCTION_AGG_COUNT? !rsTemp.rowsBitmapFromKeys 
+                : (field.index < 0 || (field.sqlFunction != SQLElement.FUNCTION_AGG_MAX && field.sqlFunction != SQLElement.FUNCTION_AGG_MIN)))) 
                {
                   useIndex = false;
                   break;
@@ -774,10 +827,16 @@ class SQLSelectStatement extends SQLStatement
             // table.
             if (countQueryWithWhere && numTables == 1)
             {
-               where.sqlBooleanClausePreVerify();
-               rsTemp.pos = -1;
-               while (rsTemp.getNextRecord())
-                  totalRecords++;
+               // If the indices solved all the where clause and the bitmap only has rows found in their keys, the rows don't need to be read.
+               if (where.expressionTree == null && rsTemp.rowsBitmap != null && rsTemp.rowsBitmapFromKeys)
+                  totalRecords = Utils.countBits(rsTemp.rowsBitmap.items);
+               else
+               {
+                  where.sqlBooleanClausePreVerify();
+                  rsTemp.pos = -1;
+                  while (rsTemp.getNextRecord())
+                     totalRecords++;
+               }
                if (rsTemp.table.name == null)
                   rsTemp.table.db = null;
                return createIntValueTable(driver, totalRecords, countAlias);
@@ -802,6 +861,9 @@ class SQLSelectStatement extends SQLStatement
          // A query that use index for MAX() and MIN() should not check now which rows are answered.
          else if (useIndex)
             tempTable = tableOrig;
+         else if (!select.hasAggFunctions && groupBy == null 
+               && (tempTable = writeCoveringIndexTable(driver, rsTemp, columnIndexes, columnTypes, columnHashes, columnSizes, size)) != null)
+            return tempTable; // The answer was read from the index keys and is already sorted if required.
          else if (sortListClause == null)
          {
             byte[] allRowsBitmap = tableOrig.allRowsBitmap;
@@ -926,31 +988,51 @@ class SQLSelectStatement extends SQLStatement
       // juliana@230_21: MAX() and MIN() now use indices on simple queries.
       if (useIndex)
       {
-         // No rows in the answer.
-         if (tableOrig.db.rowCount - tableOrig.deletedRowsCount == 0 || (where != null && Utils.countBits(rsTemp.rowsBitmap.items) == 0))
+         // The number of rows in the answer or -1 if the bitmap may have deleted rows.
+         int rows = tableOrig.db.rowCount - tableOrig.deletedRowsCount;
+         
+         if (rows > 0 && where != null)
+            rows = Utils.countBits(rsTemp.rowsBitmap.items);
+         
+         if (rows > 0 && where != null && !rsTemp.rowsBitmapFromKeys)
+            rows = -1;
+         else if (rows == 0) // No rows in the answer.
             return tempTable2;
          
          Index index;
+         int column; // The first column of the index.
          byte[] nulls = tempTable2.columnNulls[0];
          IntVector rowsBitmap = (rsTemp == null? null : rsTemp.rowsBitmap);
          
-         // Computes the MAX() and MIN() for all the fields.
+         // Computes the MAX() and MIN() for all the fields. COUNT(*) is already known.
+         Convert.fill(nulls, 0, nulls.length, 0);
          i = -1;
-         curRecord[0].isNull = true; // No rows yet.
          while (++i < selectFieldsCount)
          {
-            if ((field = fieldList[i]).isComposed)
-               index = tableOrig.composedIndices[field.index].index;
+            if ((field = fieldList[i]).sqlFunction == SQLElement.FUNCTION_AGG_COUNT)
+            {
+               curRecord[i].asInt = rows;
+               curRecord[i].isNull = false;
+               continue;
+            }
+            if (field.isComposed)
+            {
+               ComposedIndex composedIndex = tableOrig.composedIndices[field.index];
+               index = composedIndex.index;
+               column = composedIndex.columns[0];
+            }
             else
-               index = tableOrig.columnIndices[field.index];
+               index = tableOrig.columnIndices[column = field.index];
+            curRecord[i].isNull = true; // No rows yet.
             if (field.sqlFunction == SQLElement.FUNCTION_AGG_MAX)
-               index.findMaxValue(curRecord[i], rowsBitmap);
+               index.findMaxValue(curRecord[i], rowsBitmap, column);
             else
-               index.findMinValue(curRecord[i], rowsBitmap);
+               index.findMinValue(curRecord[i], rowsBitmap, column);
+            if (curRecord[i].isNull) // Only null values.
+               nulls[i >> 3] |= 1 << (i & 7);
          }
-         if (curRecord[0].isNull) // No rows found: returns an empty table.
+         if (rows < 0 && curRecord[0].isNull) // No rows found: returns an empty table.
             return tempTable2;
-         Convert.fill(nulls, 0, nulls.length, 0);
          tempTable2.writeRSRecord(curRecord);
          return tempTable2;
       }
@@ -1305,14 +1387,19 @@ class SQLSelectStatement extends SQLStatement
    static void generateIndexedRowsMap(ResultSet[] rsList, boolean hasComposedIndex) throws IOException, InvalidDateException
    {
       SQLBooleanClause whereClause = rsList[0].whereClause;
+      ResultSet rs = rsList[0];
 
       if (rsList.length > 1) // Applies the table indexes to the where clause. If it was not possible, return.
       {
          if (!whereClause.sqlbooleanclauseApplyTableIndexesJoin())
             return;
       }
-      else if (!whereClause.sqlbooleanclauseApplyTableIndices(rsList[0].table.columnIndices, hasComposedIndex))
-            return;
+      else if (!whereClause.sqlbooleanclauseApplyTableIndices(rs.table.columnIndices, hasComposedIndex))
+      {
+         if (rs.table.trigramIndices != null) // A LIKE may still use a trigram index.
+            applyTrigramIndex(rs, whereClause.expressionTree);
+         return;
+      }
          
       computeIndex(rsList, rsList.length > 1, -1, null, -1, -1);
 
@@ -1322,7 +1409,71 @@ class SQLSelectStatement extends SQLStatement
          while (--i >= 0)
             rsList[i].whereClause = null;
       }
-            
+      else if (rsList.length == 1 && rs.table.trigramIndices != null && rs.rowsBitmapBoolOp == SQLElement.OP_BOOLEAN_AND)
+         applyTrigramIndex(rs, whereClause.expressionTree);
+   }
+   
+   /**
+    * Uses a trigram index to narrow the rows of a query with a <code>LIKE</code> which could not use a B-tree index. The first <code>LIKE</code> 
+    * on a column with a trigram index that must be true for the whole where clause to be true has the rows with its trigrams intersected with the 
+    * rows already found by other indices. The where clause is kept, since the trigram index may return rows which don't satisfy it.
+    *
+    * @param rs The result set of the table.
+    * @param tree The part of the where clause not solved by the B-tree indices.
+    * @return <code>true</code> if a trigram index was used; <code>false</code>, otherwise.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   private static boolean applyTrigramIndex(ResultSet rs, SQLBooleanClauseTree tree) throws IOException, InvalidDateException
+   {
+      if (tree.operandType == SQLElement.OP_BOOLEAN_AND) // Both sides must be true.
+         return applyTrigramIndex(rs, tree.leftTree) || applyTrigramIndex(rs, tree.rightTree);
+      
+      SQLBooleanClauseTree left = tree.leftTree,
+                           right = tree.rightTree;
+      
+      if (tree.operandType != SQLElement.OP_PAT_MATCH_LIKE || left.operandType != SQLElement.OP_IDENTIFIER || right.strToMatch == null)
+         return false;
+      
+      Table table = rs.table;
+      TrigramIndex[] trigrams = table.trigramIndices;
+      SQLBooleanClause whereClause = rs.whereClause;
+      SQLResultSetField[] fieldList = whereClause.fieldList;
+      String value = right.strToMatch;
+      String[] parts;
+      int column = left.colIndex,
+          i = whereClause.fieldsCount;
+      
+      if (column >= trigrams.length || trigrams[column] == null)
+         return false;
+      while (--i >= 0) 
+         if (fieldList[i].tableColIndex == column && fieldList[i].isDataTypeFunction) // An index cannot be applied to a function.
+            return false;
+      
+      switch (right.patternMatchType)
+      {
+         case SQLBooleanClauseTree.PAT_MATCH_MIDDLE:
+            i = value.indexOf('%');
+            parts = new String[] {value.substring(0, i), value.substring(i + 1)};
+            break;
+         case SQLBooleanClauseTree.PAT_MATCH_ANYTHING:
+            return false;
+         default:
+            parts = new String[] {value};
+      }
+      
+      IntVector bitmap = trigrams[column].search(table, parts, table.db.rowCount);
+      
+      if (bitmap == null) // The pattern is too short.
+         return false;
+      if (rs.rowsBitmap == null)
+      {
+         rs.rowsBitmap = bitmap;
+         rs.rowsBitmapBoolOp = SQLElement.OP_BOOLEAN_AND;
+      }
+      else
+         mergeBitmaps(rs.rowsBitmap.items, bitmap.items, SQLElement.OP_BOOLEAN_AND);
+      return true;
    }
    
    /**
@@ -1512,10 +1663,21 @@ class SQLSelectStatement extends SQLStatement
             if (onTheFly)
                rsBag.auxRowsBitmap = markBits.indexBitmap;
             else
+            {
                rsBag.rowsBitmap = markBits.indexBitmap;
+               rsBag.rowsBitmapFromKeys = markBits.bitValue;
+            }
          }
          else 
+         {
             mergeBitmaps(rsBag.rowsBitmap.items, markBits.indexBitmap.items, booleanOp);
+            
+            // An intersection with rows found in the indices only has such rows. An union only has them if both bitmaps have only them.
+            if (booleanOp == SQLElement.OP_BOOLEAN_AND)
+               rsBag.rowsBitmapFromKeys |= markBits.bitValue;
+            else
+               rsBag.rowsBitmapFromKeys &= markBits.bitValue;
+         }
          rsBag.rowsBitmapBoolOp = booleanOp;
          if (isComposed)
             i += size - 1;
@@ -1650,6 +1812,120 @@ class SQLSelectStatement extends SQLStatement
       return table;
    }
    
+   /**
+    * Writes the answer of a query on a single table directly from the keys of an index, without reading the rows of the table. This is only done 
+    * when the index alone solved the whole where clause and all the columns of the query are part of its key. The rows are written in the index 
+    * order, so an order by is only covered if it does not change this order.
+    * 
+    * @param driver The Litebase connection.
+    * @param rsTemp The result set of the table.
+    * @param columnIndexes The table columns of each column of the temporary table.
+    * @param columnTypes The types of the columns of the temporary table.
+    * @param columnHashes The hash codes of the names of the columns of the temporary table.
+    * @param columnSizes The sizes of the columns of the temporary table.
+    * @param size The number of columns of the temporary table.
+    * @return The temporary table with the answer or <code>null</code> if the index does not cover the query.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   private Table writeCoveringIndexTable(LitebaseConnection driver, ResultSet rsTemp, short[] columnIndexes, byte[] columnTypes, 
+                                         int[] columnHashes, int[] columnSizes, int size) throws IOException, InvalidDateException
+   {
+      SQLBooleanClause where = whereClause;
+      
+      if (where == null || where.expressionTree != null || rsTemp.rowsBitmap == null)
+         return null;
+      
+      ComposedIndex composedIndex = where.appliedComposedIndexes[0];
+      SQLBooleanClauseTree[] values = where.appliedIndexesValueTree;
+      SQLResultSetField[] fieldList = selectClause.fieldList;
+      SQLColumnListClause orderBy = orderByClause;
+      Table table = rsTemp.table;
+      Index index;
+      byte[] ops = where.appliedIndexesRelOps;
+      byte[] columns;
+      int count = where.appliedIndexesCount,
+          op = ops[0],
+          i = selectClause.fieldsCount,
+          j;
+      
+      while (--i >= 0) // Functions are not covered.
+         if (fieldList[i].isVirtual)
+            return null;
+      
+      if (composedIndex != null) // A composed index is only applied with equalities on all its columns.
+      {
+         if ((columns = composedIndex.columns).length != count)
+            return null;
+         index = composedIndex.index;
+      }
+      else
+      {
+         index = table.columnIndices[(columns = new byte[] {where.appliedIndexesCols[0]})[0]];
+         
+         // Only a search that marks the rows found is covered: an equality, a greater, a like, or a between.
+         if (count == 2)
+         {
+            if (where.appliedIndexesBooleanOp != SQLElement.OP_BOOLEAN_AND || where.appliedIndexesCols[1] != columns[0]
+             || (op != SQLElement.OP_REL_GREATER && op != SQLElement.OP_REL_GREATER_EQUAL)
+             || (ops[1] != SQLElement.OP_REL_LESS && ops[1] != SQLElement.OP_REL_LESS_EQUAL))
+               return null;
+         }
+         else if (count != 1 || (op != SQLElement.OP_REL_EQUAL && op != SQLElement.OP_REL_GREATER && op != SQLElement.OP_REL_GREATER_EQUAL 
+                                                                                                  && op != SQLElement.OP_PAT_MATCH_LIKE))
+            return null;
+         
+         // A range is returned in the ascending order of its column.
+         if (op != SQLElement.OP_REL_EQUAL && orderBy != null && (orderBy.fieldsCount != 1 || !orderBy.fieldList[0].isAscending))
+            return null;
+      }
+      
+      // All the columns of the query, including the sort ones, must be in the index key.
+      byte[] positions = new byte[size];
+      i = size;
+      while (--i >= 0)
+      {
+         j = columns.length;
+         while (--j >= 0 && columns[j] != columnIndexes[i]);
+         if (j < 0)
+            return null;
+         positions[i] = (byte)j;
+      }
+      
+      Table tempTable = driver.driverCreateTable(null, null, duplicateIntArray(columnHashes, size), duplicateByteArray(columnTypes, size), 
+                                                 duplicateIntArray(columnSizes, size), null, null, Utils.NO_PRIMARY_KEY, Utils.NO_PRIMARY_KEY, null);
+      MarkBits markBits = new MarkBits();
+      SQLValue[] leftVal = new SQLValue[j = columns.length];
+      
+      // Searches the index again as computeIndex() did, but now the keys found are written in the temporary table.
+      markBits.reset(index, table.db.rowCount);
+      markBits.coveringTable = tempTable;
+      markBits.coveringColumns = positions;
+      SQLValue[] record = markBits.coveringRecord = SQLValue.newSQLValues(size);
+      i = Utils.subStringHashCode(table.db.name, 5);
+      while (--size >= 0)
+         record[size].asLong = i; // Only used by strings.
+      while (--j >= 0)
+      {
+         leftVal[j] = values[j].getOperandValue();
+         markBits.leftOp[j] = ops[j];
+      }
+      if (op == SQLElement.OP_PAT_MATCH_LIKE) // The operand is the value without the % mask.
+         leftVal[0].asString = (index.types[0] == SQLElement.CHARS_NOCASE)? values[0].strToMatch.toLowerCase() : values[0].strToMatch; 
+      else if (count == 2 && composedIndex == null) // Between.
+      {
+         (markBits.rightKey = new Key(index)).set(new SQLValue[] {values[1].getOperandValue()});
+         markBits.rightOp[0] = ops[1];
+      }
+      markBits.leftKey.set(leftVal);
+      
+      if (op == SQLElement.OP_REL_EQUAL)
+         index.getValue(markBits.leftKey, markBits);
+      else
+         index.getGreaterOrEqual(markBits);
+      return tempTable;
+   }
+   
    // juliana@230_14: removed temporary tables when there is no join, group by, order by, and aggregation.
    /**
     * Calculates the answer of a select without aggregation, join, order by, or group by without using a temporary table.
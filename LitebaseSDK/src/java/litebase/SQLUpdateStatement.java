@@ -422,6 +422,7 @@ class SQLUpdateStatement extends SQLStatement
       
       if (table.db.db == null) // juliana@201_28: If a table is re-created after the prepared statement is parsed, there won't be a NPE.
          table = rsTable.table = driver.getTable(rsTable.tableName);
+      table.verifyBulkLoad(); // The indices of a table being bulk loaded can't be used.
 
       int records = 0;
       
@@ -0,0 +1,172 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package litebase;
+
+import totalcross.util.*;
+
+/**
+ * A cache of the statements parsed and bound by <code>LitebaseConnection.executeQuery()</code> and <code>LitebaseConnection.executeUpdate()</code>,
+ * so that the same SQL command executed many times is parsed only once. The statements are kept as prepared statements without parameters and the
+ * least recently used one is discarded when the cache is full. A statement is only valid for the schema version of the connection at the time it
+ * was bound: any DDL increments this version and the statements bound before it are discarded when found.
+ */
+class StatementCache
+{
+   /**
+    * The default maximum number of statements in the cache.
+    */
+   static final int DEFAULT_SIZE = 16;
+
+   /**
+    * The cached statements indexed by their SQL commands.
+    */
+   private Hashtable statements = new Hashtable(DEFAULT_SIZE);
+
+   /**
+    * The most recently used statement.
+    */
+   private PreparedStatement newest;
+
+   /**
+    * The least recently used statement.
+    */
+   private PreparedStatement oldest;
+
+   /**
+    * The number of statements in the cache.
+    */
+   private int count;
+
+   /**
+    * The maximum number of statements in the cache. If it is zero, no statement is cached.
+    */
+   int maxSize = DEFAULT_SIZE;
+
+   /**
+    * The number of statements found in the cache.
+    */
+   int hits;
+
+   /**
+    * The number of statements which had to be parsed because they were not in the cache or their schema version was old.
+    */
+   int misses;
+
+   /**
+    * Gets a statement from the cache, which becomes the most recently used one.
+    *
+    * @param sql The SQL command.
+    * @param schemaVersion The current schema version of the connection.
+    * @return The statement or <code>null</code> if it is not in the cache or it was bound to an older schema.
+    */
+   PreparedStatement get(String sql, int schemaVersion)
+   {
+      PreparedStatement ps = (PreparedStatement)statements.get(sql);
+
+      if (ps != null && ps.schemaVersion != schemaVersion) // The statement was bound before a DDL and must be parsed again.
+      {
+         remove(ps);
+         ps = null;
+      }
+      if (ps == null)
+      {
+         misses++;
+         return null;
+      }
+
+      hits++;
+      if (ps != newest) // Moves the statement to the head of the list.
+      {
+         unlink(ps);
+         link(ps);
+      }
+      return ps;
+   }
+
+   /**
+    * Puts a statement in the cache, discarding the least recently used ones if the cache is full.
+    *
+    * @param ps The statement, which must not be in the cache.
+    */
+   void put(PreparedStatement ps)
+   {
+      if (maxSize == 0)
+         return;
+      while (count >= maxSize)
+         remove(oldest);
+      statements.put(ps.sqlExpression, ps);
+      link(ps);
+      count++;
+   }
+
+   /**
+    * Changes the maximum number of statements in the cache, discarding the least recently used ones if there are too many.
+    *
+    * @param size The new maximum size.
+    */
+   void setMaxSize(int size)
+   {
+      while (count > size)
+         remove(oldest);
+      maxSize = size;
+   }
+
+   /**
+    * Removes all the statements from the cache.
+    */
+   void clear()
+   {
+      statements.clear();
+      newest = oldest = null;
+      count = 0;
+   }
+
+   /**
+    * Removes a statement from the cache.
+    *
+    * @param ps The statement to be removed.
+    */
+   private void remove(PreparedStatement ps)
+   {
+      statements.remove(ps.sqlExpression);
+      unlink(ps);
+      count--;
+   }
+
+   /**
+    * Links a statement as the most recently used one.
+    *
+    * @param ps The statement.
+    */
+   private void link(PreparedStatement ps)
+   {
+      ps.older = newest;
+      ps.newer = null;
+      if (newest != null)
+         newest.newer = ps;
+      newest = ps;
+      if (oldest == null)
+         oldest = ps;
+   }
+
+   /**
+    * Unlinks a statement from the list of statements.
+    *
+    * @param ps The statement.
+    */
+   private void unlink(PreparedStatement ps)
+   {
+      if (ps.newer != null)
+         ps.newer.older = ps.older;
+      else
+         newest = ps.older;
+      if (ps.older != null)
+         ps.older.newer = ps.newer;
+      else
+         oldest = ps.newer;
+      ps.newer = ps.older = null;
+   }
+}
@@ -20,6 +20,17 @@ class Table
     */
    static final int VERSION = 203; // juliana@230_12
    
+   /**
+    * The first table format version whose rows crc codes also take their strings into consideration.
+    */
+   static final int VERSION_STRINGS_CRC = 203; // juliana@230_12
+   
+   /**
+    * The table format version whose indices with string columns store the strings in their nodes, with prefix compression. It is only used by the 
+    * connections which enabled the compressed string indices, since the native Litebase can't read it.
+    */
+   static final int VERSION_COMPRESSED_STRINGS = 204;
+   
    // ############ JOIN OPERATION CONSTANTS ###########
    /**
     * Indicates the end of the table in join operations.
@@ -46,6 +57,27 @@ class Table
     */
    private static final int VALIDATION_RECORD_INCOMPLETE_OK = 4;
    
+   // ############ SORT CONSTANTS ###########
+   /**
+    * The maximum number of rows quick sorted at once. Bigger tables are sorted in runs of this size which are then merged.
+    */
+   static final int SORT_RUN_SIZE = 8192;
+   
+   /**
+    * The size of the buffer used to write the merged runs to disk and copy them back to the table.
+    */
+   private static final int SORT_BUFFER_SIZE = 16384;
+   
+   /**
+    * The maximum number of indices rebuilt at the same time by <code>tableReIndexAll()</code>.
+    */
+   private static final int MAX_PARALLEL_INDICES = 4;
+   
+   /**
+    * The approximate number of bytes taken by a key value when an index is rebuilt.
+    */
+   private static final int KEY_VALUE_SIZE = 48;
+   
    /**
     * Indicates that a column has index. Used in <code>writeRecord()</code>.
     */
@@ -76,6 +108,11 @@ class Table
     */
    static final int USE_CRYPTO = 3; // juliana@253_8: now Litebase supports weak cryptography.
    
+   /**
+    * Indicates if the table change log file matches the table. It is only set when the table is closed properly.
+    */
+   static final int HAS_CHANGE_LOG = 4;
+   
    /**
     * The counter of the current <code>rowid</code>. The <code>rowid</code> is continuously incremented so that two elements will never have the same
     * one, even if elements are deleted. <p>The record attributes are stored in the first two bits of the <code>rowid</code>.
@@ -139,6 +176,52 @@ class Table
     */
    boolean isModified;
    
+   /**
+    * Indicates that rows are being bulk loaded into the table. Its indices are only built when the bulk load ends.
+    */
+   boolean isBulkLoading;
+   
+   /**
+    * Indicates that the primary key of a table being bulk loaded is only validated when the bulk load ends.
+    */
+   boolean isPrimaryKeyDeferred;
+   
+   /**
+    * The number of rows of the table when the bulk load started.
+    */
+   private int bulkLoadRowCount;
+   
+   /**
+    * The current <code>rowid</code> of the table when the bulk load started.
+    */
+   private int bulkLoadRowId;
+   
+   /**
+    * The auxiliary <code>rowid</code> of the table when the bulk load started.
+    */
+   private int bulkLoadAuxRowId;
+   
+   /**
+    * Indicates if the table files were flushed after each change when the bulk load started.
+    */
+   private boolean bulkLoadDontFlush;
+   
+   /**
+    * Indicates if the table files were flushed after each change when the table joined a transaction.
+    */
+   private boolean journalDontFlush;
+   
+   /**
+    * Indicates if the primary key index delayed its writes when the bulk load started.
+    */
+   private boolean bulkLoadWriteDelayed;
+   
+   /**
+    * The first row that may be a hole left by a deleted row. It is used by the incremental purge so that each step does not search for holes 
+    * from the beginning of the table.
+    */
+   private int firstHole;
+   
    // juliana@270_27: now purge will also really purge the table if it only suffers updates.
    /**
     * Indicates if the table was updated after the last time it was opened.
@@ -261,6 +344,46 @@ class Table
     */
    private int[] oneInt = new int[1];
    
+   /**
+    * An array of only one byte to be written in the table header.
+    */
+   private byte[] oneByte = new byte[1];
+   
+   /**
+    * An array of only one value to be used as a key of simple indices.
+    */
+   private SQLValue[] oneValue = new SQLValue[1];
+   
+   /**
+    * A stack of node or partition indices used by the index searches and the sorts on this table. It grows when needed.
+    */
+   int[] nodes = new int[32];
+   
+   /**
+    * A temporary buffer for strings.
+    */
+   StringBuffer sBuffer = new StringBuffer();
+   
+   /**
+    * A temporary date.
+    */
+   Date tempDate = new Date();
+   
+   /**
+    * The lock that controls which threads use this table. Temporary tables are used by only one thread and don't have it.
+    */
+   TableLock lock;
+   
+   /**
+    * The trigram indices of the table, indexed by column, or <code>null</code> if it has none.
+    */
+   TrigramIndex[] trigramIndices;
+   
+   /**
+    * The rows changed since the last synchronization or <code>null</code> if they are unknown and must be found by reading the whole table.
+    */
+   ChangeLog changeLog;
+   
    /**
     * Verifies if the index already exists.
     *
@@ -313,7 +436,7 @@ class Table
 
             if (alreadyExists)
             {
-               StringBuffer cols = db.driver.sBuffer;
+               StringBuffer cols = sBuffer;
                String[] colNames = columnNames;
                
                // Builds the exception message.
@@ -355,6 +478,76 @@ class Table
       tableSaveMetaData(Utils.TSMD_EVERYTHING); // guich@560_24
    }
    
+   /**
+    * Creates a trigram index for a column. Its rows are only read when the index is used for the first time.
+    *
+    * @param column The column of the index.
+    * @throws IOException If an internal method throws it.
+    * @throws DriverException If the column is not a string or already has a trigram index.
+    */
+   void createTrigramIndex(int column) throws IOException, DriverException
+   {
+      TrigramIndex[] indices = trigramIndices;
+      
+      if (columnTypes[column] != SQLElement.CHARS && columnTypes[column] != SQLElement.CHARS_NOCASE)
+         throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_TRIGRAM_INDEX_TYPE));
+      if (indices != null && indices.length > column && indices[column] != null)
+         throw new AlreadyCreatedException(LitebaseMessage.getMessage(LitebaseMessage.ERR_INDEX_ALREADY_CREATED) + columnNames[column]);
+      
+      if (indices == null || indices.length < columnCount) // A column may have been added to the table.
+      {
+         trigramIndices = new TrigramIndex[columnCount];
+         if (indices != null)
+            Vm.arrayCopy(indices, 0, trigramIndices, 0, indices.length);
+      }
+      trigramIndices[column] = new TrigramIndex(column);
+      columnAttrs[column] |= Utils.ATTR_COLUMN_HAS_TRIGRAM_INDEX;
+      tableSaveMetaData(Utils.TSMD_EVERYTHING);
+   }
+   
+   /**
+    * Drops the trigram index of a column.
+    *
+    * @param column The column of the index.
+    * @param saveMD Indicates if the meta data is to be saved.
+    * @throws IOException If an internal method throws it.
+    * @throws DriverException If the column does not have a trigram index.
+    */
+   void dropTrigramIndex(int column, boolean saveMD) throws IOException, DriverException
+   {
+      TrigramIndex[] indices = trigramIndices;
+      int i;
+      
+      if (indices == null || indices.length <= column || indices[column] == null)
+         throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_COLUMN_DOESNOT_HAVE_AN_INDEX) + columnNames[column]);
+      
+      indices[column] = null;
+      columnAttrs[column] &= ~Utils.ATTR_COLUMN_HAS_TRIGRAM_INDEX;
+      
+      i = indices.length;
+      while (--i >= 0 && indices[i] == null);
+      if (i < 0) // There are no trigram indices left.
+         trigramIndices = null;
+      if (saveMD)
+         tableSaveMetaData(Utils.TSMD_EVERYTHING);
+   }
+   
+   /**
+    * Discards the rows of the trigram indices after the rows of the table changed their positions.
+    */
+   void invalidateTrigramIndices()
+   {
+      TrigramIndex[] indices = trigramIndices;
+      
+      if (indices != null)
+      {
+         int i = indices.length;
+         while (--i >= 0)
+            if (indices[i] != null)
+               indices[i].invalidate();
+      }
+   }
+   
    /**
     * Drops a composed index.
     *
@@ -406,7 +599,7 @@ class Table
       }
       else // The given columns do not have a composed index.
       {
-         StringBuffer cols = db.driver.sBuffer;
+         StringBuffer cols = sBuffer;
          String[] colNames = columnNames;
          
          cols.setLength(0);
@@ -457,6 +650,17 @@ class Table
             count++;
          }
 
+      if (trigramIndices != null) // Trigram indices.
+      {
+         i = trigramIndices.length;
+         while (--i >= 0)
+            if (trigramIndices != null && trigramIndices[i] != null)
+            {
+               dropTrigramIndex(i, false);
+               count++;
+            }
+      }
+
       if (count > 0)
          tableSaveMetaData(Utils.TSMD_EVERYTHING); // guich@560_24
       return count;
@@ -583,6 +787,10 @@ class Table
          throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_WRONG_STRING_FORMAT));
       }
       
+      // The change log saved when the table was closed can only be used if the table was not changed after that.
+      if ((flags & (HAS_CHANGE_LOG | IS_SAVED_CORRECTLY)) == (HAS_CHANGE_LOG | IS_SAVED_CORRECTLY))
+         changeLog = ChangeLog.load(Utils.getFullFileName(name, sourcePath) + ChangeLog.EXT, plainDB.useCrypto);
+      
       // juliana@251_11: removed a possible exception when recovering an ascii table with indices on JavaSE and Blackberry.
       // juliana@220_2: added TableNotCreatedException which will be raised whenever a table is not closed properly.
       // If the table was not correctly closed, throws an specific exception to the user.
@@ -595,7 +803,9 @@ class Table
       }  
         
       // juliana@230_12: improved recover table to take .dbo data into consideration.
-      if ((version = ds.readShort()) < VERSION - 1) // The tables version must be the same as Litebase version.
+      // The tables version must be the same as Litebase version, the previous one, which still can be used and converted, or the one with 
+      // compressed string indices.
+      if ((version = ds.readShort()) < VERSION - 1 || version > VERSION_COMPRESSED_STRINGS)
       {
          // juliana@222_1: the table should not be marked as closed properly if it was not previously closed correctly.
          dbFile.close();
@@ -691,6 +901,11 @@ class Table
             }
          }
 
+      i = n;
+      while (--i >= 0) // Creates the trigram indices, which are built when used.
+         if ((attrs[i] & Utils.ATTR_COLUMN_HAS_TRIGRAM_INDEX) != 0)
+            (trigramIndices == null? trigramIndices = new TrigramIndex[n] : trigramIndices)[i] = new TrigramIndex(i);
+      
       // Now the current rowid can be fetched.
       dbFile.setPos(plainDB.headerSize + (plainDB.rowCount > 0 ? plainDB.rowCount - 1 : 0) * plainDB.rowSize);
       currentRowId = (auxRowId != Utils.ATTR_DEFAULT_AUX_ROWID? auxRowId 
@@ -1026,10 +1241,13 @@ class Table
       if (newName != null && (plainDB.db.size != 0 || create)) // The table is already created if the .db is not empty.
       {
          name = newName;
+         lock = new TableLock();
          plainDB.isAscii = ascii;
          plainDB.useCrypto = crypto;
          if (plainDB.db.size != 0) // If the table is already created, loads its meta data.
             tableLoadMetaData(appCrid, sourcePath, throwException);
+         else // A new table has no changed rows.
+            changeLog = new ChangeLog();
       }
    }
    
@@ -1051,7 +1269,8 @@ class Table
              newFullName;
       NormalFile fnodes;
 
-      // Renames the table.
+      // Renames the table. The change log is saved with the new name when the table is closed.
+      ChangeLog.remove(Utils.getFullFileName(name, driver.sourcePath) + ChangeLog.EXT);
       db.rename(tableFullName, driver.sourcePath);
       name = tableFullName;
       driver.htTables.remove(oldTableName);
@@ -1158,7 +1377,7 @@ class Table
          if (db.db.size != 0) // The table can't be already created.
             throw new AlreadyCreatedException(LitebaseMessage.getMessage(LitebaseMessage.ERR_TABLE_ALREADY_CREATED));
          
-         version = VERSION; // juliana@230_12
+         version = db.driver.compressStringIndices? VERSION_COMPRESSED_STRINGS : VERSION; // juliana@230_12
          
          columnNames = names; // Sets the column names.
          defaultValues = values; // Sets the defaut values.
@@ -1255,13 +1474,10 @@ class Table
       PlainDB plainDb = db;
       int numberColumns = index.types.length,  // Gets the number of columns.
           i = -1, 
-          j, 
           n = plainDb.rowCount; 
       short[] offsets = columnOffsets;
-      byte[] types = index.types;
-      byte[] columns = (composedIndex != null) ? composedIndex.columns : null;        
-      byte[] nulls = columnNulls[0];
-      boolean isDelayed = index.isWriteDelayed;
+      boolean isDelayed = index.isWriteDelayed,
+              isOrdered = index.isOrdered;
       
       index.deleteAllRows(); // Cleans the index values.
       index.setWriteDelayed(true); // This makes the index creation faster.
@@ -1275,115 +1491,272 @@ class Table
          if (index.isOrdered && composedIndex == null) // Simple index using rowid.
          {
             SQLValue vals[] = SQLValue.newSQLValues(numberColumns);
+            int last = -1;
+            
             while (++i < n)
             {
                plainDb.read(i); // Reads the row.
                if (!plainDb.recordNotDeleted()) // Only gets non-deleted records.
                   continue;
                readValue(vals[0], offsets[0], SQLElement.INT, false, false); // juliana@220_3 juliana@230_14
+               
+               // After an incremental purge, the rows may not be in the rowid order. In this case, the keys must be sorted.
+               if (vals[0].asInt < last)
+               {
+                  index.isOrdered = false;
+                  index.deleteAllRows();
+                  i = -1;
+                  break;
+               }
                index.indexAddKey(vals, i);
+               last = vals[0].asInt;
             }
          }
-         else 
+         if (!index.isOrdered || composedIndex != null)
          {
-            int rows = plainDb.rowCount; // juliana@284_1: Solved a possible application crash when recreating indices.
-            SQLValue[][] vals = new SQLValue[rows][];
-            int k = 0;
-            boolean isNull;
+            IndexBuilder builder = new IndexBuilder(this, column, composedIndex, isPrimaryKey);
             
             while (++i < n)
             {
-               isNull = false; // Resets the null info.
                plainDb.read(i); // Reads the row.
                if (!plainDb.recordNotDeleted()) // Only gets non-deleted records.
                   continue;
                readNullBytesOfRecord(0, false, 0); // juliana@201_22: the null columns information wasn't being read when re-creating an index.
-               vals[k] = SQLValue.newSQLValues(numberColumns);
-               
-               if (composedIndex == null)
-               {
-                  // juliana@230_14
-                  // juliana@220_3
-                  // juliana@202_12: Corrected null values dealing when building an index.
-                  readValue(vals[k][0], offsets[column], types[0], isNull = (nulls[column >> 3] & (1 << (column & 7))) != 0, false);
-
-               
-                  // The primary key can't be null.
-                  // juliana@202_10: Corrected a bug that would cause a DriverException if there was a null in an index field when creating it after 
-                  // the table is populated.
-                  if (isPrimaryKey && isNull)
-                     throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_PK_CANT_BE_NULL));
-               }
-               else
-               {
-                  j = numberColumns;
-                  while (--j >= 0)
-                  {
-                     // juliana@230_14
-                     // juliana@220_3
-                     // juliana@202_12: Corrected null values dealing when building an index.
-                     readValue(vals[k][j], offsets[columns[j]], types[j],  
-                                                                isNull |= (nulls[columns[j] >> 3] & (1 << (columns[j] & 7))) != 0, false);
-                     
-                     // The primary key can't have a null.
-                     // juliana@202_10: Corrected a bug that would cause a DriverException if there was a null in an index field when creating it 
-                     // after the table is populated.
-                     if (isPrimaryKey && isNull)
-                        throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_PK_CANT_BE_NULL));
-                  }
-               }
-               
-               if (isNull) // Do not store null records.
-                  rows--;
-               else // juliana@212_2: DATETIME indices would be recreated incorrectly on desktop and BlackBerry.
-                  if (types[0] == SQLElement.LONG) // The record value is stored in an empty field of the first record column value.
-                     vals[k++][0].asInt = i;
-                  else
-                     vals[k++][0].asLong = i;
-            }
-            
-            rows = k; // juliana@270_22: solved a possible crash when the table is corrupted on Android and possibly on other platforms.
-            if (!index.isOrdered)
-            {
-               // A radix sort is done for integer types. It is much more efficient than quick sort.
-               if (numberColumns == 1 
-                && (types[0] == SQLElement.SHORT || types[0] == SQLElement.INT || types[0] == SQLElement.LONG || types[0] == SQLElement.DATE))
-                  radixSort(vals, types[0], new SQLValue[rows][]);
-                  
-               else               
-                  sortRecords(vals, types, 0, rows - 1);
-               index.isOrdered = true; // The index elements will be inserted in the right order.
-            }   
-            int count = -1,
-                compare;
-            while (++count < rows)
-            {
-               // if it is the primary key, checks first if there is violation.
-               if (isPrimaryKey && count > 0 && ((compare = compareRecords(vals[count], vals[count - 1], types)) == 0 
-                                              || compare == Convert.MAX_INT_VALUE || compare == Convert.MIN_INT_VALUE))
-                  throw new PrimaryKeyViolationException(LitebaseMessage.getMessage(LitebaseMessage.ERR_STATEMENT_CREATE_DUPLICATED_PK) + name);
-               
-               if (types[0] == SQLElement.LONG)
-                  index.indexAddKey(vals[count], vals[count][0].asInt);
-               else
-                  index.indexAddKey(vals[count], (int)vals[count][0].asLong);
-               if (count > 0) 
-                  vals[count - 1] = null;
+               builder.addRow(i);
             }
-            vals = null;
-            
-            // An index beggining with rowid is always ordered. 
-            if (composedIndex == null || composedIndex.columns[0] != 0)
-               index.isOrdered = false;
+            builder.build();
          }
       }
       finally
       {
+         // Only an index beggining with rowid is always ordered. It must not stay ordered if a primary key violation is found.
+         index.isOrdered = isOrdered;
          index.setWriteDelayed(isDelayed); // Uses the user desired delayed settings again.
          ((NormalFile)plainDb.dbo).loadIntoMemory(false);
          ((NormalFile)plainDb.db).loadIntoMemory(false);
       }         
    }
+   
+   /**
+    * Gets the identifiers of all the indices of the table, used by <code>tableReIndexAll()</code>.
+    * 
+    * @return The column of each simple index and the number of columns plus the position of each composed index.
+    */
+   IntVector getIndexIds()
+   {
+      Index[] indices = columnIndices;
+      int n = columnCount,
+          i = numberComposedIndices;
+      IntVector ids = new IntVector(n + i);
+      
+      while (--i >= 0)
+         ids.addElement(n + i);
+      i = n;
+      while (--i >= 0)
+         if (indices[i] != null)
+            ids.addElement(i);
+      return ids;
+   }
+   
+   /**
+    * Recreates the indices with string columns of a table which is being converted to the format where the indices store the strings instead of 
+    * their positions in the .dbo. The table version must already be <code>VERSION_COMPRESSED_STRINGS</code>.
+    * 
+    * @param appCrid The application id of the table.
+    * @param sourcePath The folder where the table files are stored.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it. 
+    */
+   void convertStringIndices(String appCrid, String sourcePath) throws IOException, InvalidDateException
+   {
+      byte[] types = columnTypes;
+      int[] sizes = columnSizes;
+      ComposedIndex ci;
+      byte[] columns;
+      int[] indexSizes;
+      byte[] indexTypes;
+      IntVector ids = new IntVector();
+      int i = columnCount,
+          j,
+          k;
+      boolean hasString;
+      
+      while (--i >= 0) // Simple indices.
+         if (columnIndices[i] != null && (types[i] == SQLElement.CHARS || types[i] == SQLElement.CHARS_NOCASE))
+         {
+            columnIndices[i].close();
+            indexCreateIndex(name, i, new int[]{sizes[i]}, new byte[]{types[i]}, appCrid, sourcePath, false);
+            ids.addElement(i);
+         }
+      
+      i = numberComposedIndices;
+      while (--i >= 0) // Composed indices.
+      {
+         j = (columns = (ci = composedIndices[i]).columns).length;
+         indexSizes = new int[j];
+         indexTypes = new byte[j];
+         hasString = false;
+         while (--j >= 0)
+         {
+            indexSizes[j] = sizes[k = columns[j]];
+            hasString |= (indexTypes[j] = types[k]) == SQLElement.CHARS || types[k] == SQLElement.CHARS_NOCASE;
+         }
+         
+         if (hasString)
+         {
+            ci.index.close();
+            indexCreateComposedIndex(name, columns, indexSizes, indexTypes, ci.indexId, composedPK == i, appCrid, false, sourcePath, false);
+            ids.addElement(columnCount + i);
+         }
+      }
+      
+      tableReIndexAll(ids, -1);
+   }
+   
+   /**
+    * Re-builds several indices of a table. Instead of reading the table once for each index, the keys of a group of indices are collected reading 
+    * the table only once, and then each index of the group is sorted and built by its own thread. A group has at most 
+    * <code>MAX_PARALLEL_INDICES</code> indices and, since all their keys are kept in memory at the same time, it is reduced if there is not enough 
+    * free memory.
+    * 
+    * @param ids The indices to be rebuilt: the column of a simple index or the number of columns plus the position of a composed index.
+    * @param primaryKeyId The index of the primary key if its keys must be verified or -1.
+    * @throws PrimaryKeyViolationException If the primary key is verified and the table has repeated keys.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it. 
+    */
+   void tableReIndexAll(IntVector ids, int primaryKeyId) throws PrimaryKeyViolationException, IOException, InvalidDateException
+   {
+      int[] items = ids.items;
+      int n = ids.size(),
+          rows = db.rowCount,
+          first = 0,
+          last,
+          id;
+      long free,
+           needed;
+      
+      while (first < n)
+      {
+         free = Vm.getFreeMemory() >> 1;
+         needed = 0;
+         last = first;
+         while (last < n && last - first < MAX_PARALLEL_INDICES)
+         {
+            // Each key takes its values and the array that holds them.
+            id = items[last];
+            needed += (long)rows * (KEY_VALUE_SIZE * (id < columnCount? 1 : composedIndices[id - columnCount].columns.length) + KEY_VALUE_SIZE);
+            if (last > first && needed > free)
+               break;
+            last++;
+         }
+         
+         if (last - first == 1)
+            tableReIndex((id = items[first]) < columnCount? id : -1, id < columnCount? null : composedIndices[id - columnCount], 
+                                                                                                                           id == primaryKeyId);
+         else
+            reIndexGroup(items, first, last, primaryKeyId);
+         first = last;
+      }
+   }
+   
+   /**
+    * Re-builds a group of indices reading the table once. The first index of the group is built by the current thread and the other ones by new 
+    * threads. Since TotalCross threads can't be joined, the current thread sleeps a little until the other ones finish.
+    * 
+    * @param ids The indices to be rebuilt.
+    * @param first The position of the first index of the group.
+    * @param last The position after the last index of the group.
+    * @param primaryKeyId The index of the primary key if its keys must be verified or -1.
+    * @throws PrimaryKeyViolationException If the primary key is verified and the table has repeated keys.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it. 
+    */
+   private void reIndexGroup(int[] ids, int first, int last, int primaryKeyId) throws PrimaryKeyViolationException, IOException, 
+                                                                                                                            InvalidDateException
+   {
+      PlainDB plainDb = db;
+      int count = last - first,
+          n = plainDb.rowCount,
+          i = -1,
+          j = count,
+          id;
+      IndexBuilder[] builders = new IndexBuilder[count];
+      Thread[] threads = new Thread[count];
+      boolean[] delayed = new boolean[count],
+                ordered = new boolean[count];
+      Index index;
+      Throwable exception;
+      
+      while (--j >= 0)
+      {
+         id = ids[first + j];
+         index = (builders[j] = new IndexBuilder(this, id < columnCount? id : -1, id < columnCount? null : composedIndices[id - columnCount], 
+                                                                                                                         id == primaryKeyId)).index;
+         delayed[j] = index.isWriteDelayed;
+         ordered[j] = index.isOrdered;
+      }
+      
+      // rnovais@570_24 juliana@114_9: checks if the column being reindexed is the primary key columns.
+      ((NormalFile)plainDb.dbo).loadIntoMemory(true);
+      ((NormalFile)plainDb.db).loadIntoMemory(true);
+      
+      try
+      {
+         j = count;
+         while (--j >= 0)
+         {
+            (index = builders[j].index).deleteAllRows(); // Cleans the index values.
+            index.setWriteDelayed(true); // This makes the index creation faster.
+         }
+         
+         while (++i < n) // The keys of all the indices are collected reading each row once.
+         {
+            plainDb.read(i); // Reads the row.
+            if (!plainDb.recordNotDeleted()) // Only gets non-deleted records.
+               continue;
+            readNullBytesOfRecord(0, false, 0);
+            j = count;
+            while (--j >= 0)
+               builders[j].addRow(i);
+         }
+         
+         j = count;
+         while (--j > 0) 
+            (threads[j] = new Thread(builders[j])).start();
+         builders[0].run();
+         
+         j = count;
+         while (--j > 0)
+            while (threads[j].isAlive())
+               Vm.sleep(1);
+         
+         j = count;
+         while (--j >= 0)
+            if ((exception = builders[j].exception) != null)
+            {
+               if (exception instanceof IOException)
+                  throw (IOException)exception;
+               if (exception instanceof InvalidDateException)
+                  throw (InvalidDateException)exception;
+               if (exception instanceof RuntimeException)
+                  throw (RuntimeException)exception;
+               throw (Error)exception;
+            }
+      }
+      finally
+      {
+         j = count;
+         while (--j >= 0)
+         {
+            index = builders[j].index;
+            index.isOrdered = ordered[j];
+            index.setWriteDelayed(delayed[j]); // Uses the user desired delayed settings again.
+         }
+         ((NormalFile)plainDb.dbo).loadIntoMemory(false);
+         ((NormalFile)plainDb.db).loadIntoMemory(false);
+      }
+   }
 
    // juliana@230_14
    // juliana@220_3: blobs are not loaded anymore in the temporary table when building result sets.
@@ -1408,12 +1781,32 @@ class Table
    }
    
    /**
-    * Creates a simple index for the table for the given column.
-    *
-    * @param fullTableName The table disk name.
-    * @param column The column of the index.
-    * @param columnSizes The sizes of the columns.
-    * @param columnTypes The types of the columns.
+    * Reads a string or a blob from the current row of a table into an array, without creating a new object.
+    * 
+    * @param offset The offset of the value in its row.
+    * @param chars The array where the characters of a string are copied to or <code>null</code> if a blob is being read.
+    * @param blob The array where the bytes of a blob are copied to or <code>null</code> if a string is being read.
+    * @param start The position of the array where the first character or byte is copied to.
+    * @return The string length or the blob size, which may be greater than the number of characters or bytes copied.
+    * @throws IOException If an internal method throws it.
+    */
+   int readArray(int offset, char[] chars, byte[] blob, int start) throws IOException
+   {
+      PlainDB plainDB = db;
+      ByteArrayStream bas = plainDB.bas;
+      bas.skipBytes(offset); // Skips the first columns.
+      start = plainDB.readArray(plainDB.basds, name == null, chars, blob, start); // Reads the value.
+      bas.skipBytes(-offset - 4); // Returns to the first column.
+      return start;
+   }
+   
+   /**
+    * Creates a simple index for the table for the given column.
+    *
+    * @param fullTableName The table disk name.
+    * @param column The column of the index.
+    * @param columnSizes The sizes of the columns.
+    * @param columnTypes The types of the columns.
     * @param crid The application id of the table.
     * @param sourcePath The folder where the table files are stored.
     * @param exist Indicates that the index files already exist. 
@@ -1559,7 +1952,8 @@ class Table
          if (vals[i] == null)
             throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_PK_CANT_BE_NULL));
 
-      if (hasChanged || newRecord) // Sees if the record does not violate the primary key.
+      // Sees if the record does not violate the primary key. A deferred primary key is only validated when the bulk load ends.
+      if (hasChanged || (newRecord && !isPrimaryKeyDeferred))
       {
          index.tempKey.set(vals);
          index.getValue(index.tempKey, null);
@@ -1962,6 +2356,35 @@ class Table
                         return VALIDATION_RECORD_NOT_OK;
                   }
                }
+               else if (rightTree.useHashJoin && boolOp <= 1)
+               {
+                  SQLValue value = leftTree.valueJoin;
+                  HashJoinTable[] hashTables = rsBag.hashJoinTables;
+                  HashJoinTable hashTable;
+                  IntVector auxRowsBitmap;
+                  int col = rightTree.colIndex,
+                      type = rsBag.table.columnTypes[col];
+                  
+                  if (value == null) // A null value is never equal to anything.
+                     return VALIDATION_RECORD_NOT_OK;
+                  
+                  if (hashTables == null)
+                     hashTables = rsBag.hashJoinTables = new HashJoinTable[rsBag.table.columnCount];
+                  if ((hashTable = hashTables[col]) == null && (hashTable = hashTables[col] = HashJoinTable.build(rsBag, col, type)) == null)
+                  {
+                     rightTree.useHashJoin = false; // Not enough memory: uses a nested loop.
+                     return VALIDATION_RECORD_INCOMPLETE;
+                  }
+                  if ((rsBag.auxRowsBitmap = auxRowsBitmap = hashTable.probe(value, type)) == null)
+                     return VALIDATION_RECORD_NOT_OK;
+                  
+                  if (rsBag.rowsBitmap != null && boolOp == 1)
+                  {
+                     SQLSelectStatement.mergeBitmaps(auxRowsBitmap.items, rsBag.rowsBitmap.items, 1);
+                     if (Utils.countBits(auxRowsBitmap.items) == 0)
+                        return VALIDATION_RECORD_NOT_OK;
+                  }
+               }
             }
             return VALIDATION_RECORD_INCOMPLETE;
          }
@@ -2138,11 +2561,149 @@ class Table
       // Picks one of the Column List clauses as the sort list.
       SQLColumnListClause sortListClause = (orderByClause == null? groupByClause : orderByClause);
 
-      int count = columnCount;
-
-      // Quick sorts the table.
-      quickSort(0, db.rowCount - 1, SQLValue.newSQLValues(count), SQLValue.newSQLValues(count), SQLValue.newSQLValues(count), bufAux, 
-                                                                                                sortListClause.fieldList, driver);
+      int count = columnCount,
+          rows = db.rowCount,
+          first = 0;
+      SQLValue[] pivot = SQLValue.newSQLValues(count),
+                 someRecord1 = SQLValue.newSQLValues(count),
+                 someRecord2 = SQLValue.newSQLValues(count);
+      SQLResultSetField[] fieldList = sortListClause.fieldList;
+
+      // Quick sorts the table. Big tables are sorted in runs which are merged afterwards, so that the memory used by the sort doesn't depend on the
+      // table size.
+      while (first < rows)
+      {
+         quickSort(first, Math.min(first + SORT_RUN_SIZE, rows) - 1, pivot, someRecord1, someRecord2, bufAux, fieldList, driver);
+         first += SORT_RUN_SIZE;
+      }
+      if (rows > SORT_RUN_SIZE)
+         mergeRuns(fieldList, driver);
+   }
+   
+   /**
+    * Merges the sorted runs of the table. The merged rows are written to a temporary disk file and then copied back to the table, so that only the 
+    * first row of each run needs to be in memory.
+    * 
+    * @param fieldList The order of comparison of the fields.
+    * @param driver The connection with Litebase.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   private void mergeRuns(SQLResultSetField[] fieldList, LitebaseConnection driver) throws IOException, InvalidDateException
+   {
+      PlainDB plainDB = db;
+      XFile dbFile = plainDB.db;
+      byte[] basbuf = plainDB.basbuf;
+      byte[] nulls0 = columnNulls[0];
+      int rows = plainDB.rowCount,
+          rowSize = plainDB.rowSize,
+          runs = (rows + SORT_RUN_SIZE - 1) / SORT_RUN_SIZE,
+          heapSize = 0,
+          bufferRows = Math.max(1, SORT_BUFFER_SIZE / rowSize),
+          buffered = 0,
+          i = -1,
+          j,
+          run,
+          read;
+      int[] positions = new int[runs];
+      int[] heap = new int[runs];
+      SQLValue[][] records = new SQLValue[runs][];
+      byte[][] nulls = new byte[runs][];
+      byte[] buffer = new byte[bufferRows * rowSize];
+      
+      // Each thread sorts into its own file.
+      File spill = new File(Utils.getFullFileName(driver.appCrid + "-sort" + Thread.currentThread().getId() + ".tmp", driver.sourcePath), 
+                                                                                                                         File.CREATE_EMPTY);
+      
+      try
+      {
+         while (++i < runs) // Reads the first row of each run and puts the run in the heap.
+         {
+            records[i] = SQLValue.newSQLValues(columnCount);
+            nulls[i] = new byte[nulls0.length];
+            readRecord(records[i], positions[i] = i * SORT_RUN_SIZE, 0, driver, fieldList, true, null, 0);
+            Vm.arrayCopy(nulls0, 0, nulls[i], 0, nulls0.length);
+            
+            j = heapSize++;
+            while (j > 0 && compareRuns(i, heap[(j - 1) >> 1], records, nulls, fieldList) < 0)
+            {
+               heap[j] = heap[(j - 1) >> 1];
+               j = (j - 1) >> 1;
+            }
+            heap[j] = i;
+         }
+         
+         while (heapSize > 0)
+         {
+            // Writes the smallest row.
+            plainDB.read(positions[run = heap[0]]);
+            Vm.arrayCopy(basbuf, 0, buffer, buffered++ * rowSize, rowSize);
+            if (buffered == bufferRows)
+            {
+               spill.writeBytes(buffer, 0, buffered * rowSize);
+               buffered = 0;
+            }
+            
+            // Replaces the row by the next one of its run or removes the run from the heap if it has ended. 
+            if (++positions[run] < Math.min((run + 1) * SORT_RUN_SIZE, rows))
+            {
+               readRecord(records[run], positions[run], 0, driver, fieldList, true, null, 0);
+               Vm.arrayCopy(nulls0, 0, nulls[run], 0, nulls0.length);
+            }
+            else
+               run = heap[--heapSize];
+            
+            // Moves the run down the heap.
+            i = 0;
+            while ((j = (i << 1) + 1) < heapSize)
+            {
+               if (j + 1 < heapSize && compareRuns(heap[j + 1], heap[j], records, nulls, fieldList) < 0)
+                  j++;
+               if (compareRuns(run, heap[j], records, nulls, fieldList) <= 0)
+                  break;
+               heap[i] = heap[j];
+               i = j;
+            }
+            heap[i] = run;
+         }
+         spill.writeBytes(buffer, 0, buffered * rowSize);
+         
+         // Copies the merged rows back to the table.
+         spill.setPos(0);
+         dbFile.setPos(plainDB.headerSize);
+         i = rows * rowSize;
+         while (i > 0)
+         {
+            j = 0;
+            while (j < buffer.length && j < i && (read = spill.readBytes(buffer, j, Math.min(buffer.length, i) - j)) > 0)
+               j += read;
+            if (j == 0)
+               throw new IOException(LitebaseMessage.getMessage(LitebaseMessage.ERR_CANT_READ));
+            dbFile.writeBytes(buffer, 0, j);
+            i -= j;
+         }
+      }
+      finally
+      {
+         spill.delete();
+      }
+   }
+   
+   /**
+    * Compares the current rows of two runs being merged.
+    * 
+    * @param run1 The first run.
+    * @param run2 The second run.
+    * @param records The current row of each run.
+    * @param nulls The null values of the current row of each run.
+    * @param fieldList The order of comparison of the fields.
+    * @return A negative number if the row of the first run must come first; otherwise, a positive number.
+    * @throws IOException If an internal method throws it.
+    */
+   private static int compareRuns(int run1, int run2, SQLValue[][] records, byte[][] nulls, SQLResultSetField[] fieldList) throws IOException
+   {
+      int result = Utils.compareRecords(records[run1], records[run2], nulls[run1], nulls[run2], fieldList);
+      return result != 0? result : run1 - run2; // Equal rows keep the order of their runs.
    }
 
    // juliana@250_1: corrected a possible crash when doing ordering operations.
@@ -2166,14 +2727,15 @@ class Table
                                                  SQLResultSetField[] fieldList, LitebaseConnection driver) throws IOException, InvalidDateException
    {
       Random r = new Random();
-      int[] intVector = db.driver.nodes;
+      int[] intVector = nodes;
       PlainDB plainDB = db;
       byte[] basbuf = db.basbuf;
       int rowSize = plainDB.rowSize,
           size = 2,
           low, 
           high,
-          pivotIndex; // guich@212_3: now using random partition (improves worst case 2000x).
+          pivotIndex, // guich@212_3: now using random partition (improves worst case 2000x).
+          firstRow = first;
       byte[] nulls1 = columnNulls[0];
       byte[] nulls2 = columnNulls[1];
       byte[] nulls3 = columnNulls[2];
@@ -2191,13 +2753,13 @@ class Table
          // juliana@213_3: high can't be equal to low.
          pivotIndex = high == low? high : r.between(low, high); // guich@212_3: now using random partition (improves worst case 2000x).
          
-         readRecord(pivot, pivotIndex, 2, driver, fieldList, true, strings);
+         readRecord(pivot, pivotIndex, 2, driver, fieldList, true, strings, firstRow);
          
          while (true) // Finds the partitions.
          {         
             while (high >= low)
             {
-               readRecord(someRecord1, low, 0, driver, fieldList, true, strings);
+               readRecord(someRecord1, low, 0, driver, fieldList, true, strings, firstRow);
                if (Utils.compareRecords(someRecord1, pivot, nulls1, nulls3, fieldList) >= 0)
                   break;
                low++;
@@ -2207,7 +2769,7 @@ class Table
             
             while (high >= low) 
             {
-               readRecord(someRecord2, high, 1, driver, fieldList, true, strings);
+               readRecord(someRecord2, high, 1, driver, fieldList, true, strings, firstRow);
                if (Utils.compareRecords(someRecord2, pivot, nulls2, nulls3, fieldList) <= 0)
                   break;
                high--;
@@ -2216,9 +2778,9 @@ class Table
             if (low <= high)
             {
                // juliana@114_8: optimized the swap of the records. Now the buffer is written at once.
-               tempString = strings[low];
-               strings[low] = strings[high];
-               strings[high] = tempString;
+               tempString = strings[low - firstRow];
+               strings[low - firstRow] = strings[high - firstRow];
+               strings[high - firstRow] = tempString;
                plainDB.rewrite(low++);
                Vm.arrayCopy(bufAux, 0, basbuf, 0, rowSize);
                plainDB.rewrite(high--);
@@ -2227,6 +2789,7 @@ class Table
          }
          
          // Sorts the partitions.
+         intVector = getNodes(size + 4);
          if (first < high)
          {
             intVector[size++] = first;
@@ -2257,6 +2820,26 @@ class Table
     */
    void readRecord(SQLValue[] record, int recPos, int whichColumnNull, LitebaseConnection driver, SQLResultSetField[] fieldList, boolean isTempBlob,
                                                                        String[][] strings) throws IOException, InvalidDateException
+   {
+      readRecord(record, recPos, whichColumnNull, driver, fieldList, isTempBlob, strings, 0);
+   }
+   
+   /**
+    * Reads the entire record from a table.
+    * 
+    * @param record An array where the record filed values will be stored.
+    * @param recPos The record index.
+    * @param whichColumnNull Indicates where the nulls will be stored.
+    * @param driver The connection with Litebase.
+    * @param fieldList A field list that indicates which fields to read from the table. 
+    * @param isTempBlob Indicates if a blob must be loaded or not.
+    * @param strings An array of strings if this method is used in a sort or <code>null</code> if the strings are not to be kept.
+    * @param firstRow The record index of the first element of <code>strings</code>.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   private void readRecord(SQLValue[] record, int recPos, int whichColumnNull, LitebaseConnection driver, SQLResultSetField[] fieldList, 
+                                                   boolean isTempBlob, String[][] strings, int firstRow) throws IOException, InvalidDateException
    {
       int i = fieldList != null? fieldList.length : columnCount;
       PlainDB plainDB = db;
@@ -2286,13 +2869,14 @@ class Table
          {
             // juliana@227_10: corrected order by or group by with strings being too slow.
             j = fieldList[i].tableColIndex;
-            if ((types[j] != SQLElement.CHARS && types[j] != SQLElement.CHARS_NOCASE) || strings[recPos][i] == null)
+            if ((types[j] != SQLElement.CHARS && types[j] != SQLElement.CHARS_NOCASE) || strings == null || strings[recPos - firstRow][i] == null)
             {
                readValue(record[j], offsets[j], types[j], (nulls[j >> 3] & (1 << (j & 7))) != 0, false); // juliana@230_14
-               strings[recPos][i] = record[j].asString;
+               if (strings != null)
+                  strings[recPos - firstRow][i] = record[j].asString;
             }
             else
-               record[j].asString = strings[recPos][i];
+               record[j].asString = strings[recPos - firstRow][i];
          }
       }
    }
@@ -2376,11 +2960,11 @@ class Table
                break;
                
             case SQLElement.DATE: // DATE
-               record[i].asInt = db.driver.tempDate.set(strVal.trim(), Settings.DATE_YMD);
+               record[i].asInt = tempDate.set(strVal.trim(), Settings.DATE_YMD);
                break;
                
             case SQLElement.DATETIME: // DATETIME
-               record[i].parseDateTime(db.driver.tempDate, strVal);
+               record[i].parseDateTime(tempDate, strVal);
          }   
       }
    }
@@ -2500,7 +3084,7 @@ class Table
       Index[] indices = columnIndices;
       byte[] columnNulls1 = columnNulls[1];
       byte[] asBlob;
-      SQLValue[] one = plainDB.driver.oneValue;
+      SQLValue[] one = oneValue;
       
       Convert.fill(has, 0, has.length, 0);
 
@@ -2571,7 +3155,7 @@ class Table
       buffer[3] = (plainDB.useCrypto? (byte)0xAA : 0); // juliana@222_5: The crc was not being calculated correctly for updates.
       int crc32 = updateCRC32(buffer, bas.getPos(), 0, plainDB.useCrypto); 
 
-      if (version == Table.VERSION)
+      if (version >= Table.VERSION_STRINGS_CRC)
       {
          int[] intArray = oneInt;
          
@@ -2621,10 +3205,21 @@ class Table
          plainDB.write();
       else
          plainDB.rewrite(writePos);   
+      rowChanged(writePos);
+      
+      TrigramIndex[] trigrams = trigramIndices;
+      if (trigrams != null) // The trigram indices only need the new values.
+      {
+         i = trigrams.length;
+         while (--i >= 0)
+            if (trigrams[i] != null && values[i] != null && !values[i].isNull && (columnNulls0[i >> 3] & (1 << (i & 7))) == 0)
+               trigrams[i].addRow(values[i].asString, writePos, !addingNewRecord);
+      }
 
       while (--n >= 0) // Finally, adds the values to the indices. // 0 = rowid
          
-         if ((has[n] & HAS_IDX) != 0)
+         // During a bulk load, only a primary key index that is not deferred is updated.
+         if ((has[n] & HAS_IDX) != 0 && (!isBulkLoading || (n == primaryKeyCol && !isPrimaryKeyDeferred)))
          {
             idx = indices[n];
 
@@ -2676,7 +3271,7 @@ class Table
          while (--i >= 0)
          {
             size = (columns = (ci = compIndices[i]).columns).length;
-            if (ci.indexId > 0)
+            if (ci.indexId > 0 && (!isBulkLoading || (i == composedPK && !isPrimaryKeyDeferred)))
             {
                if (vals == null || vals.length < size)
                {
@@ -2808,7 +3403,7 @@ class Table
     * first is less than the second. 
     * @throws IOException If an internal method throws it.
     */
-   private static int compareRecords(SQLValue[] vals1, SQLValue[] vals2, byte[] types) throws IOException 
+   static int compareRecords(SQLValue[] vals1, SQLValue[] vals2, byte[] types) throws IOException 
    {
       int n = vals1.length,
           i = -1,
@@ -2834,7 +3429,7 @@ class Table
    
    /**
     * Quick sort used for sorting the table to build the indices from scratch. This one is simpler than the sort used for order / gropu by.
-    * Uses a stack instead of a recursion.
+    * Uses a stack instead of a recursion. The stack is not shared, so that the keys of different indices can be sorted at the same time.
     * 
     * @param sortValues The records to be sorted.
     * @param types The types of the record values. 
@@ -2842,7 +3437,7 @@ class Table
     * @param last The last element of the current.
     * @throws IOException If an internal method throws it.
     */
-   private void sortRecords(SQLValue[][] sortValues, byte[] types, int first, int last) throws IOException
+   static void sortRecords(SQLValue[][] sortValues, byte[] types, int first, int last) throws IOException
    {
       // guich@212_3: checks if the values are already in order.
       SQLValue[] tempValues;
@@ -2858,7 +3453,7 @@ class Table
       int size = 2,
           low,
           high;
-      int[] intVector = db.driver.nodes;
+      int[] intVector = new int[64];
       Random r = new Random();
       SQLValue[] mid;
       
@@ -2889,6 +3484,12 @@ class Table
          }
          
          // Sorts the partitions.
+         if (size + 4 > intVector.length)
+         {
+            int[] newVector = new int[intVector.length << 1];
+            Vm.arrayCopy(intVector, 0, newVector, 0, size);
+            intVector = newVector;
+         }
          if (first < high)
          {
             intVector[size++] = first;
@@ -2910,7 +3511,7 @@ class Table
     * @param type The type of the elements.
     * @param temp A temporary array for the sort.
     */
-   private static void radixSort(SQLValue source[][], int type, SQLValue[][] temp)
+   static void radixSort(SQLValue source[][], int type, SQLValue[][] temp)
    {
       int count[] = new int[256];
       int index[] = new int[256];
@@ -3106,6 +3707,365 @@ class Table
       }
    }
    
+   /**
+    * Returns the index of the primary key of the table.
+    * 
+    * @return The index of the simple or composed primary key or <code>null</code> if the table does not have a primary key.
+    */
+   private Index getPrimaryKeyIndex()
+   {
+      if (primaryKeyCol != Utils.NO_PRIMARY_KEY)
+         return columnIndices[primaryKeyCol];
+      if (composedPK != Utils.NO_PRIMARY_KEY)
+         return composedIndices[composedPK].index;
+      return null;
+   }
+   
+   /**
+    * Starts a bulk load. Until it ends, the inserted rows are only appended to the table files and the indices are not updated, except for the 
+    * primary key index when the primary key is not deferred.
+    * 
+    * @param deferPrimaryKey Indicates if the primary key is only to be validated when the bulk load ends.
+    * @throws IOException If an internal method throws it.
+    */
+   void beginBulkLoad(boolean deferPrimaryKey) throws IOException
+   {
+      PlainDB plainDB = db;
+      NormalFile dbFile = (NormalFile)plainDB.db;
+      Index index = getPrimaryKeyIndex();
+      
+      isBulkLoading = true;
+      isPrimaryKeyDeferred = deferPrimaryKey && index != null;
+      bulkLoadRowCount = plainDB.rowCount;
+      bulkLoadRowId = currentRowId;
+      bulkLoadAuxRowId = auxRowId;
+      
+      // The table files are only flushed when the bulk load ends.
+      bulkLoadDontFlush = dbFile.dontFlush;
+      dbFile.dontFlush = ((NormalFile)plainDB.dbo).dontFlush = true;
+      
+      if (index != null && !isPrimaryKeyDeferred)
+      {
+         bulkLoadWriteDelayed = index.isWriteDelayed;
+         index.setWriteDelayed(true);
+      }
+   }
+   
+   /**
+    * Ends a bulk load, building the indices of the table from the sorted keys of all its rows. If the primary key was deferred and the table has 
+    * repeated keys, the rows inserted during the bulk load are discarded.
+    * 
+    * @throws PrimaryKeyViolationException If the primary key was deferred and the table has repeated keys.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   void endBulkLoad() throws PrimaryKeyViolationException, IOException, InvalidDateException
+   {
+      PlainDB plainDB = db;
+      NormalFile dbFile = (NormalFile)plainDB.db,
+                 dboFile = (NormalFile)plainDB.dbo;
+      Index index = getPrimaryKeyIndex();
+      boolean isDeferred = isPrimaryKeyDeferred;
+      int primaryKeyId = primaryKeyCol != Utils.NO_PRIMARY_KEY? primaryKeyCol : composedPK != Utils.NO_PRIMARY_KEY? columnCount + composedPK : -1,
+          i;
+      
+      isBulkLoading = isPrimaryKeyDeferred = false;
+      dbFile.dontFlush = dboFile.dontFlush = bulkLoadDontFlush;
+      
+      if (index != null && !isDeferred)
+         index.setWriteDelayed(bulkLoadWriteDelayed);
+      
+      if (plainDB.rowCount > bulkLoadRowCount) // Only rebuilds the indices if rows were inserted.
+      {
+         // Recreates the indices. The primary key index is already up to date unless it was deferred. In this case, it is rebuilt and verified
+         // together with the other ones.
+         IntVector ids = getIndexIds();
+         
+         if (!isDeferred && (i = ids.indexOf(primaryKeyId)) >= 0)
+            ids.removeElementAt(i);
+         try
+         {
+            tableReIndexAll(ids, isDeferred? primaryKeyId : -1);
+         }
+         catch (PrimaryKeyViolationException exception)
+         {
+            // Discards the inserted rows and rebuilds the indices without them.
+            plainDB.rowCount = bulkLoadRowCount;
+            plainDB.rowAvail = 0;
+            dbFile.growTo(plainDB.headerSize + bulkLoadRowCount * plainDB.rowSize);
+            currentRowId = bulkLoadRowId;
+            if ((auxRowId = bulkLoadAuxRowId) != Utils.ATTR_DEFAULT_AUX_ROWID)
+               tableSaveMetaData(Utils.TSMD_ONLY_AUXROWID);
+            tableReIndexAll(ids, -1);
+            throw exception;
+         }
+      }
+      
+      if (!dbFile.dontFlush) // Flushs the table files if they are flushed after each change.
+      {           
+         if (dbFile.cacheIsDirty)
+            dbFile.flushCache(); // Flushs .db.
+         if (dboFile.cacheIsDirty)
+            dboFile.flushCache(); // Flushs .dbo.
+      }
+   }
+   
+   /**
+    * Runs one step of an incremental purge: moves at most <code>maxRows</code> rows from the end of the table to the holes left by deleted rows 
+    * in its beginning, updating the indices, and cuts the deleted rows from the end of the table. A row is copied before its original is deleted, 
+    * so an interrupted step leaves at most a repeated row, which is removed by <code>LitebaseConnection.recoverTable()</code>.
+    * 
+    * @param maxRows The maximum number of rows to be moved.
+    * @return The number of deleted rows that remain in the table.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   int purgeStep(int maxRows) throws IOException, InvalidDateException
+   {
+      PlainDB plainDB = db;
+      NormalFile dbFile = (NormalFile)plainDB.db,
+                 dboFile = (NormalFile)plainDB.dbo;
+      Index[] indices = columnIndices;
+      ComposedIndex[] compIndices = composedIndices;
+      int rows = plainDB.rowCount,
+          hole = firstHole,
+          last = rows,
+          moved = 0,
+          cut,
+          i = columnCount + numberComposedIndices;
+      boolean[] ordered = new boolean[i];
+      
+      setModified(); // Sets the table as not closed properly.
+      
+      // Moved keys are not the biggest ones of an index whose first column is the rowid.
+      while (--i >= 0)
+         if (i >= columnCount)
+         {
+            ordered[i] = compIndices[i - columnCount].index.isOrdered;
+            compIndices[i - columnCount].index.isOrdered = false;
+         }
+         else if (indices[i] != null)
+         {
+            ordered[i] = indices[i].isOrdered;
+            indices[i].isOrdered = false;
+         }
+      
+      try
+      {
+         while (true)
+         {
+            while (--last >= 0) // Finds the last row that is not deleted.
+            {
+               plainDB.read(last);
+               if (plainDB.recordNotDeleted())
+                  break;
+            }
+            while (hole < last) // Finds the first hole.
+            {
+               plainDB.read(hole);
+               if (!plainDB.recordNotDeleted())
+                  break;
+               hole++;
+            }
+            if (hole >= last || moved == maxRows)
+               break;
+            moveRow(last, hole++);
+            moved++;
+         }
+      }
+      finally
+      {
+         i = columnCount + numberComposedIndices;
+         while (--i >= 0)
+            if (i >= columnCount)
+               compIndices[i - columnCount].index.isOrdered = ordered[i];
+            else if (indices[i] != null)
+               indices[i].isOrdered = ordered[i];
+      }
+      
+      if ((cut = rows - last - 1) > 0) // All the rows after the last one that is not deleted are cut.
+      {
+         plainDB.rowCount = last + 1;
+         plainDB.rowAvail = 0;
+         dbFile.growTo(plainDB.headerSize + plainDB.rowCount * plainDB.rowSize);
+         deletedRowsCount -= cut;
+      }
+      
+      // If a hole was created after the first hole was found, it must be found again.
+      firstHole = (hole < last || deletedRowsCount == 0)? hole : 0;
+      
+      if (moved > 0 || cut > 0) 
+      {
+         auxRowId = currentRowId; // The last row may not have the biggest rowid anymore.
+         tableSaveMetaData(Utils.TSMD_ONLY_AUXROWID); // Also saves the deleted rows count.
+      }
+      
+      if (!dbFile.dontFlush)
+      {           
+         if (dbFile.cacheIsDirty)
+            dbFile.flushCache(); // Flushs .db.
+         if (dboFile.cacheIsDirty)
+            dboFile.flushCache(); // Flushs .dbo.
+      }
+      return deletedRowsCount;
+   }
+   
+   /**
+    * Moves a row to a hole left by a deleted row. The row is copied, its keys are moved in the indices, and then the original row is deleted.
+    * 
+    * @param from The row to be moved.
+    * @param to The deleted row that will receive it.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   private void moveRow(int from, int to) throws IOException, InvalidDateException
+   {
+      PlainDB plainDB = db;
+      ByteArrayStream bas = plainDB.bas;
+      DataStreamLB ds = plainDB.basds; // juliana@253_8: now Litebase supports weak cryptography.
+      Index[] indices = columnIndices;
+      ComposedIndex[] compIndices = composedIndices;
+      ComposedIndex ci;
+      Index index;
+      byte[] nulls = columnNulls[0];
+      byte[] types = columnTypes;
+      byte[] columns;
+      short[] offsets = columnOffsets;
+      SQLValue[] values;
+      int i = columnCount,
+          j,
+          column;
+      boolean isNull;
+      
+      plainDB.read(from);
+      plainDB.rewrite(to); // The copy has the same rowid and crc32 of the original row.
+      readNullBytesOfRecord(0, false, 0);
+      
+      while (--i >= 0) // Moves the simple index keys.
+         if ((index = indices[i]) != null && (nulls[i >> 3] & (1 << (i & 7))) == 0) // Null values are not stored on indices.
+         {
+            values = SQLValue.newSQLValues(1);
+            bas.reset();
+            readValue(values[0], offsets[i], types[i], false, false);
+            index.tempKey.set(values);
+            index.removeValue(index.tempKey, from);
+            index.indexAddKey(values, to);
+         }
+      
+      TrigramIndex[] trigrams = trigramIndices;
+      if (trigrams != null) // The trigram indices need the row in its new position. 
+      {
+         i = trigrams.length;
+         while (--i >= 0)
+            if (trigrams[i] != null && (nulls[i >> 3] & (1 << (i & 7))) == 0)
+            {
+               values = SQLValue.newSQLValues(1);
+               bas.reset();
+               readValue(values[0], offsets[i], types[i], false, false);
+               trigrams[i].addRow(values[0].asString, to, false);
+            }
+      }
+      
+      i = numberComposedIndices;
+      while (--i >= 0) // Moves the composed index keys.
+      {
+         values = SQLValue.newSQLValues(j = (columns = (ci = compIndices[i]).columns).length);
+         isNull = false;
+         while (--j >= 0 && !(isNull = (nulls[(column = columns[j]) >> 3] & (1 << (column & 7))) != 0))
+         {
+            bas.reset();
+            readValue(values[j], offsets[column], types[column], false, false);
+         }
+         if (!isNull) // A key is stored in a composed index only if all its values are not null.
+         {
+            (index = ci.index).tempKey.set(values);
+            index.removeValue(index.tempKey, from);
+            index.indexAddKey(values, to);
+         }
+      }
+      
+      // Logically deletes the original row: changes the attribute to 'deleted'.
+      plainDB.read(from);
+      if (((i = ds.readInt()) & Utils.ROW_ATTR_MASK) != Utils.ROW_ATTR_SYNCED) // The row must still be synchronized in its new position.
+         rowChanged(to);
+      i = (i & Utils.ROW_ID_MASK) | Utils.ROW_ATTR_DELETED;
+      bas.reset();
+      ds.writeInt(i);
+      plainDB.rewrite(from);
+   }
+   
+   /**
+    * Logs a row that was inserted, updated, or deleted, so that it is returned by the iterators of changed rows.
+    * 
+    * @param row The row changed.
+    */
+   void rowChanged(int row)
+   {
+      if (changeLog != null)
+         changeLog.add(row);
+   }
+   
+   /**
+    * Gets the log of the changed rows, reading the whole table to build it if it is not known.
+    * 
+    * @return The change log.
+    * @throws IOException If an internal method throws it.
+    */
+   ChangeLog getChangeLog() throws IOException
+   {
+      if (changeLog == null)
+         changeLog = ChangeLog.build(db);
+      return changeLog;
+   }
+   
+   /**
+    * Saves the change log before the table is closed. If the log is not known, an old log file is deleted, since it does not match the table 
+    * anymore.
+    * 
+    * @param sourcePath The path where the table is stored.
+    * @throws IOException If an internal method throws it.
+    */
+   void saveChangeLog(String sourcePath) throws IOException
+   {
+      String fileName = Utils.getFullFileName(name, sourcePath) + ChangeLog.EXT;
+      
+      if (db.hasChangeLog = changeLog != null)
+         changeLog.save(fileName, db.useCrypto);
+      else
+         ChangeLog.remove(fileName);
+   }
+   
+   /**
+    * Verifies that the table is not being bulk loaded, since its indices are not up to date until the bulk load ends.
+    * 
+    * @throws DriverException If the table is being bulk loaded.
+    */
+   void verifyBulkLoad() throws DriverException
+   {
+      if (isBulkLoading)
+         throw new DriverException(LitebaseMessage.getMessage(LitebaseMessage.ERR_TABLE_BULK_LOADING) + name);
+   }
+   
+   /**
+    * Gets the stack of node or partition indices of this table, enlarging it if it can't hold the given number of elements. The elements already 
+    * pushed are kept.
+    *
+    * @param size The number of elements the stack must hold.
+    * @return The stack.
+    */
+   int[] getNodes(int size)
+   {
+      int[] stack = nodes;
+      
+      if (stack.length < size)
+      {
+         int length = stack.length << 1;
+         Vm.arrayCopy(stack, 0, nodes = new int[length < size? size : length], 0, stack.length);
+         stack = nodes;
+      }
+      return stack;
+   }
+   
    /**
     * Changes a table to the modified state whenever it is modified.
     * 
@@ -3113,19 +4073,103 @@ class Table
     */
    void setModified() throws IOException
    {
+      if (isModified) // The header already tells that the table was not closed properly.
+         return;
+      
       PlainDB plainDB = db;
       NormalFile dbFile = (NormalFile)plainDB.db;
-      byte[] oneByte = plainDB.driver.oneByte;
+      byte[] buffer = oneByte;
       
       dbFile.setPos(6);
       
       // juliana@230_13: removed some possible strange behaviours when using threads.
-      oneByte[0] = (byte)(plainDB.isAscii? Table.IS_ASCII : 0);
+      buffer[0] = (byte)(plainDB.isAscii? Table.IS_ASCII : 0);
       if (plainDB.useCrypto) // juliana@253_8: now Litebase supports weak cryptography.
-         oneByte[0] = oneByte[0] ^= 0xAA;
-      dbFile.writeBytes(oneByte, 0, 1);
+         buffer[0] = buffer[0] ^= 0xAA;
+      dbFile.writeBytes(buffer, 0, 1);
       
       dbFile.flushCache();
       isModified = true;
    }
+   
+   /**
+    * Makes the table files use the journal of a transaction or stop using it. While there is a journal, the table files and indices are only 
+    * written when their caches are full or when the transaction is committed.
+    * 
+    * @param journal The journal of the transaction or <code>null</code> when the transaction ends. 
+    * @throws IOException If an internal method throws it.
+    */
+   void setJournal(Journal journal) throws IOException
+   {
+      PlainDB plainDB = db;
+      NormalFile dbFile = (NormalFile)plainDB.db,
+                 dboFile = (NormalFile)plainDB.dbo;
+      Index[] indices = columnIndices;
+      ComposedIndex[] compIndices = composedIndices;
+      Index index;
+      int i = columnCount + numberComposedIndices;
+      boolean delayed;
+      
+      if (journal != null)
+         journalDontFlush = dbFile.dontFlush;
+      delayed = journal != null || journalDontFlush;
+      
+      dbFile.journal = dboFile.journal = journal;
+      dbFile.dontFlush = dboFile.dontFlush = delayed;
+      while (--i >= 0)
+         if ((index = (i >= columnCount? compIndices[i - columnCount].index : indices[i])) != null)
+         {
+            index.fnodes.journal = journal;
+            index.setWriteDelayed(delayed);
+         }
+   }
+   
+   /**
+    * Writes all the changes of the table to the disk, leaving its files as if the table was closed. The rows pre-allocated by the row increment 
+    * are removed from the .db file, since they would be taken as rows when the table is opened.
+    * 
+    * @throws IOException If an internal method throws it.
+    */
+   void checkpoint() throws IOException
+   {
+      PlainDB plainDB = db;
+      NormalFile dbFile = (NormalFile)plainDB.db,
+                 dboFile = (NormalFile)plainDB.dbo,
+                 fnodes;
+      Index[] indices = columnIndices;
+      ComposedIndex[] compIndices = composedIndices;
+      Index index;
+      int i = columnCount + numberComposedIndices,
+          size = plainDB.headerSize + plainDB.rowCount * plainDB.rowSize;
+      boolean delayed;
+      
+      while (--i >= 0) // Writes the nodes of the indices.
+         if ((index = (i >= columnCount? compIndices[i - columnCount].index : indices[i])) != null)
+         {
+            if (delayed = index.isWriteDelayed)
+               index.setWriteDelayed(false);
+            if ((fnodes = index.fnodes).cacheIsDirty)
+               fnodes.flushCache();
+            fnodes.f.flush();
+            if (delayed)
+               index.setWriteDelayed(true);
+         }
+      
+      if (dbFile.size > size)
+      {
+         plainDB.rowAvail = 0;
+         dbFile.growTo(size);
+      }
+      if (isModified)
+      {
+         plainDB.writeSavedCorrectly(false); // The change log file may not match the table anymore.
+         isModified = false;
+      }
+      if (dbFile.cacheIsDirty)
+         dbFile.flushCache();
+      if (dboFile.cacheIsDirty)
+         dboFile.flushCache();
+      dbFile.f.flush();
+      dboFile.f.flush();
+   }
 }
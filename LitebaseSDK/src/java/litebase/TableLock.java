@@ -0,0 +1,160 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package litebase;
+
+import totalcross.sys.*;
+import totalcross.util.*;
+import totalcross.util.concurrent.*;
+
+/**
+ * A reader/writer lock used to control the access of threads to a table or to the catalog of a connection. Many threads can hold it in shared mode
+ * at the same time, but only one thread can hold it in exclusive mode, when no other thread holds it at all. A thread that already holds the lock
+ * can lock it again in any mode and must unlock it the same number of times, but a thread that only holds it in shared mode can't ask for the
+ * exclusive mode. While a thread waits for the exclusive mode, new threads can't get the shared mode, so that writers are not starved by readers.
+ * Since TotalCross only has mutexes, a thread that must wait sleeps a little and tries again.
+ */
+class TableLock
+{
+   /**
+    * How many milliseconds a thread sleeps before trying to get the lock again.
+    */
+   private static final int WAIT_TIME = 1;
+
+   /**
+    * The mutex that protects the state of the lock.
+    */
+   private Lock mutex = new Lock();
+
+   /**
+    * The thread which holds the lock in exclusive mode or <code>null</code> if there is none.
+    */
+   private Thread writer;
+
+   /**
+    * How many times the writer thread locked this lock in exclusive mode.
+    */
+   private int writerCount;
+
+   /**
+    * The threads which hold the lock in shared mode, repeated as many times as each one locked it.
+    */
+   private Vector readers = new Vector(4);
+
+   /**
+    * The number of threads waiting for the exclusive mode.
+    */
+   private int writersWaiting;
+
+   /**
+    * The number of times a thread had to wait for this lock.
+    */
+   int contentions;
+
+   /**
+    * Locks in shared mode, waiting while another thread holds or waits for the exclusive mode.
+    */
+   void lockShared()
+   {
+      Thread thread = Thread.currentThread();
+      boolean waited = false;
+
+      while (true)
+      {
+         synchronized (mutex)
+         {
+            // A thread that already holds the lock can't wait for a writer, otherwise they would wait for each other.
+            if (writer == thread || (writer == null && (writersWaiting == 0 || readers.indexOf(thread) >= 0)))
+            {
+               readers.addElement(thread);
+               return;
+            }
+            if (!waited)
+            {
+               waited = true;
+               contentions++;
+            }
+         }
+         Vm.sleep(WAIT_TIME);
+      }
+   }
+
+   /**
+    * Unlocks the shared mode.
+    */
+   void unlockShared()
+   {
+      synchronized (mutex)
+      {
+         Vector readersAux = readers;
+         readersAux.removeElementAt(readersAux.indexOf(Thread.currentThread()));
+      }
+   }
+
+   /**
+    * Locks in exclusive mode, waiting while other threads hold the lock.
+    *
+    * @throws IllegalStateException If the thread holds the lock in shared mode only.
+    */
+   void lockExclusive() throws IllegalStateException
+   {
+      Thread thread = Thread.currentThread();
+      boolean waiting = false;
+
+      while (true)
+      {
+         synchronized (mutex)
+         {
+            if (writer == thread)
+            {
+               writerCount++;
+               return;
+            }
+            if (writer == null && readers.size() == 0)
+            {
+               writer = thread;
+               writerCount = 1;
+               if (waiting)
+                  writersWaiting--;
+               return;
+            }
+            if (!waiting)
+            {
+               if (readers.indexOf(thread) >= 0) // It would wait forever for itself.
+                  throw new IllegalStateException(LitebaseMessage.getMessage(LitebaseMessage.ERR_LOCK_UPGRADE));
+               waiting = true;
+               writersWaiting++;
+               contentions++;
+            }
+         }
+         Vm.sleep(WAIT_TIME);
+      }
+   }
+
+   /**
+    * Indicates if the current thread holds the lock in exclusive mode.
+    *
+    * @return <code>true</code> if the current thread is the writer; <code>false</code>, otherwise.
+    */
+   boolean isExclusiveOwner()
+   {
+      synchronized (mutex)
+      {
+         return writer == Thread.currentThread();
+      }
+   }
+   
+   /**
+    * Unlocks the exclusive mode.
+    */
+   void unlockExclusive()
+   {
+      synchronized (mutex)
+      {
+         if (--writerCount == 0)
+            writer = null;
+      }
+   }
+}
@@ -0,0 +1,271 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package litebase;
+
+import totalcross.io.*;
+import totalcross.sys.*;
+import totalcross.util.*;
+
+/**
+ * A trigram index of a string column, used to find the rows that may satisfy a <code>LIKE</code> which can't use a B-tree index, such as
+ * <code>LIKE '%abc%'</code> or <code>LIKE '%abc'</code>. For each sequence of three characters of the lower case value of a row, the index keeps
+ * the list of the rows where it appears. The rows that have all the trigrams of the pattern are marked in a bitmap which is walked together with the
+ * where clause, which still validates every row. Because of this, the index may have more rows than needed: rows deleted or updated are not
+ * removed from it, and it is case insensitive even for <code>CHARS</code> columns.
+ * <p>
+ * Only the existence of the index is stored in the table meta data. Its lists are kept in memory and are built reading the table the first time
+ * the index is used after the table is opened or purged.
+ */
+class TrigramIndex
+{
+   /**
+    * The minimum number of stale entries before the index is rebuilt.
+    */
+   private static final int MIN_STALE_ENTRIES = 1024;
+
+   /**
+    * The column of the index.
+    */
+   int column;
+
+   /**
+    * Maps a trigram to the position of its list of rows in <code>lists</code> or <code>null</code> if the index is not built.
+    */
+   private IntHashtable slots;
+
+   /**
+    * The lists of rows of each trigram.
+    */
+   private Vector lists;
+
+   /**
+    * The number of entries in all the lists.
+    */
+   private int entries;
+
+   /**
+    * The number of entries added by updates, whose old entries are stale.
+    */
+   private int staleEntries;
+
+   /**
+    * Creates an empty trigram index.
+    *
+    * @param column The column of the index.
+    */
+   TrigramIndex(int column)
+   {
+      this.column = column;
+   }
+
+   /**
+    * Discards the lists of rows, which will be built again when the index is used.
+    */
+   void invalidate()
+   {
+      slots = null;
+      lists = null;
+      entries = staleEntries = 0;
+   }
+
+   /**
+    * Adds the trigrams of a value written in a row. Nothing is done if the index is not built yet.
+    *
+    * @param value The value written.
+    * @param row The row.
+    * @param isUpdate Indicates if the row was updated. In this case, the entries of its old value become stale and the index will be rebuilt when
+    * there are too many of them.
+    */
+   void addRow(String value, int row, boolean isUpdate)
+   {
+      if (slots != null)
+      {
+         int added = entries;
+
+         addValue(value, row);
+         if (isUpdate && (staleEntries += entries - added) > MIN_STALE_ENTRIES && staleEntries > (entries >> 1))
+            invalidate();
+      }
+   }
+
+   /**
+    * Finds the rows which may have all the given strings.
+    *
+    * @param table The table of the index, which is read if the index is not built.
+    * @param parts The strings searched for.
+    * @param rows The number of rows of the table.
+    * @return A bitmap with the rows found or <code>null</code> if the strings are too short to be searched with trigrams.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   IntVector search(Table table, String[] parts, int rows) throws IOException, InvalidDateException
+   {
+      IntVector codes = new IntVector();
+      int i = parts.length;
+
+      while (--i >= 0)
+         getTrigrams(parts[i], codes);
+      if (codes.size() == 0) // Too short.
+         return null;
+
+      if (slots == null)
+         build(table);
+
+      IntVector bitmap = new IntVector(1),
+                list,
+                smallest = null;
+      int[] codesItems = codes.items,
+            items,
+            other = null;
+      int j,
+          slot;
+
+      bitmap.ensureBit(rows);
+      items = bitmap.items;
+
+      i = codes.size();
+      while (--i >= 0) // If a trigram was not found, no row has the pattern.
+      {
+         if ((slot = slots.get(codesItems[i], -1)) == -1)
+            return bitmap;
+         if (smallest == null || (list = (IntVector)lists.items[slot]).size() < smallest.size())
+            smallest = (IntVector)lists.items[slot];
+      }
+
+      markRows(items, smallest, rows);
+      i = codes.size();
+      while (--i >= 0) // Intersects with the other lists.
+         if ((list = (IntVector)lists.items[slots.get(codesItems[i], -1)]) != smallest)
+         {
+            if (other == null)
+               other = new int[items.length];
+            else
+               Convert.fill(other, 0, other.length, 0);
+            markRows(other, list, rows);
+            j = items.length;
+            while (--j >= 0)
+               items[j] &= other[j];
+         }
+      return bitmap;
+   }
+
+   /**
+    * Builds the lists of rows reading all the rows of the table.
+    *
+    * @param table The table of the index.
+    * @throws IOException If an internal method throws it.
+    * @throws InvalidDateException If an internal method throws it.
+    */
+   private void build(Table table) throws IOException, InvalidDateException
+   {
+      PlainDB plainDB = table.db;
+      byte[] nulls = table.columnNulls[0];
+      SQLValue value = new SQLValue();
+      int col = column,
+          offset = table.columnOffsets[col],
+          type = table.columnTypes[col],
+          n = plainDB.rowCount,
+          i = -1;
+
+      slots = new IntHashtable(256);
+      lists = new Vector(256);
+      entries = staleEntries = 0;
+      while (++i < n)
+      {
+         plainDB.read(i);
+         if (plainDB.recordNotDeleted())
+         {
+            table.readNullBytesOfRecord(0, false, 0);
+            if ((nulls[col >> 3] & (1 << (col & 7))) == 0)
+            {
+               plainDB.bas.reset();
+               table.readValue(value, offset, type, false, false);
+               addValue(value.asString, i);
+            }
+         }
+      }
+   }
+
+   /**
+    * Adds a row to the lists of the trigrams of a value.
+    *
+    * @param value The value.
+    * @param row The row.
+    */
+   private void addValue(String value, int row)
+   {
+      IntVector codes = new IntVector(value.length());
+      IntVector list;
+      int[] items;
+      int i,
+          slot;
+
+      getTrigrams(value, codes);
+      items = codes.items;
+      i = codes.size();
+      while (--i >= 0)
+      {
+         if ((slot = slots.get(items[i], -1)) == -1)
+         {
+            slots.put(items[i], slot = lists.size());
+            lists.addElement(new IntVector(4));
+         }
+
+         // A trigram that appears twice in the value was just added.
+         if ((list = (IntVector)lists.items[slot]).size() == 0 || list.items[list.size() - 1] != row)
+         {
+            list.addElement(row);
+            entries++;
+         }
+      }
+   }
+
+   /**
+    * Marks the rows of a list in a bitmap.
+    *
+    * @param bitmap The bitmap.
+    * @param list The rows.
+    * @param rows The number of rows of the table; rows after it were removed by a purge.
+    */
+   private static void markRows(int[] bitmap, IntVector list, int rows)
+   {
+      int[] items = list.items;
+      int i = list.size(),
+          row;
+
+      while (--i >= 0)
+         if ((row = items[i]) < rows)
+            bitmap[row >> 5] |= 1 << (row & 31);
+   }
+
+   /**
+    * Gets the codes of the trigrams of a string. Each character is converted to lower case on its own, since converting the whole string may
+    * depend on the characters around it, and reduced to 10 bits, so different trigrams may have the same code, which only makes the index return
+    * more rows.
+    *
+    * @param value The string.
+    * @param codes Receives the codes.
+    */
+   private static void getTrigrams(String value, IntVector codes)
+   {
+      int i = value.length() - 2;
+      
+      if (i > 0)
+      {
+         int c1 = Character.toLowerCase(value.charAt(i)) & 0x3FF,
+             c2 = Character.toLowerCase(value.charAt(i + 1)) & 0x3FF,
+             c0;
+         
+         while (--i >= 0)
+         {
+            c0 = Character.toLowerCase(value.charAt(i)) & 0x3FF;
+            codes.addElement((c0 << 20) | (c1 << 10) | c2);
+            c2 = c1;
+            c1 = c0;
+         }
+      }
+   }
+}
@@ -50,6 +50,11 @@ class Utils
     */
    static final int ATTR_COLUMN_IS_NOT_NULL = 4;
    
+   /**
+    * Indicates if a column has a trigram index.
+    */
+   static final int ATTR_COLUMN_HAS_TRIGRAM_INDEX = 8;
+   
    // juliana@253_5: removed .idr files from all indices and changed its format.
    
    /**
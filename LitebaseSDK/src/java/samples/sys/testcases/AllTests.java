@@ -50,6 +50,7 @@ public class AllTests extends TestSuite
       addTestCase(TestAsciiTables.class); // juliana@210_2: now Litebase supports tables with ascii strings.
       addTestCase(TestBigJoins.class);
       addTestCase(TestBlob.class);
+      addTestCase(TestBulkLoad.class);
       addTestCase(TestCachedRows.class);
       addTestCase(TestClosedLitebaseAndProcessLogs.class);
       addTestCase(TestComposedIndexAndPK.class);
@@ -82,6 +83,7 @@ public class AllTests extends TestSuite
       addTestCase(TestSQLFunctions.class);
       addTestCase(TestTableRecovering.class);
       addTestCase(TestThread.class);
+      addTestCase(TestTransaction.class);
       addTestCase(TestVirtualRecords.class);
       addTestCase(TestWhereClause_Basic.class);
       addTestCase(TestWhereClause_Caseless.class);
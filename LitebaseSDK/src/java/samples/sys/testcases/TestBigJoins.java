@@ -8,6 +8,7 @@ package samples.sys.testcases;
 import litebase.*;
 import totalcross.sys.*;
 import totalcross.unit.TestCase;
+import totalcross.util.IntVector;
 import totalcross.util.Random;
 
 /**
@@ -29,6 +30,7 @@ public class TestBigJoins  extends TestCase
       test2Tables();
       test3Tables();
       test4Tables();
+      testHashJoins();
       
       // Lists all the table names and tests if all tables of this test are in the list.
       assertGreaterOrEqual((tables = connection.listAllTables()).length, 9);
@@ -955,6 +957,102 @@ public class TestBigJoins  extends TestCase
       executeTestQuery(baseSQL + t + " and " + p + " and " + i + " and " + d);
    }
    
+   /**
+    * Tests the joins solved by hash tables: they must return the same rows as the nested loop and index joins of the same tables.
+    */
+   private void testHashJoins()
+   {
+      // Drops the tables.
+      if (connection.exists("hjouter"))
+         connection.executeUpdate("drop table hjouter");
+      if (connection.exists("hjinner"))
+         connection.executeUpdate("drop table hjinner");
+      
+      // Creates the tables.
+      connection.execute("create table hjouter (id int, k int, name char(10))");
+      connection.execute("create table hjinner (id int, k int, name char(10))");
+      
+      // Populates the tables with repeated keys, keys without matches, and null keys.
+      PreparedStatement stmt = connection.prepareStatement("insert into hjouter values (?, ?, ?)");
+      int i = -1;
+      while (++i < 200)
+      {
+         stmt.setInt(0, i);
+         if (i % 23 == 0)
+            stmt.setNull(1);
+         else
+            stmt.setInt(1, i % 50);
+         stmt.setString(2, "n" + (i % 40));
+         stmt.executeUpdate();
+      }
+      stmt.close();
+      stmt = connection.prepareStatement("insert into hjinner values (?, ?, ?)");
+      i = -1;
+      while (++i < 300)
+      {
+         stmt.setInt(0, i);
+         if (i % 31 == 0)
+            stmt.setNull(1);
+         else
+            stmt.setInt(1, (i * 3) % 70);
+         stmt.setString(2, "n" + (i % 60));
+         stmt.executeUpdate();
+      }
+      stmt.close();
+      
+      // Deleted rows of the inner table can't be joined.
+      assertEquals(18, connection.executeUpdate("delete from hjinner where id >= 0 and id <= 17"));
+      
+      String select = "select o.id, i.id from hjouter o, hjinner i where ",
+             rows;
+      
+      // Joins on an int column.
+      assertGreater((rows = joinRows(select + "o.k = i.k", "hash join on k")).length(), 0);
+      assertEquals(rows, joinRows(select + "o.k >= i.k and o.k <= i.k", "nested loop"));
+      
+      // Joins on a char column.
+      assertGreater((rows = joinRows(select + "o.name = i.name", "hash join on name")).length(), 0);
+      assertEquals(rows, joinRows(select + "o.name >= i.name and o.name <= i.name", "nested loop"));
+      
+      // Joins with another condition on the inner table.
+      assertGreater((rows = joinRows(select + "o.k = i.k and i.id < 100", "hash join on k")).length(), 0);
+      assertEquals(rows, joinRows(select + "o.k >= i.k and o.k <= i.k and i.id < 100", "nested loop"));
+      
+      // An index on the inner column is preferred to the hash join. Since a table whose join column has an index is read first, both columns 
+      // need indices.
+      rows = joinRows(select + "o.k = i.k", "hash join on k");
+      connection.execute("create index idx on hjinner(k)");
+      connection.execute("create index idx on hjouter(k)");
+      assertEquals(rows, joinRows(select + "o.k = i.k", "index join on k"));
+   }
+   
+   /**
+    * Executes a join and returns its rows.
+    * 
+    * @param sql The join.
+    * @param strategy The strategy that must be used to find the rows of the second table.
+    * @return The ids of the rows joined, sorted, since the strategies return them in different orders.
+    */
+   private String joinRows(String sql, String strategy)
+   {
+      assertTrue(connection.explain(sql).indexOf(strategy) >= 0);
+      
+      ResultSet resultSet = connection.executeQuery(sql);
+      IntVector pairs = new IntVector(resultSet.getRowCount());
+      
+      while (resultSet.next())
+         pairs.addElement(resultSet.getInt(1) * 1000 + resultSet.getInt(2));
+      resultSet.close();
+      pairs.qsort();
+      
+      StringBuffer sBuffer = new StringBuffer();
+      int n = pairs.size(),
+          i = -1;
+      while (++i < n)
+         sBuffer.append(pairs.items[i]).append(' ');
+      return sBuffer.toString();
+   }
+   
    /**
     * Tests if all queries return only one row and if they are fast enough.
     * 
@@ -0,0 +1,338 @@
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package samples.sys.testcases;
+
+import litebase.*;
+import totalcross.unit.*;
+
+/**
+ * Tests the bulk load of Litebase tables, with the primary key verified on each insert or only when the bulk load ends.
+ */
+public class TestBulkLoad extends TestCase
+{
+   /**
+    * The number of rows inserted by each bulk load.
+    */
+   private static final int ROWS = 500;
+
+   /**
+    * The main test method.
+    */
+   public void testRun()
+   {
+      LitebaseConnection driver = AllTests.getInstance("Test");
+
+      testBulkLoad(driver);
+      driver = testDeferredPrimaryKey(driver);
+      testDeferredComposedPrimaryKey(driver);
+      testParallelPrimaryKey(driver);
+      driver.closeAll();
+   }
+
+   /**
+    * Tests a bulk load with the primary key verified on each insert: the indices built when the bulk load ends find all the rows.
+    *
+    * @param driver The connection with Litebase.
+    */
+   private void testBulkLoad(LitebaseConnection driver)
+   {
+      createTable(driver, "bulk", "id int primary key, name char(20), age int");
+      driver.execute("create index idx on bulk(name)");
+      driver.execute("create index idx on bulk(age, name)");
+      insertRows(driver, "bulk", 0, 10);
+
+      driver.beginBulkLoad("bulk");
+      try // Only one table can be bulk loaded at a time.
+      {
+         driver.beginBulkLoad("bulk");
+         fail("1");
+      }
+      catch (DriverException exception) {}
+      try // The table can't be queried during the bulk load.
+      {
+         driver.executeQuery("select * from bulk where name = 'name 1'");
+         fail("2");
+      }
+      catch (DriverException exception) {}
+
+      insertRows(driver, "bulk", 10, ROWS);
+      try // The primary key is still verified on each insert.
+      {
+         driver.executeUpdate("insert into bulk values (5, 'name 5', 5)");
+         fail("3");
+      }
+      catch (PrimaryKeyViolationException exception) {}
+      driver.endBulkLoad();
+      try // The bulk load has already ended.
+      {
+         driver.endBulkLoad();
+         fail("4");
+      }
+      catch (DriverException exception) {}
+
+      assertEquals(ROWS, driver.getRowCount("bulk"));
+      assertEquals(ROWS + 1, driver.getCurrentRowId("bulk"));
+      assertRows(driver, "bulk", ROWS);
+   }
+
+   /**
+    * Tests a bulk load with a deferred primary key: when it is violated, the rows inserted during the bulk load are discarded and the table is
+    * left as it was before the bulk load.
+    *
+    * @param driver The connection with Litebase.
+    * @return A new connection with Litebase, since the table is reopened.
+    */
+   private LitebaseConnection testDeferredPrimaryKey(LitebaseConnection driver)
+   {
+      createTable(driver, "bulkpk", "id int primary key, name char(20), age int");
+      driver.execute("create index idx on bulkpk(name)");
+      insertRows(driver, "bulkpk", 0, 10);
+
+      // A new row repeats the key of an old one.
+      driver.beginBulkLoad("bulkpk", true);
+      insertRows(driver, "bulkpk", 10, ROWS);
+      driver.executeUpdate("insert into bulkpk values (3, 'repeated', 3)"); // Not verified yet.
+      try
+      {
+         driver.endBulkLoad();
+         fail("5");
+      }
+      catch (PrimaryKeyViolationException exception) {}
+      assertEquals(10, driver.getRowCount("bulkpk"));
+      assertEquals(11, driver.getCurrentRowId("bulkpk"));
+      assertRows(driver, "bulkpk", 10);
+      assertEquals(0, count(driver, "select * from bulkpk where id >= 10"));
+      assertEquals(0, count(driver, "select * from bulkpk where name = 'repeated'"));
+
+      // Two new rows repeat a key.
+      driver.beginBulkLoad("bulkpk", true);
+      insertRows(driver, "bulkpk", 10, ROWS);
+      driver.executeUpdate("insert into bulkpk values (" + (ROWS - 1) + ", 'repeated', 3)");
+      try
+      {
+         driver.endBulkLoad();
+         fail("6");
+      }
+      catch (PrimaryKeyViolationException exception) {}
+      assertEquals(10, driver.getRowCount("bulkpk"));
+      assertRows(driver, "bulkpk", 10);
+
+      // The table is not left in bulk load mode and can be changed again.
+      try
+      {
+         driver.endBulkLoad();
+         fail("7");
+      }
+      catch (DriverException exception) {}
+      insertRows(driver, "bulkpk", 10, 20);
+      assertEquals(21, driver.getCurrentRowId("bulkpk"));
+      assertRows(driver, "bulkpk", 20);
+
+      // Without repeated keys, the rows are kept and the primary key is verified again after the bulk load.
+      driver.beginBulkLoad("bulkpk", true);
+      insertRows(driver, "bulkpk", 20, ROWS);
+      driver.endBulkLoad();
+      assertRows(driver, "bulkpk", ROWS);
+      try
+      {
+         driver.executeUpdate("insert into bulkpk values (" + (ROWS - 1) + ", 'repeated', 3)");
+         fail("8");
+      }
+      catch (PrimaryKeyViolationException exception) {}
+
+      // The discarded rows don't come back when the table is reopened.
+      driver.closeAll();
+      driver = AllTests.getInstance("Test");
+      assertEquals(ROWS, driver.getRowCount("bulkpk"));
+      assertEquals(ROWS + 1, driver.getCurrentRowId("bulkpk"));
+      assertRows(driver, "bulkpk", ROWS);
+      return driver;
+   }
+
+   /**
+    * Tests a bulk load with a deferred composed primary key which is violated.
+    *
+    * @param driver The connection with Litebase.
+    */
+   private void testDeferredComposedPrimaryKey(LitebaseConnection driver)
+   {
+      createTable(driver, "bulkcpk", "id int, name char(20), age int, primary key(age, id)");
+      insertRows(driver, "bulkcpk", 0, 10);
+
+      driver.beginBulkLoad("bulkcpk", true);
+      insertRows(driver, "bulkcpk", 10, ROWS);
+      driver.executeUpdate("insert into bulkcpk values (7, 'repeated', 7)");
+      try
+      {
+         driver.endBulkLoad();
+         fail("9");
+      }
+      catch (PrimaryKeyViolationException exception) {}
+      assertEquals(10, driver.getRowCount("bulkcpk"));
+      assertEquals(1, count(driver, "select * from bulkcpk where age = 7 and id = 7"));
+      assertEquals(0, count(driver, "select * from bulkcpk where age = 11 and id = 11"));
+
+      // The rebuilt primary key still rejects repeated keys.
+      try
+      {
+         driver.executeUpdate("insert into bulkcpk values (7, 'repeated', 7)");
+         fail("10");
+      }
+      catch (PrimaryKeyViolationException exception) {}
+      driver.executeUpdate("insert into bulkcpk values (11, 'name 11', 11)");
+      assertEquals(1, count(driver, "select * from bulkcpk where age = 11 and id = 11"));
+   }
+
+   /**
+    * Tests a deferred primary key violated when the indices are rebuilt in parallel: the primary key index is the last one of a group of indices, 
+    * so it is built by another thread, whose exception must reach the bulk load. All the indices must then be rebuilt without the discarded rows.
+    *
+    * @param driver The connection with Litebase.
+    */
+   private void testParallelPrimaryKey(LitebaseConnection driver)
+   {
+      createTable(driver, "bulkpar", "id int primary key, name char(20), age int, city char(20)");
+      driver.execute("create index idx on bulkpar(name)");
+      driver.execute("create index idx on bulkpar(age)");
+      driver.execute("create index idx on bulkpar(city)");
+      driver.executeUpdate("insert into bulkpar values (0, 'name 0', 0, 'city 0')");
+      driver.executeUpdate("insert into bulkpar values (1, 'name 1', 1, 'city 1')");
+      
+      PreparedStatement stmt = driver.prepareStatement("insert into bulkpar values (?, ?, ?, ?)");
+      int i = 1;
+      
+      driver.beginBulkLoad("bulkpar", true);
+      while (++i < ROWS)
+      {
+         stmt.setInt(0, i == ROWS / 2? 1 : i); // Repeats a key in the middle of the rows.
+         stmt.setString(1, "name " + i);
+         stmt.setInt(2, i);
+         stmt.setString(3, "city " + i);
+         stmt.executeUpdate();
+      }
+      try
+      {
+         driver.endBulkLoad();
+         fail("11");
+      }
+      catch (PrimaryKeyViolationException exception) {}
+      
+      // Each index only has the old rows.
+      assertEquals(2, driver.getRowCount("bulkpar"));
+      assertEquals(2, count(driver, "select * from bulkpar where id >= 0"));
+      assertEquals(2, count(driver, "select * from bulkpar where name >= 'name'"));
+      assertEquals(2, count(driver, "select * from bulkpar where age >= 0"));
+      assertEquals(2, count(driver, "select * from bulkpar where city >= 'city'"));
+      assertEquals(1, count(driver, "select * from bulkpar where id = 1 and name = 'name 1' and age = 1 and city = 'city 1'"));
+      
+      // The same rows without the repeated key are kept.
+      driver.beginBulkLoad("bulkpar", true);
+      i = 1;
+      while (++i < ROWS)
+      {
+         stmt.setInt(0, i);
+         stmt.setString(1, "name " + i);
+         stmt.setInt(2, i);
+         stmt.setString(3, "city " + i);
+         stmt.executeUpdate();
+      }
+      driver.endBulkLoad();
+      stmt.close();
+      assertEquals(ROWS, count(driver, "select * from bulkpar where id >= 0"));
+      assertEquals(ROWS, count(driver, "select * from bulkpar where name >= 'name'"));
+      assertEquals(ROWS, count(driver, "select * from bulkpar where age >= 0"));
+      assertEquals(ROWS, count(driver, "select * from bulkpar where city >= 'city'"));
+      assertEquals(1, count(driver, "select * from bulkpar where id = 250 and name = 'name 250' and age = 250 and city = 'city 250'"));
+      try
+      {
+         driver.executeUpdate("insert into bulkpar values (250, 'name', 0, 'city')");
+         fail("12");
+      }
+      catch (PrimaryKeyViolationException exception) {}
+   }
+
+   /**
+    * Drops a table if it exists and creates it again.
+    *
+    * @param driver The connection with Litebase.
+    * @param tableName The name of the table.
+    * @param columns The column definitions of the table.
+    */
+   private void createTable(LitebaseConnection driver, String tableName, String columns)
+   {
+      if (driver.exists(tableName))
+         driver.executeUpdate("drop table " + tableName);
+      driver.execute("create table " + tableName + " (" + columns + ")");
+   }
+
+   /**
+    * Inserts rows whose id goes from <code>first</code> to <code>last - 1</code>. The rows are inserted in the reverse order of their ids, so that 
+    * the indices must be sorted.
+    *
+    * @param driver The connection with Litebase.
+    * @param tableName The name of the table.
+    * @param first The first id.
+    * @param last The id after the last one.
+    */
+   private void insertRows(LitebaseConnection driver, String tableName, int first, int last)
+   {
+      PreparedStatement stmt = driver.prepareStatement("insert into " + tableName + " values (?, ?, ?)");
+      int id = last;
+
+      while (--id >= first)
+      {
+         stmt.setInt(0, id);
+         stmt.setString(1, "name " + id);
+         stmt.setInt(2, id % 100);
+         stmt.executeUpdate();
+      }
+      stmt.close();
+   }
+
+   /**
+    * Asserts that the table has the rows whose ids go from 0 to <code>rows - 1</code> and that they are found by the indices.
+    *
+    * @param driver The connection with Litebase.
+    * @param tableName The name of the table.
+    * @param rows The number of rows.
+    */
+   private void assertRows(LitebaseConnection driver, String tableName, int rows)
+   {
+      assertEquals(rows, count(driver, "select * from " + tableName + " where id >= 0"));
+      assertEquals(rows, count(driver, "select * from " + tableName + " where name >= 'name'"));
+
+      int[] ids = {0, 1, rows / 2, rows - 1};
+      int i = ids.length;
+      ResultSet resultSet;
+
+      while (--i >= 0)
+      {
+         resultSet = driver.executeQuery("select name, age from " + tableName + " where id = " + ids[i]);
+         assertEquals(1, resultSet.getRowCount());
+         resultSet.next();
+         assertEquals("name " + ids[i], resultSet.getString(1));
+         resultSet.close();
+         assertEquals(1, count(driver, "select * from " + tableName + " where name = 'name " + ids[i] + "'"));
+      }
+
+      if (tableName.equals("bulk")) // Uses the composed index.
+         assertEquals(1, count(driver, "select * from bulk where age = 33 and name = 'name 33'"));
+   }
+
+   /**
+    * Counts the rows returned by a query.
+    *
+    * @param driver The connection with Litebase.
+    * @param sql The query.
+    * @return The number of rows returned.
+    */
+   private int count(LitebaseConnection driver, String sql)
+   {
+      ResultSet resultSet = driver.executeQuery(sql);
+      int count = resultSet.getRowCount();
+      resultSet.close();
+      return count;
+   }
+}
@@ -7,6 +7,7 @@ package samples.sys.testcases;
 
 import litebase.*;
 import totalcross.unit.*;
+import totalcross.util.*;
 
 /**
  * Tests the use of indices with like and 
@@ -64,9 +65,160 @@ public class TestIndexIneqAndLike extends TestCase
       // nOme1, nOme2, nOme11-nOme19, nOme101-nOme109, nOme111-nOme119
       testResult(driver.executeQuery("select * from cliente where nome < 'Nome20'"),29); 
       
+      testTrigramIndex(driver);
       driver.closeAll();
    }
    
+   /**
+    * Tests the use of a trigram index by like: a table with trigram indices must return the same rows as a table with the same rows and no indices.
+    * 
+    * @param driver The connection with Litebase.
+    */
+   private void testTrigramIndex(LitebaseConnection driver)
+   {
+      String[] syllables = {"ma", "ri", "an", "to", "lu", "ca", "xe", "pe", "bo"};
+      String[] tables = {"trig", "trigplain"};
+      String name;
+      int i = 2,
+          j;
+      
+      while (--i >= 0)
+      {
+         if (driver.exists(tables[i]))
+            driver.executeUpdate("drop table " + tables[i]);
+         driver.execute("create table " + tables[i] + " (id int, name char(40), nick char(20) nocase)");
+      }
+      driver.execute("create index idx on trig(name) using trigram");
+      driver.createTrigramIndex("trig", "nick");
+      try // A trigram index can't be created twice.
+      {
+         driver.createTrigramIndex("trig", "name");
+         fail("1");
+      }
+      catch (AlreadyCreatedException exception) {}
+      try // A trigram index can only be created on a string column.
+      {
+         driver.createTrigramIndex("trig", "id");
+         fail("2");
+      }
+      catch (DriverException exception) {}
+      try // A trigram index can't be composed.
+      {
+         driver.execute("create index idx on trig(name, nick) using trigram");
+         fail("3");
+      }
+      catch (SQLParseException exception) {}
+      
+      i = -1;
+      while (++i < 400)
+      {
+         name = syllables[i % 9] + syllables[(i / 3) % 9] + syllables[(i / 7) % 9] + ' ' + i;
+         j = 2;
+         while (--j >= 0)
+            driver.executeUpdate("insert into " + tables[j] + " values (" + i + ", '" + name + "', '" + (i % 2 == 0? name.toUpperCase() : name) 
+                                                                                                                                          + "')");
+      }
+      assertTrigramLike(driver);
+      
+      // The trigram index is updated by inserts, updates, and deletes.
+      i = 2;
+      while (--i >= 0)
+      {
+         driver.executeUpdate("insert into " + tables[i] + " values (400, 'zzzrianzzz', 'ZZZRIANZZZ')");
+         assertEquals(10, driver.executeUpdate("update " + tables[i] + " set name = 'pepepe', nick = 'pepepe' where id >= 40 and id < 50"));
+         assertEquals(20, driver.executeUpdate("delete from " + tables[i] + " where id >= 100 and id < 120"));
+      }
+      assertTrigramLike(driver);
+      
+      // The index is rebuilt after a purge.
+      i = 2;
+      while (--i >= 0)
+         assertEquals(20, driver.purge(tables[i]));
+      assertTrigramLike(driver);
+      
+      // Without the trigram index, the table is scanned.
+      driver.dropTrigramIndex("trig", "name");
+      assertEquals(-1, driver.explain("select id from trig where name like '%rian%'").indexOf("index scan"));
+      assertEquals(likeRows(driver, "trigplain", "name like '%rian%'", false), likeRows(driver, "trig", "name like '%rian%'", false));
+   }
+   
+   /**
+    * Asserts that queries using like return the same rows in the table with trigram indices and in the table without them.
+    * 
+    * @param driver The connection with Litebase.
+    */
+   private void assertTrigramLike(LitebaseConnection driver)
+   {
+      String[] indexed = // Patterns which use the trigram indices.
+      {
+         "name like '%rian%'", 
+         "name like '%to 1%'",
+         "name like '%luan%'",
+         "name like '%u 34'",
+         "name like 'lulu%'",
+         "name like 'tolu%255'",
+         "name like 'lur%o 85'",
+         "nick like '%RIAN%'", // Case insensitive.
+         "nick like '%LU 15%'",
+         "name like '%rian%' and id < 200",
+         "name like '%ria%' and nick like '%an%'"
+      };
+      String[] notIndexed = // Patterns too short or which can use the normal indices.
+      {
+         "name like '%ri%'",
+         "name like 'ma%'",
+         "name like '%'",
+         "name like '%rian%' or id < 10"
+      };
+      String rows;
+      int i = indexed.length;
+      
+      while (--i >= 0)
+      {
+         rows = likeRows(driver, "trigplain", indexed[i], false);
+         assertGreater(rows.length(), 0);
+         assertEquals(rows, likeRows(driver, "trig", indexed[i], true));
+      }
+      assertEquals("", likeRows(driver, "trig", "name like '%RIAN%'", true)); // Case sensitive.
+      
+      i = notIndexed.length;
+      while (--i >= 0)
+      {
+         rows = likeRows(driver, "trigplain", notIndexed[i], false);
+         assertEquals(rows, likeRows(driver, "trig", notIndexed[i], false));
+      }
+   }
+   
+   /**
+    * Returns the ids of the rows of a query.
+    * 
+    * @param driver The connection with Litebase.
+    * @param table The table queried.
+    * @param where The where clause of the query.
+    * @param usesIndex Indicates if the query must use an index.
+    * @return The ids of the rows returned, sorted.
+    */
+   private String likeRows(LitebaseConnection driver, String table, String where, boolean usesIndex)
+   {
+      String sql = "select id from " + table + " where " + where;
+      
+      if (usesIndex)
+         assertGreaterOrEqual(driver.explain(sql).indexOf("index scan"), 0);
+      
+      ResultSet rs = driver.executeQuery(sql);
+      IntVector ids = new IntVector(rs.getRowCount());
+      StringBuffer sBuffer = new StringBuffer();
+      int i = -1;
+      
+      while (rs.next())
+         ids.addElement(rs.getInt(1));
+      rs.close();
+      ids.qsort();
+      while (++i < ids.size())
+         sBuffer.append(ids.items[i]).append(' ');
+      return sBuffer.toString();
+   }
+   
    /** 
     * Tests if the result set returned the expected number of rows.
     * 
@@ -6,6 +6,7 @@
 package samples.sys.testcases;
 
 import litebase.*;
+import totalcross.io.*;
 import totalcross.unit.*;
 import totalcross.sys.*;
 import totalcross.util.*;
@@ -119,6 +120,294 @@ public class TestIndexRebalance extends TestCase
       driver.executeUpdate("insert into t values (1)");
       driver.executeUpdate("delete from t where rowid = 16");
       
+      try
+      {
+         driver = testStringIndices(driver);
+      }
+      catch (IOException exception)
+      {
+         fail(exception);
+      }
+      driver.closeAll();
+   }
+   
+   /**
+    * Tests the compressed indices of <code>CHARS</code> and <code>CHARS_NOCASE</code> columns, which store their keys with prefix compression, and 
+    * the conversion of a table of the current version, whose string indices store the positions of the strings in the .dbo. The compressed indices
+    * must be enabled, since their tables can't be read by the native Litebase.
+    * 
+    * @param driver The connection with Litebase.
+    * @return The connection with Litebase, which is closed and opened again during the test.
+    * @throws IOException If an internal method throws it.
+    */
+   private LitebaseConnection testStringIndices(LitebaseConnection driver) throws IOException
+   {
+      String tableName = driver.getSourcePath() + "Test-strs.db";
+      String[] nicks = new String[4000]; // The nicks of the ids present in the table.
+      
+      if (driver.exists("strs"))
+         driver.executeUpdate("drop table strs");
+      assertFalse(driver.isCompressedStringIndices());
+      driver.execute("create table strs (id int primary key, name char(60), nick char(60) nocase)");
+      
+      // By default, the indices store the positions of the strings.
+      driver.closeAll();
+      assertEquals(203, readVersion(tableName));
+      driver = AllTests.getInstance("Test");
+      driver.execute("create index idx on strs(name)");
+      driver.execute("create index idx on strs(nick)");
+      insertStrings(driver, nicks, 0, 1500);
+      assertStrings(driver, nicks);
+      driver.closeAll();
+      assertEquals(203, readVersion(tableName));
+      
+      // The conversion only recreates the indices with compressed keys if they are enabled.
+      driver = AllTests.getInstance("Test");
+      try // The table already has the current version.
+      {
+         driver.convert("strs");
+         fail("Converted without compressed indices");
+      }
+      catch (DriverException exception) {}
+      driver.setCompressedStringIndices(true);
+      driver.convert("strs");
+      assertEquals(204, readVersion(tableName));
+      try // The table already has compressed indices.
+      {
+         driver.convert("strs");
+         fail("Converted twice");
+      }
+      catch (DriverException exception) {}
+      assertStrings(driver, nicks);
+      
+      // Inserts out of order split the nodes in their middle.
+      insertStrings(driver, nicks, 1500, 4000);
+      assertStrings(driver, nicks);
+      
+      // Deletes and updates remove keys from the nodes.
+      PreparedStatement psDelete = driver.prepareStatement("delete from strs where name = ?"),
+                        psUpdate = driver.prepareStatement("update strs set nick = ? where id = ?");
+      int i = -1;
+      while ((i += 3) < 4000)
+      {
+         psDelete.setString(0, name(i));
+         assertEquals(1, psDelete.executeUpdate());
+         nicks[i] = null;
+      }
+      i = 0;
+      while ((i += 10) < 4000) // The nick of the next id, so that there are repeated keys.
+      {
+         psUpdate.setString(0, nick(i + 1));
+         psUpdate.setInt(1, i);
+         assertEquals(nicks[i] != null? 1 : 0, psUpdate.executeUpdate());
+         if (nicks[i] != null)
+            nicks[i] = nick(i + 1);
+      }
+      assertStrings(driver, nicks);
+      
+      // The keys are read back after the table is closed, even by a connection without compressed indices.
       driver.closeAll();
+      driver = AllTests.getInstance("Test");
+      assertStrings(driver, nicks);
+      assertEquals(4000 - 4000 / 3, driver.executeUpdate("delete from strs"));
+      ResultSet resultSet = driver.executeQuery("select * from strs where name >= 'a'");
+      assertEquals(0, resultSet.getRowCount());
+      resultSet.close();
+      driver.executeUpdate("drop table strs");
+      
+      // New tables only have compressed indices if they are enabled.
+      driver.setCompressedStringIndices(true);
+      driver.execute("create table strs (id int primary key, name char(60), nick char(60) nocase)");
+      driver.execute("create index idx on strs(name)");
+      insertStrings(driver, nicks = new String[1000], 0, 1000);
+      assertStrings(driver, nicks);
+      driver.closeAll();
+      assertEquals(204, readVersion(tableName));
+      driver = AllTests.getInstance("Test");
+      assertStrings(driver, nicks);
+      
+      // Newer versions can't be read.
+      driver.closeAll();
+      writeVersion(tableName, 205);
+      driver = AllTests.getInstance("Test");
+      try
+      {
+         driver.executeQuery("select * from strs").close();
+         fail("Opened a newer version");
+      }
+      catch (DriverException exception) {}
+      driver.closeAll();
+      writeVersion(tableName, 204);
+      driver = AllTests.getInstance("Test");
+      driver.executeUpdate("drop table strs");
+      return driver;
+   }
+   
+   /**
+    * Inserts the rows with ids in a range, in a scrambled order.
+    * 
+    * @param driver The connection with Litebase.
+    * @param nicks The nicks of the ids present in the table.
+    * @param start The first id.
+    * @param end The id after the last one.
+    */
+   private void insertStrings(LitebaseConnection driver, String[] nicks, int start, int end)
+   {
+      PreparedStatement ps = driver.prepareStatement("insert into strs values (?, ?, ?)");
+      int count = end - start,
+          i = -1,
+          id;
+      while (++i < count)
+      {
+         id = start + (int)((i * 7919L) % count); // 7919 is a prime which does not divide the counts.
+         ps.setInt(0, id);
+         ps.setString(1, name(id));
+         ps.setString(2, nicks[id] = (id & 1) == 0? nick(id) : nick(id).toUpperCase());
+         assertEquals(1, ps.executeUpdate());
+      }
+   }
+   
+   /**
+    * Checks searches on the string indices.
+    * 
+    * @param driver The connection with Litebase.
+    * @param nicks The nicks of the ids present in the table.
+    */
+   private void assertStrings(LitebaseConnection driver, String[] nicks)
+   {
+      ResultSet resultSet;
+      String nick;
+      int i = nicks.length,
+          j,
+          count = 0,
+          range = 0;
+      
+      while (--i >= 0)
+         if (nicks[i] != null)
+         {
+            count++;
+            if (i >= 1000 && i < 1100)
+               range++;
+         }
+      
+      assertEquals(count, (resultSet = driver.executeQuery("select id from strs where name >= '" + name(0) + "'")).getRowCount());
+      resultSet.close();
+      assertEquals(range, (resultSet = driver.executeQuery("select id from strs where name >= '" + name(1000) + "' and name < '" + name(1100) 
+                                                                                                                + "'")).getRowCount());
+      resultSet.close();
+      assertEquals(range, (resultSet = driver.executeQuery("select id from strs where name like '" + name(1000).substring(0, 
+                                                                                                     name(1000).length() - 2) + "%'")).getRowCount());
+      resultSet.close();
+      
+      i = -1;
+      while ((i += 37) < nicks.length)
+      {
+         resultSet = driver.executeQuery("select id from strs where name = '" + name(i) + "'");
+         assertEquals(nicks[i] != null? 1 : 0, resultSet.getRowCount());
+         if (nicks[i] != null)
+         {
+            assertTrue(resultSet.next());
+            assertEquals(i, resultSet.getInt(1));
+         }
+         resultSet.close();
+         
+         // The case of the nick is ignored.
+         nick = (i & 1) == 0? nick(i).toUpperCase() : nick(i);
+         count = 0;
+         j = nicks.length;
+         while (--j >= 0)
+            if (nick.equalsIgnoreCase(nicks[j]))
+               count++;
+         assertEquals(count, (resultSet = driver.executeQuery("select id from strs where nick = '" + nick + "'")).getRowCount());
+         resultSet.close();
+      }
+   }
+   
+   /**
+    * Returns the name of an id. All the names share a long prefix.
+    * 
+    * @param id The id.
+    * @return The name.
+    */
+   private static String name(int id)
+   {
+      return "a long prefix shared by all the names " + pad(id);
+   }
+   
+   /**
+    * Returns the nick of an id.
+    * 
+    * @param id The id.
+    * @return The nick.
+    */
+   private static String nick(int id)
+   {
+      return "nick " + pad(id);
+   }
+   
+   /**
+    * Returns an id with 5 digits.
+    * 
+    * @param id The id.
+    * @return The id with zeros at its left.
+    */
+   private static String pad(int id)
+   {
+      return Convert.zeroPad(id, 5);
+   }
+   
+   /**
+    * Reads the format version of a table.
+    * 
+    * @param name The full name of the .db file.
+    * @return The table format version.
+    * @throws IOException If an internal method throws it.
+    */
+   private static int readVersion(String name) throws IOException
+   {
+      File file = new File(name, File.READ_ONLY);
+      byte[] bytes = new byte[2];
+      try
+      {
+         file.setPos(7);
+         assertEquals(2, file.readBytes(bytes, 0, 2));
+      }
+      finally
+      {
+         file.close();
+      }
+      if (AllTests.useCrypto)
+      {
+         bytes[0] ^= 0xAA;
+         bytes[1] ^= 0xAA;
+      }
+      return (bytes[1] & 0xFF) << 8 | (bytes[0] & 0xFF);
+   }
+   
+   /**
+    * Changes the format version of a table.
+    * 
+    * @param name The full name of the .db file.
+    * @param version The new table format version.
+    * @throws IOException If an internal method throws it.
+    */
+   private static void writeVersion(String name, int version) throws IOException
+   {
+      File file = new File(name, File.READ_WRITE);
+      byte[] bytes = {(byte)version, (byte)(version >> 8)};
+      if (AllTests.useCrypto)
+      {
+         bytes[0] ^= 0xAA;
+         bytes[1] ^= 0xAA;
+      }
+      try
+      {
+         file.setPos(7);
+         file.writeBytes(bytes, 0, 2);
+      }
+      finally
+      {
+         file.close();
+      }
    }
 }
@@ -62,9 +62,95 @@ public class TestMaxMin extends TestCase
       }
       connection.setRowInc("person", -1);
       executeAllTests(connection);
+      testCountMaxMin(connection);
       connection.closeAll();
    }
    
+   /**
+    * Tests <code>COUNT(*)</code> together with max and min, which can also be answered by the indices.
+    * 
+    * @param connection The connection with Litebase.
+    */
+   private void testCountMaxMin(LitebaseConnection connection)
+   {
+      if (connection.exists("counts"))
+         connection.executeUpdate("drop table counts");
+      connection.execute("create table counts (id int, name char(10), x int)");
+      PreparedStatement ps = connection.prepareStatement("insert into counts (id, name) values (?, ?)");
+      int i = 200;
+      while (--i >= 0)
+      {
+         ps.setInt(0, i);
+         ps.setString(1, "name" + i);
+         ps.executeUpdate();
+      }
+      
+      // Without and with an index.
+      assertCountMaxMin(connection, "", 200, 199, 0);
+      assertCountMaxMin(connection, " where id >= 100", 100, 199, 100);
+      assertCountMaxMin(connection, " where id >= 100 and name <> 'name150'", 99, 199, 100);
+      assertCountMaxMin(connection, " where id < 0", 0, 0, 0);
+      connection.execute("create index idx on counts (id)");
+      assertCountMaxMin(connection, "", 200, 199, 0);
+      assertCountMaxMin(connection, " where id >= 100", 100, 199, 100);
+      assertCountMaxMin(connection, " where id >= 100 and name <> 'name150'", 99, 199, 100);
+      assertCountMaxMin(connection, " where id < 0", 0, 0, 0);
+      
+      // Deleted rows must not be counted.
+      assertEquals(15, connection.executeUpdate("delete from counts where id < 5 or id >= 190"));
+      assertCountMaxMin(connection, "", 185, 189, 5);
+      assertCountMaxMin(connection, " where id >= 100", 90, 189, 100);
+      assertCountMaxMin(connection, " where id >= 100 and name <> 'name150'", 89, 189, 100);
+      assertCountMaxMin(connection, " where id > 189", 0, 0, 0);
+      connection.executeUpdate("drop index * on counts");
+      assertCountMaxMin(connection, "", 185, 189, 5);
+      assertCountMaxMin(connection, " where id >= 100", 90, 189, 100);
+      assertCountMaxMin(connection, " where id >= 100 and name <> 'name150'", 89, 189, 100);
+      assertCountMaxMin(connection, " where id > 189", 0, 0, 0);
+      
+      // A column with only nulls has a null max and min, but the rows are still counted.
+      connection.execute("create index idx on counts (x)");
+      ResultSet resultSet = connection.executeQuery("select max(x) as maxx, count(*) as c, min(x) as minx from counts");
+      assertEquals(1, resultSet.getRowCount());
+      assertTrue(resultSet.next());
+      assertTrue(resultSet.isNull(1));
+      assertEquals(185, resultSet.getInt(2));
+      assertTrue(resultSet.isNull(3));
+      resultSet.close();
+      
+      // No rows left.
+      assertEquals(185, connection.executeUpdate("delete from counts"));
+      assertEquals(0, (resultSet = connection.executeQuery("select count(*) as c, max(x) as maxx from counts")).getRowCount());
+      resultSet.close();
+      connection.executeUpdate("drop table counts");
+   }
+   
+   /**
+    * Checks the answer of a query with <code>COUNT(*)</code>, max and min.
+    * 
+    * @param connection The connection with Litebase.
+    * @param where The where clause of the query.
+    * @param count The number of rows expected, or 0 if the answer is empty.
+    * @param max The expected maximum id.
+    * @param min The expected minimum id.
+    */
+   private void assertCountMaxMin(LitebaseConnection connection, String where, int count, int max, int min)
+   {
+      ResultSet resultSet = connection.executeQuery("select count(*) as c, max(id) as maxi, min(id) as mini from counts" + where);
+      if (count == 0)
+         assertEquals(0, resultSet.getRowCount());
+      else
+      {
+         assertEquals(1, resultSet.getRowCount());
+         assertTrue(resultSet.next());
+         assertEquals(count, resultSet.getInt(1));
+         assertEquals(max, resultSet.getInt(2));
+         assertEquals(min, resultSet.getInt(3));
+      }
+      assertFalse(resultSet.next());
+      resultSet.close();
+   }
+   
    /**
     * Test with empty or all rows deleted.
     * 
@@ -6,6 +6,8 @@
 package samples.sys.testcases;
 
 import litebase.*;
+import totalcross.io.*;
+import totalcross.sys.*;
 import totalcross.unit.*;
 
 /**
@@ -636,6 +638,93 @@ public class TestOrderBy extends TestCase
       driver.executeQuery("select rowid, name, age, district from person group by rowid, name, age, district").close();
       driver.executeQuery("select rowid, name, age, district from person group by rowid, name, age, district order by rowid, name, age, district").close();     
       driver.executeQuery("select * from person order by rowid").close();
+      testSortRuns(driver);
       driver.closeAll();
    }
+   
+   /**
+    * Tests sorts of tables bigger than the runs which are sorted in memory: the runs are spilled to a disk file and merged.
+    * 
+    * @param driver The connection with Litebase.
+    */
+   private void testSortRuns(LitebaseConnection driver)
+   {
+      int rows = 2 * 8192 + 1000, // Three runs, the last one smaller.
+          i = -1;
+      
+      if (driver.exists("sortruns"))
+         driver.executeUpdate("drop table sortruns");
+      driver.execute("create table sortruns (id int, val int, name char(12))");
+      
+      // The values are spread over the runs and repeated; some names are null.
+      PreparedStatement stmt = driver.prepareStatement("insert into sortruns values (?, ?, ?)");
+      driver.beginBulkLoad("sortruns");
+      while (++i < rows)
+      {
+         stmt.setInt(0, i);
+         stmt.setInt(1, (i * 7919) % 1000);
+         stmt.setString(2, i % 97 == 0? null : "n" + Convert.zeroPad((i * 31) % rows, 6));
+         stmt.executeUpdate();
+      }
+      driver.endBulkLoad();
+      stmt.close();
+      
+      // Sorts by an int and by a string descending, whose nulls come first.
+      ResultSet rs = driver.executeQuery("select id, val, name from sortruns order by val, name desc");
+      boolean[] found = new boolean[rows];
+      int val,
+          lastVal = -1;
+      String name,
+             lastName = null;
+      
+      assertEquals(rows, rs.getRowCount());
+      while (rs.next())
+      {
+         assertFalse(found[i = rs.getInt(1)]);
+         found[i] = true;
+         assertGreaterOrEqual(val = rs.getInt(2), lastVal);
+         name = rs.getString(3);
+         if (val == lastVal && name != null)
+         {
+            if (lastName != null)
+               assertGreaterOrEqual(lastName.compareTo(name), 0);
+         }
+         else if (val == lastVal)
+            assertNull(lastName);
+         lastVal = val;
+         lastName = name;
+      }
+      rs.close();
+      
+      // Sorts a temporary table by a string ascending, whose nulls come last.
+      rs = driver.executeQuery("select name, id from sortruns where id >= 0 order by name");
+      lastName = "";
+      i = 0;
+      assertEquals(rows, rs.getRowCount());
+      while (rs.next())
+      {
+         if ((name = rs.getString(1)) == null)
+            i++;
+         else
+         {
+            assertEquals(0, i);
+            assertLower(lastName.compareTo(name), 0);
+            lastName = name;
+         }
+      }
+      rs.close();
+      assertEquals((rows + 96) / 97, i);
+      
+      try // The spill file is deleted.
+      {
+         String[] files = new File(driver.getSourcePath()).listFiles();
+         i = files.length;
+         while (--i >= 0)
+            assertFalse(files[i].endsWith(".tmp"));
+      }
+      catch (IOException exception)
+      {
+         fail("5");
+      }
+   }
 }
\ No newline at end of file
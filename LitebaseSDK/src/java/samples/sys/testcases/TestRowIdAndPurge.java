@@ -6,6 +6,8 @@
 package samples.sys.testcases;
 
 import litebase.*;
+import totalcross.io.*;
+import totalcross.sys.*;
 import totalcross.unit.*;
 
 /** 
@@ -127,5 +129,234 @@ public class TestRowIdAndPurge extends TestCase
       }
       rs.close();
       driver.closeAll();
+      
+      try
+      {
+         testPurgeStep();
+      }
+      catch (IOException exception)
+      {
+         fail(exception);
+      }
+   }
+   
+   /**
+    * Tests the incremental purge and the recovery of a table whose purge step was interrupted after copying a row to a hole.
+    * 
+    * @throws IOException If an internal method throws it.
+    */
+   private void testPurgeStep() throws IOException
+   {
+      LitebaseConnection driver = AllTests.getInstance("Test");
+      String tablePath = driver.getSourcePath() + "Test-psteps.db";
+      boolean[] present = new boolean[300];
+      int i = -1,
+          deleted,
+          remaining,
+          steps = 0;
+      
+      if (driver.exists("psteps"))
+         driver.executeUpdate("drop table psteps");
+      driver.execute("create table psteps (id int primary key, name char(20), age int)");
+      driver.execute("create index idx on psteps(name)");
+      driver.execute("create index idx on psteps(rowid)");
+      driver.execute("create index idx on psteps(age, name)");
+      PreparedStatement ps = driver.prepareStatement("insert into psteps values (?, ?, ?)");
+      while (++i < 300)
+      {
+         ps.setInt(0, i);
+         ps.setString(1, "name" + i);
+         ps.setInt(2, i % 7);
+         assertEquals(1, ps.executeUpdate());
+         present[i] = true;
+      }
+      
+      // Leaves holes in the whole table and deleted rows at its end.
+      assertEquals(43, driver.executeUpdate("delete from psteps where age = 0"));
+      assertEquals(17, driver.executeUpdate("delete from psteps where id >= 280"));
+      i = 300;
+      while (--i >= 0)
+         if (i % 7 == 0 || i >= 280)
+            present[i] = false;
+      
+      // Each step makes progress until there are no deleted rows left.
+      deleted = driver.getRowCountDeleted("psteps");
+      assertEquals(60, deleted);
+      while ((remaining = driver.purgeStep("psteps", 7)) > 0)
+      {
+         assertGreater(deleted, remaining);
+         deleted = remaining;
+         steps++;
+         assertPurgedRows(driver, present);
+      }
+      assertGreater(steps, 2);
+      assertEquals(0, driver.purgeStep("psteps", 7));
+      assertEquals(0, driver.getRowCountDeleted("psteps"));
+      assertEquals(240, driver.getRowCount("psteps"));
+      assertPurgedRows(driver, present);
+      
+      // The rowids are kept after the steps.
+      assertEquals(301, driver.getCurrentRowId("psteps"));
+      driver.closeAll();
+      driver = AllTests.getInstance("Test");
+      assertPurgedRows(driver, present);
+      assertEquals(301, driver.getCurrentRowId("psteps"));
+      
+      // An interrupted step which copied the last row to the first hole, but did not delete the original row.
+      assertEquals(40, driver.executeUpdate("delete from psteps where age = 1"));
+      i = 300;
+      while (--i >= 0)
+         if (i % 7 == 1)
+            present[i] = false;
+      driver.closeAll();
+      copyLastRowToFirstHole(tablePath);
+      
+      driver = AllTests.getInstance("Test");
+      try // The table was not closed properly.
+      {
+         driver.executeQuery("select * from psteps");
+         fail("1");
+      }
+      catch (TableNotClosedException exception) {}
+      assertTrue(driver.recoverTable("psteps"));
+      assertPurgedRows(driver, present);
+      assertEquals(40, driver.getRowCountDeleted("psteps")); // The copy of the row is deleted again.
+      while (driver.purgeStep("psteps", 100) > 0);
+      assertPurgedRows(driver, present);
+      assertEquals(281, driver.getCurrentRowId("psteps")); // The recovery continues from the highest rowid found, which was moved to a hole.
+      
+      driver.executeUpdate("drop table psteps");
+      driver.closeAll();
+   }
+   
+   /**
+    * Checks the rows and the indices of the table changed by the purge steps.
+    * 
+    * @param driver The connection with Litebase.
+    * @param present The ids that were not deleted.
+    */
+   private void assertPurgedRows(LitebaseConnection driver, boolean[] present)
+   {
+      PreparedStatement psId = driver.prepareStatement("select rowid, name, age from psteps where id = ?"),
+                        psName = driver.prepareStatement("select id from psteps where name = ?");
+      ResultSet rs;
+      int i = present.length,
+          count = 0,
+          age = 0,
+          last = 0;
+      
+      while (--i >= 0) // Searches the primary key and the name index.
+      {
+         psId.setInt(0, i);
+         assertEquals(present[i]? 1 : 0, (rs = psId.executeQuery()).getRowCount());
+         if (present[i])
+         {
+            assertTrue(rs.next());
+            assertEquals(i + 1, rs.getInt(1));
+            assertEquals("name" + i, rs.getString(2));
+            count++;
+            if (i % 7 == 3)
+               age++;
+         }
+         rs.close();
+         psName.setString(0, "name" + i);
+         assertEquals(present[i]? 1 : 0, (rs = psName.executeQuery()).getRowCount());
+         rs.close();
+      }
+      
+      // The composed index.
+      assertEquals(age, (rs = driver.executeQuery("select id from psteps where age = 3 and name >= 'name'")).getRowCount());
+      rs.close();
+      
+      // The rowid index finds all the rows, which keep their rowids although they were moved.
+      assertEquals(count, (rs = driver.executeQuery("select rowid, id from psteps where rowid > 0 order by rowid")).getRowCount());
+      while (rs.next())
+      {
+         assertGreater(i = rs.getInt(1), last);
+         assertEquals(i - 1, rs.getInt(2));
+         last = i;
+      }
+      rs.close();
+   }
+   
+   /**
+    * Simulates a purge step that was interrupted after copying the last row to the first hole of the table, before deleting the original row.
+    * The table is also marked as not closed properly.
+    * 
+    * @param tablePath The full name of the .db file.
+    * @throws IOException If an internal method throws it.
+    */
+   private void copyLastRowToFirstHole(String tablePath) throws IOException
+   {
+      File dbFile = new File(tablePath, File.READ_WRITE);
+      byte[] row = new byte[21], // rowid + id + name + age + null bytes + crc32.
+             oneByte = new byte[1];
+      int rows = (dbFile.getSize() - 512) / row.length,
+          hole = -1,
+          last = rows;
+      
+      try
+      {
+         while (--last >= 0) // The last row which is not deleted nor empty.
+         {
+            dbFile.setPos(512 + last * row.length);
+            dbFile.readBytes(row, 0, row.length);
+            if (!isDeleted(row) && !isZero(row))
+               break;
+         }
+         byte[] lastRow = new byte[row.length];
+         Vm.arrayCopy(row, 0, lastRow, 0, row.length);
+         while (++hole < last) // The first hole.
+         {
+            dbFile.setPos(512 + hole * row.length);
+            dbFile.readBytes(row, 0, row.length);
+            if (isDeleted(row))
+               break;
+         }
+         assertLower(hole, last);
+         dbFile.setPos(512 + hole * row.length);
+         dbFile.writeBytes(lastRow, 0, row.length);
+         
+         // Pretends that the table was not closed correctly.
+         dbFile.setPos(6);
+         dbFile.readBytes(oneByte, 0, 1);
+         if (AllTests.useCrypto)
+            oneByte[0] ^= 0xAA;
+         oneByte[0] = (byte)(oneByte[0] & 2);
+         if (AllTests.useCrypto)
+            oneByte[0] ^= 0xAA;
+         dbFile.setPos(6);
+         dbFile.writeBytes(oneByte, 0, 1);
+      }
+      finally
+      {
+         dbFile.close();
+      }
+   }
+   
+   /**
+    * Indicates if a row read from the .db file is deleted.
+    * 
+    * @param row The bytes of the row.
+    * @return <code>true</code> if the row attribute is deleted; <code>false</code>, otherwise.
+    */
+   private static boolean isDeleted(byte[] row)
+   {
+      return ((AllTests.useCrypto? row[3] ^ 0xAA : row[3]) & 0xC0) == 0xC0;
+   }
+   
+   /**
+    * Indicates if a row read from the .db file was never written.
+    * 
+    * @param row The bytes of the row.
+    * @return <code>true</code> if the row only has zeros; <code>false</code>, otherwise.
+    */
+   private static boolean isZero(byte[] row)
+   {
+      int i = row.length;
+      while (--i >= 0)
+         if (row[i] != (AllTests.useCrypto? (byte)0xAA : 0))
+            return false;
+      return true;
    }
 }
@@ -114,6 +114,109 @@ final class LBThread implements Runnable
 	}
 }
 
+/**
+ * An internal class that is used to test the table locks of a connection shared by threads.
+ */
+final class LBLockThread implements Runnable
+{
+   /**
+    * The thread.
+    */
+   Thread t;
+   
+   /**
+    * The connection shared by the threads.
+    */
+   LitebaseConnection conn;
+   
+   /**
+    * The table used by the thread.
+    */
+   String tableName;
+   
+   /**
+    * The first id inserted by the thread or -1 if it only reads the table while the <code>writer</code> thread is running.
+    */
+   int firstId;
+   
+   /**
+    * Indicates if the thread keeps inserting rows after the first 200 ones until another thread had to wait for the table.
+    */
+   boolean untilContention;
+   
+   /**
+    * The thread which inserts rows in the table read by this thread.
+    */
+   LBLockThread writer;
+   
+   /**
+    * The number of rows read.
+    */
+   int rowsRead;
+   
+   /**
+    * The error found by the thread or <code>null</code> if it finished correctly.
+    */
+   String error;
+   
+   /** 
+    * The thread run() method.
+    */
+   public void run()
+   {
+      try
+      {
+         if (firstId >= 0) // Inserts the rows.
+         {
+            PreparedStatement stmt = conn.prepareStatement("insert into " + tableName + " values (?, ?)");
+            int id = firstId;
+            while (id < firstId + 200 || (untilContention && conn.getLockContentions(tableName) == 0 && id < firstId + 5000))
+            {
+               stmt.setInt(0, id);
+               stmt.setString(1, "Name " + id++);
+               stmt.executeUpdate();
+               Thread.yield();
+            }
+            stmt.close();
+         }
+         else // Reads the table while the writer is inserting rows in it.
+            do
+            {
+               // The first select reads the table directly and the second one uses a temporary table.
+               readRows(conn.executeQuery("select * from " + tableName));
+               readRows(conn.executeQuery("select id, name from " + tableName + " where id >= 50"));
+            }
+            while (writer.t.isAlive());
+      }
+      catch (Exception exception)
+      {
+         error = exception.getClass().getName() + ": " + exception.getMessage();
+      }
+   }
+   
+   /**
+    * Reads the rows of a result set, checking that the name of each row matches its id.
+    * 
+    * @param resultSet The result set.
+    */
+   private void readRows(ResultSet resultSet)
+   {
+      try
+      {
+         while (resultSet.next())
+         {
+            if (!resultSet.getString(2).equals("Name " + resultSet.getInt(1)))
+               throw new RuntimeException(resultSet.getString(2) + " != Name " + resultSet.getInt(1));
+            rowsRead++;
+         }
+      }
+      finally
+      {
+         resultSet.close();
+      }
+   }
+}
+
 /**
  * Tests Litebase with threads.
  */
@@ -143,5 +246,72 @@ public class TestThread extends TestCase
       	fail("thread 1 aborted");
       if (!test2.finishedGracefully)
          fail("thread 2 aborted");
+      testLocks();
+   }
+   
+   /**
+    * Tests the table locks of a connection shared by threads: a table used by two threads has contentions, but a table used by only one thread 
+    * has none.
+    */
+   private void testLocks()
+   {
+      LitebaseConnection conn = AllTests.getInstance("Test");
+      String[] tableNames = {"locka", "lockb"};
+      int i = -1;
+      
+      while (++i < 2)
+      {
+         if (conn.exists(tableNames[i]))
+            conn.executeUpdate("drop table " + tableNames[i]);
+         conn.execute("create table " + tableNames[i] + " (id int primary key, name char(30))");
+         conn.executeUpdate("insert into " + tableNames[i] + " values (0, 'Name 0')");
+      }
+      int catalogContentions = conn.getCatalogLockContentions();
+      
+      LBLockThread writerA = new LBLockThread(),
+                   readerA = new LBLockThread(),
+                   writerB = new LBLockThread();
+      LBLockThread[] threads = {writerA, readerA, writerB};
+      
+      writerA.tableName = readerA.tableName = "locka";
+      writerB.tableName = "lockb";
+      writerA.firstId = writerB.firstId = 1;
+      readerA.firstId = -1;
+      readerA.writer = writerA;
+      writerA.untilContention = true;
+      
+      i = -1;
+      while (++i < 3)
+      {
+         threads[i].conn = conn;
+         threads[i].t = new Thread(threads[i]);
+      }
+      i = -1;
+      while (++i < 3)
+         threads[i].t.start();
+      while (writerA.t.isAlive() || readerA.t.isAlive() || writerB.t.isAlive())
+         Vm.sleep(10);
+      
+      i = -1;
+      while (++i < 3)
+         if (threads[i].error != null)
+            fail("lock thread " + i + ": " + threads[i].error);
+      
+      // The reader and the writer of locka had to wait for each other.
+      assertGreater(conn.getLockContentions("locka"), 0);
+      assertGreater(readerA.rowsRead, 0);
+      
+      // lockb was only used by its writer.
+      assertEquals(0, conn.getLockContentions("lockb"));
+      assertEquals(200, conn.getRowCount("lockb") - 1);
+      assertEquals(catalogContentions, conn.getCatalogLockContentions());
+      
+      // All the rows inserted can be found.
+      ResultSet resultSet = conn.executeQuery("select count(*) as total from locka where id >= 0");
+      resultSet.next();
+      assertEquals(conn.getRowCount("locka"), resultSet.getInt(1));
+      resultSet.close();
+      assertGreater(conn.getRowCount("locka"), 200);
+      conn.closeAll();
    }
 }
@@ -0,0 +1,328 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package samples.sys.testcases;
+
+import litebase.*;
+import totalcross.io.*;
+import totalcross.sys.*;
+import totalcross.unit.TestCase;
+
+/**
+ * Tests transactions and the journal which undoes them when the application stops before the commit.
+ */
+public class TestTransaction extends TestCase
+{
+   /**
+    * The names of the files saved by <code>takeSnapshot()</code>.
+    */
+   private String[] names;
+
+   /**
+    * The number of files saved by <code>takeSnapshot()</code>.
+    */
+   private int count;
+
+   /**
+    * The contents of the files saved by <code>takeSnapshot()</code>.
+    */
+   private byte[][] contents;
+
+   /**
+    * The main method of the test.
+    */
+   public void testRun()
+   {
+      LitebaseConnection driver = AllTests.getInstance("Test");
+      String path = driver.getSourcePath(),
+             journalName = path + "Test.jnl";
+
+      try
+      {
+         if (driver.exists("trans"))
+            driver.executeUpdate("drop table trans");
+         driver.execute("create table trans (id int primary key, name char(20))");
+         driver.execute("create index idx on trans(name)");
+         PreparedStatement ps = driver.prepareStatement("insert into trans values (?, ?)");
+         int i = -1;
+         while (++i < 100)
+         {
+            ps.setInt(0, i);
+            ps.setString(1, "name" + i);
+            ps.executeUpdate();
+         }
+
+         // Inserts, updates and deletes are kept after the commit.
+         assertFalse(driver.isInTransaction());
+         driver.beginTransaction();
+         assertTrue(driver.isInTransaction());
+         while (i < 110)
+         {
+            ps.setInt(0, i);
+            ps.setString(1, "name" + i++);
+            ps.executeUpdate();
+         }
+         assertEquals(10, driver.executeUpdate("update trans set name = 'changed' where id < 10"));
+         assertEquals(10, driver.executeUpdate("delete from trans where id >= 90 and id < 100"));
+         assertTrue(new File(journalName, File.DONT_OPEN).exists());
+         assertCommitted(driver); // The transaction sees its own changes.
+         driver.commit();
+         assertFalse(driver.isInTransaction());
+         assertFalse(new File(journalName, File.DONT_OPEN).exists());
+         driver.closeAll();
+         assertCommitted(driver = AllTests.getInstance("Test"));
+
+         // A transaction big enough to write the table and index files before the commit.
+         driver.beginTransaction();
+         ps = driver.prepareStatement("insert into trans values (?, ?)");
+         i = 999;
+         while (++i < 3000)
+         {
+            ps.setInt(0, i);
+            ps.setString(1, "new name " + i);
+            ps.executeUpdate();
+         }
+         assertEquals(50, driver.executeUpdate("update trans set name = 'crash' where id < 50"));
+         assertEquals(10, driver.executeUpdate("delete from trans where id >= 100 and id < 110"));
+
+         // Saves the files as they would be found if the application stopped now.
+         takeSnapshot(path);
+         byte[] journal = readFile(journalName);
+         int length = journal.length < 4? 0 : (journal[0] & 0xFF) << 24 | (journal[1] & 0xFF) << 16 | (journal[2] & 0xFF) << 8 
+                                                                                             | (journal[3] & 0xFF); // The size of the first batch.
+         if (length <= 0 || length + 8 > journal.length)
+            fail("No complete batch was written to the journal.");
+         driver.commit();
+         driver.closeAll();
+
+         // The journal left behind undoes the transaction when a connection is created.
+         restoreSnapshot(journalName, journal);
+         assertCommitted(driver = AllTests.getInstance("Test"));
+         assertFalse(new File(journalName, File.DONT_OPEN).exists());
+
+         // The index must not have the keys of the rows inserted by the transaction.
+         ps = driver.prepareStatement("insert into trans values (?, ?)");
+         ps.setInt(0, 1000);
+         ps.setString(1, "name1000");
+         assertEquals(1, ps.executeUpdate());
+         assertEquals(1, driver.executeUpdate("delete from trans where id = 1000"));
+         driver.closeAll();
+
+         // A batch with a wrong CRC code at the end of the journal is ignored.
+         byte[] torn = new byte[journal.length + length + 8];
+         Vm.arrayCopy(journal, 0, torn, 0, journal.length);
+         Vm.arrayCopy(journal, 0, torn, journal.length, length + 8);
+         i = torn.length - 4;
+         while (--i >= torn.length - 100) // Changes the end of the batch, which has the bytes of a block.
+            torn[i] ^= 0x55;
+         restoreSnapshot(journalName, torn);
+         assertCommitted(driver = AllTests.getInstance("Test"));
+         assertFalse(new File(journalName, File.DONT_OPEN).exists());
+         driver.closeAll();
+
+         // So is a batch which was not completely written.
+         torn = new byte[journal.length + length];
+         Vm.arrayCopy(journal, 0, torn, 0, journal.length);
+         Vm.arrayCopy(journal, 0, torn, journal.length, length);
+         restoreSnapshot(journalName, torn);
+         assertCommitted(driver = AllTests.getInstance("Test"));
+         assertFalse(new File(journalName, File.DONT_OPEN).exists());
+
+         testForbiddenOperations(driver);
+         driver.executeUpdate("drop table trans");
+      }
+      catch (IOException exception)
+      {
+         fail(exception);
+      }
+      driver.closeAll();
+   }
+
+   /**
+    * Checks that the table has the rows left by the first transaction, which was committed.
+    *
+    * @param driver The connection with Litebase.
+    */
+   private void assertCommitted(LitebaseConnection driver)
+   {
+      ResultSet resultSet = driver.executeQuery("select count(*) as c from trans");
+      assertTrue(resultSet.next());
+      assertEquals(100, resultSet.getInt(1));
+      resultSet.close();
+
+      // The index also has the rows of the transaction.
+      assertEquals(10, (resultSet = driver.executeQuery("select * from trans where name = 'changed'")).getRowCount());
+      resultSet.close();
+      assertEquals(0, (resultSet = driver.executeQuery("select * from trans where name = 'name95'")).getRowCount());
+      resultSet.close();
+      assertEquals(1, (resultSet = driver.executeQuery("select * from trans where id = 105")).getRowCount());
+      assertTrue(resultSet.next());
+      assertEquals("name105", resultSet.getString(2));
+      resultSet.close();
+      assertEquals(0, (resultSet = driver.executeQuery("select * from trans where id >= 1000")).getRowCount());
+      resultSet.close();
+   }
+
+   /**
+    * Tests the operations which can't be done during a transaction.
+    *
+    * @param driver The connection with Litebase.
+    */
+   private void testForbiddenOperations(LitebaseConnection driver)
+   {
+      driver.beginTransaction();
+      try
+      {
+         driver.beginTransaction();
+         fail("1");
+      }
+      catch (IllegalStateException exception) {}
+      try
+      {
+         driver.execute("create table trans2 (id int)");
+         fail("2");
+      }
+      catch (DriverException exception) {}
+      try
+      {
+         driver.execute("create index idx on trans(rowid)");
+         fail("3");
+      }
+      catch (DriverException exception) {}
+      try
+      {
+         driver.executeUpdate("drop index idx on trans");
+         fail("4");
+      }
+      catch (DriverException exception) {}
+      try
+      {
+         driver.executeUpdate("alter table trans add age int");
+         fail("5");
+      }
+      catch (DriverException exception) {}
+      try
+      {
+         driver.executeUpdate("drop table trans");
+         fail("6");
+      }
+      catch (DriverException exception) {}
+      try
+      {
+         driver.purge("trans");
+         fail("7");
+      }
+      catch (DriverException exception) {}
+      try
+      {
+         driver.purgeStep("trans", 10);
+         fail("8");
+      }
+      catch (DriverException exception) {}
+      try
+      {
+         driver.setRowInc("trans", 100);
+         fail("9");
+      }
+      catch (DriverException exception) {}
+      try
+      {
+         driver.beginBulkLoad("trans");
+         fail("10");
+      }
+      catch (DriverException exception) {}
+
+      // The table can still be changed.
+      assertEquals(1, driver.executeUpdate("delete from trans where id = 0"));
+      driver.commit();
+      try
+      {
+         driver.commit();
+         fail("11");
+      }
+      catch (IllegalStateException exception) {}
+      assertTrue(driver.exists("trans"));
+   }
+
+   /**
+    * Saves the files of the table and their contents.
+    *
+    * @param path The folder of the tables.
+    * @throws IOException If an internal method throws it.
+    */
+   private void takeSnapshot(String path) throws IOException
+   {
+      String[] files = new File(path, File.DONT_OPEN).listFiles();
+      int i = files.length;
+
+      names = new String[i];
+      contents = new byte[i][];
+      count = 0;
+      while (--i >= 0)
+         if (files[i].startsWith("Test-trans.") || files[i].startsWith("Test-trans$") || files[i].startsWith("Test-trans&"))
+            contents[count] = readFile(names[count++] = path + files[i]);
+      assertGreater(count, 2); // .db, .dbo and at least one index.
+   }
+
+   /**
+    * Writes back the files saved by <code>takeSnapshot()</code> and a journal, as if the application had stopped when the snapshot was taken.
+    *
+    * @param journalName The full name of the journal file.
+    * @param journal The contents of the journal.
+    * @throws IOException If an internal method throws it.
+    */
+   private void restoreSnapshot(String journalName, byte[] journal) throws IOException
+   {
+      int i = count;
+      while (--i >= 0)
+         writeFile(names[i], contents[i]);
+      writeFile(journalName, journal);
+   }
+
+   /**
+    * Reads a whole file.
+    *
+    * @param name The full name of the file.
+    * @return The contents of the file.
+    * @throws IOException If an internal method throws it.
+    */
+   private static byte[] readFile(String name) throws IOException
+   {
+      File file = new File(name, File.READ_ONLY);
+      try
+      {
+         byte[] buffer = new byte[file.getSize()];
+         int read = 0,
+             n;
+         while (read < buffer.length && (n = file.readBytes(buffer, read, buffer.length - read)) > 0)
+            read += n;
+         return buffer;
+      }
+      finally
+      {
+         file.close();
+      }
+   }
+
+   /**
+    * Replaces the contents of a file.
+    *
+    * @param name The full name of the file.
+    * @param buffer The new contents of the file.
+    * @throws IOException If an internal method throws it.
+    */
+   private static void writeFile(String name, byte[] buffer) throws IOException
+   {
+      File file = new File(name, File.CREATE_EMPTY);
+      try
+      {
+         file.writeBytes(buffer, 0, buffer.length);
+      }
+      finally
+      {
+         file.close();
+      }
+   }
+}
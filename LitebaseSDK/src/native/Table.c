@@ -399,11 +399,12 @@ bool tableLoadMetaData(Context context, Table* table, bool throwException) // ju
          plainDB->wasNotSavedCorrectly = true;
    }
 
-   // The tables version must be the same as Litebase version.
+   // The tables version must be the same as Litebase version or the previous one.
 	xmove2(&version, ptr);
 	
 	// juliana@230_12: improved recover table to take .dbo data into consideration.
-	if (version < VERSION_TABLE - 1)
+   // Newer tables, like the ones of version 204 created by the Java Litebase with compressed string indices, can't be read.
+	if (version < VERSION_TABLE - 1 || version > VERSION_TABLE)
 	{
 		// juliana@222_1: the table should not be marked as closed properly if it was not previously closed correctly.
 		nfClose(context, dbFile);
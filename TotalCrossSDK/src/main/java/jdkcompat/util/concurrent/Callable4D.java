@@ -0,0 +1,9 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package jdkcompat.util.concurrent;
+
+public interface Callable4D<V> {
+  V call() throws Exception;
+}
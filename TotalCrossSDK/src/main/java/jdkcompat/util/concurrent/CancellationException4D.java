@@ -0,0 +1,16 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package jdkcompat.util.concurrent;
+
+public class CancellationException4D extends IllegalStateException {
+
+  public CancellationException4D() {
+    super();
+  }
+
+  public CancellationException4D(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,20 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package jdkcompat.util.concurrent;
+
+public class ExecutionException4D extends Exception {
+
+  public ExecutionException4D(String message) {
+    super(message);
+  }
+
+  public ExecutionException4D(Throwable cause) {
+    super(cause);
+  }
+
+  public ExecutionException4D(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,16 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package jdkcompat.util.concurrent;
+
+public class TimeoutException4D extends Exception {
+
+  public TimeoutException4D() {
+    super();
+  }
+
+  public TimeoutException4D(String message) {
+    super(message);
+  }
+}
@@ -17,6 +17,8 @@ package totalcross.db.sqlite;
 
 import java.sql.BatchUpdateException;
 import java.sql.SQLException;
+import totalcross.sys.Convert;
+import totalcross.sys.Vm;
 
 /*
  * This class is the interface to SQLite. It provides some helper functions
@@ -480,6 +482,21 @@ abstract class DB implements Codes {
    */
   abstract int bind_blob(long stmt, int pos, byte[] v) throws SQLException;
 
+  /**
+   * Binds and steps many rows of a prepared statement in a single call. The values are given by column, one array per
+   * parameter, whose type is given by the constants of {@link SQLiteBatch}.
+   * @param stmt Pointer to the statement.
+   * @param rows The number of rows to execute.
+   * @param types The type of each parameter.
+   * @param columns The array of values of each parameter.
+   * @param nulls The <code>boolean</code> array which tells which rows of each parameter are NULL, or null.
+   * @param changes Receives the number of rows changed by each row executed.
+   * @return SQLITE_DONE if all the rows were executed; otherwise, the result code of the row which failed.
+   * @throws SQLException
+   */
+  abstract int execute_batch(long stmt, int rows, int[] types, Object[] columns, Object[] nulls, int[] changes)
+      throws SQLException;
+
   /**
    * Sets the result of an SQL function as NULL with the pointer to the SQLite database context.
    * @param context Pointer to the SQLite database context.
@@ -767,6 +784,67 @@ abstract class DB implements Codes {
     return changes;
   }
 
+  /**
+   * Executes the rows of a columnar batch with a prepared statement. If the connection is in auto-commit mode and no
+   * transaction was opened with a "begin" statement, the rows are executed inside a transaction, which is rolled back if
+   * a row or the commit fails.
+   * @param stmt Pointer of Stmt object.
+   * @param batch The batch of rows.
+   * @return Array of the number of rows changed by each row of the batch.
+   * @throws SQLException
+   */
+  int[] executeBatch(long stmt, SQLiteBatch batch) throws SQLException {
+    int rows = batch.rows;
+    int[] changes = new int[rows];
+    boolean implicit = conn.getAutoCommit();
+
+    Convert.fill(changes, 0, rows, -1); // The rows not executed are left as -1.
+    if (implicit) {
+      if (begin == 0) {
+        begin = prepare("begin;");
+      }
+      try {
+        implicit = step(begin) == SQLITE_DONE; // fails if we are already in a transaction, which is left to its owner
+      } finally {
+        reset(begin);
+      }
+    }
+    int rc = execute_batch(stmt, rows, batch.types, batch.columns, batch.nulls, changes);
+    if (rc != SQLITE_DONE) {
+      int i = 0;
+      while (i < rows && changes[i] != -1) {
+        i++;
+      }
+      String msg = rc == SQLITE_ROW ? "query returns results" : errmsg();
+      if (implicit) {
+        try {
+          _exec("rollback;");
+        } catch (SQLException e) {
+        }
+      }
+      int[] done = new int[i];
+      Vm.arrayCopy(changes, 0, done, 0, i);
+      throw new BatchUpdateException("batch entry " + i + ": " + msg, done);
+    }
+    if (implicit) {
+      if (commit == 0) {
+        commit = prepare("commit;");
+      }
+      int ret = step(commit);
+      if (ret != SQLITE_DONE) {
+        SQLException e = newSQLException(ret);
+        reset(commit);
+        try {
+          _exec("rollback;");
+        } catch (SQLException ex) {
+        }
+        throw e;
+      }
+      reset(commit);
+    }
+    return changes;
+  }
+
   /**
    * @see <a href="http://www.sqlite.org/c_interface.html#sqlite_exec">http://www.sqlite.org/c_interface.html#sqlite_exec</a>
    * @param stmt Stmt object.
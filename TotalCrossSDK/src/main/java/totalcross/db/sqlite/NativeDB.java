@@ -262,6 +262,13 @@ final class NativeDB extends DB {
   @Override
   native int bind_blob(long stmt, int pos, byte[] v);
 
+  /**
+   * @see totalcross.db.sqlite.DB#execute_batch(long, int, int[], Object[], Object[], int[])
+   */
+
+  @Override
+  native int execute_batch(long stmt, int rows, int[] types, Object[] columns, Object[] nulls, int[] changes);
+
   /**
    * @see org.sqlite.DB#result_null(long)
    */
@@ -46,7 +46,7 @@ final class PrepStmt extends Stmt implements PreparedStatement, ParameterMetaDat
     super(conn);
 
     this.sql = sql;
-    db.prepare(this);
+    pointer = conn.prepare(sql);
     rs.colsMeta = db.column_names(pointer);
     columnCount = db.column_count(pointer);
     paramCount = db.bind_parameter_count(pointer);
@@ -64,6 +64,26 @@ final class PrepStmt extends Stmt implements PreparedStatement, ParameterMetaDat
     batch = null;
   }
 
+  /**
+   * Gives the statement handle back to the connection's statement cache instead of finalizing it, so that it can be
+   * reused when the same SQL is prepared again.
+   * @see totalcross.db.sqlite.Stmt#internalClose()
+   */
+  @Override
+  protected void internalClose() throws SQLException {
+    if (pointer == 0 || db.conn.isClosed()) {
+      return;
+    }
+
+    rs.close();
+    batch = null;
+    batchPos = 0;
+    if (!conn.release(sql, pointer)) {
+      db.finalize(this);
+    }
+    pointer = 0;
+  }
+
   /**
    * @see totalcross.db.sqlite.Stmt#finalize()
    */
@@ -153,6 +173,28 @@ final class PrepStmt extends Stmt implements PreparedStatement, ParameterMetaDat
     }
   }
 
+  /**
+   * Executes the rows of a columnar batch in a single native call.
+   * @param batch The batch of rows.
+   * @return The number of rows changed by each row of the batch.
+   * @throws SQLException
+   * @see totalcross.db.sqlite.SQLiteBatch#execute(PreparedStatement)
+   */
+  int[] executeBatch(SQLiteBatch batch) throws SQLException {
+    checkOpen();
+
+    if (columnCount != 0) {
+      throw new SQLException("Query returns results");
+    }
+    if (batch.types.length != paramCount) {
+      throw new SQLException("The batch has " + batch.types.length + " parameters but the statement has " + paramCount);
+    }
+
+    rs.close();
+    db.reset(pointer);
+    return db.executeBatch(pointer, batch);
+  }
+
   /**
    * @see totalcross.db.sqlite.Stmt#getUpdateCount()
    */
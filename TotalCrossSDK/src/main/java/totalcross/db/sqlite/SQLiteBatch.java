@@ -0,0 +1,206 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+package totalcross.db.sqlite;
+
+import java.sql.SQLException;
+import totalcross.sql.PreparedStatement;
+import totalcross.sql.Types;
+
+/**
+ * A batch of rows to be executed by a prepared statement, stored by column: each parameter of the statement receives an
+ * array of primitive values, strings or blobs with one value per row. When executed by an SQLite prepared statement, all
+ * the rows are bound and stepped in a single native call, without boxing the values as
+ * <code>PreparedStatement.addBatch()</code> does, and inside a transaction if the connection is in auto-commit mode.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * PreparedStatement ps = conn.prepareStatement("insert into person values (?, ?, ?)");
+ * SQLiteBatch batch = new SQLiteBatch(3);
+ * batch.setInts(1, ids);
+ * batch.setStrings(2, names);
+ * batch.setDoubles(3, salaries);
+ * batch.setRowCount(ids.length);
+ * batch.execute(ps);
+ * </pre>
+ *
+ * The arrays are not copied, so they can be refilled and the batch executed again.
+ */
+public class SQLiteBatch {
+  static final int INT = 1;
+  static final int LONG = 2;
+  static final int DOUBLE = 3;
+  static final int TEXT = 4;
+  static final int BLOB = 5;
+
+  /** The type of the values of each parameter. */
+  final int[] types;
+
+  /** The array of values of each parameter. */
+  final Object[] columns;
+
+  /** The boolean arrays which tell which rows of each parameter are SQL <code>NULL</code>. */
+  final Object[] nulls;
+
+  int rows;
+
+  /**
+   * Creates a batch for a statement with the given number of parameters.
+   * @param paramCount The number of parameters of the statement.
+   */
+  public SQLiteBatch(int paramCount) {
+    types = new int[paramCount];
+    columns = new Object[paramCount];
+    nulls = new Object[paramCount];
+  }
+
+  /**
+   * Sets the values of an integer parameter.
+   * @param param The parameter index, starting from 1.
+   * @param values One value per row.
+   */
+  public void setInts(int param, int[] values) {
+    set(param, INT, values);
+  }
+
+  /**
+   * Sets the values of a long parameter.
+   * @param param The parameter index, starting from 1.
+   * @param values One value per row.
+   */
+  public void setLongs(int param, long[] values) {
+    set(param, LONG, values);
+  }
+
+  /**
+   * Sets the values of a double parameter.
+   * @param param The parameter index, starting from 1.
+   * @param values One value per row.
+   */
+  public void setDoubles(int param, double[] values) {
+    set(param, DOUBLE, values);
+  }
+
+  /**
+   * Sets the values of a text parameter. A <code>null</code> element is bound as SQL <code>NULL</code>.
+   * @param param The parameter index, starting from 1.
+   * @param values One value per row.
+   */
+  public void setStrings(int param, String[] values) {
+    set(param, TEXT, values);
+  }
+
+  /**
+   * Sets the values of a blob parameter. A <code>null</code> element is bound as SQL <code>NULL</code>.
+   * @param param The parameter index, starting from 1.
+   * @param values One value per row.
+   */
+  public void setBlobs(int param, byte[][] values) {
+    set(param, BLOB, values);
+  }
+
+  /**
+   * Sets which rows of a parameter are SQL <code>NULL</code>, which is needed for parameters whose values are
+   * primitives.
+   * @param param The parameter index, starting from 1.
+   * @param isNull One flag per row, <code>true</code> if the value of the row is SQL <code>NULL</code>; or
+   * <code>null</code> if no value of the parameter is SQL <code>NULL</code>.
+   */
+  public void setNulls(int param, boolean[] isNull) {
+    nulls[param - 1] = isNull;
+  }
+
+  /**
+   * Sets the number of rows to be executed. The arrays of values may be larger than this number.
+   * @param rows The number of rows.
+   */
+  public void setRowCount(int rows) {
+    this.rows = rows;
+  }
+
+  /**
+   * @return The number of rows to be executed.
+   */
+  public int getRowCount() {
+    return rows;
+  }
+
+  /**
+   * Executes the rows of this batch with the given prepared statement. If the statement was not prepared by an SQLite
+   * connection of this package, the rows are bound and added to the statement batch one by one and executed with
+   * <code>executeBatch()</code>.
+   * @param ps The prepared statement.
+   * @return The number of rows changed by each row of the batch.
+   * @throws SQLException If a parameter has no values or not enough values, or if the execution of a row fails, in
+   * which case the whole batch is rolled back if the connection is in auto-commit mode.
+   */
+  public int[] execute(PreparedStatement ps) throws SQLException {
+    for (int i = types.length; --i >= 0;) {
+      if (columns[i] == null) {
+        throw new SQLException("Values not bound to parameter " + (i + 1));
+      }
+      if (length(i) < rows || (nulls[i] != null && ((boolean[]) nulls[i]).length < rows)) {
+        throw new SQLException("Parameter " + (i + 1) + " has less than " + rows + " values");
+      }
+    }
+    if (ps instanceof PrepStmt) {
+      return ((PrepStmt) ps).executeBatch(this);
+    }
+
+    for (int row = 0; row < rows; row++) {
+      for (int i = 0, n = types.length; i < n; i++) {
+        int param = i + 1;
+        Object column = columns[i];
+        if (nulls[i] != null && ((boolean[]) nulls[i])[row]) {
+          ps.setNull(param, Types.NULL);
+        } else {
+          switch (types[i]) {
+          case INT:
+            ps.setInt(param, ((int[]) column)[row]);
+            break;
+          case LONG:
+            ps.setLong(param, ((long[]) column)[row]);
+            break;
+          case DOUBLE:
+            ps.setDouble(param, ((double[]) column)[row]);
+            break;
+          case TEXT:
+            ps.setString(param, ((String[]) column)[row]);
+            break;
+          default:
+            ps.setBytes(param, ((byte[][]) column)[row]);
+          }
+        }
+      }
+      ps.addBatch();
+    }
+    return ps.executeBatch();
+  }
+
+  /**
+   * Sets the type and values of a parameter.
+   */
+  private void set(int param, int type, Object values) {
+    types[--param] = type;
+    columns[param] = values;
+  }
+
+  /**
+   * @return The number of values of a parameter.
+   */
+  private int length(int i) {
+    Object column = columns[i];
+    switch (types[i]) {
+    case INT:
+      return ((int[]) column).length;
+    case LONG:
+      return ((long[]) column).length;
+    case DOUBLE:
+      return ((double[]) column).length;
+    default:
+      return ((Object[]) column).length;
+    }
+  }
+}
@@ -49,6 +49,10 @@ public class SQLiteConfig {
   private int openModeFlag;
   private TransactionMode transactionMode;
   protected int busyTimeout;
+  protected int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+
+  /** The default number of prepared statements kept by each connection to be reused. */
+  public final static int DEFAULT_STATEMENT_CACHE_SIZE = 20;
 
   /* Date storage class*/
   public final static String DEFAULT_DATE_STRING_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
@@ -103,6 +107,14 @@ public class SQLiteConfig {
         busyTimeout = 3000;
       }
     }
+
+    s = (String) pragmaTable.get(Pragma.STATEMENT_CACHE_SIZE.pragmaName);
+    if (s != null) {
+      try {
+        statementCacheSize = Convert.toInt(s);
+      } catch (InvalidNumberException ine) {
+      }
+    }
   }
 
   /**
@@ -133,6 +145,7 @@ public class SQLiteConfig {
     pragmaParams.remove(Pragma.DATE_PRECISION.pragmaName);
     pragmaParams.remove(Pragma.DATE_CLASS.pragmaName);
     pragmaParams.remove(Pragma.DATE_STRING_FORMAT.pragmaName);
+    pragmaParams.remove(Pragma.STATEMENT_CACHE_SIZE.pragmaName);
 
     Statement stat = conn.createStatement();
     try {
@@ -309,6 +322,9 @@ public class SQLiteConfig {
     public static final Pragma DATE_STRING_FORMAT = new Pragma("DATE_STRING_FORMAT", "date_string_format",
         "Format to store and retrieve dates stored as text. Defaults to \"yyyy-MM-dd HH:mm:ss.SSS\"", null);
     public static final Pragma BUSY_TIMEOUT = new Pragma("BUSY_TIMEOUT", "busy_timeout", null);
+    public static final Pragma STATEMENT_CACHE_SIZE = new Pragma("STATEMENT_CACHE_SIZE", "statement_cache_size",
+        "Number of closed prepared statements kept by the connection to be reused when the same SQL is prepared again. Defaults to 20; 0 disables the cache.",
+        null);
 
     public final String pragmaName;
     public final String[] choices;
@@ -849,4 +865,11 @@ public class SQLiteConfig {
   public void setBusyTimeout(String milliseconds) {
     setPragma(Pragma.BUSY_TIMEOUT, milliseconds);
   }
+
+  /**
+   * @param size Number of closed prepared statements kept by each connection to be reused; 0 disables the cache
+   */
+  public void setStatementCacheSize(int size) {
+    set(Pragma.STATEMENT_CACHE_SIZE, size);
+  }
 }
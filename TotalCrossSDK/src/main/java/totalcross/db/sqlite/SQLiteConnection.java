@@ -54,6 +54,7 @@ public class SQLiteConnection implements Connection {
   private String fileName;
   private DB db = null;
   private MetaData meta = null;
+  private StatementCache statementCache;
   private boolean autoCommit = true;
   private int transactionIsolation = TRANSACTION_SERIALIZABLE;
   private int busyTimeout = 0;
@@ -94,6 +95,18 @@ public class SQLiteConnection implements Connection {
    * @throws SQLException
    */
   public SQLiteConnection(String url, String fileName, Hashtable prop) throws SQLException {
+    this(url, fileName, prop, null);
+  }
+
+  /**
+   * Constructor to create a pre-configured connection to a database through the given SQLite interface.
+   * @param url The location of the database file.
+   * @param fileName The database.
+   * @param prop The configurations to apply.
+   * @param sqlite The SQLite interface, or null to use the native library.
+   * @throws SQLException
+   */
+  SQLiteConnection(String url, String fileName, Hashtable prop, DB sqlite) throws SQLException {
     this.url = url;
     this.fileName = fileName;
 
@@ -105,7 +118,10 @@ public class SQLiteConnection implements Connection {
     this.transactionMode = config.getTransactionMode();
     this.openModeFlags = config.getOpenModeFlags();
 
-    open(openModeFlags, config.busyTimeout);
+    open(sqlite, openModeFlags, config.busyTimeout);
+    if (config.statementCacheSize > 0) {
+      statementCache = new StatementCache(db, config.statementCacheSize);
+    }
 
     if (fileName.startsWith("file:") && fileName.indexOf("cache=") == -1) { // URI cache overrides flags
       db.shared_cache(config.isEnabledSharedCache());
@@ -118,19 +134,23 @@ public class SQLiteConnection implements Connection {
 
   /**
    * Opens a connection to the database using an SQLite library.
+   * @param sqlite The SQLite interface, or null to use the native library.
    * @param openModeFlags Flags for file open operations.
    * @throws SQLException
    * @see <a href="http://www.sqlite.org/c3ref/c_open_autoproxy.html">http://www.sqlite.org/c3ref/c_open_autoproxy.html</a>
    */
-  private void open(int openModeFlags, int busyTimeout) throws SQLException {
-    // load the native DB
-    try {
-      if (!isLoaded) {
-        NativeDB.load();
+  private void open(DB sqlite, int openModeFlags, int busyTimeout) throws SQLException {
+    db = sqlite;
+    if (db == null) {
+      // load the native DB
+      try {
+        if (!isLoaded) {
+          NativeDB.load();
+        }
+        db = new NativeDB();
+      } catch (Exception e) {
+        throw new SQLException("Error opening connection", e);
       }
-      db = new NativeDB();
-    } catch (Exception e) {
-      throw new SQLException("Error opening connection", e);
     }
 
     db.open(this, fileName, openModeFlags);
@@ -184,6 +204,56 @@ public class SQLiteConnection implements Connection {
     return db;
   }
 
+  /**
+   * Compiles an SQL statement, reusing a handle from the statement cache if there is one for the same SQL.
+   * @param sql The SQL statement.
+   * @return The statement handle.
+   * @throws SQLException
+   */
+  long prepare(String sql) throws SQLException {
+    return statementCache != null ? statementCache.prepare(sql) : db.prepare(sql);
+  }
+
+  /**
+   * Gives back the handle of a closed prepared statement to the statement cache.
+   * @param sql The SQL statement of the handle.
+   * @param pointer The statement handle.
+   * @return True if the handle was kept by the cache; false if it must be finalized.
+   * @throws SQLException
+   */
+  boolean release(String sql, long pointer) throws SQLException {
+    return statementCache != null && statementCache.release(sql, pointer);
+  }
+
+  /**
+   * @return The number of prepared statements whose handle was reused from the statement cache.
+   */
+  public int getStatementCacheHits() {
+    return statementCache != null ? statementCache.hits : 0;
+  }
+
+  /**
+   * @return The number of prepared statements which had to be compiled because their SQL was not in the statement
+   * cache.
+   */
+  public int getStatementCacheMisses() {
+    return statementCache != null ? statementCache.misses : 0;
+  }
+
+  /**
+   * @return The number of handles finalized because the statement cache was full.
+   */
+  public int getStatementCacheEvictions() {
+    return statementCache != null ? statementCache.evictions : 0;
+  }
+
+  /**
+   * @return The number of handles currently kept by the statement cache.
+   */
+  public int getStatementCacheSize() {
+    return statementCache != null ? statementCache.size() : 0;
+  }
+
   /**
    * Whether an SQLite library interface to the database has been established.
    */
@@ -237,6 +307,9 @@ public class SQLiteConnection implements Connection {
     if (meta != null) {
       meta.close();
     }
+    if (statementCache != null) {
+      statementCache.clear();
+    }
 
     db.close();
     db = null;
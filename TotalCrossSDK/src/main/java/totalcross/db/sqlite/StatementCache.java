@@ -0,0 +1,139 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+package totalcross.db.sqlite;
+
+import java.sql.SQLException;
+import totalcross.util.Hashtable;
+
+/**
+ * A bounded cache of prepared statement handles of a connection, keyed by their SQL text. When a prepared statement is
+ * closed, its handle is reset and kept here instead of being finalized, so that preparing the same SQL again does not
+ * need to compile it. When the cache is full, the least recently used handle is finalized.
+ */
+final class StatementCache {
+  /** A cached statement handle, linked in the order of use. */
+  private static final class Entry {
+    String sql;
+    long pointer;
+    Entry prev, next;
+  }
+
+  private final DB db;
+  private final int capacity;
+  private final Hashtable entries;
+
+  /** The most recently used entry; its <code>prev</code> is the least recently used one. */
+  private Entry head;
+
+  int hits;
+  int misses;
+  int evictions;
+
+  /**
+   * Creates a statement cache.
+   * @param db The database interface which prepares and finalizes the statements.
+   * @param capacity The maximum number of handles kept.
+   */
+  StatementCache(DB db, int capacity) {
+    this.db = db;
+    this.capacity = capacity;
+    entries = new Hashtable(capacity * 2);
+  }
+
+  /**
+   * Returns a prepared handle for the given SQL, taking it from the cache if there is one or compiling the SQL
+   * otherwise. A handle taken from the cache is owned by the caller until it is given back with <code>release()</code>.
+   * @param sql The SQL statement.
+   * @return The statement handle.
+   * @throws SQLException
+   */
+  long prepare(String sql) throws SQLException {
+    Entry e = (Entry) entries.remove(sql);
+    if (e != null) {
+      unlink(e);
+      hits++;
+      return e.pointer;
+    }
+    misses++;
+    return db.prepare(sql);
+  }
+
+  /**
+   * Gives back a statement handle which is no longer used. The handle is reset and its bindings cleared so that it
+   * does not keep locks or values. If there is already a handle for the same SQL, the handle is not cached.
+   * @param sql The SQL statement of the handle.
+   * @param pointer The statement handle.
+   * @return True if the handle was cached; false if the caller must finalize it.
+   * @throws SQLException
+   */
+  boolean release(String sql, long pointer) throws SQLException {
+    if (sql == null || entries.exists(sql)) {
+      return false;
+    }
+    db.reset(pointer);
+    db.clear_bindings(pointer);
+
+    if (entries.size() >= capacity) {
+      Entry last = head.prev;
+      unlink(last);
+      entries.remove(last.sql);
+      evictions++;
+      db.finalize(last.pointer);
+    }
+
+    Entry e = new Entry();
+    e.sql = sql;
+    e.pointer = pointer;
+    entries.put(sql, e);
+    if (head == null) {
+      e.prev = e.next = e;
+    } else {
+      e.next = head;
+      e.prev = head.prev;
+      head.prev.next = e;
+      head.prev = e;
+    }
+    head = e;
+    return true;
+  }
+
+  /**
+   * Finalizes all the cached handles. Must be called before closing the database, since SQLite does not close a
+   * database with statements not finalized.
+   * @throws SQLException
+   */
+  void clear() throws SQLException {
+    while (head != null) {
+      Entry e = head;
+      unlink(e);
+      db.finalize(e.pointer);
+    }
+    entries.clear();
+  }
+
+  /**
+   * @return The number of handles in the cache.
+   */
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * Removes an entry from the list of use.
+   * @param e The entry to remove.
+   */
+  private void unlink(Entry e) {
+    if (e.next == e) {
+      head = null;
+    } else {
+      e.prev.next = e.next;
+      e.next.prev = e.prev;
+      if (head == e) {
+        head = e.next;
+      }
+    }
+    e.prev = e.next = null;
+  }
+}
@@ -10,7 +10,14 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import totalcross.io.Stream;
+import totalcross.util.concurrent.Lock;
 
 /**
     The JSONFactory class helps converting json objects into Java objects, using reflection.
@@ -121,84 +128,427 @@ public class JSONFactory {
     if (classOfT.isArray()) {
       throw new IllegalArgumentException();
     }
-    T object = null;
-    try {
-        object = classOfT.newInstance();
-    } catch (InstantiationException e) {
-        if (outerObject != null && classOfT.getName().indexOf(outerObject.getClass().getName()) != -1) {
-            Constructor<T> constructorOfT = classOfT.getDeclaredConstructor(outerObject.getClass());
-            if (constructorOfT != null) {
-                object = constructorOfT.newInstance(outerObject);
-            }
+    Binder binder = binderFor(classOfT);
+    T object = classOfT.cast(binder.newInstance(outerObject));
+    for (Setter setter : binder.setters) {
+      // look for the field name in the json based on the method name
+      String name = setter.resolve(jsonObject);
+      if (name != null && !jsonObject.isNull(name)) {
+        setter.set(object, jsonObject, name);
+      }
+    }
+    return object;
+  }
+
+  /**
+   * Reads a JSON object or an array of JSON objects from a stream and binds each object to a new instance of the given
+   * class, which is passed to the consumer as soon as it is read. The objects are bound directly from the tokens of a
+   * <code>JSONReader</code>, without creating <code>JSONObject</code>s, so a large array can be processed with
+   * constant memory. <code>null</code> elements of the array are skipped.
+   * 
+   * @param stream The stream where the JSON text is read from.
+   * @param classOfT The class of the objects.
+   * @param consumer Receives each object read.
+   */
+  public static <T> void parseStream(Stream stream, Class<T> classOfT, Consumer<? super T> consumer)
+      throws InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException,
+      JSONException, NoSuchMethodException, SecurityException {
+    if (classOfT.isArray()) {
+      throw new IllegalArgumentException();
+    }
+    JSONReader reader = new JSONReader(stream);
+    if (reader.peek() == JSONReader.BEGIN_ARRAY) {
+      reader.beginArray();
+      while (reader.hasNext()) {
+        if (reader.peek() == JSONReader.NULL) {
+          reader.nextNull();
+        } else {
+          consumer.accept(read(null, reader, classOfT));
+        }
+      }
+      reader.endArray();
+    } else {
+      consumer.accept(read(null, reader, classOfT));
+    }
+  }
+
+  /**
+   * Writes an object as JSON text to a stream, without building the text in memory. Beans are written with their
+   * getters, the same way <code>new JSONObject(bean)</code> does, and their getter tables are cached per class; arrays
+   * and collections of beans are written as JSON arrays. Getters which return <code>null</code> are not written.
+   * 
+   * @param object The bean, array, collection or map to write.
+   * @param stream The stream where the JSON text is written to.
+   */
+  public static void write(Object object, Stream stream) throws IllegalAccessException, IllegalArgumentException,
+      InvocationTargetException, JSONException {
+    JSONStreamWriter writer = new JSONStreamWriter(stream);
+    write(object, writer);
+    writer.flush();
+  }
+
+  /**
+   * Writes an object as the next value of a JSONStreamWriter. This can be used to write the beans one by one, for
+   * instance while they are read from a database, inside an array or object started with the writer.
+   * 
+   * @param object The bean, array, collection or map to write.
+   * @param writer The writer.
+   */
+  public static void write(Object object, JSONStreamWriter writer) throws IllegalAccessException,
+      IllegalArgumentException, InvocationTargetException, JSONException {
+    if (object == null || object instanceof String || object instanceof Number || object instanceof Boolean
+        || object instanceof Character || object instanceof JSONObject || object instanceof JSONArray
+        || object instanceof JSONString || JSONObject.NULL.equals(object)) {
+      writer.value(object);
+    } else if (object instanceof Map) {
+      writer.object();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+        if (entry.getValue() != null) {
+          writer.key(String.valueOf(entry.getKey()));
+          write(entry.getValue(), writer);
         }
-        if (object == null) {
-            throw e;
+      }
+      writer.endObject();
+    } else if (object instanceof Collection) {
+      writer.array();
+      for (Object value : (Collection<?>) object) {
+        write(value, writer);
+      }
+      writer.endArray();
+    } else if (object.getClass().isArray()) {
+      writer.array();
+      for (int i = 0, n = Array.getLength(object); i < n; i++) {
+        write(Array.get(object, i), writer);
+      }
+      writer.endArray();
+    } else {
+      Class<?> type = object.getClass();
+      String typeName = type.getName();
+      if (typeName.startsWith("java.") || typeName.startsWith("javax.")) {
+        writer.value(object.toString());
+      } else {
+        writer.object();
+        for (Getter getter : binderFor(type).getters) {
+          Object value = getter.method.invoke(object, (Object[]) null);
+          if (value != null) {
+            writer.key(getter.key);
+            write(value, writer);
+          }
         }
+        writer.endObject();
+      }
     }
-    Method[] methods = classOfT.getMethods();
-    for (Method method : methods) {
-      String methodName = method.getName();
-      Class<?>[] paramTypes = method.getParameterTypes();
-      if (paramTypes != null && paramTypes.length == 1 && methodName.length() > 3 && methodName.startsWith("set")) {
-        final String originalName = Character.toLowerCase(methodName.charAt(3)) + methodName.substring(4);
-        String name = null;
-        // look for the field name in the json based on the method name
-        if (jsonObject.has(originalName)) {
-          name = originalName;
-        } else if (!jsonObject.has(name = originalName.toLowerCase())) {
-          // not found as-is or lowercased? try replacing camel case with underscore
-            /*
-             * originally done using regex, but totalcross implementation has some bugs and
-             * until they are fixed this is done looping through the characters
-             * originalName.replaceAll("(.)(\\p{Upper})", "$1_$2").toLowerCase();
-             */
-          StringBuilder sb = new StringBuilder();
-          boolean lastWasUnderscored = false;
-          for(int i = 0 ; i < originalName.length() ; i++) {
-              char c = originalName.charAt(i);
-              if (!lastWasUnderscored && Character.isUpperCase(c)) {
-                  lastWasUnderscored = true;
-                  sb.append('_');
-              } else {
-                  lastWasUnderscored = false;
-              }
-              sb.append(Character.toLowerCase(c));
+  }
+
+  private static <T> T read(Object outerObject, JSONReader reader, Class<T> classOfT) throws InstantiationException,
+      IllegalAccessException, IllegalArgumentException, InvocationTargetException, JSONException, NoSuchMethodException, SecurityException {
+    Binder binder = binderFor(classOfT);
+    T object = classOfT.cast(binder.newInstance(outerObject));
+    reader.beginObject();
+    while (reader.hasNext()) {
+      Setter setter = binder.settersByName.get(reader.nextName());
+      if (setter == null || setter.kind == NONE || reader.peek() == JSONReader.NULL) {
+        reader.skipValue();
+      } else {
+        setter.method.invoke(object, readValue(object, reader, setter.type, setter.kind));
+      }
+    }
+    reader.endObject();
+    return object;
+  }
+
+  private static Object readValue(Object outerObject, JSONReader reader, Class<?> type, int kind) throws InstantiationException,
+      IllegalAccessException, IllegalArgumentException, InvocationTargetException, JSONException, NoSuchMethodException, SecurityException {
+    switch (kind) {
+    case BOOLEAN:
+      if (reader.peek() == JSONReader.STRING) {
+        String s = reader.nextString();
+        if (s.equalsIgnoreCase("true")) {
+          return Boolean.TRUE;
+        }
+        if (s.equalsIgnoreCase("false")) {
+          return Boolean.FALSE;
+        }
+        throw reader.syntaxError("Expected a boolean but was " + s);
+      }
+      return Boolean.valueOf(reader.nextBoolean());
+    case INT:
+      try {
+        return Integer.valueOf(reader.nextInt());
+      } catch (JSONException e) {
+        return Integer.valueOf((int) reader.nextDouble()); // 1.5, like JSONObject.getInt()
+      }
+    case LONG:
+      try {
+        return Long.valueOf(reader.nextLong());
+      } catch (JSONException e) {
+        return Long.valueOf((long) reader.nextDouble());
+      }
+    case DOUBLE:
+      return Double.valueOf(reader.nextDouble());
+    case STRING:
+      return reader.nextString();
+    case ARRAY:
+      Class<?> componentType = type.getComponentType();
+      int componentKind = kindOf(componentType);
+      List<Object> values = new ArrayList<Object>();
+      reader.beginArray();
+      while (reader.hasNext()) {
+        if (reader.peek() == JSONReader.NULL) {
+          reader.nextNull();
+          values.add(null);
+        } else {
+          values.add(readValue(outerObject, reader, componentType, componentKind));
+        }
+      }
+      reader.endArray();
+      Object array = Array.newInstance(componentType, values.size());
+      for (int i = values.size() - 1; i >= 0; i--) {
+        Object value = values.get(i);
+        if (value != null) { // null elements of primitive arrays are left as 0
+          Array.set(array, i, value);
+        }
+      }
+      return array;
+    case OBJECT:
+      return read(outerObject, reader, type);
+    default:
+      reader.skipValue();
+      return null;
+    }
+  }
+
+  // The kinds of setters, resolved once per class.
+  private static final int NONE = 0;
+  private static final int BOOLEAN = 1;
+  private static final int INT = 2;
+  private static final int LONG = 3;
+  private static final int DOUBLE = 4;
+  private static final int STRING = 5;
+  private static final int ARRAY = 6;
+  private static final int OBJECT = 7;
+
+  private static int kindOf(Class<?> parameterType) {
+    if (parameterType.isPrimitive()) {
+      if (parameterType.isAssignableFrom(boolean.class)) {
+        return BOOLEAN;
+      } else if (parameterType.isAssignableFrom(int.class)) {
+        return INT;
+      } else if (parameterType.isAssignableFrom(long.class)) {
+        return LONG;
+      } else if (parameterType.isAssignableFrom(double.class)) {
+        return DOUBLE;
+      }
+      return NONE;
+    } else if (parameterType.isAssignableFrom(String.class)) {
+      return STRING;
+    } else if (parameterType.isAssignableFrom(Double.class)) {
+      return DOUBLE;
+    } else if (parameterType.isAssignableFrom(Integer.class)) {
+      return INT;
+    } else if (parameterType.isAssignableFrom(Long.class)) {
+      return LONG;
+    } else if (parameterType.isAssignableFrom(Boolean.class)) {
+      return BOOLEAN;
+    } else if (parameterType.isArray()) {
+      return ARRAY;
+    }
+    return OBJECT;
+  }
+
+  private static final Map<Class<?>, Binder> binders = new HashMap<Class<?>, Binder>();
+
+  /** Guards the binders, which may be looked up by several threads parsing at the same time. */
+  private static final Lock bindersLock = new Lock();
+
+  /**
+   * Returns the binder of a class, creating it on the first use. 
+   */
+  private static Binder binderFor(Class<?> classOfT) {
+    synchronized (bindersLock) {
+      Binder binder = binders.get(classOfT);
+      if (binder == null) {
+        binders.put(classOfT, binder = new Binder(classOfT));
+      }
+      return binder;
+    }
+  }
+
+  /**
+   * The setters of a class and how to create its instances, computed once so that binding many objects of the same
+   * class does not repeat the reflection.
+   */
+  private static class Binder {
+    final Class<?> type;
+    final Setter[] setters;
+    final Map<String, Setter> settersByName = new HashMap<String, Setter>();
+    final Getter[] getters;
+    Constructor<?> constructor;
+    Constructor<?> innerConstructor;
+
+    Binder(Class<?> type) {
+      this.type = type;
+      List<Setter> list = new ArrayList<Setter>();
+      // a bean with both isFoo() and getFoo() has a single key; the last one wins, as in JSONObject.populateMap()
+      Map<String, Getter> getterMap = new LinkedHashMap<String, Getter>();
+      for (Method method : type.getMethods()) {
+        String methodName = method.getName();
+        Class<?>[] paramTypes = method.getParameterTypes();
+        if (paramTypes != null && paramTypes.length == 1 && methodName.length() > 3 && methodName.startsWith("set")) {
+          list.add(new Setter(method, paramTypes[0]));
+        } else if (paramTypes == null || paramTypes.length == 0) {
+          // same keys as JSONObject.populateMap()
+          String key = "";
+          if (methodName.startsWith("get")) {
+            if (!"getClass".equals(methodName) && !"getDeclaringClass".equals(methodName)) {
+              key = methodName.substring(3);
+            }
+          } else if (methodName.startsWith("is")) {
+            key = methodName.substring(2);
           }
-          final String underscoredName = sb.toString();
-          if (jsonObject.has(underscoredName)) {
-            name = underscoredName;
+          if (key.length() > 0 && Character.isUpperCase(key.charAt(0))) {
+            if (key.length() == 1) {
+              key = key.toLowerCase();
+            } else if (!Character.isUpperCase(key.charAt(1))) {
+              key = key.substring(0, 1).toLowerCase() + key.substring(1);
+            }
+            getterMap.put(key, new Getter(method, key));
           }
         }
-        if (!jsonObject.isNull(name)) {
-          Class<?> parameterType = method.getParameterTypes()[0];
-          if (parameterType.isPrimitive()) {
-            if (parameterType.isAssignableFrom(boolean.class)) {
-              method.invoke(object, jsonObject.getBoolean(name));
-            } else if (parameterType.isAssignableFrom(int.class)) {
-              method.invoke(object, jsonObject.getInt(name));
-            } else if (parameterType.isAssignableFrom(long.class)) {
-              method.invoke(object, jsonObject.getLong(name));
-            } else if (parameterType.isAssignableFrom(double.class)) {
-              method.invoke(object, jsonObject.getDouble(name));
-            }
-          } else if (parameterType.isAssignableFrom(String.class)) {
-            method.invoke(object, jsonObject.getString(name));
-          } else if (parameterType.isAssignableFrom(Double.class)) {
-            method.invoke(object, jsonObject.getDouble(name));
-          } else if (parameterType.isAssignableFrom(Integer.class)) {
-            method.invoke(object, jsonObject.getInt(name));
-          } else if (parameterType.isAssignableFrom(Long.class)) {
-            method.invoke(object, jsonObject.getLong(name));
-          } else if (parameterType.isAssignableFrom(Boolean.class)) {
-            method.invoke(object, jsonObject.getBoolean(name));
-          } else if (parameterType.isArray()) {
-            method.invoke(object, parse(object, jsonObject.getJSONArray(name), parameterType));
-          } else {
-            method.invoke(object, parse(object, jsonObject.getJSONObject(name), parameterType));
+      }
+      setters = list.toArray(new Setter[list.size()]);
+      getters = getterMap.values().toArray(new Getter[getterMap.size()]);
+
+      // the names are put from the lowest to the highest precedence, so that the original name wins
+      for (Setter setter : setters) {
+        settersByName.put(setter.underscoredName, setter);
+      }
+      for (Setter setter : setters) {
+        settersByName.put(setter.lowerCaseName, setter);
+      }
+      for (Setter setter : setters) {
+        settersByName.put(setter.originalName, setter);
+      }
+    }
+
+    Object newInstance(Object outerObject) throws InstantiationException, IllegalAccessException,
+        IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException {
+      if (innerConstructor != null && outerObject != null) {
+        return innerConstructor.newInstance(outerObject);
+      }
+      try {
+        if (constructor == null) {
+          constructor = type.getDeclaredConstructor();
+        }
+        return constructor.newInstance();
+      } catch (NoSuchMethodException | InstantiationException e) {
+        if (outerObject != null && type.getName().indexOf(outerObject.getClass().getName()) != -1) {
+          if (innerConstructor == null) {
+            innerConstructor = type.getDeclaredConstructor(outerObject.getClass());
+          }
+          if (innerConstructor != null) {
+            return innerConstructor.newInstance(outerObject);
           }
         }
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * A getter method and the JSON name it is written with.
+   */
+  private static class Getter {
+    final Method method;
+    final String key;
+
+    Getter(Method method, String key) {
+      this.method = method;
+      this.key = key;
+    }
+  }
+
+  /**
+   * A setter method with the JSON names it may be bound to and the way its value is read.
+   */
+  private static class Setter {
+    final Method method;
+    final Class<?> type;
+    final int kind;
+    final String originalName;
+    final String lowerCaseName;
+    final String underscoredName;
+
+    Setter(Method method, Class<?> type) {
+      String methodName = method.getName();
+      this.method = method;
+      this.type = type;
+      kind = kindOf(type);
+      originalName = Character.toLowerCase(methodName.charAt(3)) + methodName.substring(4);
+      lowerCaseName = originalName.toLowerCase();
+
+      // not found as-is or lowercased? try replacing camel case with underscore
+      /*
+       * originally done using regex, but totalcross implementation has some bugs and
+       * until they are fixed this is done looping through the characters
+       * originalName.replaceAll("(.)(\\p{Upper})", "$1_$2").toLowerCase();
+       */
+      StringBuilder sb = new StringBuilder();
+      boolean lastWasUnderscored = false;
+      for (int i = 0; i < originalName.length(); i++) {
+        char c = originalName.charAt(i);
+        if (!lastWasUnderscored && Character.isUpperCase(c)) {
+          lastWasUnderscored = true;
+          sb.append('_');
+        } else {
+          lastWasUnderscored = false;
+        }
+        sb.append(Character.toLowerCase(c));
+      }
+      underscoredName = sb.toString();
+    }
+
+    /**
+     * Returns the name of this setter's field in the given object, or null if it has none.
+     */
+    String resolve(JSONObject jsonObject) {
+      if (jsonObject.has(originalName)) {
+        return originalName;
+      }
+      if (jsonObject.has(lowerCaseName)) {
+        return lowerCaseName;
+      }
+      if (jsonObject.has(underscoredName)) {
+        return underscoredName;
+      }
+      return null;
+    }
+
+    void set(Object object, JSONObject jsonObject, String name) throws InstantiationException, IllegalAccessException,
+        IllegalArgumentException, InvocationTargetException, JSONException, NoSuchMethodException, SecurityException {
+      switch (kind) {
+      case BOOLEAN:
+        method.invoke(object, jsonObject.getBoolean(name));
+        break;
+      case INT:
+        method.invoke(object, jsonObject.getInt(name));
+        break;
+      case LONG:
+        method.invoke(object, jsonObject.getLong(name));
+        break;
+      case DOUBLE:
+        method.invoke(object, jsonObject.getDouble(name));
+        break;
+      case STRING:
+        method.invoke(object, jsonObject.getString(name));
+        break;
+      case ARRAY:
+        method.invoke(object, parse(object, jsonObject.getJSONArray(name), type));
+        break;
+      case OBJECT:
+        method.invoke(object, parse(object, jsonObject.getJSONObject(name), type));
+        break;
       }
     }
-    return object;
   }
 }
@@ -0,0 +1,739 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package totalcross.json;
+
+import totalcross.io.IOException;
+import totalcross.io.Stream;
+import totalcross.sys.Vm;
+
+/**
+ * A pull parser which reads a JSON text incrementally from a <code>Stream</code>. The bytes are read into a buffer of
+ * fixed size and decoded from UTF-8 on the fly, so a large payload, like the response of an <code>HttpStream</code>,
+ * can be processed value by value without loading the whole text, or a tree of <code>JSONObject</code>s, in memory.
+ * <p>
+ * Each call reads the next token of the text. Objects and arrays are entered with <code>beginObject()</code> and
+ * <code>beginArray()</code> and their members are read while <code>hasNext()</code> returns <code>true</code>. Values
+ * which are not needed can be skipped with <code>skipValue()</code>. Here's a sample:
+ *
+ * <pre>
+ * JSONReader reader = new JSONReader(httpStream);
+ * reader.beginArray();
+ * while (reader.hasNext())
+ * {
+ *    int id = 0;
+ *    String name = null;
+ *    reader.beginObject();
+ *    while (reader.hasNext())
+ *    {
+ *       String field = reader.nextName();
+ *       if (field.equals("id"))
+ *          id = reader.nextInt();
+ *       else if (field.equals("name"))
+ *          name = reader.nextString();
+ *       else
+ *          reader.skipValue();
+ *    }
+ *    reader.endObject();
+ *    ... store the record.
+ * }
+ * reader.endArray();
+ * </pre>
+ *
+ * The generic token loop is also possible: <code>nextToken()</code> consumes any token and returns its type, and
+ * <code>getText()</code> returns the text of the last name or value consumed.
+ * <p>
+ * Syntax errors throw a <code>JSONException</code>, as well as errors while reading the stream.
+ *
+ * @since TotalCross 6.1.1
+ */
+public class JSONReader {
+  /** The opening of an array: <code>[</code>. */
+  public static final int BEGIN_ARRAY = 1;
+  /** The closing of an array: <code>]</code>. */
+  public static final int END_ARRAY = 2;
+  /** The opening of an object: <code>{</code>. */
+  public static final int BEGIN_OBJECT = 3;
+  /** The closing of an object: <code>}</code>. */
+  public static final int END_OBJECT = 4;
+  /** The name of an object member. */
+  public static final int NAME = 5;
+  /** A string value. */
+  public static final int STRING = 6;
+  /** A number value. */
+  public static final int NUMBER = 7;
+  /** A <code>true</code> or <code>false</code> value. */
+  public static final int BOOLEAN = 8;
+  /** A <code>null</code> value. */
+  public static final int NULL = 9;
+  /** The end of the input. */
+  public static final int END_DOCUMENT = 10;
+
+  private static final String[] tokenNames = { "", "BEGIN_ARRAY", "END_ARRAY", "BEGIN_OBJECT", "END_OBJECT", "NAME",
+      "STRING", "NUMBER", "BOOLEAN", "NULL", "END_DOCUMENT" };
+
+  // The scopes of the values being read.
+  private static final int EMPTY_DOCUMENT = 0;
+  private static final int NONEMPTY_DOCUMENT = 1;
+  private static final int EMPTY_ARRAY = 2;
+  private static final int NONEMPTY_ARRAY = 3;
+  private static final int EMPTY_OBJECT = 4;
+  private static final int DANGLING_NAME = 5;
+  private static final int NONEMPTY_OBJECT = 6;
+
+  /** Indicates that there is no character or token read ahead. */
+  private static final int NONE = -2;
+
+  /**
+   * The number of times it tries to read more data if the stream returns none, which may happen with sockets.
+   * Defaults to 10.
+   */
+  public int maxTries = 10;
+
+  private Stream in;
+  private byte[] buf;
+  private int pos, limit;
+  private boolean eof;
+
+  /** The number of characters read, used in the error messages. */
+  private long index;
+
+  /** A character read ahead by the tokenizer. */
+  private int ahead = NONE;
+
+  /** The low surrogate of a supplementary character whose high surrogate was already returned. */
+  private int lowSurrogate;
+
+  /** The text of the last name or value read. */
+  private char[] text = new char[32];
+  private int textLen;
+
+  /** When true, the strings are only scanned, not stored. */
+  private boolean skipping;
+
+  private int[] stack = new int[32];
+  private int depth = 1;
+
+  private int peeked = NONE;
+  private boolean booleanValue;
+
+  /**
+   * Creates a reader with a buffer of 2048 bytes.
+   * @param in The stream where the JSON text is read from.
+   */
+  public JSONReader(Stream in) {
+    this(in, 2048);
+  }
+
+  /**
+   * Creates a reader.
+   * @param in The stream where the JSON text is read from.
+   * @param bufferSize The size of the buffer used to read the stream.
+   */
+  public JSONReader(Stream in, int bufferSize) {
+    this.in = in;
+    buf = new byte[bufferSize];
+    stack[0] = EMPTY_DOCUMENT;
+  }
+
+  /**
+   * Returns the type of the next token without consuming it.
+   * @return One of the token constants of this class.
+   * @throws JSONException If the text is malformed or the stream can't be read.
+   */
+  public int peek() throws JSONException {
+    if (peeked == NONE) {
+      peeked = doPeek();
+    }
+    return peeked;
+  }
+
+  /**
+   * Consumes the next token, whatever it is, and returns its type. If it is a name or a value, its text can be
+   * retrieved with <code>getText()</code>.
+   * @return One of the token constants of this class.
+   * @throws JSONException If the text is malformed or the stream can't be read.
+   */
+  public int nextToken() throws JSONException {
+    int token = peek();
+    switch (token) {
+    case BEGIN_ARRAY:
+      push(EMPTY_ARRAY);
+      break;
+    case BEGIN_OBJECT:
+      push(EMPTY_OBJECT);
+      break;
+    case END_ARRAY:
+    case END_OBJECT:
+      depth--;
+      break;
+    case END_DOCUMENT:
+      return token;
+    }
+    peeked = NONE;
+    return token;
+  }
+
+  /**
+   * Returns the text of the last name or value consumed by <code>nextToken()</code>.
+   * @return A new string with the text.
+   */
+  public String getText() {
+    return new String(text, 0, textLen);
+  }
+
+  /**
+   * Indicates if the current array or object has more elements.
+   * @return <code>false</code> if the next token closes the current array or object or the input has ended;
+   * <code>true</code>, otherwise.
+   * @throws JSONException If the text is malformed or the stream can't be read.
+   */
+  public boolean hasNext() throws JSONException {
+    int token = peek();
+    return token != END_ARRAY && token != END_OBJECT && token != END_DOCUMENT;
+  }
+
+  /**
+   * Consumes the opening of an array.
+   * @throws JSONException If the next token is not the opening of an array.
+   */
+  public void beginArray() throws JSONException {
+    expect(BEGIN_ARRAY);
+    push(EMPTY_ARRAY);
+  }
+
+  /**
+   * Consumes the closing of the current array.
+   * @throws JSONException If the next token is not the closing of an array.
+   */
+  public void endArray() throws JSONException {
+    expect(END_ARRAY);
+    depth--;
+  }
+
+  /**
+   * Consumes the opening of an object.
+   * @throws JSONException If the next token is not the opening of an object.
+   */
+  public void beginObject() throws JSONException {
+    expect(BEGIN_OBJECT);
+    push(EMPTY_OBJECT);
+  }
+
+  /**
+   * Consumes the closing of the current object.
+   * @throws JSONException If the next token is not the closing of an object.
+   */
+  public void endObject() throws JSONException {
+    expect(END_OBJECT);
+    depth--;
+  }
+
+  /**
+   * Consumes the name of an object member.
+   * @return The name.
+   * @throws JSONException If the next token is not a name.
+   */
+  public String nextName() throws JSONException {
+    expect(NAME);
+    return new String(text, 0, textLen);
+  }
+
+  /**
+   * Consumes a string value. Numbers and booleans are also accepted and returned as text.
+   * @return The string.
+   * @throws JSONException If the next token is not a string, number or boolean.
+   */
+  public String nextString() throws JSONException {
+    int token = peek();
+    if (token != STRING && token != NUMBER && token != BOOLEAN) {
+      throw unexpected("a string", token);
+    }
+    peeked = NONE;
+    return new String(text, 0, textLen);
+  }
+
+  /**
+   * Consumes a boolean value.
+   * @return The boolean.
+   * @throws JSONException If the next token is not a boolean.
+   */
+  public boolean nextBoolean() throws JSONException {
+    expect(BOOLEAN);
+    return booleanValue;
+  }
+
+  /**
+   * Consumes a <code>null</code> value.
+   * @throws JSONException If the next token is not <code>null</code>.
+   */
+  public void nextNull() throws JSONException {
+    expect(NULL);
+  }
+
+  /**
+   * Consumes a number value as an int. Strings which contain numbers are also accepted. No string is created for
+   * integral numbers.
+   * @return The number.
+   * @throws JSONException If the next token is not a number or it can't be represented as an int.
+   */
+  public int nextInt() throws JSONException {
+    long value = readLong();
+    if ((int) value != value) {
+      throw syntaxError("Number out of the int range: " + getText());
+    }
+    peeked = NONE;
+    return (int) value;
+  }
+
+  /**
+   * Consumes a number value as a long. Strings which contain numbers are also accepted. No string is created for
+   * integral numbers.
+   * @return The number.
+   * @throws JSONException If the next token is not a number or it can't be represented as a long.
+   */
+  public long nextLong() throws JSONException {
+    long value = readLong();
+    peeked = NONE;
+    return value;
+  }
+
+  /**
+   * Consumes a number value as a double. Strings which contain numbers are also accepted.
+   * @return The number.
+   * @throws JSONException If the next token is not a number.
+   */
+  public double nextDouble() throws JSONException {
+    double value = readDouble();
+    peeked = NONE;
+    return value;
+  }
+
+  /**
+   * Skips the next value. If it is an array or an object, all its elements are skipped. If the next token is a name,
+   * the name and its value are skipped. Skipped strings are scanned but not stored.
+   * @throws IllegalStateException If the next token is the end of an array or of an object, which is not consumed.
+   * @throws JSONException If the text is malformed or the stream can't be read.
+   */
+  public void skipValue() throws JSONException {
+    int count = 0;
+    skipping = true;
+    try {
+      int p = peek();
+      if (p == END_ARRAY || p == END_OBJECT) {
+        throw new IllegalStateException("Expected a value but was " + tokenNames[p] + " at character " + index);
+      }
+      if (p == NAME) {
+        peeked = NONE;
+      }
+      do {
+        switch (peek()) {
+        case BEGIN_ARRAY:
+          push(EMPTY_ARRAY);
+          count++;
+          break;
+        case BEGIN_OBJECT:
+          push(EMPTY_OBJECT);
+          count++;
+          break;
+        case END_ARRAY:
+        case END_OBJECT:
+          depth--;
+          count--;
+          break;
+        case END_DOCUMENT:
+          throw syntaxError("Unexpected end of input");
+        }
+        peeked = NONE;
+      } while (count > 0);
+    } finally {
+      skipping = false;
+      textLen = 0;
+    }
+  }
+
+  /**
+   * Closes the underlying stream.
+   * @throws IOException If an error occurs while closing the stream.
+   */
+  public void close() throws IOException {
+    peeked = END_DOCUMENT;
+    depth = 1;
+    stack[0] = NONEMPTY_DOCUMENT;
+    in.close();
+  }
+
+  /**
+   * Make a JSONException to signal a syntax error.
+   *
+   * @param message The error message.
+   * @return A JSONException object, suitable for throwing
+   */
+  public JSONException syntaxError(String message) {
+    return new JSONException(message + " at character " + index);
+  }
+
+  private void expect(int token) throws JSONException {
+    int p = peek();
+    if (p != token) {
+      throw unexpected(tokenNames[token], p);
+    }
+    peeked = NONE;
+  }
+
+  private JSONException unexpected(String expected, int token) {
+    return syntaxError("Expected " + expected + " but was " + tokenNames[token]);
+  }
+
+  private void push(int scope) {
+    if (depth == stack.length) {
+      int[] newStack = new int[depth * 2];
+      Vm.arrayCopy(stack, 0, newStack, 0, depth);
+      stack = newStack;
+    }
+    stack[depth++] = scope;
+  }
+
+  /**
+   * Reads the next token, checking the punctuation required by the current scope.
+   */
+  private int doPeek() throws JSONException {
+    int c;
+    switch (stack[depth - 1]) {
+    case EMPTY_ARRAY:
+      stack[depth - 1] = NONEMPTY_ARRAY;
+      if ((c = nextClean()) == ']') {
+        return END_ARRAY;
+      }
+      ahead = c;
+      break;
+    case NONEMPTY_ARRAY:
+      if ((c = nextClean()) == ']') {
+        return END_ARRAY;
+      }
+      if (c != ',') {
+        throw syntaxError("Expected ',' or ']'");
+      }
+      break;
+    case EMPTY_OBJECT:
+    case NONEMPTY_OBJECT:
+      int scope = stack[depth - 1];
+      stack[depth - 1] = DANGLING_NAME;
+      if ((c = nextClean()) == '}') {
+        return END_OBJECT;
+      }
+      if (scope == NONEMPTY_OBJECT) {
+        if (c != ',') {
+          throw syntaxError("Expected ',' or '}'");
+        }
+        c = nextClean();
+      }
+      if (c != '"' && c != '\'') {
+        throw syntaxError("Expected a name");
+      }
+      readString(c);
+      return NAME;
+    case DANGLING_NAME:
+      stack[depth - 1] = NONEMPTY_OBJECT;
+      if (nextClean() != ':') {
+        throw syntaxError("Expected ':'");
+      }
+      break;
+    case EMPTY_DOCUMENT:
+      stack[0] = NONEMPTY_DOCUMENT;
+      break;
+    default: // NONEMPTY_DOCUMENT: more values may follow, like in a stream of records.
+      if ((c = nextClean()) == -1) {
+        return END_DOCUMENT;
+      }
+      ahead = c;
+    }
+
+    switch (c = nextClean()) {
+    case '{':
+      return BEGIN_OBJECT;
+    case '[':
+      return BEGIN_ARRAY;
+    case '"':
+    case '\'':
+      readString(c);
+      return STRING;
+    case -1:
+      if (depth == 1) {
+        return END_DOCUMENT;
+      }
+      throw syntaxError("Unexpected end of input");
+    default:
+      return readLiteral(c);
+    }
+  }
+
+  /**
+   * Reads a literal, which must be <code>true</code>, <code>false</code>, <code>null</code> or a number.
+   */
+  private int readLiteral(int c) throws JSONException {
+    textLen = 0;
+    while (c > ' ' && ",:]}/\\\"'[{;=#".indexOf(c) < 0) {
+      append((char) c);
+      c = read();
+    }
+    ahead = c;
+
+    if (textLen == 0) {
+      throw syntaxError("Missing value");
+    }
+    char first = text[0];
+    if (first == '-' || (first >= '0' && first <= '9')) {
+      return NUMBER;
+    }
+    if (textEquals("true") || textEquals("false")) {
+      booleanValue = first == 't';
+      return BOOLEAN;
+    }
+    if (textEquals("null")) {
+      return NULL;
+    }
+    throw syntaxError("Unexpected value: " + getText());
+  }
+
+  /**
+   * Reads a string up to the closing quote, processing the escapes. ASCII characters are copied straight from the
+   * buffer.
+   */
+  private void readString(int quote) throws JSONException {
+    textLen = 0;
+    for (;;) {
+      byte[] b = buf;
+      int p = pos, l = limit;
+      if (ahead == NONE && lowSurrogate == 0) {
+        while (p < l) {
+          int c = b[p];
+          if (c < 0 || c == quote || c == '\\' || c < ' ') {
+            break;
+          }
+          if (!skipping) {
+            append((char) c);
+          }
+          p++;
+        }
+        index += p - pos;
+        pos = p;
+      }
+
+      int c = read();
+      if (c == quote) {
+        return;
+      }
+      switch (c) {
+      case -1:
+      case '\n':
+      case '\r':
+        throw syntaxError("Unterminated string");
+      case '\\':
+        switch (c = read()) {
+        case 'b':
+          c = '\b';
+          break;
+        case 't':
+          c = '\t';
+          break;
+        case 'n':
+          c = '\n';
+          break;
+        case 'f':
+          c = '\f';
+          break;
+        case 'r':
+          c = '\r';
+          break;
+        case 'u':
+          c = 0;
+          for (int i = 0; i < 4; i++) {
+            int h = JSONTokener.dehexchar((char) read());
+            if (h < 0) {
+              throw syntaxError("Illegal escape.");
+            }
+            c = (c << 4) | h;
+          }
+          break;
+        case '"':
+        case '\'':
+        case '\\':
+        case '/':
+          break;
+        default:
+          throw syntaxError("Illegal escape.");
+        }
+      }
+      if (!skipping) {
+        append((char) c);
+      }
+    }
+  }
+
+  private long readLong() throws JSONException {
+    int token = peek();
+    if (token != NUMBER && token != STRING) {
+      throw unexpected("a number", token);
+    }
+    char[] t = text;
+    int n = textLen, i = 0;
+    boolean negative = n > 0 && t[0] == '-';
+    long value = 0;
+
+    if (negative) {
+      i++;
+    }
+    if (i < n) {
+      // Accumulates negatively, since the range of the negative numbers is larger.
+      for (; i < n; i++) {
+        int d = t[i] - '0';
+        if (d < 0 || d > 9 || value < (Long.MIN_VALUE + d) / 10) {
+          break;
+        }
+        value = value * 10 - d;
+      }
+      if (i == n && (negative || value != Long.MIN_VALUE)) {
+        return negative ? value : -value;
+      }
+    }
+
+    double d = readDouble(); // 1.0, 1e3, etc.
+    long l = (long) d;
+    if (l != d || d >= Long.MAX_VALUE || d <= Long.MIN_VALUE) { // The limits themselves are parsed above.
+      throw syntaxError("Expected a long but was " + getText());
+    }
+    return l;
+  }
+
+  private double readDouble() throws JSONException {
+    int token = peek();
+    if (token != NUMBER && token != STRING) {
+      throw unexpected("a number", token);
+    }
+    try {
+      return Double.parseDouble(getText());
+    } catch (NumberFormatException e) {
+      throw syntaxError("Expected a number but was " + getText());
+    }
+  }
+
+  private boolean textEquals(String s) {
+    int n = s.length();
+    if (n != textLen) {
+      return false;
+    }
+    while (--n >= 0) {
+      if (text[n] != s.charAt(n)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void append(char c) {
+    if (textLen == text.length) {
+      char[] newText = new char[textLen * 2];
+      Vm.arrayCopy(text, 0, newText, 0, textLen);
+      text = newText;
+    }
+    text[textLen++] = c;
+  }
+
+  /**
+   * Returns the next character which is not a whitespace, or -1 at the end of the input.
+   */
+  private int nextClean() throws JSONException {
+    int c;
+    do {
+      c = read();
+    } while (c >= 0 && c <= ' ');
+    return c;
+  }
+
+  /**
+   * Returns the next character, decoding it from UTF-8, or -1 at the end of the input. Malformed sequences are
+   * returned as U+FFFD.
+   */
+  private int read() throws JSONException {
+    int c;
+    if (ahead != NONE) {
+      c = ahead;
+      ahead = NONE;
+      return c;
+    }
+    index++;
+    if (lowSurrogate != 0) {
+      c = lowSurrogate;
+      lowSurrogate = 0;
+      return c;
+    }
+    if ((c = readByte()) < 0x80) {
+      return c; // -1 or ASCII
+    }
+
+    int n;
+    if ((c & 0xE0) == 0xC0) {
+      n = 1;
+      c &= 0x1F;
+    } else if ((c & 0xF0) == 0xE0) {
+      n = 2;
+      c &= 0x0F;
+    } else if ((c & 0xF8) == 0xF0) {
+      n = 3;
+      c &= 0x07;
+    } else {
+      return 0xFFFD;
+    }
+    while (--n >= 0) {
+      int b = readByte();
+      if ((b & 0xC0) != 0x80) {
+        if (b >= 0) {
+          pos--; // The byte starts another character.
+        }
+        return 0xFFFD;
+      }
+      c = (c << 6) | (b & 0x3F);
+    }
+    if (c >= 0x10000) {
+      c -= 0x10000;
+      lowSurrogate = 0xDC00 | (c & 0x3FF);
+      c = 0xD800 | (c >> 10);
+    }
+    return c;
+  }
+
+  private int readByte() throws JSONException {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    return buf[pos++] & 0xFF;
+  }
+
+  /**
+   * Reads more bytes from the stream into the buffer.
+   * @return <code>false</code> if the stream has ended.
+   */
+  private boolean fill() throws JSONException {
+    if (eof) {
+      return false;
+    }
+    try {
+      int r, tries = maxTries;
+      while ((r = in.readBytes(buf, 0, buf.length)) == 0 && --tries >= 0) {
+        Thread.yield();
+      }
+      if (r <= 0) {
+        eof = true;
+        return false;
+      }
+      pos = 0;
+      limit = r;
+      return true;
+    } catch (IOException e) {
+      throw new JSONException(e);
+    }
+  }
+}
@@ -0,0 +1,548 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package totalcross.json;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import totalcross.io.IOException;
+import totalcross.io.Stream;
+
+/**
+ * A JSONWriter which writes the JSON text to a <code>Stream</code> instead of a <code>StringBuffer</code>. The text is
+ * encoded to UTF-8 directly into a byte buffer of fixed size, which is written to the stream whenever it gets full, so
+ * a large document, like the upload of thousands of records through an <code>HttpStream</code>, never needs to be
+ * materialized in memory.
+ * <p>
+ * It has the same cascade methods of <code>JSONWriter</code>:
+ *
+ * <pre>
+ * JSONStreamWriter writer = new JSONStreamWriter(httpStream);
+ * writer.array();
+ * for (int i = 0; i &lt; count; i++)
+ *    writer.object().key("id").value(ids[i]).key("name").value(names[i]).endObject();
+ * writer.endArray();
+ * </pre>
+ *
+ * The buffer is flushed to the stream when the outermost array or object ends, or when <code>flush()</code> is
+ * called. Unlike <code>JSONWriter</code>, the keys of an object are not checked for duplicates, since that would keep
+ * all of them in memory. <code>JSONObject</code>s, <code>JSONArray</code>s, maps, collections and arrays given to
+ * <code>value(Object)</code> are also written directly to the stream. To write beans, see
+ * <code>JSONFactory.write()</code>.
+ * <p>
+ * Errors while writing to the stream throw a <code>JSONException</code>.
+ *
+ * @since TotalCross 6.1.1
+ */
+public class JSONStreamWriter {
+  private static final int maxdepth = 200;
+
+  private static final byte[] hex = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+  /**
+   * The comma flag determines if a comma should be output before the next value.
+   */
+  private boolean comma;
+
+  /**
+   * The current mode. Values: 'a' (array), 'd' (done), 'i' (initial), 'k' (key), 'o' (object).
+   */
+  private char mode;
+
+  /**
+   * The scope stack: <code>true</code> for an object and <code>false</code> for an array.
+   */
+  private final boolean[] stack = new boolean[maxdepth];
+
+  /**
+   * The stack top index. A value of 0 indicates that the stack is empty.
+   */
+  private int top;
+
+  /**
+   * The stream that will receive the output.
+   */
+  private final Stream stream;
+
+  private final byte[] buf;
+  private int pos;
+
+  /**
+   * Creates a JSONStreamWriter with a buffer of 2048 bytes. It can be used to write one JSON text.
+   *
+   * @param stream The stream where the JSON text is written to.
+   */
+  public JSONStreamWriter(Stream stream) {
+    this(stream, 2048);
+  }
+
+  /**
+   * Creates a JSONStreamWriter. It can be used to write one JSON text.
+   *
+   * @param stream The stream where the JSON text is written to.
+   * @param bufferSize The size of the byte buffer, which must be at least 32.
+   */
+  public JSONStreamWriter(Stream stream, int bufferSize) {
+    if (bufferSize < 32) {
+      throw new IllegalArgumentException("bufferSize must be at least 32");
+    }
+    this.stream = stream;
+    this.buf = new byte[bufferSize];
+    this.mode = 'i';
+  }
+
+  /**
+   * Writes the bytes buffered so far to the stream.
+   *
+   * @throws JSONException If the stream could not be written.
+   */
+  public void flush() throws JSONException {
+    int start = 0;
+    try {
+      while (start < pos) {
+        int n = stream.writeBytes(buf, start, pos - start);
+        if (n <= 0) {
+          throw new JSONException("Could not write to the stream");
+        }
+        start += n;
+      }
+    } catch (IOException e) {
+      throw new JSONException(e);
+    } finally {
+      pos = 0;
+    }
+  }
+
+  /**
+   * Begin appending a new array. All values until the balancing <code>endArray</code> will be appended to this array.
+   *
+   * @return this
+   * @throws JSONException If the nesting is too deep, or if the array is started in the wrong place.
+   */
+  public JSONStreamWriter array() throws JSONException {
+    if (this.mode == 'i' || this.mode == 'o' || this.mode == 'a') {
+      this.beginValue();
+      this.push(false);
+      this.write('[');
+      this.comma = false;
+      return this;
+    }
+    throw new JSONException("Misplaced array.");
+  }
+
+  /**
+   * End an array. This method must be called to balance calls to <code>array</code>.
+   *
+   * @return this
+   * @throws JSONException If incorrectly nested.
+   */
+  public JSONStreamWriter endArray() throws JSONException {
+    return this.end('a', ']');
+  }
+
+  /**
+   * Begin appending a new object. All keys and values until the balancing <code>endObject</code> will be appended to
+   * this object.
+   *
+   * @return this
+   * @throws JSONException If the nesting is too deep, or if the object is started in the wrong place.
+   */
+  public JSONStreamWriter object() throws JSONException {
+    if (this.mode == 'i' || this.mode == 'o' || this.mode == 'a') {
+      this.beginValue();
+      this.push(true);
+      this.write('{');
+      this.comma = false;
+      return this;
+    }
+    throw new JSONException("Misplaced object.");
+  }
+
+  /**
+   * End an object. This method must be called to balance calls to <code>object</code>.
+   *
+   * @return this
+   * @throws JSONException If incorrectly nested.
+   */
+  public JSONStreamWriter endObject() throws JSONException {
+    return this.end('k', '}');
+  }
+
+  /**
+   * Append a key. The key will be associated with the next value.
+   *
+   * @param string A key string.
+   * @return this
+   * @throws JSONException If the key is out of place or null.
+   */
+  public JSONStreamWriter key(String string) throws JSONException {
+    if (string == null) {
+      throw new JSONException("Null key.");
+    }
+    if (this.mode == 'k') {
+      if (this.comma) {
+        this.write(',');
+      }
+      this.writeQuoted(string);
+      this.write(':');
+      this.comma = false;
+      this.mode = 'o';
+      return this;
+    }
+    throw new JSONException("Misplaced key.");
+  }
+
+  /**
+   * Append either the value <code>true</code> or the value <code>false</code>.
+   *
+   * @param b A boolean.
+   * @return this
+   * @throws JSONException If the value is out of sequence.
+   */
+  public JSONStreamWriter value(boolean b) throws JSONException {
+    this.beginValue();
+    this.writeAscii(b ? "true" : "false");
+    return this.endValue();
+  }
+
+  /**
+   * Append a double value.
+   *
+   * @param d A double.
+   * @return this
+   * @throws JSONException If the number is not finite or the value is out of sequence.
+   */
+  public JSONStreamWriter value(double d) throws JSONException {
+    if (Double.isInfinite(d) || Double.isNaN(d)) {
+      throw new JSONException("JSON does not allow non-finite numbers.");
+    }
+    this.beginValue();
+    this.writeAscii(JSONObject.doubleToString(d));
+    return this.endValue();
+  }
+
+  /**
+   * Append a long value.
+   *
+   * @param l A long.
+   * @return this
+   * @throws JSONException If the value is out of sequence.
+   */
+  public JSONStreamWriter value(long l) throws JSONException {
+    this.beginValue();
+    if (l == Long.MIN_VALUE) {
+      this.writeAscii("-9223372036854775808");
+    } else {
+      if (pos + 20 > buf.length) {
+        flush();
+      }
+      if (l < 0) {
+        buf[pos++] = '-';
+        l = -l;
+      }
+      int end = pos + digits(l);
+      for (int i = end; --i >= pos; l /= 10) {
+        buf[i] = (byte) ('0' + (int) (l % 10));
+      }
+      pos = end;
+    }
+    return this.endValue();
+  }
+
+  /**
+   * Append a string value.
+   *
+   * @param string A string, or null.
+   * @return this
+   * @throws JSONException If the value is out of sequence.
+   */
+  public JSONStreamWriter value(String string) throws JSONException {
+    this.beginValue();
+    if (string == null) {
+      this.writeAscii("null");
+    } else {
+      this.writeQuoted(string);
+    }
+    return this.endValue();
+  }
+
+  /**
+   * Append an object value.
+   *
+   * @param object The object to append. It can be null, or a Boolean, Number, String, JSONObject, JSONArray, Map,
+   *          Collection or array, or an object that implements JSONString. Other objects are written as the quoted
+   *          result of their <code>toString()</code>.
+   * @return this
+   * @throws JSONException If the value is out of sequence or is or contains an invalid number.
+   */
+  public JSONStreamWriter value(Object object) throws JSONException {
+    if (object == null || object.equals(null)) {
+      this.beginValue();
+      this.writeAscii("null");
+      return this.endValue();
+    }
+    if (object instanceof String) {
+      return this.value((String) object);
+    }
+    if (object instanceof Boolean) {
+      return this.value(((Boolean) object).booleanValue());
+    }
+    if (object instanceof Integer || object instanceof Long || object instanceof Short || object instanceof Byte) {
+      return this.value(((Number) object).longValue());
+    }
+    if (object instanceof JSONObject) {
+      JSONObject jo = (JSONObject) object;
+      this.object();
+      for (Iterator<String> keys = jo.keys(); keys.hasNext();) {
+        String key = keys.next();
+        this.key(key);
+        this.value(jo.opt(key));
+      }
+      return this.endObject();
+    }
+    if (object instanceof JSONArray) {
+      JSONArray ja = (JSONArray) object;
+      this.array();
+      for (int i = 0, n = ja.length(); i < n; i++) {
+        this.value(ja.opt(i));
+      }
+      return this.endArray();
+    }
+    if (object instanceof Map) {
+      this.object();
+      for (Iterator<?> entries = ((Map<?, ?>) object).entrySet().iterator(); entries.hasNext();) {
+        Map.Entry<?, ?> entry = (Map.Entry<?, ?>) entries.next();
+        if (entry.getValue() != null) {
+          this.key(String.valueOf(entry.getKey()));
+          this.value(entry.getValue());
+        }
+      }
+      return this.endObject();
+    }
+    if (object instanceof Collection) {
+      this.array();
+      for (Iterator<?> values = ((Collection<?>) object).iterator(); values.hasNext();) {
+        this.value(values.next());
+      }
+      return this.endArray();
+    }
+    if (object.getClass().isArray()) {
+      this.array();
+      for (int i = 0, n = java.lang.reflect.Array.getLength(object); i < n; i++) {
+        this.value(java.lang.reflect.Array.get(object, i));
+      }
+      return this.endArray();
+    }
+    this.beginValue();
+    if (object instanceof Number) {
+      this.writeAscii(JSONObject.numberToString((Number) object));
+    } else if (object instanceof JSONString) {
+      Object o;
+      try {
+        o = ((JSONString) object).toJSONString();
+      } catch (Exception e) {
+        throw new JSONException(e);
+      }
+      if (!(o instanceof String)) {
+        throw new JSONException("Bad value from toJSONString: " + o);
+      }
+      this.writeRaw((String) o);
+    } else {
+      this.writeQuoted(object.toString());
+    }
+    return this.endValue();
+  }
+
+  /**
+   * Checks that a value may be written at this point and writes the comma which separates it from the previous one.
+   */
+  private void beginValue() throws JSONException {
+    if (this.mode == 'o' || this.mode == 'a') {
+      if (this.comma && this.mode == 'a') {
+        this.write(',');
+      }
+    } else if (this.mode != 'i') {
+      throw new JSONException("Value out of sequence.");
+    }
+  }
+
+  /**
+   * Updates the state after a value which is not an array or object was written.
+   */
+  private JSONStreamWriter endValue() throws JSONException {
+    if (this.mode == 'o') {
+      this.mode = 'k';
+    } else if (this.mode == 'i') {
+      this.mode = 'd';
+      this.flush();
+    }
+    this.comma = true;
+    return this;
+  }
+
+  private JSONStreamWriter end(char mode, char c) throws JSONException {
+    if (this.mode != mode) {
+      throw new JSONException(mode == 'a' ? "Misplaced endArray." : "Misplaced endObject.");
+    }
+    this.top -= 1;
+    this.mode = this.top == 0 ? 'd' : this.stack[this.top - 1] ? 'k' : 'a';
+    this.write(c);
+    this.comma = true;
+    if (this.mode == 'd') {
+      this.flush();
+    }
+    return this;
+  }
+
+  private void push(boolean object) throws JSONException {
+    if (this.top >= maxdepth) {
+      throw new JSONException("Nesting too deep.");
+    }
+    this.stack[this.top] = object;
+    this.mode = object ? 'k' : 'a';
+    this.top += 1;
+  }
+
+  private void write(char c) throws JSONException {
+    if (pos == buf.length) {
+      flush();
+    }
+    buf[pos++] = (byte) c;
+  }
+
+  /**
+   * Writes a string which only has ASCII characters.
+   */
+  private void writeAscii(String s) throws JSONException {
+    for (int i = 0, n = s.length(); i < n; i++) {
+      if (pos == buf.length) {
+        flush();
+      }
+      buf[pos++] = (byte) s.charAt(i);
+    }
+  }
+
+  /**
+   * Writes a string encoded in UTF-8, without quoting it.
+   */
+  private void writeRaw(String s) throws JSONException {
+    for (int i = 0, n = s.length(); i < n; i++) {
+      i = writeChar(s, i, s.charAt(i));
+    }
+  }
+
+  /**
+   * Writes a string between quotes, escaped the same way as <code>JSONObject.quote()</code> does, and encoded in
+   * UTF-8.
+   */
+  private void writeQuoted(String s) throws JSONException {
+    write('"');
+    char c = 0;
+    for (int i = 0, n = s.length(); i < n; i++) {
+      char b = c;
+      c = s.charAt(i);
+      switch (c) {
+      case '\\':
+      case '"':
+        write('\\');
+        write(c);
+        break;
+      case '/':
+        if (b == '<') {
+          write('\\');
+        }
+        write(c);
+        break;
+      case '\b':
+        writeAscii("\\b");
+        break;
+      case '\t':
+        writeAscii("\\t");
+        break;
+      case '\n':
+        writeAscii("\\n");
+        break;
+      case '\f':
+        writeAscii("\\f");
+        break;
+      case '\r':
+        writeAscii("\\r");
+        break;
+      default:
+        if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+          writeEscaped(c);
+        } else {
+          i = writeChar(s, i, c);
+        }
+      }
+    }
+    write('"');
+  }
+
+  /**
+   * Writes a character as <code>\\uhhhh</code>.
+   */
+  private void writeEscaped(char c) throws JSONException {
+    if (pos + 6 > buf.length) {
+      flush();
+    }
+    byte[] buf = this.buf;
+    buf[pos++] = '\\';
+    buf[pos++] = 'u';
+    buf[pos++] = hex[(c >> 12) & 0xF];
+    buf[pos++] = hex[(c >> 8) & 0xF];
+    buf[pos++] = hex[(c >> 4) & 0xF];
+    buf[pos++] = hex[c & 0xF];
+  }
+
+  /**
+   * Writes the character at the given index of a string encoded in UTF-8. A surrogate pair is written as a single
+   * 4-byte sequence; a lone surrogate, which can't be encoded, is escaped.
+   *
+   * @return The index of the last character consumed.
+   */
+  private int writeChar(String s, int i, char c) throws JSONException {
+    if (pos + 4 > buf.length) {
+      flush();
+    }
+    byte[] buf = this.buf;
+    if (c < 0x80) {
+      buf[pos++] = (byte) c;
+    } else if (c < 0x800) {
+      buf[pos++] = (byte) (0xC0 | (c >> 6));
+      buf[pos++] = (byte) (0x80 | (c & 0x3F));
+    } else if (c < 0xD800 || c > 0xDFFF) {
+      buf[pos++] = (byte) (0xE0 | (c >> 12));
+      buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+      buf[pos++] = (byte) (0x80 | (c & 0x3F));
+    } else {
+      char d;
+      if (c <= 0xDBFF && i + 1 < s.length() && (d = s.charAt(i + 1)) >= 0xDC00 && d <= 0xDFFF) {
+        int cp = 0x10000 + ((c - 0xD800) << 10) + (d - 0xDC00);
+        buf[pos++] = (byte) (0xF0 | (cp >> 18));
+        buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+        buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+        buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+        return i + 1;
+      }
+      writeEscaped(c);
+    }
+    return i;
+  }
+
+  /**
+   * Returns the number of decimal digits of a non-negative long.
+   */
+  private static int digits(long l) {
+    int n = 1;
+    while (l >= 10) {
+      l /= 10;
+      n++;
+    }
+    return n;
+  }
+}
@@ -0,0 +1,223 @@
+// Copyright (C) 2000-2013 SuperWaba Ltda.
+// Copyright (C) 2014-2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package totalcross.net;
+
+import totalcross.net.ssl.SSLSocket;
+import totalcross.sys.Vm;
+import totalcross.util.Hashtable;
+import totalcross.util.Vector;
+import totalcross.util.concurrent.Lock;
+
+/**
+ * A pool of persistent HTTP/1.1 connections, shared by the <code>HttpStream</code>s whose
+ * <code>Options.connectionPool</code> is set to it. When such a stream is closed after its response was fully read,
+ * its socket is kept here instead of being closed, and the next request to the same host and port reuses it, saving
+ * the TCP connection and, for https, the TLS handshake.
+ * <p>
+ * Idle connections are closed after <code>idleTimeout</code> milliseconds, and at most
+ * <code>maxConnectionsPerHost</code> idle connections are kept for each host. Here's a sample:
+ *
+ * <pre>
+ * HttpStream.Options options = new HttpStream.Options();
+ * options.connectionPool = HttpConnectionPool.getDefault();
+ * for (int i = 0; i &lt; ids.length; i++)
+ * {
+ *    HttpStream hs = new HttpStream(new URI("https://example.com/items/" + ids[i]), options);
+ *    ... read the whole response
+ *    hs.close(); // gives the connection back to the pool
+ * }
+ * </pre>
+ *
+ * @since TotalCross 6.1.1
+ */
+public class HttpConnectionPool {
+  /** An idle connection. */
+  private static final class Entry {
+    Socket socket;
+    int releasedAt;
+  }
+
+  private static final HttpConnectionPool instance = new HttpConnectionPool();
+
+  /** Guards the idle connections and the counters. */
+  private final Lock lock = new Lock();
+
+  /** The idle connections of each host, stored as Vectors of entries with the most recently used last. */
+  private final Hashtable idle = new Hashtable(13);
+
+  /** The time in milliseconds an idle connection is kept before being closed. Defaults to 15 seconds. */
+  public int idleTimeout = 15000;
+
+  /** The maximum number of idle connections kept for each host. Defaults to 4. */
+  public int maxConnectionsPerHost = 4;
+
+  private int opened;
+  private int reused;
+  private int handshakeTime;
+
+  /**
+   * Returns the pool shared by the whole application.
+   */
+  public static HttpConnectionPool getDefault() {
+    return instance;
+  }
+
+  /**
+   * Takes the most recently used idle connection to the given host, closing the ones which timed out.
+   *
+   * @param key The key of the host, as returned by <code>getKey()</code>.
+   * @return The socket, or null if there is no idle connection to the host.
+   */
+  Socket take(String key) {
+    Socket socket = null;
+    synchronized (lock) {
+      Vector v = (Vector) idle.get(key);
+      if (v != null) {
+        int now = Vm.getTimeStamp();
+        while (socket == null && !v.isEmpty()) {
+          int last = v.size() - 1;
+          Entry e = (Entry) v.items[last];
+          v.removeElementAt(last);
+          if (now - e.releasedAt < idleTimeout) {
+            socket = e.socket;
+            reused++;
+          } else {
+            close(e.socket);
+          }
+        }
+      }
+    }
+    return socket;
+  }
+
+  /**
+   * Opens a new connection, counting the time spent connecting and in the TLS handshake.
+   */
+  Socket open(SocketFactory factory, String host, int port, int openTimeout)
+      throws UnknownHostException, totalcross.io.IOException {
+    int start = Vm.getTimeStamp();
+    Socket socket = factory.createSocket(host, port, openTimeout);
+    if (socket instanceof SSLSocket) {
+      ((SSLSocket) socket).startHandshake();
+    }
+    synchronized (lock) {
+      handshakeTime += Vm.getTimeStamp() - start;
+      opened++;
+    }
+    return socket;
+  }
+
+  /**
+   * Gives back a connection whose response was fully read, so that it can be reused. If there are already
+   * <code>maxConnectionsPerHost</code> idle connections to the host, the oldest one is closed.
+   *
+   * @param key The key of the host.
+   * @param socket The connection.
+   */
+  void release(String key, Socket socket) {
+    synchronized (lock) {
+      Vector v = (Vector) idle.get(key);
+      if (v == null) {
+        idle.put(key, v = new Vector(maxConnectionsPerHost));
+      }
+      int now = Vm.getTimeStamp();
+      for (int i = v.size(); --i >= 0;) {
+        Entry e = (Entry) v.items[i];
+        if (now - e.releasedAt >= idleTimeout) {
+          v.removeElementAt(i);
+          close(e.socket);
+        }
+      }
+      while (v.size() > 0 && v.size() >= maxConnectionsPerHost) {
+        close(((Entry) v.items[0]).socket);
+        v.removeElementAt(0);
+      }
+      if (maxConnectionsPerHost > 0) {
+        Entry e = new Entry();
+        e.socket = socket;
+        e.releasedAt = now;
+        v.addElement(e);
+      } else {
+        close(socket);
+      }
+    }
+  }
+
+  /**
+   * Closes all the idle connections.
+   */
+  public void clear() {
+    synchronized (lock) {
+      Vector keys = idle.getKeys();
+      for (int i = keys.size(); --i >= 0;) {
+        Vector v = (Vector) idle.get(keys.items[i]);
+        for (int j = v.size(); --j >= 0;) {
+          close(((Entry) v.items[j]).socket);
+        }
+      }
+      idle.clear();
+    }
+  }
+
+  /**
+   * Returns the number of idle connections kept, for all hosts.
+   */
+  public int getIdleCount() {
+    int count = 0;
+    synchronized (lock) {
+      Vector keys = idle.getKeys();
+      for (int i = keys.size(); --i >= 0;) {
+        count += ((Vector) idle.get(keys.items[i])).size();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the number of connections opened by this pool.
+   */
+  public int getOpenCount() {
+    return opened;
+  }
+
+  /**
+   * Returns the number of requests which reused an idle connection instead of opening a new one.
+   */
+  public int getReuseCount() {
+    return reused;
+  }
+
+  /**
+   * Returns the fraction of the requests which reused a connection, from 0 to 1.
+   */
+  public double getReuseRate() {
+    int total = opened + reused;
+    return total == 0 ? 0 : (double) reused / total;
+  }
+
+  /**
+   * Returns the total time in milliseconds spent opening connections, including the TLS handshakes.
+   */
+  public int getHandshakeTime() {
+    return handshakeTime;
+  }
+
+  /**
+   * Returns the key under which the connections to a host are pooled. Connections created by different socket
+   * factory classes are not mixed.
+   */
+  static String getKey(SocketFactory factory, String host, int port) {
+    return factory.getClass().getName() + '|' + host + ':' + port;
+  }
+
+  private static void close(Socket socket) {
+    try {
+      socket.close();
+    } catch (totalcross.io.IOException e) {
+      // the server may have closed it already
+    }
+  }
+}
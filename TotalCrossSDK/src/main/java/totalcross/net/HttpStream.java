@@ -6,6 +6,7 @@
 
 package totalcross.net;
 
+import totalcross.io.ByteArrayStream;
 import totalcross.io.IOException;
 import totalcross.io.LineReader;
 import totalcross.io.Stream;
@@ -23,6 +24,9 @@ import totalcross.ui.image.Image;
 import totalcross.ui.image.ImageException;
 import totalcross.util.Hashtable;
 import totalcross.util.IOUtils;
+import totalcross.util.zip.CompressedStream;
+import totalcross.util.zip.GZipStream;
+import totalcross.util.zip.ZLibStream;
 
 /**
  * A HttpStream HAS-A totalcross.net.Socket and takes care of exchange protocol. It starts reading (in a buffer) at the
@@ -143,6 +147,11 @@ public class HttpStream extends Stream {
   public int responseCode;
   /** READ-ONLY encoding. Used in the response. */
   public String contentEncoding; // flsobral@tc110_102: Content encoding support.
+  /** The Transfer-Encoding of the response, or null if it was not sent. A <code>chunked</code> response is decoded by
+   * <code>readBytes()</code>.
+   * @since TotalCross 6.1.1
+   */
+  public String transferEncoding;
   /** READ-ONLY the size of the returned data (-1 if unknown). Used in the response. */
   public int contentLength;
   /** READ-ONLY number of bytes read from the response's content. Initialized with 0 and incremented whenever the readBytes method is executed. */
@@ -412,6 +421,37 @@ public class HttpStream extends Stream {
      */
     public SocketFactory socketFactory = SocketFactory.getDefault();
 
+    /**
+     * The pool of persistent connections used by the HttpStream, or null to open a new connection for each request and
+     * close it with the HttpStream. When set, the request is sent as HTTP/1.1 with <code>Connection: keep-alive</code>,
+     * the response body can't be read past its end, and the connection is given back to the pool when the HttpStream is
+     * closed after the whole response was read.
+     * <p>
+     * If a reused connection was already closed by the server and fails before any byte of the response arrives, the
+     * request is sent again through a new connection, but only if its method is idempotent (GET, HEAD, PUT, DELETE,
+     * OPTIONS or TRACE) and its body is made of the data fields. Otherwise, the IOException is thrown.
+     * @since TotalCross 6.1.1
+     * @see HttpConnectionPool#getDefault()
+     */
+    public HttpConnectionPool connectionPool;
+
+    /**
+     * Set to true to ask the server for a compressed response, sending <code>Accept-Encoding: gzip, deflate</code>. A
+     * response whose <code>Content-Encoding</code> is gzip or deflate is then decompressed on the fly by
+     * <code>readBytes()</code>. Note that <code>contentLength</code> and <code>contentRead</code> count the compressed
+     * bytes, so the response must be read until <code>readBytes()</code> returns -1.
+     * @since TotalCross 6.1.1
+     */
+    public boolean acceptCompressedContent;
+
+    /**
+     * Set to true to compress the request body with gzip, sending <code>Content-Encoding: gzip</code>. It applies to
+     * the data fields and to the chunked content, but not to the multipart content. The server must accept compressed
+     * requests.
+     * @since TotalCross 6.1.1
+     */
+    public boolean compressRequest;
+
     /**
      * Charset encoding ISO-8859-1
      */
@@ -534,6 +574,28 @@ public class HttpStream extends Stream {
         partContent = new Part();
       }
       partContent.setContent(multipart);
+      chunkedContent = null;
+    }
+
+    /** Writer of the request body sent with chunked transfer encoding. */
+    ContentWriter chunkedContent;
+
+    /**
+     * Sets the writer of the request body, which is sent as HTTP/1.1 with <code>Transfer-Encoding: chunked</code>, so
+     * that a large body, like a JSON document written with a <code>JSONStreamWriter</code>, can be sent without knowing
+     * its length or building it in memory. The data fields and the multipart content are ignored while it is set.
+     * <p>
+     * Since the writer may not be able to write the body twice, the request is never sent again, even if it is sent
+     * through a pooled connection which the server had already closed.
+     * 
+     * @param writer the writer of the body, or null to send the data fields again.
+     * @since TotalCross 6.1.1
+     */
+    public void setChunkedContent(ContentWriter writer) {
+      chunkedContent = writer;
+      if (writer != null) {
+        partContent = null;
+      }
     }
 
     public void setSendData(boolean sendData) {
@@ -545,6 +607,20 @@ public class HttpStream extends Stream {
     }
   }
 
+  /**
+   * Writes the body of a request sent with chunked transfer encoding.
+   * @since TotalCross 6.1.1
+   * @see Options#setChunkedContent(ContentWriter)
+   */
+  public interface ContentWriter {
+    /**
+     * Writes the request body. Each chunk is sent when the data written fills the chunk buffer, and the last one when
+     * this method returns.
+     * @param out the stream which encodes the data as chunks; it must not be closed.
+     */
+    void writeTo(Stream out) throws totalcross.io.IOException;
+  }
+
   /** This makes a sleep during the send of a file.
    * Important: when using softick, you must set this to 500(ms) or more, or softick will
    * starve to death.
@@ -576,6 +652,7 @@ public class HttpStream extends Stream {
   private static final byte[] connectionFieldName = "Connection:".getBytes();
   private static final byte[] cookiesFieldName = "Set-Cookie:".getBytes();
   private static final byte[] locationFieldName = "Location:".getBytes();
+  private static final byte[] transferEncodingFieldName = "Transfer-Encoding:".getBytes();
 
   private static final ByteString bsContentEncodingFieldName = new ByteString(0, contentEncodingFieldName.length,
       contentEncodingFieldName); // flsobral@tc110_102: content encoding support.
@@ -587,6 +664,8 @@ public class HttpStream extends Stream {
       connectionFieldName);
   private static final ByteString bsCookiesFieldName = new ByteString(0, cookiesFieldName.length, cookiesFieldName);
   private static final ByteString bsLocationFieldName = new ByteString(0, locationFieldName.length, locationFieldName);
+  private static final ByteString bsTransferEncodingFieldName = new ByteString(0, transferEncodingFieldName.length,
+      transferEncodingFieldName);
 
   protected Socket socket;
   protected int ofsStart;
@@ -604,8 +683,30 @@ public class HttpStream extends Stream {
   // Warning: make it enough big to hold the request!
   private static final int BUFSIZE = 1024;
 
+  // The size of the chunks of a request body sent with chunked transfer encoding.
+  private static final int CHUNK_SIZE = 4096;
+
   private int writeBytesSize;
 
+  private HttpConnectionPool pool;
+  private String poolKey;
+  private boolean reused;
+  private boolean responseStarted;
+  private boolean headerComplete;
+  private boolean noBody;
+  private boolean chunked;
+  private boolean chunkStarted;
+  private boolean lastChunk;
+  private int chunkRemaining;
+
+  // The compression of the response body, decoded by readBytes().
+  private static final int IDENTITY = 0;
+  private static final int GZIP = 1;
+  private static final int DEFLATE = 2;
+  private int encoding;
+  private CompressedStream decoder;
+  private boolean decoderDone;
+
   /** Returns true if the response code represents an error. */
   public boolean badResponseCode; // flsobral@tc115_65: Must be an instance field, otherwise the HttpStream will always return ok.
 
@@ -613,6 +714,42 @@ public class HttpStream extends Stream {
 
   @Override
   public int readBytes(byte buf[], int start, int count) throws totalcross.io.IOException {
+    if (encoding != IDENTITY) {
+      if (decoder == null) {
+        Stream body = new BodyStream();
+        decoder = encoding == GZIP ? new GZipStream(body, CompressedStream.INFLATE)
+            : new ZLibStream(body, CompressedStream.INFLATE);
+      }
+      int n = decoder.readBytes(buf, start, count);
+      if (n == IOUtils.EOF) {
+        decoderDone = true;
+      }
+      return n;
+    }
+    return readBody(buf, start, count);
+  }
+
+  /**
+   * Reads the bytes of the response body as they were sent, after removing the chunked transfer encoding.
+   */
+  private int readBody(byte buf[], int start, int count) throws totalcross.io.IOException {
+    if (chunked) {
+      return readChunked(buf, start, count);
+    }
+    if (pool != null) { // the connection is kept open, so the body must not be read past its end
+      if (noBody) {
+        return IOUtils.EOF;
+      }
+      if (contentLength >= 0) {
+        int left = contentLength - contentRead;
+        if (left <= 0) {
+          return IOUtils.EOF;
+        }
+        if (count > left) {
+          count = left;
+        }
+      }
+    }
     int lastRead = IOUtils.EOF;
     int bytesRead = 0;
 
@@ -659,9 +796,149 @@ public class HttpStream extends Stream {
     return sentBytes;
   }
 
+  /**
+   * Reads the data of a chunked response body.
+   */
+  private int readChunked(byte buf[], int start, int count) throws totalcross.io.IOException {
+    if (chunkRemaining == 0 && (lastChunk || !nextChunk())) {
+      return IOUtils.EOF;
+    }
+    if (count > chunkRemaining) {
+      count = chunkRemaining;
+    }
+    int n;
+    if (ofsStart < ofsEnd) {
+      n = ofsEnd - ofsStart;
+      if (n > count) {
+        n = count;
+      }
+      Vm.arrayCopy(buffer, ofsStart, buf, start, n);
+      ofsStart += n;
+    } else {
+      n = socket.readBytes(buf, start, count);
+      if (n == IOUtils.EOF) {
+        throw new IOException("Premature end of chunked content");
+      }
+    }
+    chunkRemaining -= n;
+    contentRead += n;
+    return n;
+  }
+
+  /**
+   * Reads the size line of the next chunk.
+   *
+   * @return false if it is the last chunk, whose trailer is then skipped.
+   */
+  private boolean nextChunk() throws totalcross.io.IOException {
+    int c;
+    if (chunkStarted && skipLine() != 0) { // the CRLF which ends the data of the previous chunk
+      throw new IOException("Malformed chunked content");
+    }
+    chunkStarted = true;
+    int size = 0;
+    boolean digits = false, extension = false;
+    while ((c = readByte()) != '\n') {
+      if (!extension) {
+        int d = c >= '0' && c <= '9' ? c - '0'
+            : c >= 'a' && c <= 'f' ? c - 'a' + 10 : c >= 'A' && c <= 'F' ? c - 'A' + 10 : -1;
+        if (d >= 0 && size <= 0x7FFFFFF) {
+          size = (size << 4) | d;
+          digits = true;
+        } else if (c == ';') {
+          extension = true;
+        } else if (c != '\r' && c != ' ' && c != '\t') {
+          throw new IOException("Malformed chunk size");
+        }
+      }
+    }
+    if (!digits) {
+      throw new IOException("Malformed chunk size");
+    }
+    if (size == 0) {
+      lastChunk = true;
+      while (skipLine() > 0) {
+        // skip the trailer fields
+      }
+      return false;
+    }
+    chunkRemaining = size;
+    return true;
+  }
+
+  /**
+   * Skips a line of the response body.
+   *
+   * @return the length of the line, without the (CR)LF.
+   */
+  private int skipLine() throws totalcross.io.IOException {
+    int len = 0, c;
+    while ((c = readByte()) != '\n') {
+      if (c != '\r') {
+        len++;
+      }
+    }
+    return len;
+  }
+
+  /**
+   * Reads a byte of the response body, refilling the buffer when it is empty.
+   */
+  private int readByte() throws totalcross.io.IOException {
+    if (ofsStart >= ofsEnd) {
+      ofsStart = 0;
+      ofsEnd = socket.readBytes(buffer, 0, buffer.length);
+      if (ofsEnd <= 0) {
+        ofsEnd = 0;
+        throw new IOException("Premature end of chunked content");
+      }
+    }
+    return buffer[ofsStart++] & 0xFF;
+  }
+
+  /**
+   * Closes this HttpStream. If it uses a connection pool and the whole response was read, the connection is given back
+   * to the pool instead of being closed.
+   */
   @Override
   public void close() throws totalcross.io.IOException {
-    socket.close();
+    if (decoder != null) {
+      decoder.close(); // does not close the connection
+      decoder = null;
+      if (decoderDone && pool != null && socket != null) {
+        // the compressed data ended, but the end of the body, like the last chunk, may not have been read yet
+        try {
+          byte[] b = new byte[64];
+          while (readBody(b, 0, b.length) > 0) {
+          }
+        } catch (totalcross.io.IOException e) {
+          headerComplete = false; // can't be reused
+        }
+      }
+    }
+    if (pool != null && socket != null && canReuse()) {
+      pool.release(poolKey, socket);
+      socket = null;
+    } else if (socket != null) {
+      socket.close();
+    }
+  }
+
+  /**
+   * Tells if the connection can be used by another request: the server must keep it open and the response body must
+   * have been read until its end.
+   */
+  private boolean canReuse() {
+    if (!headerComplete || (connection != null && connection.equalsIgnoreCase("close"))) {
+      return false;
+    }
+    if (!"HTTP/1.1".equals(version.toString()) && (connection == null || !connection.equalsIgnoreCase("keep-alive"))) {
+      return false;
+    }
+    if (noBody) {
+      return true;
+    }
+    return chunked ? lastChunk : contentLength >= 0 && contentRead >= contentLength;
   }
 
   /**
@@ -701,15 +978,51 @@ public class HttpStream extends Stream {
       }
     }
     state = -1;
-
-    socket = options.socketFactory.createSocket(strUri, port, options.openTimeOut);
-    socket.readTimeout = options.readTimeOut;
-    socket.writeTimeout = options.writeTimeOut == -1 ? options.readTimeOut : options.writeTimeOut;
-    if (socket instanceof SSLSocket) {
-      ((SSLSocket) socket).startHandshake();
-    }
     writeBytesSize = options.writeBytesSize;
-    getResponse(options);
+    pool = options.connectionPool;
+
+    if (pool == null) {
+      socket = options.socketFactory.createSocket(strUri, port, options.openTimeOut);
+      socket.readTimeout = options.readTimeOut;
+      socket.writeTimeout = options.writeTimeOut == -1 ? options.readTimeOut : options.writeTimeOut;
+      if (socket instanceof SSLSocket) {
+        ((SSLSocket) socket).startHandshake();
+      }
+      getResponse(options);
+    } else {
+      poolKey = HttpConnectionPool.getKey(options.socketFactory, strUri, port);
+      socket = pool.take(poolKey);
+      reused = socket != null;
+      if (!reused) {
+        socket = pool.open(options.socketFactory, strUri, port, options.openTimeOut);
+      }
+      socket.readTimeout = options.readTimeOut;
+      socket.writeTimeout = options.writeTimeOut == -1 ? options.readTimeOut : options.writeTimeOut;
+      try {
+        getResponse(options);
+      } catch (SocketTimeoutException e) {
+        socket.close();
+        throw e;
+      } catch (totalcross.io.IOException e) {
+        if (!reused || responseStarted || !canReplay(options)) {
+          socket.close();
+          throw e;
+        }
+        // the server closed the idle connection before answering: send the request again through a new one
+        try {
+          socket.close();
+        } catch (totalcross.io.IOException e2) {
+        }
+        reused = false;
+        ofsStart = ofsEnd = ofsCur = 0;
+        buffer = new byte[BUFSIZE];
+        state = -1;
+        socket = pool.open(options.socketFactory, strUri, port, options.openTimeOut);
+        socket.readTimeout = options.readTimeOut;
+        socket.writeTimeout = options.writeTimeOut == -1 ? options.readTimeOut : options.writeTimeOut;
+        getResponse(options);
+      }
+    }
   }
 
   /**
@@ -786,7 +1099,28 @@ public class HttpStream extends Stream {
     }
 
     // absolute URI
-    sb.append(" HTTP/1.0\r\n");
+    boolean compressBody = options.compressRequest && options.partContent == null && shouldSendData(options)
+        && (options.chunkedContent != null || options.dataPrefix != null || options.postPrefix != null
+            || options.data != null || options.postData != null || options.dataSB != null || options.postDataSB != null
+            || options.dataSuffix != null || options.postSuffix != null);
+    byte[] compressedData = null;
+    if (pool != null || options.chunkedContent != null) {
+      sb.append(" HTTP/1.1\r\n");
+      if (!options.requestHeaders.exists("Connection")) {
+        sb.append(pool != null ? "Connection: keep-alive" : "Connection: close").append(Convert.CRLF);
+      }
+      if (options.chunkedContent != null) {
+        sb.append("Transfer-Encoding: chunked").append(Convert.CRLF);
+      }
+    } else {
+      sb.append(" HTTP/1.0\r\n");
+    }
+    if (options.acceptCompressedContent && !options.requestHeaders.exists("Accept-Encoding")) {
+      sb.append("Accept-Encoding: gzip, deflate").append(Convert.CRLF);
+    }
+    if (compressBody) {
+      sb.append("Content-Encoding: gzip").append(Convert.CRLF);
+    }
     // Header Host
     if (!options.requestHeaders.exists("Host")) {
       options.requestHeaders.put("Host", uri.host != null ? uri.host.toString() : ""); //flsobral@tc126: Host must always be provided, empty if not available. // guich@570_32: check if its already set
@@ -795,7 +1129,9 @@ public class HttpStream extends Stream {
     options.requestHeaders.dumpKeysValues(sb, ": ", Convert.CRLF);
     sb.append(Convert.CRLF);
     	
-    if (options.partContent == null && shouldSendData(options)) {
+    if (options.chunkedContent != null) {
+      options.postHeaders.remove("Content-Length");
+    } else if (options.partContent == null && shouldSendData(options)) {
     	
     	String prefix = options.dataPrefix != null? options.dataPrefix : options.postPrefix;
     	String suffix = options.dataSuffix != null? options.dataSuffix : options.postSuffix;
@@ -804,17 +1140,22 @@ public class HttpStream extends Stream {
     	
     	
     	int len = 0;
-      if (prefix != null) {
-        len += cc.chars2bytes(prefix.toCharArray(), 0, prefix.length()).length;
-      }
-      if (dataSBAux != null) {
-        len += cc.chars2bytes(dataSBAux.toString().toCharArray(), 0, dataSBAux.length()).length;
-      }
-      if (dataAux != null) {
-        len += cc.chars2bytes(dataAux.toCharArray(), 0, dataAux.length()).length;
-      }
-      if (suffix != null) {
-        len += cc.chars2bytes(suffix.toCharArray(), 0, suffix.length()).length;
+      if (compressBody) {
+        compressedData = compress(prefix, dataSBAux != null ? dataSBAux.toString() : null, dataAux, suffix);
+        len = compressedData.length;
+      } else {
+        if (prefix != null) {
+          len += cc.chars2bytes(prefix.toCharArray(), 0, prefix.length()).length;
+        }
+        if (dataSBAux != null) {
+          len += cc.chars2bytes(dataSBAux.toString().toCharArray(), 0, dataSBAux.length()).length;
+        }
+        if (dataAux != null) {
+          len += cc.chars2bytes(dataAux.toCharArray(), 0, dataAux.length()).length;
+        }
+        if (suffix != null) {
+          len += cc.chars2bytes(suffix.toCharArray(), 0, suffix.length()).length;
+        }
       }
 
       if (len > 0) {
@@ -832,7 +1173,23 @@ public class HttpStream extends Stream {
       Vm.debug(sb.toString());
     }
 
-    if (options.partContent == null) {
+    if (options.chunkedContent != null) {
+      byte[] bytes = cc.chars2bytes(sb.toString().toCharArray(), 0, sb.length());
+      writeBytes(bytes, 0, bytes.length);
+      ChunkedStream cs = new ChunkedStream(this, CHUNK_SIZE);
+      if (compressBody) {
+        GZipStream gz = new GZipStream(cs, CompressedStream.DEFLATE);
+        options.chunkedContent.writeTo(gz);
+        gz.close(); // writes the gzip trailer, without closing cs
+      } else {
+        options.chunkedContent.writeTo(cs);
+      }
+      cs.close();
+    } else if (compressedData != null) {
+      byte[] bytes = cc.chars2bytes(sb.toString().toCharArray(), 0, sb.length());
+      writeBytes(bytes, 0, bytes.length);
+      writeBytes(compressedData, 0, compressedData.length);
+    } else if (options.partContent == null) {
       writeResponseRequest(sb, options); //flsobral@tc120_17: fixed bug with HttpStream connection over BIS transport on BlackBerry.
     } else {
       byte[] bytes = cc.chars2bytes(sb.toString().toCharArray(), 0, sb.length());
@@ -846,12 +1203,60 @@ public class HttpStream extends Stream {
     }
 
     ofsEnd = socket.readBytes(buffer, 0, BUFSIZE);
+    if (ofsEnd == IOUtils.EOF && reused) {
+      throw new IOException("Connection closed by the server");
+    }
+    responseStarted = ofsEnd > 0;
     state = 0;
     while ((ofsCur < ofsEnd) && !readHttpHeader() && refill()) {
     }
+    chunked = headerComplete && transferEncoding != null && transferEncoding.toLowerCase().indexOf("chunked") >= 0;
+    noBody = (responseCode >= 100 && responseCode < 200) || responseCode == 204 || responseCode == 304
+        || (options.httpType != null && options.httpType.startsWith("HEAD"));
     if (state != 6 && Settings.onJavaSE) {
       Vm.debug("HTTP: " + getStatus()); // flsobral@tc110_95: No longer stop reading the header when a bad response code is found, so we can get the error cause.
     }
+    encoding = IDENTITY;
+    if (options.acceptCompressedContent && contentEncoding != null && !noBody) {
+      String enc = contentEncoding.trim().toLowerCase();
+      if (enc.equals("gzip") || enc.equals("x-gzip")) {
+        encoding = GZIP;
+      } else if (enc.equals("deflate")) {
+        encoding = DEFLATE;
+      }
+    }
+  }
+
+  /**
+   * Indicates if a request can be sent again when a reused connection fails before the response starts. Only
+   * idempotent methods are sent again, and only if their body, if any, is not written by a ContentWriter or a Part,
+   * which may not be able to write it twice.
+   */
+  private boolean canReplay(Options options) {
+    if (options.chunkedContent != null || options.partContent != null) {
+      return false;
+    }
+    String method = options.httpType != null ? options.httpType : shouldSendData(options) ? POST : GET;
+    method = method.trim().toUpperCase();
+    return method.equals("GET") || method.equals("HEAD") || method.equals("PUT") || method.equals("DELETE")
+        || method.equals("OPTIONS") || method.equals("TRACE");
+  }
+
+  /**
+   * Compresses the parts of the request data with gzip, after converting them with the charset of the options.
+   */
+  private byte[] compress(String prefix, String data1, String data2, String suffix) throws totalcross.io.IOException {
+    ByteArrayStream bas = new ByteArrayStream(1024);
+    GZipStream gz = new GZipStream(bas, CompressedStream.DEFLATE);
+    String[] parts = { prefix, data1, data2, suffix };
+    for (int i = 0; i < parts.length; i++) {
+      if (parts[i] != null) {
+        byte[] bytes = cc.chars2bytes(parts[i].toCharArray(), 0, parts[i].length());
+        gz.writeBytes(bytes, 0, bytes.length);
+      }
+    }
+    gz.close();
+    return bas.toByteArray();
   }
 
   protected boolean shouldSendData(Options options) {
@@ -971,8 +1376,8 @@ public class HttpStream extends Stream {
    *         message-body was found); false if the buffer needs to be refilled;
    */
   private final boolean readHttpHeader() throws totalcross.io.IOException {
-    while (ofsCur < ofsEnd) {
-      byte ch = buffer[ofsCur];
+    while (ofsCur < ofsEnd || state == 6) { // the header may end with the buffer, like in a response without body
+      byte ch = ofsCur < ofsEnd ? buffer[ofsCur] : 0;
       switch (state) {
       case 0: // Status Line - skip leading spaces
         while (ch == 0x20) {
@@ -1050,6 +1455,7 @@ public class HttpStream extends Stream {
         if (badResponseCode) {
           state = 2;
         }
+        headerComplete = true;
         ofsStart = ofsCur;
         return true; // Yes!  Success!
       }
@@ -1088,6 +1494,10 @@ public class HttpStream extends Stream {
         && bsContentEncodingFieldName.equalsIgnoreCase(buffer, ofsStart, bsContentEncodingFieldName.len)) {
       type = 5; // flsobral@tc110_102: content encoding support.
       start += bsContentEncodingFieldName.len;
+    } else if ((transferEncoding == null)
+        && bsTransferEncodingFieldName.equalsIgnoreCase(buffer, ofsStart, bsTransferEncodingFieldName.len)) {
+      type = 6;
+      start += bsTransferEncodingFieldName.len;
     } else {
       start1 = start;
       while (buffer[start] != ':' && buffer[start] >= 32) {
@@ -1146,6 +1556,9 @@ public class HttpStream extends Stream {
     case 5:
       contentEncoding = new String(buffer, start, end - start); // flsobral@tc110_102: content encoding support.
       break;
+    case 6:
+      transferEncoding = new String(buffer, start, end - start);
+      break;
     }
   }
 
@@ -1235,7 +1648,7 @@ public class HttpStream extends Stream {
    */
   public String readLine() throws totalcross.io.IOException {
     if (lr == null) {
-      lr = new LineReader(socket, buffer, ofsCur, ofsEnd - ofsCur);
+      lr = chunked || pool != null || encoding != IDENTITY ? new LineReader(this) : new LineReader(socket, buffer, ofsCur, ofsEnd - ofsCur);
     }
     return lr.readLine();
   }
@@ -1256,9 +1669,97 @@ public class HttpStream extends Stream {
   public String[] readTokens() throws totalcross.io.IOException // guich@tc125_16
   {
     if (tr == null) {
-      tr = new TokenReader(socket, readTokensDelimiter, buffer, ofsCur, ofsEnd - ofsCur);
+      tr = chunked || pool != null || encoding != IDENTITY ? new TokenReader(this, readTokensDelimiter)
+          : new TokenReader(socket, readTokensDelimiter, buffer, ofsCur, ofsEnd - ofsCur);
       tr.doTrim = readTokensDoTrim;
     }
     return tr.readTokens();
   }
+
+  /**
+   * The response body as it was sent, which is read by the decoder of a compressed response.
+   */
+  private final class BodyStream extends Stream {
+    @Override
+    public int readBytes(byte[] buf, int start, int count) throws totalcross.io.IOException {
+      return readBody(buf, start, count);
+    }
+
+    @Override
+    public int writeBytes(byte[] buf, int start, int count) throws totalcross.io.IOException {
+      throw new IOException("Can't write to the response body");
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * A stream which sends the data written to it as the chunks of a request body. Each chunk is built in a buffer with
+   * room for its size line, so that it is written to the connection at once.
+   */
+  private static final class ChunkedStream extends Stream {
+    private static final int HEADER = 10; // up to 8 hex digits and CRLF
+    private static final byte[] hexDigits = "0123456789abcdef".getBytes();
+    private static final byte[] lastChunk = "0\r\n\r\n".getBytes();
+
+    private final Stream out;
+    private final byte[] buf;
+    private int pos = HEADER;
+
+    ChunkedStream(Stream out, int chunkSize) {
+      this.out = out;
+      buf = new byte[HEADER + chunkSize + 2];
+    }
+
+    @Override
+    public int readBytes(byte[] buf, int start, int count) throws totalcross.io.IOException {
+      throw new IOException("Can't read from the request body");
+    }
+
+    @Override
+    public int writeBytes(byte[] b, int start, int count) throws totalcross.io.IOException {
+      int limit = buf.length - 2;
+      for (int left = count; left > 0;) {
+        int n = limit - pos;
+        if (n > left) {
+          n = left;
+        }
+        Vm.arrayCopy(b, start, buf, pos, n);
+        pos += n;
+        start += n;
+        left -= n;
+        if (pos == limit) {
+          flushChunk();
+        }
+      }
+      return count;
+    }
+
+    private void flushChunk() throws totalcross.io.IOException {
+      int size = pos - HEADER;
+      if (size > 0) {
+        byte[] buf = this.buf;
+        buf[pos++] = '\r';
+        buf[pos++] = '\n';
+        int h = HEADER - 2;
+        buf[h] = '\r';
+        buf[h + 1] = '\n';
+        do {
+          buf[--h] = hexDigits[size & 0xF];
+          size >>>= 4;
+        } while (size != 0);
+        out.writeBytes(buf, h, pos - h);
+        pos = HEADER;
+      }
+    }
+
+    /** Sends the pending data and the last chunk. */
+    @Override
+    public void close() throws totalcross.io.IOException {
+      flushChunk();
+      out.writeBytes(lastChunk, 0, lastChunk.length);
+    }
+  }
 }
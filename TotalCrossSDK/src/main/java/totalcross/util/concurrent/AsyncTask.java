@@ -3,9 +3,6 @@
 // SPDX-License-Identifier: LGPL-2.1-only
 package totalcross.util.concurrent;
 
-import java.util.LinkedList;
-
-import totalcross.sys.Vm;
 import totalcross.ui.MainWindow;
 
 /**
@@ -87,69 +84,72 @@ import totalcross.ui.MainWindow;
 public abstract class AsyncTask<Params, Progress, Result> {
 
     /**
-     * A single instance responsible for creating an unique thread that will receive
-     * Runnable instances to execute their run methods and will sleep in ausence of
-     * instance to be executed.
-     */
-    static class Executor implements Runnable {
-	/**
-	 * object used to lock synchronized block
-	 */
-	private final Lock lock = new Lock();
-	/**
-	 * list of Runnable instances to be executed
-	 */
-	private final LinkedList<Runnable> requests = new LinkedList<>();
-	/**
-	 * single instance of Executor
-	 */
-	private static Executor instance;
-
-	private Executor() {
-	}
+     * An executor that runs the tasks one at a time, in the order they were
+     * submitted. This is the default executor.
+     * 
+     * @since TotalCross 6.1.1
+     */
+    public static final ThreadPool SERIAL_EXECUTOR = new ThreadPool(1);
 
-	/**
-	 * Get execute single instance and run is self if not already created
-	 * 
-	 * @return
-	 */
-	public static Executor getInstance() {
-	    if (instance == null) {
-		instance = new Executor();
-		new Thread(instance).start();
-	    }
-	    return instance;
-	}
+    /**
+     * The number of threads used by the {@link #THREAD_POOL_EXECUTOR}.
+     * 
+     * @since TotalCross 6.1.1
+     */
+    public static final int THREAD_POOL_SIZE = 4;
 
-	/**
-	 * Execute a Runnable
-	 * 
-	 * @param request
-	 */
-	public void execute(Runnable request) {
-	    synchronized (lock) {
-		requests.addLast(request);
-	    }
-	}
+    /**
+     * An executor that runs up to {@link #THREAD_POOL_SIZE} tasks in parallel.
+     * 
+     * @since TotalCross 6.1.1
+     */
+    public static final ThreadPool THREAD_POOL_EXECUTOR = new ThreadPool(THREAD_POOL_SIZE);
 
-	@Override
-	public void run() {
-	    while (true) {
-		Runnable r = null;
-		synchronized (lock) {
-		    r = requests.poll();
-		}
-		if (r != null) {
-		    try {
-			r.run();
-		    } catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		    }
-		}
-		Vm.safeSleep(40);
-	    }
+    /**
+     * executor used by {@link #execute(java.lang.Object[])}
+     */
+    private static ThreadPool defaultExecutor = SERIAL_EXECUTOR;
+
+    /**
+     * set when {@link #cancel(boolean)} is called
+     */
+    private volatile boolean cancelled;
+    /**
+     * object used to lock the progress values that were not delivered yet
+     */
+    private final Lock progressLock = new Lock();
+    /**
+     * last values given to publishProgress that were not delivered yet
+     */
+    private Progress[] pendingProgress;
+    /**
+     * whether a progress delivery is already scheduled on the UI Thread
+     */
+    private boolean progressScheduled;
+
+    /**
+     * Sets the executor used by {@link #execute(java.lang.Object[])}.
+     * 
+     * @param executor the new default executor, usually {@link #SERIAL_EXECUTOR}
+     *                 or {@link #THREAD_POOL_EXECUTOR}
+     * @throws NullPointerException if executor is null
+     * @since TotalCross 6.1.1
+     */
+    public static void setDefaultExecutor(ThreadPool executor) throws NullPointerException {
+	if (executor == null) {
+	    throw new NullPointerException();
 	}
+	defaultExecutor = executor;
+    }
+
+    /**
+     * Runs the given code in UI Thread. Not a single instance: another task may
+     * have a pending runner of the same class.
+     * 
+     * @param r the code to run
+     */
+    void runOnMainThread(Runnable r) {
+	MainWindow.getMainWindow().runOnMainThread(r, false);
     }
 
     /**
@@ -179,17 +179,38 @@ public abstract class AsyncTask<Params, Progress, Result> {
     }
 
     /**
-     * Calls {@link #onProgressUpdate(java.lang.Object[])} in UI Thread
+     * Calls {@link #onProgressUpdate(java.lang.Object[])} in UI Thread. Values
+     * published faster than the UI Thread can consume them are coalesced: only
+     * the last ones are delivered. Nothing is delivered if the task was
+     * cancelled.
      * 
      * @see #onProgressUpdate(java.lang.Object[])
      * @param values
      */
     @SafeVarargs
     protected final void publishProgress(Progress... values) {
-	MainWindow.getMainWindow().runOnMainThread(new Runnable() {
+	if (cancelled) {
+	    return;
+	}
+	synchronized (progressLock) {
+	    pendingProgress = values;
+	    if (progressScheduled) {
+		return;
+	    }
+	    progressScheduled = true;
+	}
+	runOnMainThread(new Runnable() {
 	    @Override
 	    public void run() {
-		onProgressUpdate(values);
+		Progress[] values;
+		synchronized (progressLock) {
+		    values = pendingProgress;
+		    pendingProgress = null;
+		    progressScheduled = false;
+		}
+		if (!cancelled) {
+		    onProgressUpdate(values);
+		}
 	    }
 	});
     }
@@ -205,26 +226,98 @@ public abstract class AsyncTask<Params, Progress, Result> {
     }
 
     /**
-     * execute {@link #doInBackground(java.lang.Object[])} outside UI Thread
+     * Method called in UI Thread instead of
+     * {@link #onPostExecute(java.lang.Object)} when the task was cancelled. The
+     * default implementation calls {@link #onCancelled()}.
+     * 
+     * @param result the result computed by doInBackground, or null if the task
+     *               was cancelled before it started
+     * @since TotalCross 6.1.1
+     */
+    protected void onCancelled(Result result) {
+	onCancelled();
+    }
+
+    /**
+     * Method called in UI Thread by the default implementation of
+     * {@link #onCancelled(java.lang.Object)}.
+     * 
+     * @since TotalCross 6.1.1
+     */
+    protected void onCancelled() {
+    }
+
+    /**
+     * Attempts to cancel this task. If the task has not started yet,
+     * doInBackground will never run. The TotalCross VM cannot interrupt a running
+     * thread, so a task that is already running must check {@link #isCancelled()}
+     * periodically to stop earlier. Either way, {@link #onCancelled(Object)} is
+     * called instead of {@link #onPostExecute(Object)}.
+     * 
+     * @param mayInterruptIfRunning kept for compatibility; running tasks are
+     *                              never interrupted
+     * @return false if the task was already cancelled, true otherwise
+     * @since TotalCross 6.1.1
+     */
+    public final boolean cancel(boolean mayInterruptIfRunning) {
+	if (cancelled) {
+	    return false;
+	}
+	cancelled = true;
+	return true;
+    }
+
+    /**
+     * Returns true if this task was cancelled.
+     * 
+     * @since TotalCross 6.1.1
+     */
+    public final boolean isCancelled() {
+	return cancelled;
+    }
+
+    /**
+     * execute {@link #doInBackground(java.lang.Object[])} outside UI Thread, using
+     * the default executor.
      * 
+     * @see #setDefaultExecutor(ThreadPool)
      * @param params
      * @return
      */
     @SafeVarargs
     public final AsyncTask<Params, Progress, Result> execute(final Params... params) {
+	return executeOnExecutor(defaultExecutor, params);
+    }
+
+    /**
+     * execute {@link #doInBackground(java.lang.Object[])} outside UI Thread, using
+     * the given executor.
+     * 
+     * @param executor the executor, usually {@link #SERIAL_EXECUTOR} or
+     *                 {@link #THREAD_POOL_EXECUTOR}
+     * @param params
+     * @return
+     * @since TotalCross 6.1.1
+     */
+    @SafeVarargs
+    public final AsyncTask<Params, Progress, Result> executeOnExecutor(ThreadPool executor, final Params... params) {
 	onPreExecute();
-	Executor.getInstance().execute(new Runnable() {
+	executor.execute(new Runnable() {
 	    @Override
 	    public void run() {
-		final Result result = doInBackground(params);
-		MainWindow.getMainWindow().runOnMainThread(new Runnable() {
+		final Result result = cancelled ? null : doInBackground(params);
+		runOnMainThread(new Runnable() {
 		    @Override
 		    public void run() {
-			onPostExecute(result);
+			if (cancelled) {
+			    onCancelled(result);
+			} else {
+			    onPostExecute(result);
+			}
 		    }
 		});
 	    }
 	});
 	return this;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,174 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+
+package totalcross.util.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import totalcross.sys.Vm;
+
+/**
+ * A cancellable asynchronous computation, returned by
+ * {@link ThreadPool#submit(Callable)} and {@link ThreadPool#submit(Runnable)}.
+ * <br>
+ * <br>
+ * The result can only be retrieved when the computation has completed; the
+ * <code>get</code> methods will block the calling thread if the computation has
+ * not yet completed. Since the TotalCross VM has no monitor wait/notify, the
+ * calling thread waits with a short backoff sleep, so avoid calling
+ * <code>get</code> from the UI thread: use {@link #isDone()} instead.
+ *
+ * @param <V> The result type returned by this FutureTask's get methods
+ *
+ * @since TotalCross 6.1.1
+ */
+public class FutureTask<V> implements Runnable {
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    private static final int COMPLETED = 2;
+    private static final int FAILED = 3;
+    private static final int CANCELLED = 4;
+
+    private final Lock lock = new Lock();
+    private final Callable<V> callable;
+    private volatile int state = NEW;
+    private V result;
+    private Throwable failure;
+
+    /**
+     * Creates a FutureTask that will, upon running, execute the given Callable.
+     * 
+     * @param callable the callable task
+     * @throws NullPointerException if callable is null
+     */
+    public FutureTask(Callable<V> callable) throws NullPointerException {
+	if (callable == null) {
+	    throw new NullPointerException();
+	}
+	this.callable = callable;
+    }
+
+    /**
+     * Creates a FutureTask that will, upon running, execute the given Runnable,
+     * and arrange that get will return the given result on successful
+     * completion.
+     * 
+     * @param runnable the runnable task
+     * @param result   the result to return on successful completion
+     * @throws NullPointerException if runnable is null
+     */
+    public FutureTask(final Runnable runnable, final V result) throws NullPointerException {
+	if (runnable == null) {
+	    throw new NullPointerException();
+	}
+	this.callable = new Callable<V>() {
+	    @Override
+	    public V call() {
+		runnable.run();
+		return result;
+	    }
+	};
+    }
+
+    /**
+     * Runs the computation, unless it was cancelled or already started.
+     */
+    @Override
+    public void run() {
+	synchronized (lock) {
+	    if (state != NEW) {
+		return;
+	    }
+	    state = RUNNING;
+	}
+	try {
+	    result = callable.call();
+	    state = COMPLETED;
+	} catch (Throwable t) {
+	    failure = t;
+	    state = FAILED;
+	}
+    }
+
+    /**
+     * Attempts to cancel execution of this task. This attempt will fail if the
+     * task has already started, completed or was already cancelled; running
+     * tasks are never interrupted.
+     * 
+     * @return false if the task could not be cancelled, true otherwise
+     */
+    public boolean cancel() {
+	synchronized (lock) {
+	    if (state != NEW) {
+		return false;
+	    }
+	    state = CANCELLED;
+	}
+	return true;
+    }
+
+    /**
+     * Returns true if this task was cancelled before it completed normally.
+     */
+    public boolean isCancelled() {
+	return state == CANCELLED;
+    }
+
+    /**
+     * Returns true if this task completed, either normally, by throwing an
+     * exception or by being cancelled.
+     */
+    public boolean isDone() {
+	return state > RUNNING;
+    }
+
+    /**
+     * Waits if necessary for the computation to complete, and then retrieves its
+     * result.
+     * 
+     * @return the computed result
+     * @throws CancellationException if the computation was cancelled
+     * @throws ExecutionException    if the computation threw an exception
+     */
+    public V get() throws ExecutionException {
+	try {
+	    return get(-1);
+	} catch (TimeoutException e) {
+	    throw new IllegalStateException(); // never happens without a timeout
+	}
+    }
+
+    /**
+     * Waits if necessary for at most the given time for the computation to
+     * complete, and then retrieves its result, if available.
+     * 
+     * @param timeout the maximum time to wait in milliseconds, or a negative value
+     *                to wait forever
+     * @return the computed result
+     * @throws CancellationException if the computation was cancelled
+     * @throws ExecutionException    if the computation threw an exception
+     * @throws TimeoutException      if the wait timed out
+     */
+    public V get(int timeout) throws ExecutionException, TimeoutException {
+	int end = Vm.getTimeStamp() + timeout;
+	int backoff = 0;
+	while (!isDone()) {
+	    if (timeout >= 0 && Vm.getTimeStamp() >= end) {
+		throw new TimeoutException();
+	    }
+	    backoff = ThreadPool.backoff(backoff);
+	}
+	switch (state) {
+	case CANCELLED:
+	    throw new CancellationException();
+	case FAILED:
+	    throw new ExecutionException(failure);
+	default:
+	    return result;
+	}
+    }
+}
@@ -6,6 +6,8 @@
 package totalcross.util.concurrent;
 
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import totalcross.sys.Vm;
 
@@ -17,32 +19,145 @@ import totalcross.sys.Vm;
  * performance when executing large numbers of asynchronous tasks, due to
  * reduced per-task invocation overhead, and they provide a means of bounding
  * and managing the resources, including threads, consumed when executing a
- * collection of tasks.
+ * collection of tasks. <br>
+ * <br>
+ * Worker threads are started on demand, when a task is submitted and no idle
+ * worker is available to take it, up to <code>corePoolSize</code> threads. Idle
+ * workers poll the work queue with an exponential backoff: a yield followed by
+ * sleeps of 1, 2, 4 and so on, up to {@link #MAX_IDLE_SLEEP} milliseconds. A
+ * task submitted right after another one completes starts almost immediately,
+ * but a task submitted to a worker which has been idle for more than about 30
+ * ms waits up to <code>MAX_IDLE_SLEEP</code> (32) milliseconds to start. In
+ * exchange, an idle worker wakes up only about 30 times per second. Workers
+ * exit once they stay idle for longer than the keep alive time, so an idle
+ * pool stops waking up the CPU; a shorter keep alive time saves more battery,
+ * at the cost of starting a new thread for the next task.
  *
  * @since TotalCross 4.3.9
  */
 public class ThreadPool {
+    /**
+     * The maximum time, in milliseconds, an idle worker sleeps between two polls
+     * of the work queue. It is the worst case time a task waits for an idle
+     * worker to start it.
+     */
+    public static final int MAX_IDLE_SLEEP = 32;
+
+    /**
+     * The default time, in milliseconds, an idle worker waits for new tasks before
+     * exiting.
+     */
+    public static final int DEFAULT_KEEP_ALIVE_TIME = 5000;
+
+    /**
+     * A handler for tasks that cannot be executed by a ThreadPool, either because
+     * it was shut down or because its work queue is full.
+     */
+    public static interface RejectedExecutionHandler {
+	/**
+	 * Method invoked by {@link ThreadPool#execute(Runnable)} when the task cannot
+	 * be accepted.
+	 * 
+	 * @param r    the runnable task requested to be executed
+	 * @param pool the pool attempting to execute this task
+	 */
+	void rejectedExecution(Runnable r, ThreadPool pool);
+    }
+
+    /**
+     * Throws an IllegalStateException when the task is rejected. This is the
+     * default policy.
+     */
+    public static final RejectedExecutionHandler ABORT_POLICY = new RejectedExecutionHandler() {
+	@Override
+	public void rejectedExecution(Runnable r, ThreadPool pool) {
+	    throw new IllegalStateException(pool.isShutdown() ? "Pool was shut down" : "Work queue is full");
+	}
+    };
+
+    /**
+     * Runs the rejected task directly in the calling thread, unless the pool was
+     * shut down, in which case the task is discarded. This slows down the
+     * producer when the work queue is full.
+     */
+    public static final RejectedExecutionHandler CALLER_RUNS_POLICY = new RejectedExecutionHandler() {
+	@Override
+	public void rejectedExecution(Runnable r, ThreadPool pool) {
+	    if (!pool.isShutdown()) {
+		r.run();
+	    }
+	}
+    };
+
+    /**
+     * Silently discards the rejected task.
+     */
+    public static final RejectedExecutionHandler DISCARD_POLICY = new RejectedExecutionHandler() {
+	@Override
+	public void rejectedExecution(Runnable r, ThreadPool pool) {
+	}
+    };
+
+    /**
+     * Discards the oldest queued task and retries the execution of the rejected
+     * task, unless the pool was shut down, in which case the task is discarded.
+     */
+    public static final RejectedExecutionHandler DISCARD_OLDEST_POLICY = new RejectedExecutionHandler() {
+	@Override
+	public void rejectedExecution(Runnable r, ThreadPool pool) {
+	    if (!pool.isShutdown()) {
+		synchronized (pool.lock) {
+		    pool.queue.poll();
+		}
+		pool.execute(r);
+	    }
+	}
+    };
+
     private boolean keepRunning = true;
     private final int corePoolSize;
-    private final PoolWorker[] threads;
+    private final int capacity;
+    private final RejectedExecutionHandler handler;
     private final LinkedList<Runnable> queue;
     private final Lock lock = new Lock();
+    private int keepAliveTime = DEFAULT_KEEP_ALIVE_TIME;
+    private int poolSize;
+    private int idleCount;
+    private long completedTaskCount;
 
     /**
-     * Creates a new ThreadPool with the given initial parameters.
+     * Creates a new ThreadPool with the given initial parameters, an unbounded
+     * work queue and the {@link #ABORT_POLICY}.
      * 
-     * @param corePoolSize - the number of threads to keep in the pool, even if they
-     *                     are idle
+     * @param corePoolSize - the maximum number of threads to keep in the pool
      */
     public ThreadPool(int corePoolSize) {
-	this.corePoolSize = corePoolSize;
-	queue = new LinkedList<>();
-	threads = new PoolWorker[corePoolSize];
+	this(corePoolSize, Integer.MAX_VALUE, ABORT_POLICY);
+    }
 
-	for (int i = 0; i < corePoolSize; i++) {
-	    threads[i] = new PoolWorker();
-	    threads[i].start();
+    /**
+     * Creates a new ThreadPool with the given initial parameters.
+     * 
+     * @param corePoolSize - the maximum number of threads to keep in the pool
+     * @param capacity     - the maximum number of tasks waiting in the work queue
+     * @param handler      - the handler to use when a task is rejected
+     * @throws IllegalArgumentException if corePoolSize or capacity are not
+     *                                  positive
+     * @throws NullPointerException     if handler is null
+     * @since TotalCross 6.1.1
+     */
+    public ThreadPool(int corePoolSize, int capacity, RejectedExecutionHandler handler)
+	    throws IllegalArgumentException, NullPointerException {
+	if (corePoolSize <= 0 || capacity <= 0) {
+	    throw new IllegalArgumentException();
+	}
+	if (handler == null) {
+	    throw new NullPointerException();
 	}
+	this.corePoolSize = corePoolSize;
+	this.capacity = capacity;
+	this.handler = handler;
+	queue = new LinkedList<>();
     }
 
     /**
@@ -59,11 +174,54 @@ public class ThreadPool {
 	if (command == null) {
 	    throw new NullPointerException();
 	}
+	boolean accepted = false;
+	boolean startWorker = false;
 	synchronized (lock) {
-	    if (keepRunning) {
+	    if (keepRunning && queue.size() < capacity) {
 		queue.addLast(command);
+		accepted = true;
+		// starts a new worker if the idle ones are not enough to take all queued tasks
+		if (poolSize < corePoolSize && idleCount < queue.size()) {
+		    poolSize++;
+		    startWorker = true;
+		}
 	    }
 	}
+	if (startWorker) {
+	    new PoolWorker().start();
+	} else if (!accepted) {
+	    handler.rejectedExecution(command, this);
+	}
+    }
+
+    /**
+     * Submits a Runnable task for execution and returns a FutureTask representing
+     * that task, whose get method returns null upon successful completion.
+     * 
+     * @param task the task to submit
+     * @return a FutureTask representing pending completion of the task
+     * @throws NullPointerException if the task is null
+     * @since TotalCross 6.1.1
+     */
+    public FutureTask<Object> submit(Runnable task) throws NullPointerException {
+	FutureTask<Object> future = new FutureTask<Object>(task, null);
+	execute(future);
+	return future;
+    }
+
+    /**
+     * Submits a value-returning task for execution and returns a FutureTask
+     * representing the pending result of the task.
+     * 
+     * @param task the task to submit
+     * @return a FutureTask representing pending completion of the task
+     * @throws NullPointerException if the task is null
+     * @since TotalCross 6.1.1
+     */
+    public <T> FutureTask<T> submit(Callable<T> task) throws NullPointerException {
+	FutureTask<T> future = new FutureTask<T>(task);
+	execute(future);
+	return future;
     }
 
     /**
@@ -72,7 +230,132 @@ public class ThreadPool {
      * effect if already shut down.
      */
     public void shutdown() {
-	this.keepRunning = false;
+	synchronized (lock) {
+	    this.keepRunning = false;
+	}
+    }
+
+    /**
+     * Initiates a shutdown and removes all tasks that were waiting in the work
+     * queue. Tasks that are already running are not interrupted.
+     * 
+     * @return the list of tasks that never commenced execution
+     * @since TotalCross 6.1.1
+     */
+    public List<Runnable> shutdownNow() {
+	synchronized (lock) {
+	    this.keepRunning = false;
+	    List<Runnable> pending = new LinkedList<>(queue);
+	    queue.clear();
+	    return pending;
+	}
+    }
+
+    /**
+     * Returns true if this pool has been shut down.
+     * 
+     * @since TotalCross 6.1.1
+     */
+    public boolean isShutdown() {
+	return !keepRunning;
+    }
+
+    /**
+     * Returns true if this pool has been shut down and all its tasks have
+     * completed.
+     * 
+     * @since TotalCross 6.1.1
+     */
+    public boolean isTerminated() {
+	synchronized (lock) {
+	    return !keepRunning && poolSize == 0 && queue.isEmpty();
+	}
+    }
+
+    /**
+     * Blocks until all tasks have completed execution after a shutdown request, or
+     * the timeout occurs, whichever happens first.
+     * 
+     * @param timeout the maximum time to wait in milliseconds
+     * @return true if this pool terminated and false if the timeout elapsed before
+     *         termination
+     * @since TotalCross 6.1.1
+     */
+    public boolean awaitTermination(int timeout) {
+	int end = Vm.getTimeStamp() + timeout;
+	int backoff = 0;
+	while (!isTerminated()) {
+	    if (Vm.getTimeStamp() >= end) {
+		return false;
+	    }
+	    backoff = backoff(backoff);
+	}
+	return true;
+    }
+
+    /**
+     * Sets the time, in milliseconds, a worker may remain idle before exiting.
+     * 
+     * @param keepAliveTime the keep alive time in milliseconds
+     * @throws IllegalArgumentException if keepAliveTime is negative
+     * @since TotalCross 6.1.1
+     */
+    public void setKeepAliveTime(int keepAliveTime) throws IllegalArgumentException {
+	if (keepAliveTime < 0) {
+	    throw new IllegalArgumentException();
+	}
+	this.keepAliveTime = keepAliveTime;
+    }
+
+    /**
+     * Returns the time, in milliseconds, a worker may remain idle before exiting.
+     * 
+     * @since TotalCross 6.1.1
+     */
+    public int getKeepAliveTime() {
+	return keepAliveTime;
+    }
+
+    /**
+     * Returns the current number of threads in the pool.
+     * 
+     * @since TotalCross 6.1.1
+     */
+    public int getPoolSize() {
+	return poolSize;
+    }
+
+    /**
+     * Returns the number of threads that are actively executing tasks.
+     * 
+     * @since TotalCross 6.1.1
+     */
+    public int getActiveCount() {
+	synchronized (lock) {
+	    return poolSize - idleCount;
+	}
+    }
+
+    /**
+     * Returns the number of tasks waiting in the work queue.
+     * 
+     * @since TotalCross 6.1.1
+     */
+    public int getQueueSize() {
+	synchronized (lock) {
+	    return queue.size();
+	}
+    }
+
+    /**
+     * Returns the number of tasks that have completed execution.
+     * 
+     * @since TotalCross 6.1.1
+     */
+    public long getCompletedTaskCount() {
+	synchronized (lock) {
+	    return completedTaskCount;
+	}
     }
 
     /**
@@ -84,25 +367,59 @@ public class ThreadPool {
 	this.shutdown();
     }
 
+    /**
+     * Yields or sleeps the current thread, according to the given backoff.
+     * 
+     * @param backoff the value returned by the last call, or 0 in the first call
+     * @return the backoff to be used in the next call
+     */
+    static int backoff(int backoff) {
+	if (backoff == 0) {
+	    Thread.yield();
+	    return 1;
+	}
+	Vm.sleep(backoff);
+	return backoff >= MAX_IDLE_SLEEP / 2 ? MAX_IDLE_SLEEP : backoff * 2;
+    }
+
     private class PoolWorker extends Thread {
 	public void run() {
+	    boolean idle = false;
+	    int idleSince = 0;
+	    int backoff = 0;
 	    while (true) {
-		Runnable r = null;
+		Runnable r;
 		synchronized (lock) {
 		    r = queue.poll();
+		    if (r != null) {
+			if (idle) {
+			    idle = false;
+			    idleCount--;
+			}
+		    } else if (!idle) {
+			idle = true;
+			idleCount++;
+			idleSince = Vm.getTimeStamp();
+		    } else if (!keepRunning || Vm.getTimeStamp() - idleSince >= keepAliveTime) {
+			idleCount--;
+			poolSize--;
+			return;
+		    }
 		}
 		if (r != null) {
+		    backoff = 0;
 		    try {
 			r.run();
 		    } catch (Exception e) {
-			// TODO Auto-generated catch block
 			e.printStackTrace();
 		    }
-		} else if (!keepRunning) {
-		    break;
+		    synchronized (lock) {
+			completedTaskCount++;
+		    }
+		} else {
+		    backoff = backoff(backoff);
 		}
-		Vm.safeSleep(40);
 	    }
 	}
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,436 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+package totalcross.db.sqlite;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import totalcross.sql.PreparedStatement;
+import totalcross.sql.Statement;
+import totalcross.util.Hashtable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SQLiteBatchTest {
+    /**
+     * An SQLite interface which keeps the rows inserted in a single table whose first column is unique, and which
+     * follows the transaction rules of SQLite for the "begin", "commit" and "rollback" statements.
+     */
+    static class ScriptedDB extends DB {
+        final Map<Long, String> handles = new HashMap<Long, String>();
+        final List<Long> finalized = new ArrayList<Long>();
+        /** The committed rows. */
+        List<Object[]> rows = new ArrayList<Object[]>();
+        /** The rows seen inside the open transaction, or null if there is none. */
+        List<Object[]> pending;
+        boolean failCommit;
+        String error = "not an error";
+        long next = 1;
+        int prepared;
+
+        /** Runs a statement that changes no rows, returning its result code. */
+        int run(String sql) {
+            sql = sql.trim().toLowerCase();
+            if (sql.startsWith("begin")) {
+                if (pending != null) {
+                    error = "cannot start a transaction within a transaction";
+                    return SQLITE_ERROR;
+                }
+                pending = new ArrayList<Object[]>(rows);
+            } else if (sql.startsWith("commit") || sql.startsWith("end")) {
+                if (pending == null) {
+                    error = "cannot commit - no transaction is active";
+                    return SQLITE_ERROR;
+                }
+                if (failCommit) {
+                    error = "database is locked";
+                    return SQLITE_BUSY;
+                }
+                rows = pending;
+                pending = null;
+            } else if (sql.startsWith("rollback")) {
+                if (pending == null) {
+                    error = "cannot rollback - no transaction is active";
+                    return SQLITE_ERROR;
+                }
+                pending = null;
+            }
+            return SQLITE_DONE;
+        }
+
+        @Override
+        void interrupt() {
+        }
+
+        @Override
+        void busy_timeout(int ms) {
+        }
+
+        @Override
+        String errmsg() {
+            return error;
+        }
+
+        @Override
+        String libversion() {
+            return "3.31.1";
+        }
+
+        @Override
+        int changes() {
+            return 1;
+        }
+
+        @Override
+        int total_changes() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        int shared_cache(boolean enable) {
+            return SQLITE_OK;
+        }
+
+        @Override
+        int enable_load_extension(boolean enable) {
+            return SQLITE_OK;
+        }
+
+        @Override
+        protected void _open(String filename, int openFlags) {
+        }
+
+        @Override
+        protected void _close() {
+        }
+
+        @Override
+        protected int _exec(String sql) throws SQLException {
+            if (run(sql) != SQLITE_DONE) {
+                throw new SQLException(error);
+            }
+            return SQLITE_OK;
+        }
+
+        @Override
+        protected long prepare(String sql) {
+            prepared++;
+            handles.put(next, sql);
+            return next++;
+        }
+
+        @Override
+        protected int finalize(long stmt) {
+            finalized.add(stmt);
+            handles.remove(stmt);
+            return SQLITE_OK;
+        }
+
+        @Override
+        protected int step(long stmt) {
+            return run(handles.get(stmt));
+        }
+
+        @Override
+        protected int reset(long stmt) {
+            return SQLITE_OK;
+        }
+
+        @Override
+        int clear_bindings(long stmt) {
+            return SQLITE_OK;
+        }
+
+        @Override
+        int bind_parameter_count(long stmt) {
+            String sql = handles.get(stmt);
+            int count = 0;
+            for (int i = sql.length(); --i >= 0;) {
+                if (sql.charAt(i) == '?') {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        int column_count(long stmt) {
+            return handles.get(stmt).toLowerCase().startsWith("select") ? 1 : 0;
+        }
+
+        @Override
+        int column_type(long stmt, int col) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        String column_decltype(long stmt, int col) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        String column_table_name(long stmt, int col) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        String column_name(long stmt, int col) {
+            return "c" + col;
+        }
+
+        @Override
+        String column_text(long stmt, int col) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        byte[] column_blob(long stmt, int col) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        double column_double(long stmt, int col) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        long column_long(long stmt, int col) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        int column_int(long stmt, int col) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        int bind_null(long stmt, int pos) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        int bind_int(long stmt, int pos, int v) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        int bind_long(long stmt, int pos, long v) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        int bind_double(long stmt, int pos, double v) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        int bind_text(long stmt, int pos, String v) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        int bind_blob(long stmt, int pos, byte[] v) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        int execute_batch(long stmt, int count, int[] types, Object[] columns, Object[] nulls, int[] changes) {
+            List<Object[]> table = pending != null ? pending : rows;
+            for (int i = 0; i < count; i++) {
+                Object[] row = new Object[types.length];
+                for (int j = 0; j < types.length; j++) {
+                    if (nulls[j] != null && ((boolean[]) nulls[j])[i]) {
+                        continue;
+                    }
+                    switch (types[j]) {
+                    case SQLiteBatch.INT:
+                        row[j] = ((int[]) columns[j])[i];
+                        break;
+                    case SQLiteBatch.LONG:
+                        row[j] = ((long[]) columns[j])[i];
+                        break;
+                    case SQLiteBatch.DOUBLE:
+                        row[j] = ((double[]) columns[j])[i];
+                        break;
+                    default:
+                        row[j] = ((Object[]) columns[j])[i];
+                    }
+                }
+                for (Object[] other : table) {
+                    if (row[0] != null && row[0].equals(other[0])) {
+                        error = "UNIQUE constraint failed: t.id";
+                        return SQLITE_CONSTRAINT;
+                    }
+                }
+                table.add(row);
+                changes[i] = 1;
+            }
+            return SQLITE_DONE;
+        }
+
+        @Override
+        void result_null(long context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        void result_text(long context, String val) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        void result_blob(long context, byte[] val) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        void result_double(long context, double val) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        void result_long(long context, long val) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        void result_int(long context, int val) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        void result_error(long context, String err) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        int backup(String dbName, String destFileName, ProgressObserver observer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        int restore(String dbName, String sourceFileName, ProgressObserver observer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        boolean[][] column_metadata(long stmt) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static final String INSERT = "insert into t (id, name, score) values (?, ?, ?)";
+
+    ScriptedDB db;
+    SQLiteConnection conn;
+
+    @BeforeEach
+    void open() throws SQLException {
+        db = new ScriptedDB();
+        conn = new SQLiteConnection("jdbc:sqlite:", ":memory:", new Hashtable(10), db);
+    }
+
+    static SQLiteBatch batch(int... ids) {
+        SQLiteBatch batch = new SQLiteBatch(3);
+        String[] names = new String[ids.length];
+        double[] scores = new double[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            names[i] = "n" + ids[i];
+            scores[i] = ids[i] / 2.0;
+        }
+        batch.setInts(1, ids);
+        batch.setStrings(2, names);
+        batch.setDoubles(3, scores);
+        batch.setRowCount(ids.length);
+        return batch;
+    }
+
+    @Test
+    public void shouldBindTheNullColumnsOfABatch() throws SQLException {
+        SQLiteBatch batch = new SQLiteBatch(3);
+        batch.setInts(1, new int[] { 1, 2, 3 });
+        batch.setStrings(2, new String[] { "a", null, "c" });
+        batch.setDoubles(3, new double[] { 1.5, 2.5, 3.5 });
+        batch.setNulls(3, new boolean[] { false, false, true });
+        batch.setRowCount(3);
+
+        PreparedStatement ps = conn.prepareStatement(INSERT);
+        assertArrayEquals(new int[] { 1, 1, 1 }, batch.execute(ps));
+        assertNull(db.pending);
+        assertEquals(3, db.rows.size());
+        assertArrayEquals(new Object[] { 1, "a", 1.5 }, db.rows.get(0));
+        assertArrayEquals(new Object[] { 2, null, 2.5 }, db.rows.get(1));
+        assertArrayEquals(new Object[] { 3, "c", null }, db.rows.get(2));
+    }
+
+    @Test
+    public void shouldRollBackTheBatchWhenARowFails() throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(INSERT);
+        BatchUpdateException e = assertThrows(BatchUpdateException.class, () -> batch(1, 2, 2, 3).execute(ps));
+
+        assertArrayEquals(new int[] { 1, 1 }, e.getUpdateCounts());
+        assertTrue(e.getMessage().startsWith("batch entry 2: UNIQUE constraint failed"), e.getMessage());
+        assertNull(db.pending);
+        assertTrue(db.rows.isEmpty());
+
+        assertArrayEquals(new int[] { 1, 1 }, batch(2, 3).execute(ps));
+        assertEquals(2, db.rows.size());
+    }
+
+    @Test
+    public void shouldRollBackTheBatchWhenTheCommitFails() throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(INSERT);
+        db.failCommit = true;
+        SQLException e = assertThrows(SQLException.class, () -> batch(1, 2).execute(ps));
+
+        assertTrue(e.getMessage().contains("database is locked"), e.getMessage());
+        assertNull(db.pending);
+        assertTrue(db.rows.isEmpty());
+
+        db.failCommit = false;
+        assertArrayEquals(new int[] { 1, 1 }, batch(1, 2).execute(ps));
+        assertEquals(2, db.rows.size());
+    }
+
+    @Test
+    public void shouldLeaveTheTransactionOfTheCallerOpen() throws SQLException {
+        Statement st = conn.createStatement();
+        st.execute("begin");
+        PreparedStatement ps = conn.prepareStatement(INSERT);
+
+        assertArrayEquals(new int[] { 1, 1 }, batch(1, 2).execute(ps));
+        assertEquals(2, db.pending.size());
+        assertTrue(db.rows.isEmpty());
+
+        BatchUpdateException e = assertThrows(BatchUpdateException.class, () -> batch(3, 1).execute(ps));
+        assertArrayEquals(new int[] { 1 }, e.getUpdateCounts());
+        assertEquals(3, db.pending.size()); // the rollback is up to the caller
+        assertTrue(db.rows.isEmpty());
+
+        st.execute("commit");
+        assertNull(db.pending);
+        assertEquals(3, db.rows.size());
+    }
+
+    @Test
+    public void shouldRunInTheTransactionOfTheConnectionWithoutAutoCommit() throws SQLException {
+        conn.setAutoCommit(false);
+        PreparedStatement ps = conn.prepareStatement(INSERT);
+
+        assertArrayEquals(new int[] { 1, 1, 1 }, batch(1, 2, 3).execute(ps));
+        assertEquals(3, db.pending.size());
+        assertTrue(db.rows.isEmpty());
+
+        conn.commit();
+        assertEquals(3, db.rows.size());
+    }
+}
@@ -0,0 +1,115 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+package totalcross.db.sqlite;
+
+import org.junit.jupiter.api.Test;
+
+import totalcross.db.sqlite.SQLiteBatchTest.ScriptedDB;
+import totalcross.sql.PreparedStatement;
+import totalcross.util.Hashtable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+
+public class StatementCacheTest {
+    static final String INSERT = "insert into t (id, name) values (?, ?)";
+    static final String UPDATE = "update t set name = ? where id = ?";
+    static final String DELETE = "delete from t where id = ?";
+
+    ScriptedDB db = new ScriptedDB();
+
+    SQLiteConnection open(String cacheSize) throws SQLException {
+        Hashtable prop = new Hashtable(10);
+        if (cacheSize != null) {
+            prop.put("statement_cache_size", cacheSize);
+        }
+        return new SQLiteConnection("jdbc:sqlite:", ":memory:", prop, db);
+    }
+
+    /** Returns the handle of a statement prepared by the connection. */
+    static long handle(PreparedStatement ps) {
+        return ((PrepStmt) ps).pointer;
+    }
+
+    @Test
+    public void shouldGiveTheHandleBackToTheCacheWhenClosed() throws SQLException {
+        SQLiteConnection conn = open(null);
+        PreparedStatement ps = conn.prepareStatement(INSERT);
+        long pointer = handle(ps);
+        ps.close();
+
+        assertFalse(db.finalized.contains(pointer));
+        assertEquals(1, conn.getStatementCacheSize());
+        assertEquals(1, conn.getStatementCacheMisses());
+        assertEquals(0, conn.getStatementCacheHits());
+    }
+
+    @Test
+    public void shouldReuseTheCachedHandleForTheSameSql() throws SQLException {
+        SQLiteConnection conn = open(null);
+        PreparedStatement ps = conn.prepareStatement(INSERT);
+        long pointer = handle(ps);
+        ps.close();
+        int prepared = db.prepared;
+
+        ps = conn.prepareStatement(INSERT);
+        assertEquals(pointer, handle(ps));
+        assertEquals(prepared, db.prepared);
+        assertEquals(1, conn.getStatementCacheHits());
+        assertEquals(0, conn.getStatementCacheSize()); // owned by the statement until it is closed
+
+        PreparedStatement other = conn.prepareStatement(INSERT);
+        assertNotEquals(pointer, handle(other));
+        assertEquals(prepared + 1, db.prepared);
+        ps.close();
+        long otherPointer = handle(other);
+        other.close();
+        assertTrue(db.finalized.contains(otherPointer)); // the cache already has a handle for this SQL
+        assertFalse(db.finalized.contains(pointer));
+    }
+
+    @Test
+    public void shouldFinalizeTheLeastRecentlyUsedHandleWhenFull() throws SQLException {
+        SQLiteConnection conn = open("2");
+        PreparedStatement insert = conn.prepareStatement(INSERT);
+        PreparedStatement update = conn.prepareStatement(UPDATE);
+        PreparedStatement delete = conn.prepareStatement(DELETE);
+        long insertPointer = handle(insert);
+        long updatePointer = handle(update);
+        long deletePointer = handle(delete);
+        insert.close();
+        update.close();
+        delete.close();
+
+        assertEquals(2, conn.getStatementCacheSize());
+        assertEquals(1, conn.getStatementCacheEvictions());
+        assertTrue(db.finalized.contains(insertPointer));
+        assertFalse(db.finalized.contains(updatePointer));
+        assertFalse(db.finalized.contains(deletePointer));
+
+        assertEquals(updatePointer, handle(conn.prepareStatement(UPDATE)));
+        assertNotEquals(insertPointer, handle(conn.prepareStatement(INSERT)));
+
+        conn.close();
+        assertTrue(db.finalized.contains(deletePointer));
+    }
+
+    @Test
+    public void shouldNotCacheWhenTheSizeIsZero() throws SQLException {
+        SQLiteConnection conn = open("0");
+        PreparedStatement ps = conn.prepareStatement(INSERT);
+        long pointer = handle(ps);
+        ps.close();
+
+        assertTrue(db.finalized.contains(pointer));
+        assertEquals(0, conn.getStatementCacheSize());
+
+        int prepared = db.prepared;
+        conn.prepareStatement(INSERT).close();
+        assertEquals(prepared + 1, db.prepared);
+        assertEquals(0, conn.getStatementCacheHits());
+        assertEquals(0, conn.getStatementCacheMisses());
+    }
+}
@@ -0,0 +1,288 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+package totalcross.json;
+
+import org.junit.jupiter.api.Test;
+
+import totalcross.io.ByteArrayStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class JSONFactoryTest {
+    public static class Item {
+        private int id;
+        private String name;
+        private Double price;
+        private boolean active;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Double getPrice() {
+            return price;
+        }
+
+        public void setPrice(Double price) {
+            this.price = price;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void setActive(boolean active) {
+            this.active = active;
+        }
+    }
+
+    public static class Order {
+        private long orderNumber;
+        private Item item;
+        private int[] quantities;
+        private String[] tags;
+
+        public long getOrderNumber() {
+            return orderNumber;
+        }
+
+        public void setOrderNumber(long orderNumber) {
+            this.orderNumber = orderNumber;
+        }
+
+        public Item getItem() {
+            return item;
+        }
+
+        public void setItem(Item item) {
+            this.item = item;
+        }
+
+        public int[] getQuantities() {
+            return quantities;
+        }
+
+        public void setQuantities(int[] quantities) {
+            this.quantities = quantities;
+        }
+
+        public String[] getTags() {
+            return tags;
+        }
+
+        public void setTags(String[] tags) {
+            this.tags = tags;
+        }
+    }
+
+    /** A bean with setters of primitive types which are not bound. */
+    public static class Unbound {
+        private int id;
+        private float ratio = 7;
+        private short small = 7;
+        private byte tiny = 7;
+        private char letter = 'z';
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public float getRatio() {
+            return ratio;
+        }
+
+        public void setRatio(float ratio) {
+            this.ratio = ratio;
+        }
+
+        public short getSmall() {
+            return small;
+        }
+
+        public void setSmall(short small) {
+            this.small = small;
+        }
+
+        public byte getTiny() {
+            return tiny;
+        }
+
+        public void setTiny(byte tiny) {
+            this.tiny = tiny;
+        }
+
+        public char getLetter() {
+            return letter;
+        }
+
+        public void setLetter(char letter) {
+            this.letter = letter;
+        }
+    }
+
+    /** A bean with a member of an inner class, which is created through its outer instance. */
+    public static class Outer {
+        private Inner inner;
+
+        public class Inner {
+            private int value;
+
+            public int getValue() {
+                return value;
+            }
+
+            public void setValue(int value) {
+                this.value = value;
+            }
+
+            Outer outer() {
+                return Outer.this;
+            }
+        }
+
+        public Inner getInner() {
+            return inner;
+        }
+
+        public void setInner(Inner inner) {
+            this.inner = inner;
+        }
+    }
+
+    private static <T> List<T> parseStream(String json, Class<T> classOfT) throws Exception {
+        List<T> list = new ArrayList<T>();
+        JSONFactory.parseStream(new ByteArrayStream(json.getBytes("UTF-8")), classOfT, list::add);
+        return list;
+    }
+
+    @Test
+    void shouldBindTheSameValuesAsTheTreeParser() throws Exception {
+        String json = "{\"orderNumber\":12345678901,\"item\":{\"id\":7,\"name\":\"pen\",\"price\":1.5,\"active\":true},"
+                + "\"unknown\":{\"x\":[1,2]}}";
+        Order tree = JSONFactory.parse(json, Order.class);
+        List<Order> orders = parseStream(json, Order.class);
+        assertEquals(1, orders.size());
+        Order stream = orders.get(0);
+
+        assertEquals(12345678901L, tree.getOrderNumber());
+        assertEquals(tree.getOrderNumber(), stream.getOrderNumber());
+        assertEquals(tree.getItem().getId(), stream.getItem().getId());
+        assertEquals(tree.getItem().getName(), stream.getItem().getName());
+        assertEquals(tree.getItem().getPrice(), stream.getItem().getPrice());
+        assertEquals(tree.getItem().isActive(), stream.getItem().isActive());
+    }
+
+    @Test
+    void shouldBindPrimitiveArraysAndAlternativeNames() throws Exception {
+        List<Order> orders = parseStream("{\"order_number\":3,\"quantities\":[1,2,3],\"tags\":[\"a\",\"b\"]}",
+                Order.class);
+        assertEquals(3, orders.get(0).getOrderNumber());
+        assertArrayEquals(new int[] { 1, 2, 3 }, orders.get(0).getQuantities());
+        assertArrayEquals(new String[] { "a", "b" }, orders.get(0).getTags());
+
+        orders = parseStream("{\"ordernumber\":4}", Order.class);
+        assertEquals(4, orders.get(0).getOrderNumber());
+    }
+
+    @Test
+    void shouldStreamTheElementsOfAnArray() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"item ").append(i)
+                    .append("\"}");
+        }
+        json.append(",null]");
+        List<Item> items = parseStream(json.toString(), Item.class);
+        assertEquals(500, items.size()); // null elements are skipped
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, items.get(i).getId());
+            assertEquals("item " + i, items.get(i).getName());
+        }
+    }
+
+    @Test
+    void shouldIgnoreSettersOfUnboundTypes() throws Exception {
+        String json = "{\"id\":5,\"ratio\":0.5,\"small\":3,\"tiny\":2,\"letter\":\"a\"}";
+
+        Unbound tree = JSONFactory.parse(json, Unbound.class);
+        List<Unbound> list = parseStream(json, Unbound.class);
+        assertEquals(1, list.size());
+        Unbound stream = list.get(0);
+
+        // both paths bind the int and leave the other fields untouched
+        assertEquals(5, tree.getId());
+        assertEquals(5, stream.getId());
+        assertEquals(tree.getRatio(), stream.getRatio());
+        assertEquals(7f, stream.getRatio());
+        assertEquals(tree.getSmall(), stream.getSmall());
+        assertEquals(tree.getTiny(), stream.getTiny());
+        assertEquals(tree.getLetter(), stream.getLetter());
+    }
+
+    @Test
+    void shouldCreateInnerClassesThroughTheirOuterObject() throws Exception {
+        String json = "[{\"inner\":{\"value\":1}},{\"inner\":{\"value\":2}}]";
+        List<Outer> list = parseStream(json, Outer.class);
+        assertEquals(2, list.size());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(i + 1, list.get(i).getInner().getValue());
+            assertSame(list.get(i), list.get(i).getInner().outer());
+        }
+        Outer tree = JSONFactory.parse("{\"inner\":{\"value\":3}}", Outer.class);
+        assertEquals(3, tree.getInner().getValue());
+        assertSame(tree, tree.getInner().outer());
+    }
+
+    @Test
+    void shouldParseFromSeveralThreads() throws Exception {
+        Class<?>[] classes = { Item.class, Order.class, Unbound.class, Outer.class };
+        Thread[] threads = new Thread[8];
+        Throwable[] errors = new Throwable[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int id = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 200; j++) {
+                        Object o = parseStream("{\"id\":" + j + "}", classes[(id + j) % classes.length]).get(0);
+                        if (o instanceof Item) {
+                            assertEquals(j, ((Item) o).getId());
+                        }
+                    }
+                } catch (Throwable t) {
+                    errors[id] = t;
+                }
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            assertNull(errors[i]);
+        }
+    }
+
+    @Test
+    void shouldRejectMalformedStreams() {
+        assertThrows(JSONException.class, () -> parseStream("[{\"id\":1},{\"id\":]", Item.class));
+        assertThrows(JSONException.class, () -> parseStream("{\"id\":\"x\"}", Item.class));
+    }
+}
@@ -0,0 +1,185 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+package totalcross.json;
+
+import org.junit.jupiter.api.Test;
+
+import totalcross.io.ByteArrayStream;
+import totalcross.io.IOException;
+import totalcross.io.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.UnsupportedEncodingException;
+
+public class JSONReaderTest {
+    private static JSONReader reader(String json, int bufferSize) throws UnsupportedEncodingException {
+        return new JSONReader(new ByteArrayStream(json.getBytes("UTF-8")), bufferSize);
+    }
+
+    @Test
+    void shouldReturnTheTokensInOrder() throws UnsupportedEncodingException {
+        String json = " {\"a\" : [1, -2.5e3, \"x\"],\n\t\"b\":true, \"c\":null, \"d\":{}} ";
+        int[] types = { JSONReader.BEGIN_OBJECT, JSONReader.NAME, JSONReader.BEGIN_ARRAY, JSONReader.NUMBER,
+                JSONReader.NUMBER, JSONReader.STRING, JSONReader.END_ARRAY, JSONReader.NAME, JSONReader.BOOLEAN,
+                JSONReader.NAME, JSONReader.NULL, JSONReader.NAME, JSONReader.BEGIN_OBJECT, JSONReader.END_OBJECT,
+                JSONReader.END_OBJECT, JSONReader.END_DOCUMENT };
+        String[] texts = { null, "a", null, "1", "-2.5e3", "x", null, "b", "true", "c", "null", "d", null, null, null,
+                null };
+
+        // the buffer sizes make the tokens cross the buffer boundaries
+        for (int bufferSize = 1; bufferSize <= 64; bufferSize *= 2) {
+            JSONReader r = reader(json, bufferSize);
+            for (int i = 0; i < types.length; i++) {
+                assertEquals(types[i], r.peek(), "token " + i + " with buffer " + bufferSize);
+                assertEquals(types[i], r.nextToken());
+                if (texts[i] != null) {
+                    assertEquals(texts[i], r.getText());
+                }
+            }
+        }
+    }
+
+    @Test
+    void shouldReadTypedValues() throws UnsupportedEncodingException {
+        JSONReader r = reader("{\"i\":-42,\"l\":9007199254740993,\"d\":0.125,\"s\":\"17\",\"b\":false,\"n\":null,"
+                + "\"a\":[true,\"t\"]}", 7);
+        r.beginObject();
+        assertTrue(r.hasNext());
+        assertEquals("i", r.nextName());
+        assertEquals(-42, r.nextInt());
+        assertEquals("l", r.nextName());
+        assertEquals(9007199254740993L, r.nextLong());
+        assertEquals("d", r.nextName());
+        assertEquals(0.125, r.nextDouble());
+        assertEquals("s", r.nextName());
+        assertEquals(17, r.nextInt()); // strings with numbers are accepted
+        assertEquals("b", r.nextName());
+        assertFalse(r.nextBoolean());
+        assertEquals("n", r.nextName());
+        r.nextNull();
+        assertEquals("a", r.nextName());
+        r.beginArray();
+        assertEquals("true", r.nextString()); // booleans are accepted as text
+        assertEquals("t", r.nextString());
+        assertFalse(r.hasNext());
+        r.endArray();
+        assertFalse(r.hasNext());
+        r.endObject();
+        assertEquals(JSONReader.END_DOCUMENT, r.peek());
+    }
+
+    @Test
+    void shouldDecodeEscapesAndUtf8() throws UnsupportedEncodingException {
+        String expected = "caf\u00e9 \u4e2d \"q\" \\ / \b\f\n\r\t \ud83d\ude00 \u4e2d";
+        String json = "[\"caf\u00e9 \u4e2d \\\"q\\\" \\\\ \\/ \\b\\f\\n\\r\\t \ud83d\ude00 \\u4e2d\", 'single']";
+        for (int bufferSize = 1; bufferSize <= 16; bufferSize++) {
+            JSONReader r = reader(json, bufferSize);
+            r.beginArray();
+            assertEquals(expected, r.nextString(), "buffer " + bufferSize);
+            assertEquals("single", r.nextString());
+            r.endArray();
+        }
+    }
+
+    @Test
+    void shouldSkipValues() throws UnsupportedEncodingException {
+        JSONReader r = reader("{\"skip\":{\"a\":[1,[2,{\"b\":\"}]\"}]],\"c\":null},\"keep\":3,\"tail\":[4]}", 5);
+        r.beginObject();
+        assertEquals("skip", r.nextName());
+        r.skipValue();
+        assertEquals("keep", r.nextName());
+        assertEquals(3, r.nextInt());
+        r.skipValue(); // the name and its value
+        assertFalse(r.hasNext());
+        r.endObject();
+        assertEquals(JSONReader.END_DOCUMENT, r.peek());
+    }
+
+    @Test
+    void shouldNotSkipTheEndOfAnArrayOrObject() throws UnsupportedEncodingException {
+        JSONReader r = reader("[{\"a\":1}]", 5);
+        r.beginArray();
+        r.beginObject();
+        r.skipValue();
+        assertThrows(IllegalStateException.class, () -> r.skipValue());
+        r.endObject();
+        assertThrows(IllegalStateException.class, () -> r.skipValue());
+        r.endArray();
+        assertEquals(JSONReader.END_DOCUMENT, r.peek());
+    }
+
+    @Test
+    void shouldReadConsecutiveDocuments() throws UnsupportedEncodingException {
+        JSONReader r = reader("{\"id\":1}\n{\"id\":2}\n", 3);
+        for (int id = 1; id <= 2; id++) {
+            r.beginObject();
+            assertEquals("id", r.nextName());
+            assertEquals(id, r.nextInt());
+            r.endObject();
+        }
+        assertEquals(JSONReader.END_DOCUMENT, r.peek());
+    }
+
+    @Test
+    void shouldRejectNumbersOutOfRange() throws UnsupportedEncodingException {
+        JSONReader r = reader("[2147483648, \"abc\", 1.5]", 8);
+        r.beginArray();
+        assertThrows(JSONException.class, () -> r.nextInt());
+        assertEquals(2147483648L, r.nextLong()); // the value is still there
+        assertThrows(JSONException.class, () -> r.nextDouble());
+        assertEquals("abc", r.nextString());
+        assertEquals(1.5, r.nextDouble());
+        r.endArray();
+    }
+
+    @Test
+    void shouldRejectMalformedText() {
+        String[] malformed = { "{\"a\" 1}", "[1 2]", "{\"a\":1,}", "[", "{\"a\":tru}", "\"abc", "[1,]", "{1:2}",
+                "]", "{\"a\":}", "[\"\\x\"]", "[\"\\u12\"]" };
+        for (String json : malformed) {
+            assertThrows(JSONException.class, () -> {
+                JSONReader r = reader(json, 4);
+                while (r.nextToken() != JSONReader.END_DOCUMENT) {
+                }
+            }, json);
+        }
+    }
+
+    @Test
+    void shouldRejectUnexpectedTokens() throws UnsupportedEncodingException {
+        JSONReader r = reader("{\"a\":[1]}", 16);
+        assertThrows(JSONException.class, () -> r.beginArray());
+        r.beginObject();
+        assertThrows(JSONException.class, () -> r.nextString());
+        assertEquals("a", r.nextName());
+        assertThrows(JSONException.class, () -> r.endObject());
+        assertThrows(JSONException.class, () -> r.nextBoolean());
+        r.beginArray();
+        assertThrows(JSONException.class, () -> r.nextNull());
+        assertEquals(1, r.nextInt());
+        r.endArray();
+        r.endObject();
+    }
+
+    @Test
+    void shouldWrapStreamErrors() {
+        Stream failing = new Stream() {
+            @Override
+            public int readBytes(byte[] buf, int start, int count) throws IOException {
+                throw new IOException("broken");
+            }
+
+            @Override
+            public int writeBytes(byte[] buf, int start, int count) throws IOException {
+                return 0;
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        };
+        assertThrows(JSONException.class, () -> new JSONReader(failing).peek());
+    }
+}
@@ -0,0 +1,125 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+package totalcross.json;
+
+import org.junit.jupiter.api.Test;
+
+import totalcross.io.ByteArrayStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JSONStreamWriterTest {
+    public static class Flag {
+        private boolean on = true;
+        private String label = "flag";
+
+        public boolean isOn() {
+            return on;
+        }
+
+        public boolean getOn() {
+            return on;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getNothing() {
+            return null;
+        }
+    }
+
+    private static String text(ByteArrayStream stream) throws UnsupportedEncodingException {
+        return new String(stream.getBuffer(), 0, stream.getPos(), "UTF-8");
+    }
+
+    @Test
+    void shouldQuoteStringsLikeJSONObject() throws UnsupportedEncodingException {
+        String[] strings = { "", "plain", "quote \" and \\ backslash", "</script>", "\b\f\n\r\t", "\u0001\u001f\u007f",
+                "\u0080\u009f\u00a0", "\u2000\u2028\u2100", "caf\u00e9 \u4e2d", "\ud83d\ude00" };
+        for (String s : strings) {
+            ByteArrayStream out = new ByteArrayStream(64);
+            JSONStreamWriter writer = new JSONStreamWriter(out, 32);
+            writer.array().value(s).endArray();
+            assertEquals("[" + JSONObject.quote(s) + "]", text(out));
+        }
+    }
+
+    @Test
+    void shouldRoundTripThroughJSONObject() throws UnsupportedEncodingException {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("m", "v");
+        map.put("skipped", null);
+        List<Object> list = new ArrayList<Object>();
+        list.add(1);
+        list.add("two");
+        list.add(null);
+
+        // a small buffer makes the writer flush in the middle of the values
+        ByteArrayStream out = new ByteArrayStream(16);
+        JSONStreamWriter writer = new JSONStreamWriter(out, 32);
+        writer.object();
+        writer.key("int").value(-123456789L);
+        writer.key("min").value(Long.MIN_VALUE);
+        writer.key("double").value(0.5);
+        writer.key("bool").value(true);
+        writer.key("string").value("a long string with \"quotes\", \u00e9 and \u4e2d which crosses the buffer");
+        writer.key("null").value((String) null);
+        writer.key("map").value(map);
+        writer.key("list").value(list);
+        writer.key("intArray").value(new int[] { 1, 2, 3 });
+        writer.key("json").value(new JSONObject("{\"x\":[1,{\"y\":null}]}"));
+        writer.key("empty").array().endArray();
+        writer.endObject();
+
+        JSONObject o = new JSONObject(text(out));
+        assertEquals(-123456789L, o.getLong("int"));
+        assertEquals(Long.MIN_VALUE, o.getLong("min"));
+        assertEquals(0.5, o.getDouble("double"));
+        assertTrue(o.getBoolean("bool"));
+        assertEquals("a long string with \"quotes\", \u00e9 and \u4e2d which crosses the buffer", o.getString("string"));
+        assertTrue(o.isNull("null"));
+        assertEquals("{\"m\":\"v\"}", o.getJSONObject("map").toString());
+        assertEquals("[1,\"two\",null]", o.getJSONArray("list").toString());
+        assertEquals("[1,2,3]", o.getJSONArray("intArray").toString());
+        assertEquals("{\"x\":[1,{\"y\":null}]}", o.getJSONObject("json").toString());
+        assertEquals(0, o.getJSONArray("empty").length());
+    }
+
+    @Test
+    void shouldRejectMisplacedValues() {
+        JSONStreamWriter writer = new JSONStreamWriter(new ByteArrayStream(64));
+        assertThrows(JSONException.class, () -> writer.key("a"));
+        writer.object();
+        assertThrows(JSONException.class, () -> writer.value(1));
+        assertThrows(JSONException.class, () -> writer.key(null));
+        writer.key("a");
+        assertThrows(JSONException.class, () -> writer.value(Double.NaN));
+        assertThrows(JSONException.class, () -> writer.endArray());
+        writer.value(1);
+        writer.endObject();
+        assertThrows(JSONException.class, () -> writer.array());
+    }
+
+    @Test
+    void shouldWriteBeansLikeJSONObject() throws Exception {
+        ByteArrayStream out = new ByteArrayStream(64);
+        Flag[] flags = { new Flag(), new Flag() };
+        JSONFactory.write(flags, out);
+        String json = text(out);
+
+        // isOn() and getOn() give a single key in each object
+        assertEquals(2, json.split("\"on\"", -1).length - 1);
+        JSONObject first = new JSONArray(json).getJSONObject(0);
+        assertEquals(new JSONObject(new Flag()).toString(), first.toString());
+        assertEquals(2, first.length());
+    }
+}
@@ -0,0 +1,108 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+package totalcross.net;
+
+import org.junit.jupiter.api.Test;
+
+import totalcross.io.IOException;
+import totalcross.net.HttpStreamTest.CannedFactory;
+import totalcross.net.HttpStreamTest.CannedSocket;
+import totalcross.sys.Vm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpConnectionPoolTest {
+    @Test
+    void shouldGiveBackTheMostRecentConnectionOfTheHost() throws IOException {
+        HttpConnectionPool pool = new HttpConnectionPool();
+        CannedSocket a = new CannedSocket(), b = new CannedSocket(), c = new CannedSocket();
+        pool.release("h1", a);
+        pool.release("h1", b);
+        pool.release("h2", c);
+        assertEquals(3, pool.getIdleCount());
+        assertSame(b, pool.take("h1"));
+        assertSame(a, pool.take("h1"));
+        assertNull(pool.take("h1"));
+        assertSame(c, pool.take("h2"));
+        assertEquals(3, pool.getReuseCount());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    void shouldCloseTheOldestConnectionsAboveTheLimit() throws IOException {
+        HttpConnectionPool pool = new HttpConnectionPool();
+        pool.maxConnectionsPerHost = 2;
+        CannedSocket[] sockets = { new CannedSocket(), new CannedSocket(), new CannedSocket() };
+        for (CannedSocket socket : sockets) {
+            pool.release("h", socket);
+        }
+        assertTrue(sockets[0].closed);
+        assertFalse(sockets[1].closed);
+        assertFalse(sockets[2].closed);
+        assertEquals(2, pool.getIdleCount());
+
+        pool.clear();
+        assertTrue(sockets[1].closed);
+        assertTrue(sockets[2].closed);
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    void shouldCloseIdleConnectionsAfterTheTimeout() throws IOException {
+        HttpConnectionPool pool = new HttpConnectionPool();
+        pool.idleTimeout = 20;
+        CannedSocket socket = new CannedSocket();
+        pool.release("h", socket);
+        Vm.sleep(50);
+        assertNull(pool.take("h"));
+        assertTrue(socket.closed);
+        assertEquals(0, pool.getReuseCount());
+    }
+
+    @Test
+    void shouldCountOpenedConnections() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool();
+        CannedFactory factory = new CannedFactory();
+        factory.sockets.add(new CannedSocket());
+        assertSame(factory.sockets.get(0), pool.open(factory, "example.com", 80, 1000));
+        assertEquals(1, pool.getOpenCount());
+        assertEquals(0, pool.getReuseRate());
+        pool.release("h", factory.sockets.get(0));
+        pool.take("h");
+        assertEquals(0.5, pool.getReuseRate());
+
+        // the connections of different socket factories are not mixed
+        assertNotEquals(HttpConnectionPool.getKey(factory, "example.com", 80),
+                HttpConnectionPool.getKey(SocketFactory.getDefault(), "example.com", 80));
+    }
+
+    @Test
+    void shouldKeepTheConnectionsOfConcurrentThreads() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool();
+        pool.maxConnectionsPerHost = 1000;
+        Thread[] threads = new Thread[4];
+        HttpConnectionPool[] defaults = new HttpConnectionPool[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int id = i;
+            threads[i] = new Thread(() -> {
+                defaults[id] = HttpConnectionPool.getDefault();
+                for (int j = 0; j < 500; j++) {
+                    pool.release("h" + (j & 1), new CannedSocket());
+                    if ((j & 3) == 3) {
+                        assertNotNull(pool.take("h" + (j & 1)));
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threads.length * 375, pool.getIdleCount());
+        assertEquals(threads.length * 125, pool.getReuseCount());
+        for (HttpConnectionPool p : defaults) {
+            assertSame(HttpConnectionPool.getDefault(), p);
+        }
+    }
+}
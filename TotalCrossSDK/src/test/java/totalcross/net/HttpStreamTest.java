@@ -0,0 +1,469 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+package totalcross.net;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import totalcross.io.ByteArrayStream;
+import totalcross.io.IOException;
+import totalcross.io.Stream;
+import totalcross.sys.Vm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class HttpStreamTest {
+    /**
+     * A socket which answers each request with a canned response, a few bytes at a time. The request is sent again if
+     * the socket is written after a response was read.
+     */
+    static class CannedSocket extends Socket {
+        final List<byte[]> responses = new ArrayList<byte[]>();
+        final ByteArrayStream written = new ByteArrayStream(256);
+        int requests;
+        int pos;
+        boolean reading;
+        boolean closed;
+        /** The number of bytes of a response after which the socket fails, or -1. */
+        int failAfter = -1;
+
+        CannedSocket(String... responses) {
+            for (String response : responses) {
+                this.responses.add(response.getBytes());
+            }
+        }
+
+        CannedSocket(byte[] response) {
+            responses.add(response);
+        }
+
+        @Override
+        public int readBytes(byte[] buf, int start, int count) throws IOException {
+            reading = true;
+            if (requests == 0 || requests > responses.size()) {
+                return -1; // closed by the server
+            }
+            if (failAfter >= 0 && pos >= failAfter) {
+                throw new IOException("Connection reset");
+            }
+            byte[] response = responses.get(requests - 1);
+            int n = Math.min(Math.min(count, 5), response.length - pos);
+            if (failAfter >= 0) {
+                n = Math.min(n, failAfter - pos);
+            }
+            if (n <= 0) {
+                return -1;
+            }
+            Vm.arrayCopy(response, pos, buf, start, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int writeBytes(byte[] buf, int start, int count) throws IOException {
+            if (closed) {
+                throw new IOException("The socket is closed.");
+            }
+            if (requests == 0 || reading) {
+                requests++;
+                reading = false;
+                pos = 0;
+            }
+            return written.writeBytes(buf, start, count);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+        }
+
+        String request() {
+            return new String(written.getBuffer(), 0, written.getPos());
+        }
+    }
+
+    /** Gives the canned sockets in order. */
+    static class CannedFactory extends SocketFactory {
+        final List<CannedSocket> sockets = new ArrayList<CannedSocket>();
+        int created;
+
+        @Override
+        public Socket createSocket(String host, int port, int timeout) throws UnknownHostException, IOException {
+            if (created >= sockets.size()) {
+                throw new IOException("Connection refused");
+            }
+            return sockets.get(created++);
+        }
+    }
+
+    private CannedFactory factory;
+    private HttpConnectionPool pool;
+
+    @BeforeEach
+    void setUp() {
+        factory = new CannedFactory();
+        pool = new HttpConnectionPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.clear();
+    }
+
+    private HttpStream.Options options(boolean pooled) {
+        HttpStream.Options options = new HttpStream.Options();
+        options.socketFactory = factory;
+        options.connectionPool = pooled ? pool : null;
+        return options;
+    }
+
+    private static String readAll(Stream stream) throws IOException {
+        ByteArrayStream out = new ByteArrayStream(64);
+        byte[] buf = new byte[7];
+        int n;
+        while ((n = stream.readBytes(buf, 0, buf.length)) > 0) {
+            out.writeBytes(buf, 0, n);
+        }
+        return new String(out.getBuffer(), 0, out.getPos());
+    }
+
+    private static String ok(String body) {
+        return "HTTP/1.1 200 OK\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] c = new byte[a.length + b.length];
+        Vm.arrayCopy(a, 0, c, 0, a.length);
+        Vm.arrayCopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    private static byte[] gzip(String text) throws java.io.IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gz = new GZIPOutputStream(out);
+        gz.write(text.getBytes());
+        gz.close();
+        return out.toByteArray();
+    }
+
+    private static String gunzip(byte[] data, int start, int length) throws java.io.IOException {
+        GZIPInputStream gz = new GZIPInputStream(new ByteArrayInputStream(data, start, length));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[256];
+        int n;
+        while ((n = gz.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray());
+    }
+
+    /** Some text which compresses well and spans several reads. */
+    private static String text() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            sb.append("line ").append(i).append(" of the compressed body\n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void shouldDecodeChunkedResponses() throws Exception {
+        CannedSocket socket = new CannedSocket("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5;name=value\r\nhello\r\n7\r\n, world\r\nA\r\n0123456789\r\n0\r\nTrailer: x\r\n\r\n");
+        factory.sockets.add(socket);
+        HttpStream hs = new HttpStream(new URI("http://example.com/chunked"), options(true));
+        assertEquals(200, hs.responseCode);
+        assertEquals("hello, world0123456789", readAll(hs));
+        hs.close();
+        assertFalse(socket.closed); // the whole body was read, so the connection is kept
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    void shouldRejectMalformedChunks() throws Exception {
+        factory.sockets.add(new CannedSocket("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhelloX\r\n0\r\n\r\n"));
+        factory.sockets.add(new CannedSocket("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\nhello\r\n"));
+        factory.sockets.add(new CannedSocket("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhel"));
+        for (int i = 0; i < 3; i++) {
+            HttpStream hs = new HttpStream(new URI("http://example.com/bad"), options(true));
+            assertThrows(IOException.class, () -> readAll(hs));
+            hs.close();
+            assertTrue(factory.sockets.get(i).closed);
+        }
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    void shouldReuseConnectionsOfThePool() throws Exception {
+        CannedSocket socket = new CannedSocket(ok("first"), ok("second"), ok("third"));
+        factory.sockets.add(socket);
+        String[] bodies = { "first", "second", "third" };
+        for (String body : bodies) {
+            HttpStream hs = new HttpStream(new URI("http://example.com/" + body), options(true));
+            assertEquals(body, readAll(hs));
+            hs.close();
+        }
+        assertEquals(1, factory.created);
+        assertEquals(1, pool.getOpenCount());
+        assertEquals(2, pool.getReuseCount());
+        assertTrue(socket.request().startsWith("GET /first HTTP/1.1\r\nConnection: keep-alive\r\n"));
+        assertTrue(socket.request().indexOf("GET /third HTTP/1.1\r\n") > 0);
+    }
+
+    @Test
+    void shouldNotReuseConnectionsWhoseBodyWasNotRead() throws Exception {
+        factory.sockets.add(new CannedSocket(ok("unread body")));
+        factory.sockets.add(new CannedSocket("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 2\r\n\r\nok"));
+        HttpStream hs = new HttpStream(new URI("http://example.com/"), options(true));
+        hs.close();
+        hs = new HttpStream(new URI("http://example.com/"), options(true));
+        assertEquals("ok", readAll(hs));
+        hs.close();
+        assertTrue(factory.sockets.get(0).closed);
+        assertTrue(factory.sockets.get(1).closed);
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    void shouldRetryIdempotentRequestsOnStaleConnections() throws Exception {
+        CannedSocket stale = new CannedSocket(ok("first")); // closed by the server after the first response
+        factory.sockets.add(stale);
+        factory.sockets.add(new CannedSocket(ok("second")));
+        HttpStream hs = new HttpStream(new URI("http://example.com/"), options(true));
+        assertEquals("first", readAll(hs));
+        hs.close();
+
+        HttpStream.Options options = options(true);
+        options.httpType = HttpStream.DELETE;
+        hs = new HttpStream(new URI("http://example.com/"), options);
+        assertEquals("second", readAll(hs));
+        hs.close();
+        assertTrue(stale.closed);
+        assertEquals(2, factory.created);
+        assertTrue(factory.sockets.get(1).request().startsWith("DELETE / HTTP/1.1\r\n"));
+    }
+
+    @Test
+    void shouldNotRetryPostsOnStaleConnections() throws Exception {
+        CannedSocket stale = new CannedSocket(ok("first"));
+        factory.sockets.add(stale);
+        factory.sockets.add(new CannedSocket(ok("second")));
+        HttpStream hs = new HttpStream(new URI("http://example.com/"), options(true));
+        assertEquals("first", readAll(hs));
+        hs.close();
+
+        HttpStream.Options options = options(true);
+        options.httpType = HttpStream.POST;
+        options.data = "a=1";
+        assertThrows(IOException.class, () -> new HttpStream(new URI("http://example.com/"), options));
+        assertTrue(stale.closed);
+        assertEquals(1, factory.created);
+        assertTrue(stale.request().indexOf("POST / HTTP/1.1\r\n") > 0);
+    }
+
+    @Test
+    void shouldNotRetryChunkedUploadsOnStaleConnections() throws Exception {
+        factory.sockets.add(new CannedSocket(ok("first")));
+        factory.sockets.add(new CannedSocket(ok("second")));
+        HttpStream hs = new HttpStream(new URI("http://example.com/"), options(true));
+        readAll(hs);
+        hs.close();
+
+        int[] calls = new int[1];
+        HttpStream.Options options = options(true);
+        options.httpType = HttpStream.PUT;
+        options.setChunkedContent(out -> {
+            calls[0]++;
+            out.writeBytes("body".getBytes(), 0, 4);
+        });
+        assertThrows(IOException.class, () -> new HttpStream(new URI("http://example.com/"), options));
+        assertEquals(1, calls[0]);
+        assertEquals(1, factory.created);
+    }
+
+    @Test
+    void shouldNotRetryWhenTheResponseStarted() throws Exception {
+        CannedSocket socket = new CannedSocket(ok("first"), ok("second"));
+        factory.sockets.add(socket);
+        factory.sockets.add(new CannedSocket(ok("third")));
+        HttpStream hs = new HttpStream(new URI("http://example.com/"), options(true));
+        readAll(hs);
+        hs.close();
+
+        socket.failAfter = 8; // "HTTP/1.1", then the connection is reset
+        assertThrows(IOException.class, () -> new HttpStream(new URI("http://example.com/"), options(true)));
+        assertTrue(socket.closed);
+        assertEquals(1, factory.created);
+    }
+
+    @Test
+    void shouldSendChunkedContent() throws Exception {
+        CannedSocket socket = new CannedSocket(ok("done"));
+        factory.sockets.add(socket);
+        HttpStream.Options options = options(false);
+        options.httpType = HttpStream.POST;
+        options.setChunkedContent(out -> {
+            byte[] big = new byte[5000];
+            for (int i = 0; i < big.length; i++) {
+                big[i] = (byte) ('a' + i % 26);
+            }
+            out.writeBytes("{\"a\":1}".getBytes(), 0, 7);
+            out.writeBytes(big, 0, big.length);
+        });
+        HttpStream hs = new HttpStream(new URI("http://example.com/upload"), options);
+        assertEquals("done", readAll(hs));
+        hs.close();
+
+        String request = socket.request();
+        assertTrue(request.startsWith("POST /upload HTTP/1.1\r\n"));
+        assertTrue(request.indexOf("Transfer-Encoding: chunked\r\n") > 0);
+        assertEquals(-1, request.indexOf("Content-Length"));
+        assertTrue(request.endsWith("\r\n0\r\n\r\n"));
+
+        // decodes the chunks of the body
+        int pos = request.indexOf("\r\n\r\n") + 4;
+        StringBuilder body = new StringBuilder();
+        while (true) {
+            int eol = request.indexOf("\r\n", pos);
+            int size = Integer.parseInt(request.substring(pos, eol), 16);
+            if (size == 0) {
+                break;
+            }
+            body.append(request, eol + 2, eol + 2 + size);
+            assertEquals("\r\n", request.substring(eol + 2 + size, eol + 4 + size));
+            pos = eol + 4 + size;
+        }
+        assertEquals(5007, body.length());
+        assertTrue(body.toString().startsWith("{\"a\":1}abc"));
+    }
+
+    @Test
+    void shouldDecodeGzipResponses() throws Exception {
+        String text = text();
+        byte[] body = gzip(text);
+        CannedSocket socket = new CannedSocket(concat(("HTTP/1.1 200 OK\r\nContent-Encoding: gzip\r\nContent-Length: "
+                + body.length + "\r\n\r\n").getBytes(), body));
+        factory.sockets.add(socket);
+        HttpStream.Options options = options(true);
+        options.acceptCompressedContent = true;
+        HttpStream hs = new HttpStream(new URI("http://example.com/"), options);
+        assertEquals(text, readAll(hs));
+        hs.close();
+        assertTrue(socket.request().indexOf("Accept-Encoding: gzip, deflate\r\n") > 0);
+        assertFalse(socket.closed);
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    void shouldDecodeDeflateResponses() throws Exception {
+        String text = text();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeflaterOutputStream zlib = new DeflaterOutputStream(out);
+        zlib.write(text.getBytes());
+        zlib.close();
+        byte[] body = out.toByteArray();
+        factory.sockets.add(new CannedSocket(concat(("HTTP/1.1 200 OK\r\nContent-Encoding: deflate\r\nContent-Length: "
+                + body.length + "\r\n\r\n").getBytes(), body)));
+        HttpStream.Options options = options(false);
+        options.acceptCompressedContent = true;
+        HttpStream hs = new HttpStream(new URI("http://example.com/"), options);
+        assertEquals(text, readAll(hs));
+        hs.close();
+    }
+
+    @Test
+    void shouldDecodeGzipOverChunkedResponses() throws Exception {
+        String text = text();
+        byte[] body = gzip(text);
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        chunks.write("HTTP/1.1 200 OK\r\nContent-Encoding: gzip\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes());
+        for (int i = 0; i < body.length; i += 37) {
+            int n = Math.min(37, body.length - i);
+            chunks.write((Integer.toHexString(n) + "\r\n").getBytes());
+            chunks.write(body, i, n);
+            chunks.write("\r\n".getBytes());
+        }
+        chunks.write("0\r\n\r\n".getBytes());
+        CannedSocket socket = new CannedSocket(chunks.toByteArray());
+        factory.sockets.add(socket);
+        HttpStream.Options options = options(true);
+        options.acceptCompressedContent = true;
+        HttpStream hs = new HttpStream(new URI("http://example.com/"), options);
+        assertEquals(text, readAll(hs));
+        hs.close();
+        assertFalse(socket.closed); // the last chunk was read when the stream was closed
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    void shouldNotDecodeResponsesWhichWereNotAsked() throws Exception {
+        factory.sockets.add(new CannedSocket("HTTP/1.1 200 OK\r\nContent-Encoding: gzip\r\nContent-Length: 5\r\n\r\nplain"));
+        HttpStream hs = new HttpStream(new URI("http://example.com/"), options(false));
+        assertEquals("plain", readAll(hs));
+        hs.close();
+        assertEquals(-1, factory.sockets.get(0).request().indexOf("Accept-Encoding"));
+    }
+
+    @Test
+    void shouldCompressRequestBodies() throws Exception {
+        String text = text();
+        CannedSocket socket = new CannedSocket(ok("done"));
+        factory.sockets.add(socket);
+        HttpStream.Options options = options(false);
+        options.httpType = HttpStream.POST;
+        options.compressRequest = true;
+        options.data = text;
+        HttpStream hs = new HttpStream(new URI("http://example.com/"), options);
+        assertEquals("done", readAll(hs));
+        hs.close();
+
+        byte[] request = socket.written.toByteArray();
+        String header = new String(request, 0, Math.min(request.length, 400), "ISO-8859-1");
+        int start = header.indexOf("\r\n\r\n") + 4;
+        assertTrue(header.indexOf("Content-Encoding: gzip\r\n") > 0);
+        assertTrue(header.indexOf("Content-Length: " + (request.length - start) + "\r\n") > 0);
+        assertTrue(request.length - start < text.length() / 4);
+        assertEquals(text, gunzip(request, start, request.length - start));
+    }
+
+    @Test
+    void shouldCompressChunkedContent() throws Exception {
+        String text = text();
+        CannedSocket socket = new CannedSocket(ok("done"));
+        factory.sockets.add(socket);
+        HttpStream.Options options = options(false);
+        options.httpType = HttpStream.POST;
+        options.compressRequest = true;
+        options.setChunkedContent(out -> out.writeBytes(text.getBytes(), 0, text.length()));
+        HttpStream hs = new HttpStream(new URI("http://example.com/"), options);
+        assertEquals("done", readAll(hs));
+        hs.close();
+
+        byte[] request = socket.written.toByteArray();
+        String raw = new String(request, "ISO-8859-1");
+        assertTrue(raw.indexOf("Content-Encoding: gzip\r\n") > 0);
+        assertTrue(raw.indexOf("Transfer-Encoding: chunked\r\n") > 0);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int pos = raw.indexOf("\r\n\r\n") + 4;
+        while (true) {
+            int eol = raw.indexOf("\r\n", pos);
+            int size = Integer.parseInt(raw.substring(pos, eol), 16);
+            if (size == 0) {
+                break;
+            }
+            body.write(request, eol + 2, size);
+            pos = eol + 4 + size;
+        }
+        assertEquals(text, gunzip(body.toByteArray(), 0, body.size()));
+    }
+}
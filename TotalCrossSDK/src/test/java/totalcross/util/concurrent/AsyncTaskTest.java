@@ -0,0 +1,202 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+package totalcross.util.concurrent;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncTaskTest {
+    /** The code posted to the UI Thread, run by the test with {@link #runOnMainThread()}. */
+    final BlockingQueue<Runnable> mainThread = new LinkedBlockingQueue<Runnable>();
+    private ThreadPool pool;
+
+    /** A task which records its calls and posts to the queue of the test instead of the main window. */
+    class RecordingTask extends AsyncTask<Integer, Integer, String> {
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(0);
+
+        @Override
+        void runOnMainThread(Runnable r) {
+            mainThread.add(r);
+        }
+
+        @Override
+        protected String doInBackground(Integer... params) {
+            calls.add("doInBackground");
+            started.countDown();
+            try {
+                proceed.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+            }
+            return "result";
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            calls.add("onProgressUpdate " + values[0]);
+        }
+
+        @Override
+        protected void onPostExecute(String result) {
+            calls.add("onPostExecute " + result);
+        }
+
+        @Override
+        protected void onCancelled(String result) {
+            calls.add("onCancelled " + result);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool.awaitTermination(1000);
+        }
+    }
+
+    /** Waits for the next code posted to the UI Thread and runs it. */
+    void runOnMainThread() throws InterruptedException {
+        Runnable r = mainThread.poll(5, TimeUnit.SECONDS);
+        assertNotNull(r, "nothing was posted to the UI Thread");
+        r.run();
+    }
+
+    @Test
+    void shouldNotRunATaskCancelledBeforeItStarts() throws InterruptedException {
+        pool = new ThreadPool(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        pool.execute(() -> {
+            try {
+                busy.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+            }
+        });
+        RecordingTask task = new RecordingTask();
+        task.executeOnExecutor(pool, 1);
+
+        assertTrue(task.cancel(false));
+        assertFalse(task.cancel(false));
+        busy.countDown();
+        runOnMainThread();
+
+        assertTrue(task.isCancelled());
+        assertEquals(Collections.singletonList("onCancelled null"), task.calls);
+    }
+
+    @Test
+    void shouldCallOnCancelledInsteadOfOnPostExecute() throws InterruptedException {
+        pool = new ThreadPool(1);
+        RecordingTask task = new RecordingTask();
+        task.proceed = new CountDownLatch(1);
+        task.executeOnExecutor(pool, 1);
+
+        assertTrue(task.started.await(5, TimeUnit.SECONDS));
+        task.cancel(true);
+        task.proceed.countDown();
+        runOnMainThread();
+        assertEquals(Arrays.asList("doInBackground", "onCancelled result"), task.calls);
+
+        RecordingTask done = new RecordingTask();
+        done.executeOnExecutor(pool, 1);
+        runOnMainThread();
+        assertEquals(Arrays.asList("doInBackground", "onPostExecute result"), done.calls);
+    }
+
+    @Test
+    void shouldRunTheTasksOfTheSerialExecutorInSubmissionOrder() throws InterruptedException {
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        int n = 20;
+        for (int i = 0; i < n; i++) {
+            new RecordingTask() {
+                @Override
+                protected String doInBackground(Integer... params) {
+                    if (params[0] % 3 == 0) {
+                        Thread.yield();
+                    }
+                    order.add(params[0]);
+                    return null;
+                }
+            }.executeOnExecutor(AsyncTask.SERIAL_EXECUTOR, i);
+        }
+        for (int i = 0; i < n; i++) {
+            runOnMainThread();
+        }
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, order);
+    }
+
+    @Test
+    void shouldDeliverOnlyTheLastProgressNotYetConsumed() throws InterruptedException {
+        pool = new ThreadPool(1);
+        final CountDownLatch published = new CountDownLatch(1);
+        final CountDownLatch consumed = new CountDownLatch(1);
+        RecordingTask task = new RecordingTask() {
+            @Override
+            protected String doInBackground(Integer... params) {
+                for (int i = 1; i <= 100; i++) {
+                    publishProgress(i);
+                }
+                published.countDown();
+                try {
+                    consumed.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                }
+                publishProgress(101);
+                return "result";
+            }
+        };
+        task.executeOnExecutor(pool);
+
+        assertTrue(published.await(5, TimeUnit.SECONDS));
+        runOnMainThread(); // a single delivery for the 100 values published before it ran
+        assertEquals(Collections.singletonList("onProgressUpdate 100"), task.calls);
+        assertTrue(mainThread.isEmpty());
+
+        consumed.countDown();
+        runOnMainThread();
+        runOnMainThread();
+        assertEquals(Arrays.asList("onProgressUpdate 100", "onProgressUpdate 101", "onPostExecute result"),
+                task.calls);
+    }
+
+    @Test
+    void shouldNotDeliverProgressAfterTheTaskIsCancelled() throws InterruptedException {
+        pool = new ThreadPool(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        RecordingTask task = new RecordingTask() {
+            @Override
+            protected String doInBackground(Integer... params) {
+                publishProgress(1);
+                cancel(false);
+                publishProgress(2);
+                cancelled.countDown();
+                return "result";
+            }
+        };
+        task.executeOnExecutor(pool);
+
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        runOnMainThread(); // the progress published before the cancel is dropped too
+        runOnMainThread();
+        assertEquals(Collections.singletonList("onCancelled result"), task.calls);
+        assertTrue(mainThread.isEmpty());
+    }
+}
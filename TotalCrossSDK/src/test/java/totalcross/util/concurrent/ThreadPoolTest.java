@@ -0,0 +1,152 @@
+// Copyright (C) 2020 TotalCross Global Mobile Platform Ltda.
+//
+// SPDX-License-Identifier: LGPL-2.1-only
+package totalcross.util.concurrent;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import totalcross.sys.Vm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ThreadPoolTest {
+    private ThreadPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool.awaitTermination(1000);
+        }
+    }
+
+    @Test
+    void shouldDoubleTheIdleSleepUpToTheMaximum() {
+        int backoff = 0;
+        int[] expected = { 1, 2, 4, 8, 16, 32, 32 };
+        for (int i = 0; i < expected.length; i++) {
+            backoff = ThreadPool.backoff(backoff);
+            assertEquals(expected[i], backoff);
+        }
+        assertEquals(32, ThreadPool.MAX_IDLE_SLEEP);
+    }
+
+    @Test
+    void shouldStartTasksOnIdleWorkersWithinTheMaximumSleep() throws Exception {
+        pool = new ThreadPool(2);
+        pool.setKeepAliveTime(60000);
+        long[] latencies = new long[11];
+        for (int i = 0; i < latencies.length; i++) {
+            // lets the workers reach their longest sleep between two polls, at different points of it
+            Vm.sleep(80 + 3 * i);
+            CountDownLatch started = new CountDownLatch(1);
+            long[] startedAt = new long[1];
+            long submittedAt = System.nanoTime();
+            pool.execute(() -> {
+                startedAt[0] = System.nanoTime();
+                started.countDown();
+            });
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+            latencies[i] = (startedAt[0] - submittedAt) / 1000000;
+        }
+        Arrays.sort(latencies);
+        assertEquals(1, pool.getPoolSize()); // the idle worker took the tasks
+        assertTrue(latencies[latencies.length / 2] <= ThreadPool.MAX_IDLE_SLEEP,
+                "median latency " + latencies[latencies.length / 2] + " ms");
+    }
+
+    @Test
+    void shouldStartWorkersOnDemand() throws Exception {
+        pool = new ThreadPool(3);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(3);
+        for (int i = 0; i < 4; i++) {
+            pool.execute(() -> {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+            });
+        }
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+        assertEquals(3, pool.getPoolSize());
+        assertEquals(3, pool.getActiveCount());
+        assertEquals(1, pool.getQueueSize());
+        release.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1000));
+        assertEquals(4, pool.getCompletedTaskCount());
+        assertEquals(0, pool.getPoolSize());
+    }
+
+    @Test
+    void shouldExitIdleWorkersAfterTheKeepAliveTime() throws Exception {
+        pool = new ThreadPool(2);
+        pool.setKeepAliveTime(20);
+        assertEquals("done", pool.submit(() -> "done").get(1000));
+        int end = Vm.getTimeStamp() + 1000;
+        while (pool.getPoolSize() > 0 && Vm.getTimeStamp() < end) {
+            Vm.sleep(5);
+        }
+        assertEquals(0, pool.getPoolSize());
+        assertEquals("again", pool.submit(() -> "again").get(1000)); // a new worker is started
+    }
+
+    @Test
+    void shouldApplyTheRejectionPolicies() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        Runnable blocker = () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+            }
+        };
+        AtomicInteger ran = new AtomicInteger();
+        Runnable counter = ran::incrementAndGet;
+
+        pool = new ThreadPool(1, 1, ThreadPool.ABORT_POLICY);
+        pool.execute(blocker);
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+        pool.execute(counter);
+        assertThrows(IllegalStateException.class, () -> pool.execute(counter));
+
+        List<Runnable> pending = pool.shutdownNow();
+        assertEquals(1, pending.size());
+        assertSame(counter, pending.get(0));
+        assertThrows(IllegalStateException.class, () -> pool.execute(counter));
+        release.countDown();
+        assertTrue(pool.awaitTermination(1000));
+        assertTrue(pool.isTerminated());
+        assertEquals(0, ran.get());
+
+        // the caller runs the task when the queue is full
+        CountDownLatch release2 = new CountDownLatch(1);
+        CountDownLatch running2 = new CountDownLatch(1);
+        pool = new ThreadPool(1, 1, ThreadPool.CALLER_RUNS_POLICY);
+        pool.execute(() -> {
+            running2.countDown();
+            try {
+                release2.await();
+            } catch (InterruptedException e) {
+            }
+        });
+        assertTrue(running2.await(1, TimeUnit.SECONDS));
+        pool.execute(counter);
+        pool.execute(counter);
+        assertEquals(1, ran.get());
+        release2.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1000));
+        assertEquals(2, ran.get());
+    }
+}
@@ -533,6 +533,7 @@ void fillNativeProcAddressesTC()
    htPutPtr(&htNativeProcAddresses, hashCode("tdsNDB_bind_double_lid"), &tdsNDB_bind_double_lid);
    htPutPtr(&htNativeProcAddresses, hashCode("tdsNDB_bind_text_lis"), &tdsNDB_bind_text_lis);
    htPutPtr(&htNativeProcAddresses, hashCode("tdsNDB_bind_blob_liB"), &tdsNDB_bind_blob_liB);
+   htPutPtr(&htNativeProcAddresses, hashCode("tdsNDB_execute_batch_liIOOI"), &tdsNDB_execute_batch_liIOOI);
    htPutPtr(&htNativeProcAddresses, hashCode("tdsNDB_result_null_l"), &tdsNDB_result_null_l);
    htPutPtr(&htNativeProcAddresses, hashCode("tdsNDB_result_text_ls"), &tdsNDB_result_text_ls);
    htPutPtr(&htNativeProcAddresses, hashCode("tdsNDB_result_blob_lB"), &tdsNDB_result_blob_lB);
@@ -551,6 +551,7 @@ TC_API void tdsNDB_bind_long_lil(NMParams p);
 TC_API void tdsNDB_bind_double_lid(NMParams p);
 TC_API void tdsNDB_bind_text_lis(NMParams p);
 TC_API void tdsNDB_bind_blob_liB(NMParams p);
+TC_API void tdsNDB_execute_batch_liIOOI(NMParams p);
 TC_API void tdsNDB_result_null_l(NMParams p);
 TC_API void tdsNDB_result_text_ls(NMParams p);
 TC_API void tdsNDB_result_blob_lB(NMParams p);
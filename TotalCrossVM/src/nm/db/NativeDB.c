@@ -561,6 +561,96 @@ TC_API void tdsNDB_bind_blob_liB(NMParams p) // totalcross/db/sqlite/NativeDB na
    UNLOCKDB
 }
 
+// parameter types of totalcross.db.sqlite.SQLiteBatch
+#define BATCH_INT    1
+#define BATCH_LONG   2
+#define BATCH_DOUBLE 3
+#define BATCH_TEXT   4
+#define BATCH_BLOB   5
+
+static int32 bindBatchValue(sqlite3_stmt* stmt, int32 pos, int32 type, TCObject column, TCObject nulls, int32 row, CharP* buf, int32* bufLen)
+{
+   if (nulls && ((int8*)ARRAYOBJ_START(nulls))[row])
+      return sqlite3_bind_null(stmt, pos);
+   switch (type)
+   {
+      case BATCH_INT:
+         return sqlite3_bind_int(stmt, pos, ((int32*)ARRAYOBJ_START(column))[row]);
+      case BATCH_LONG:
+         return sqlite3_bind_int64(stmt, pos, ((int64*)ARRAYOBJ_START(column))[row]);
+      case BATCH_DOUBLE:
+         return sqlite3_bind_double(stmt, pos, ((double*)ARRAYOBJ_START(column))[row]);
+      case BATCH_TEXT:
+      {
+         TCObject str = ((TCObject*)ARRAYOBJ_START(column))[row];
+         bool utf8 = OBJ_CLASS(*charConverterPtr) == UTF8CharacterConverter;
+         JCharP js;
+         int32 len, size;
+         if (!str)
+            return sqlite3_bind_null(stmt, pos);
+         js = String_charsStart(str);
+         len = String_charsLen(str);
+         size = utf8 ? utf8len(js, len) : len;
+         if (size >= *bufLen) // the buffer is reused by all the strings of the batch
+         {
+            xfree(*buf);
+            if ((*buf = (CharP)xmalloc(size + 16)) == null)
+            {
+               *bufLen = 0;
+               return SQLITE_NOMEM;
+            }
+            *bufLen = size + 16;
+         }
+         if (utf8)
+            utf8chars2bytesBuf(js, len, *buf);
+         else
+            JCharP2CharPBuf(js, len, *buf);
+         return sqlite3_bind_text(stmt, pos, *buf, size, SQLITE_TRANSIENT);
+      }
+      case BATCH_BLOB:
+      {
+         TCObject blob = ((TCObject*)ARRAYOBJ_START(column))[row];
+         if (!blob)
+            return sqlite3_bind_null(stmt, pos);
+         return sqlite3_bind_blob(stmt, pos, ARRAYOBJ_START(blob), ARRAYOBJ_LEN(blob), SQLITE_TRANSIENT);
+      }
+   }
+   return SQLITE_MISUSE;
+}
+
+TC_API void tdsNDB_execute_batch_liIOOI(NMParams p) // totalcross/db/sqlite/NativeDB native int execute_batch(long stmt, int rows, int []types, Object []columns, Object []nulls, int []changes);
+{
+   TRACE("tdsNDB_execute_batch_liIOOI")
+   TCObject this_ = p->obj[0];
+   sqlite3_stmt* stmt = toref(p->i64[0]);
+   int32 rows = p->i32[0];
+   int32* types = (int32*)ARRAYOBJ_START(p->obj[1]);
+   int32 params = ARRAYOBJ_LEN(p->obj[1]);
+   TCObject* columns = (TCObject*)ARRAYOBJ_START(p->obj[2]);
+   TCObject* nulls = (TCObject*)ARRAYOBJ_START(p->obj[3]);
+   int32* changes = (int32*)ARRAYOBJ_START(p->obj[4]);
+   sqlite3* db = gethandle(p->currentContext, this_);
+   CharP buf = null;
+   int32 bufLen = 0, rc = SQLITE_DONE, row, j;
+
+   // no objects are created here, so the database can be kept locked for the whole batch
+   LOCKDB
+   for (row = 0; row < rows; row++)
+   {
+      sqlite3_reset(stmt);
+      for (j = 0, rc = SQLITE_OK; j < params && rc == SQLITE_OK; j++)
+         rc = bindBatchValue(stmt, j + 1, types[j], columns[j], nulls[j], row, &buf, &bufLen);
+      if (rc != SQLITE_OK || (rc = sqlite3_step(stmt)) != SQLITE_DONE)
+         break;
+      changes[row] = sqlite3_changes(db);
+   }
+   sqlite3_reset(stmt);
+   sqlite3_clear_bindings(stmt);
+   UNLOCKDB
+   xfree(buf);
+   p->retI = row == rows ? SQLITE_DONE : rc;
+}
+
 TC_API void tdsNDB_result_null_l(NMParams p) // totalcross/db/sqlite/NativeDB native void result_null(long context);
 {
    TRACE("tdsNDB_result_null_l")